@@ -0,0 +1,81 @@
+/*
+ * This file is part of HuskChat, licensed under the Apache License 2.0.
+ *
+ *  Copyright (c) William278 <will27528@gmail.com>
+ *  Copyright (c) contributors
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.william278.huskchat.benchmark;
+
+import net.william278.huskchat.filter.*;
+import net.william278.huskchat.user.OnlineUser;
+import net.william278.huskchat.user.TestOnlineUser;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Shared fixtures for the benchmarks
+ */
+final class Benchmarks {
+
+    private Benchmarks() {
+    }
+
+    /**
+     * Create a test user without any permissions, so that no filter is bypassed
+     *
+     * @return the user
+     */
+    @NotNull
+    static OnlineUser createSender() {
+        return new TestOnlineUser() {
+            @Override
+            public boolean hasPermission(@Nullable String permission, boolean allowByDefault) {
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Create a filter with its default settings
+     *
+     * @param name the filter type name, as in {@code filters.yml}
+     * @return the filter
+     */
+    @NotNull
+    static ChatFilter createFilter(@NotNull String name) {
+        final ChatFilter.Type type = ChatFilter.Type.valueOf(name.toUpperCase(Locale.ENGLISH));
+        return type.getCreator().apply(type.getDefaultSettings());
+    }
+
+    /**
+     * Create the default chain of filters and replacers. The profanity filter needs jep installed, so it is
+     * only included when requested
+     *
+     * @param profanity whether to include the profanity filter
+     * @return the filter chain
+     */
+    @NotNull
+    static List<ChatFilter> createChain(boolean profanity) {
+        final List<String> names = profanity
+                ? List.of("advertising", "caps", "spam", "profanity", "repeat", "ascii", "emoji")
+                : List.of("advertising", "caps", "spam", "repeat", "ascii", "emoji");
+        return names.stream().map(Benchmarks::createFilter).toList();
+    }
+
+}
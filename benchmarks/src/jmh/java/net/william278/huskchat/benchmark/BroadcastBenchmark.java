@@ -0,0 +1,84 @@
+/*
+ * This file is part of HuskChat, licensed under the Apache License 2.0.
+ *
+ *  Copyright (c) William278 <will27528@gmail.com>
+ *  Copyright (c) contributors
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package net.william278.huskchat.benchmark;
+
+import de.themoep.minedown.adventure.MineDown;
+import de.themoep.minedown.adventure.MineDownParser;
+import net.kyori.adventure.audience.Audience;
+import net.kyori.adventure.text.Component;
+import net.william278.huskchat.config.FormatTemplate;
+import net.william278.huskchat.message.BroadcastMessage;
+import org.jetbrains.annotations.NotNull;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Benchmarks delivering one broadcast to every online player, comparing parsing the format and message for each
+ * recipient against rendering once and sending through a single forwarding {@link Audience}
+ */
+@State(Scope.Thread)
+public class BroadcastBenchmark {
+
+    private static final String FORMAT = "&6[Broadcast]&e ";
+    private static final String MESSAGE = "The server will restart in **5 minutes**, please find somewhere safe!";
+
+    @Param({"2000"})
+    public int recipients;
+
+    private List<Audience> audiences;
+    private FormatTemplate format;
+    private long delivered;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        this.audiences = new ArrayList<>(recipients);
+        for (int i = 0; i < recipients; i++) {
+            audiences.add(new Audience() {
+                @Override
+                public void sendMessage(@NotNull Component message) {
+                    delivered += message.children().size();
+                }
+            });
+        }
+        this.format = FormatTemplate.compile(FORMAT);
+    }
+
+    @Benchmark
+    public long perRecipient() {
+        for (Audience audience : audiences) {
+            audience.sendMessage(Component.text()
+                    .append(new MineDown(FORMAT).toComponent())
+                    .append(new MineDown(MESSAGE).disable(MineDownParser.Option.ADVANCED_FORMATTING).toComponent())
+                    .build());
+        }
+        return delivered;
+    }
+
+    @Benchmark
+    public long renderOnce() {
+        Audience.audience(audiences).sendMessage(BroadcastMessage.render(format.render(Map.of()), MESSAGE));
+        return delivered;
+    }
+
+}
@@ -0,0 +1,100 @@
+/*
+ * This file is part of HuskChat, licensed under the Apache License 2.0.
+ *
+ *  Copyright (c) William278 <will27528@gmail.com>
+ *  Copyright (c) contributors
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package net.william278.huskchat.benchmark;
+
+import net.kyori.adventure.audience.Audience;
+import net.kyori.adventure.text.Component;
+import net.william278.huskchat.HuskChat;
+import net.william278.huskchat.TestHuskChat;
+import net.william278.huskchat.channel.Channel;
+import net.william278.huskchat.message.ChatMessage;
+import net.william278.huskchat.user.OnlineUser;
+import net.william278.huskchat.user.TestOnlineUser;
+import net.william278.huskchat.util.SerializedComponentCache;
+import org.jetbrains.annotations.NotNull;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Benchmarks delivering one channel message to every online player, comparing rendering the channel format for each
+ * recipient against {@link ChatMessage} rendering it once and sending the same component through a single
+ * forwarding audience. Each player serializes what it receives through a shared {@link SerializedComponentCache},
+ * as on Bukkit and BungeeCord, with {@link Component#toString()} standing in for the platform serializer
+ */
+@State(Scope.Thread)
+public class ChannelMessageBenchmark {
+
+    private static final String FORMAT = "&#00fb9a&[G]&r&f %name%&r&f: ";
+    private static final String MESSAGE = "The server will restart in 5 minutes, please find somewhere safe!";
+
+    @Param({"2000"})
+    public int recipients;
+
+    private final SerializedComponentCache cache = new SerializedComponentCache();
+    private List<OnlineUser> players;
+    private HuskChat plugin;
+    private Channel channel;
+    private long serialized;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        this.players = new ArrayList<>(recipients);
+        for (int i = 0; i < recipients; i++) {
+            players.add(new TestOnlineUser() {
+                @NotNull
+                @Override
+                public Audience getAudience() {
+                    return new Audience() {
+                        @Override
+                        public void sendMessage(@NotNull Component message) {
+                            serialized += cache.get(message, SerializedComponentCache.Format.MODERN,
+                                    Component::toString).length();
+                        }
+                    };
+                }
+            });
+        }
+        this.plugin = TestHuskChat.create(players);
+        this.channel = Channel.builder()
+                .id("global")
+                .format(FORMAT)
+                .broadcastScope(Channel.BroadcastScope.GLOBAL)
+                .build();
+    }
+
+    @Benchmark
+    public long perRecipient() {
+        final OnlineUser sender = players.get(0);
+        for (OnlineUser player : players) {
+            plugin.getLocales().renderChannelMessage(sender, channel, MESSAGE, plugin).thenAccept(player::sendMessage);
+        }
+        return serialized;
+    }
+
+    @Benchmark
+    public long renderOnce() {
+        new ChatMessage(channel, players.get(0), MESSAGE, plugin).deliver();
+        return serialized;
+    }
+
+}
@@ -0,0 +1,111 @@
+/*
+ * This file is part of HuskChat, licensed under the Apache License 2.0.
+ *
+ *  Copyright (c) William278 <will27528@gmail.com>
+ *  Copyright (c) contributors
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.william278.huskchat.benchmark;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.List;
+
+/**
+ * Message corpora used to benchmark the filter chain
+ */
+public enum Corpus {
+
+    /**
+     * Short, everyday chat messages
+     */
+    SHORT_CHAT(List.of(
+            "hi", "hello everyone", "gg", "anyone want to trade diamonds?", "brb", "lol nice build",
+            "where is spawn", "HELP I'M STUCK", "can someone tp me", "thanks :)", "who wants to go mining",
+            "i'm at 120 -64 300", "join my party!", "that creeper blew up my house :(", "ok", "wb",
+            "selling iron for 2 emeralds each", "is the server restarting soon?", "GG EZ", "how do i claim land",
+            "nice", "what's the discord link", "check out my shop at /warp shop", "no way :heart:", "hey :)"
+    )),
+
+    /**
+     * Long blocks of text pasted into chat
+     */
+    LONG_PASTE(List.of(
+            repeat("The quick brown fox jumps over the lazy dog while the server keeps ticking along. ", 3),
+            repeat("Rules: be nice, don't grief, don't spam, and have fun building with your friends! ", 3),
+            repeat("Lorem ipsum dolor sit amet, consectetur adipiscing elit, sed do eiusmod tempor. ", 3),
+            repeat("I THINK THE NEW UPDATE IS REALLY COOL BUT THE ELYTRA CHANGES ARE TOO MUCH. ", 3)
+    )),
+
+    /**
+     * Messages heavy in non-ASCII text, emoji and combining characters
+     */
+    UNICODE(List.of(
+            "こんにちは、みなさん！今日はいい天気ですね",
+            "Привет всем! Кто хочет поиграть?",
+            "😀😃😄😁😆😅😂🤣 lol 🎉🎉🎉",
+            "Ｆｕｌｌｗｉｄｔｈ ｔｅｘｔ ｉｓ ｆｕｎ",
+            "Zalgo: Z̷̢͉a̶̡̜l̵̝͈g̸̨̛o̴̭͝ ̵̱͠t̶̬̕e̵̢͝x̶̻̾t̷̪̽",
+            "مرحبا بالجميع في الخادم",
+            "안녕하세요 여러분 ❤️ 반가워요",
+            "naïve café résumé — “quotes” and ‘more’ …"
+    )),
+
+    /**
+     * Inputs crafted to be expensive for regex-based filters, such as long unbroken domain-like strings
+     */
+    ADVERSARIAL(List.of(
+            repeat("a", 256),
+            repeat("a.", 128),
+            "http://" + repeat("a-", 120) + ".com",
+            repeat("a", 200) + "!",
+            "//" + repeat("a:", 100) + "@",
+            repeat("1.", 100) + "1",
+            repeat("A", 255) + "a",
+            "x" + repeat("é", 250) + ".co"
+    ));
+
+    private final List<String> messages;
+
+    Corpus(@NotNull List<String> messages) {
+        this.messages = messages;
+    }
+
+    /**
+     * Get the messages in this corpus
+     *
+     * @return the corpus messages
+     */
+    @NotNull
+    public List<String> getMessages() {
+        return messages;
+    }
+
+    /**
+     * Get the messages in this corpus as an array, for cheap cycling in benchmark loops
+     *
+     * @return a fresh array of the corpus messages
+     */
+    @NotNull
+    public String[] toArray() {
+        return messages.toArray(String[]::new);
+    }
+
+    @NotNull
+    private static String repeat(@NotNull String text, int times) {
+        return text.repeat(times);
+    }
+
+}
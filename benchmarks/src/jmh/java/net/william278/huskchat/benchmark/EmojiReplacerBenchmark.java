@@ -0,0 +1,81 @@
+/*
+ * This file is part of HuskChat, licensed under the Apache License 2.0.
+ *
+ *  Copyright (c) William278 <will27528@gmail.com>
+ *  Copyright (c) contributors
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.william278.huskchat.benchmark;
+
+import net.william278.huskchat.filter.EmojiReplacer;
+import net.william278.huskchat.filter.EmojiTrie;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Benchmarks emoji shortcode replacement with the compiled {@link EmojiTrie} against a naive
+ * replace-each-shortcode loop, for small and large emoji maps
+ */
+@State(Scope.Thread)
+public class EmojiReplacerBenchmark {
+
+    @Param({"SHORT_CHAT", "LONG_PASTE", "UNICODE"})
+    public Corpus corpus;
+
+    @Param({"default", "400"})
+    public String emojiMap;
+
+    private Map<String, String> emoji;
+    private EmojiTrie trie;
+    private String[] messages;
+    private int index;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        final Map<String, String> defaults = ((EmojiReplacer.EmojiReplacerSettings) EmojiReplacer.getDefaultSettings())
+                .getEmoji();
+        this.emoji = new HashMap<>(defaults);
+        if (!emojiMap.equals("default")) {
+            for (int i = 0; i < Integer.parseInt(emojiMap); i++) {
+                emoji.put(":emoji_" + i + ":", Character.toString(0x1F300 + i));
+            }
+        }
+        this.trie = EmojiTrie.compile(emoji, false);
+        this.messages = corpus.toArray();
+    }
+
+    private String nextMessage() {
+        final String message = messages[index];
+        index = (index + 1) % messages.length;
+        return message;
+    }
+
+    @Benchmark
+    public String trie() {
+        return trie.replace(nextMessage());
+    }
+
+    @Benchmark
+    public String naive() {
+        String message = nextMessage();
+        for (Map.Entry<String, String> entry : emoji.entrySet()) {
+            message = message.replace(entry.getKey(), entry.getValue());
+        }
+        return message;
+    }
+
+}
@@ -0,0 +1,59 @@
+/*
+ * This file is part of HuskChat, licensed under the Apache License 2.0.
+ *
+ *  Copyright (c) William278 <will27528@gmail.com>
+ *  Copyright (c) contributors
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.william278.huskchat.benchmark;
+
+import net.william278.huskchat.filter.ChatFilter;
+import net.william278.huskchat.filter.MessageAnalysis;
+import net.william278.huskchat.user.OnlineUser;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Benchmarks each {@link ChatFilter} on its own against each {@link Corpus}. The profanity filter needs jep
+ * installed, so it must be requested explicitly with {@code -p filter=profanity}
+ */
+@State(Scope.Thread)
+public class FilterBenchmark {
+
+    @Param({"advertising", "caps", "spam", "repeat", "ascii"})
+    public String filter;
+
+    @Param({"SHORT_CHAT", "LONG_PASTE", "UNICODE", "ADVERSARIAL"})
+    public Corpus corpus;
+
+    private ChatFilter chatFilter;
+    private OnlineUser sender;
+    private String[] messages;
+    private int index;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        this.chatFilter = Benchmarks.createFilter(filter);
+        this.sender = Benchmarks.createSender();
+        this.messages = corpus.toArray();
+    }
+
+    @Benchmark
+    public boolean isAllowed() {
+        final String message = messages[index];
+        index = (index + 1) % messages.length;
+        return chatFilter.isAllowed(sender, MessageAnalysis.of(message));
+    }
+
+}
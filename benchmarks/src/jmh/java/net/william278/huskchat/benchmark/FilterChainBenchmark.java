@@ -0,0 +1,66 @@
+/*
+ * This file is part of HuskChat, licensed under the Apache License 2.0.
+ *
+ *  Copyright (c) William278 <will27528@gmail.com>
+ *  Copyright (c) contributors
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.william278.huskchat.benchmark;
+
+import net.william278.huskchat.filter.ChatFilter;
+import net.william278.huskchat.filter.FilterPipeline;
+import net.william278.huskchat.filter.FilterVerdictCache;
+import net.william278.huskchat.user.OnlineUser;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+
+/**
+ * Benchmarks the whole filter chain, as run by {@code FilterProvider#filter}, against each {@link Corpus}
+ */
+@State(Scope.Thread)
+public class FilterChainBenchmark {
+
+    @Param({"SHORT_CHAT", "LONG_PASTE", "UNICODE", "ADVERSARIAL"})
+    public Corpus corpus;
+
+    @Param({"0", "2048"})
+    public int verdictCacheSize;
+
+    @Param({"false"})
+    public boolean profanity;
+
+    private FilterPipeline pipeline;
+    private List<ChatFilter> filters;
+    private OnlineUser sender;
+    private String[] messages;
+    private int index;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        this.pipeline = new FilterPipeline(new FilterVerdictCache(verdictCacheSize));
+        this.filters = Benchmarks.createChain(profanity);
+        this.sender = Benchmarks.createSender();
+        this.messages = corpus.toArray();
+    }
+
+    @Benchmark
+    public FilterPipeline.Result filter() {
+        final String message = messages[index];
+        index = (index + 1) % messages.length;
+        return pipeline.filter(sender, message, filters).join();
+    }
+
+}
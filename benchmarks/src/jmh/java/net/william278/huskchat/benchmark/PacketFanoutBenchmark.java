@@ -0,0 +1,105 @@
+/*
+ * This file is part of HuskChat, licensed under the Apache License 2.0.
+ *
+ *  Copyright (c) William278 <will27528@gmail.com>
+ *  Copyright (c) contributors
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.william278.huskchat.benchmark;
+
+import com.velocitypowered.api.network.ProtocolVersion;
+import com.velocitypowered.proxy.protocol.netty.MinecraftVarintLengthEncoder;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.channel.embedded.EmbeddedChannel;
+import net.kyori.adventure.text.Component;
+import net.kyori.adventure.text.format.NamedTextColor;
+import net.william278.huskchat.user.VelocityPacketFanout;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Benchmarks writing one chat message to every player on a Velocity proxy, comparing encoding the system chat packet
+ * for each recipient against encoding it once and writing retained duplicates through {@link VelocityPacketFanout}.
+ * Each player is an {@link EmbeddedChannel} with Velocity's length encoder, and written frames are read back and
+ * released after every invocation
+ */
+@State(Scope.Thread)
+public class PacketFanoutBenchmark {
+
+    @Param({"2000"})
+    public int recipients;
+
+    @Param({"MINECRAFT_1_19_4", "MINECRAFT_1_20_3"})
+    public String version;
+
+    private List<EmbeddedChannel> channels;
+    private ProtocolVersion protocolVersion;
+    private Component message;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        this.protocolVersion = ProtocolVersion.valueOf(version);
+        this.channels = new ArrayList<>(recipients);
+        for (int i = 0; i < recipients; i++) {
+            final EmbeddedChannel channel = new EmbeddedChannel(MinecraftVarintLengthEncoder.INSTANCE);
+            channel.config().setAllocator(PooledByteBufAllocator.DEFAULT);
+            channels.add(channel);
+        }
+        this.message = Component.text()
+                .append(Component.text("[Global] ", NamedTextColor.DARK_AQUA))
+                .append(Component.text("William278", NamedTextColor.WHITE))
+                .append(Component.text(": The server will restart in 5 minutes, please find somewhere safe!"))
+                .build();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        channels.forEach(EmbeddedChannel::finishAndReleaseAll);
+    }
+
+    @Benchmark
+    public long encodePerRecipient() {
+        for (EmbeddedChannel channel : channels) {
+            channel.writeAndFlush(VelocityPacketFanout.encode(message, protocolVersion, channel.alloc()));
+        }
+        return drain();
+    }
+
+    @Benchmark
+    public long encodeOnce() {
+        VelocityPacketFanout.writeAll(
+                VelocityPacketFanout.encode(message, protocolVersion, PooledByteBufAllocator.DEFAULT),
+                channels
+        );
+        return drain();
+    }
+
+    // Read back and release every frame written, returning the number of bytes written
+    private long drain() {
+        long written = 0;
+        for (EmbeddedChannel channel : channels) {
+            ByteBuf frame;
+            while ((frame = channel.readOutbound()) != null) {
+                written += frame.readableBytes();
+                frame.release();
+            }
+        }
+        return written;
+    }
+
+}
@@ -0,0 +1,89 @@
+/*
+ * This file is part of HuskChat, licensed under the Apache License 2.0.
+ *
+ *  Copyright (c) William278 <will27528@gmail.com>
+ *  Copyright (c) contributors
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.william278.huskchat.benchmark;
+
+import net.william278.huskchat.user.*;
+import org.apache.commons.io.file.PathUtils;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.UUID;
+
+/**
+ * Benchmarks loading the user cache on startup from each {@link UserCacheStorage.Type}, at large cache sizes
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class UserCacheStorageBenchmark {
+
+    private static final String[] CHANNELS = {"global", "local", "staff", "helpop"};
+
+    @Param({"100000", "1000000"})
+    public int entries;
+
+    @Param({"YAML", "JOURNAL"})
+    public UserCacheStorage.Type type;
+
+    private Path directory;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        this.directory = Files.createTempDirectory("huskchat-user-cache");
+        final UserCacheStorage storage = createStorage();
+        final UserCache.Editor cache = storage.load();
+        cache.setStorage(storage);
+        for (int i = 0; i < entries; i++) {
+            final UUID uuid = UUID.randomUUID();
+            cache.setPlayerChannel(uuid, CHANNELS[i % CHANNELS.length]);
+            if (i % 50 == 0) {
+                cache.setSocialSpy(User.of(uuid, "spy" + i));
+            }
+        }
+        storage.save(cache);
+        storage.close();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        PathUtils.deleteDirectory(directory);
+    }
+
+    @Benchmark
+    public UserCache load() throws IOException {
+        final UserCacheStorage storage = createStorage();
+        try {
+            return storage.load();
+        } finally {
+            storage.close();
+        }
+    }
+
+    private UserCacheStorage createStorage() {
+        return switch (type) {
+            case YAML -> new YamlUserCacheStorage(directory);
+            case JOURNAL -> new JournalUserCacheStorage(directory);
+        };
+    }
+
+}
@@ -23,7 +23,10 @@ import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.Setter;
 import net.kyori.adventure.audience.Audience;
+import net.kyori.adventure.audience.ForwardingAudience;
 import net.kyori.adventure.platform.bukkit.BukkitAudiences;
+import net.kyori.adventure.text.Component;
+import net.kyori.adventure.text.serializer.bungeecord.BungeeComponentSerializer;
 import net.william278.desertwell.util.Version;
 import net.william278.huskchat.api.BukkitHuskChatAPI;
 import net.william278.huskchat.command.BukkitCommand;
@@ -35,23 +38,34 @@ import net.william278.huskchat.config.Settings;
 import net.william278.huskchat.discord.DiscordHook;
 import net.william278.huskchat.event.BukkitEventProvider;
 import net.william278.huskchat.filter.ChatFilter;
+import net.william278.huskchat.filter.FilterOrdering;
+import net.william278.huskchat.filter.FilterPipeline;
+import net.william278.huskchat.filter.FilterVerdictCache;
 import net.william278.huskchat.getter.DataGetter;
 import net.william278.huskchat.getter.DefaultDataGetter;
 import net.william278.huskchat.getter.LuckPermsDataGetter;
 import net.william278.huskchat.listener.BukkitListener;
+import net.william278.huskchat.message.JoinQuitAnnouncer;
+import net.william278.huskchat.network.ChatNetwork;
 import net.william278.huskchat.placeholders.BukkitPlaceholderAPIReplacer;
 import net.william278.huskchat.placeholders.DefaultReplacer;
 import net.william278.huskchat.placeholders.PlaceholderReplacer;
 import net.william278.huskchat.user.BukkitUser;
 import net.william278.huskchat.user.OnlineUser;
+import net.william278.huskchat.user.ReplyTargetStore;
+import net.william278.huskchat.user.SpyIndex;
 import net.william278.huskchat.user.UserCache;
+import net.william278.huskchat.user.UserCacheWriter;
+import net.william278.huskchat.util.SerializedComponentCache;
 import org.bukkit.command.CommandMap;
+import org.bukkit.entity.Player;
 import org.bukkit.plugin.java.JavaPlugin;
 import org.jetbrains.annotations.NotNull;
 import space.arim.morepaperlib.MorePaperLib;
 
 import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.logging.Level;
 
 @Getter
@@ -59,7 +73,15 @@ public class BukkitHuskChat extends JavaPlugin implements HuskChat, BukkitEventP
 
     private MorePaperLib morePaperLib;
     private BukkitAudiences audiences;
-    private final List<ChatFilter> filtersAndReplacers = new ArrayList<>();
+    private final List<ChatFilter> filtersAndReplacers = new CopyOnWriteArrayList<>();
+    private final FilterVerdictCache filterVerdictCache = new FilterVerdictCache(0);
+    private final FilterOrdering filterOrdering = new FilterOrdering(false, 1);
+    private final FilterPipeline filterPipeline = new FilterPipeline(filterVerdictCache);
+    private final UserCacheWriter userCacheWriter = new UserCacheWriter(this);
+    private final ReplyTargetStore replyTargets = new ReplyTargetStore();
+    private final JoinQuitAnnouncer joinQuitAnnouncer = new JoinQuitAnnouncer(this);
+    private final SpyIndex spyIndex = new SpyIndex();
+    private final SerializedComponentCache serializedComponents = new SerializedComponentCache();
     private final List<PlaceholderReplacer> placeholderReplacers = new ArrayList<>();
 
     @Setter
@@ -75,6 +97,9 @@ public class BukkitHuskChat extends JavaPlugin implements HuskChat, BukkitEventP
     @Setter
     @Getter(AccessLevel.NONE)
     private DiscordHook discordHook;
+    @Setter
+    @Getter(AccessLevel.NONE)
+    private ChatNetwork chatNetwork;
     private DataGetter dataGetter;
 
     @Override
@@ -87,6 +112,7 @@ public class BukkitHuskChat extends JavaPlugin implements HuskChat, BukkitEventP
 
         // Load config and locale files
         this.loadConfig();
+        this.loadFilters();
 
         // Load discord hook
         this.loadDiscordHook();
@@ -122,11 +148,25 @@ public class BukkitHuskChat extends JavaPlugin implements HuskChat, BukkitEventP
         log(Level.INFO, "Enabled HuskChat version " + this.getVersion());
     }
 
+    @Override
+    public void onDisable() {
+        // Stop sending queued messages and save any pending user cache changes
+        this.getDiscordHook().ifPresent(DiscordHook::close);
+        this.getChatNetwork().ifPresent(ChatNetwork::close);
+        this.getJoinQuitAnnouncer().close();
+        this.getUserCacheWriter().close();
+    }
+
     @Override
     public Optional<DiscordHook> getDiscordHook() {
         return Optional.ofNullable(discordHook);
     }
 
+    @Override
+    public Optional<ChatNetwork> getChatNetwork() {
+        return Optional.ofNullable(chatNetwork);
+    }
+
     @NotNull
     @Override
     public Version getVersion() {
@@ -193,7 +233,7 @@ public class BukkitHuskChat extends JavaPlugin implements HuskChat, BukkitEventP
     @NotNull
     @Override
     public Audience getAudience(@NotNull UUID user) {
-        return audiences.player(user);
+        return new PlayerAudience(this, user);
     }
 
     @NotNull
@@ -214,4 +254,27 @@ public class BukkitHuskChat extends JavaPlugin implements HuskChat, BukkitEventP
         return this;
     }
 
+    // Sends chat messages as components serialized once per message, and everything else through adventure-platform
+    private record PlayerAudience(@NotNull BukkitHuskChat plugin, @NotNull UUID user)
+            implements ForwardingAudience.Single {
+
+        @NotNull
+        @Override
+        public Audience audience() {
+            return plugin.audiences.player(user);
+        }
+
+        @Override
+        public void sendMessage(@NotNull Component message) {
+            final Player player = plugin.getServer().getPlayer(user);
+            if (player == null || !player.isOnline()) {
+                return;
+            }
+            player.spigot().sendMessage(plugin.getSerializedComponents().get(
+                    message, SerializedComponentCache.Format.MODERN, BungeeComponentSerializer.get()::serialize
+            ));
+        }
+
+    }
+
 }
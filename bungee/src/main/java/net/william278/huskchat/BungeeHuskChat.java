@@ -23,7 +23,10 @@ import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.Setter;
 import net.kyori.adventure.audience.Audience;
+import net.kyori.adventure.audience.ForwardingAudience;
 import net.kyori.adventure.platform.bungeecord.BungeeAudiences;
+import net.kyori.adventure.text.Component;
+import net.kyori.adventure.text.serializer.bungeecord.BungeeComponentSerializer;
 import net.md_5.bungee.api.ProxyServer;
 import net.md_5.bungee.api.connection.ProxiedPlayer;
 import net.md_5.bungee.api.plugin.Plugin;
@@ -38,23 +41,33 @@ import net.william278.huskchat.config.Settings;
 import net.william278.huskchat.discord.DiscordHook;
 import net.william278.huskchat.event.BungeeEventProvider;
 import net.william278.huskchat.filter.ChatFilter;
+import net.william278.huskchat.filter.FilterOrdering;
+import net.william278.huskchat.filter.FilterPipeline;
+import net.william278.huskchat.filter.FilterVerdictCache;
 import net.william278.huskchat.getter.BungeePermsDataGetter;
 import net.william278.huskchat.getter.DataGetter;
 import net.william278.huskchat.getter.DefaultDataGetter;
 import net.william278.huskchat.getter.LuckPermsDataGetter;
 import net.william278.huskchat.listener.BungeeListener;
+import net.william278.huskchat.message.JoinQuitAnnouncer;
+import net.william278.huskchat.network.ChatNetwork;
 import net.william278.huskchat.placeholders.DefaultReplacer;
 import net.william278.huskchat.placeholders.PAPIProxyBridgeReplacer;
 import net.william278.huskchat.placeholders.PlaceholderReplacer;
 import net.william278.huskchat.user.BungeeUser;
 import net.william278.huskchat.user.OnlineUser;
+import net.william278.huskchat.user.ReplyTargetStore;
+import net.william278.huskchat.user.SpyIndex;
 import net.william278.huskchat.user.UserCache;
+import net.william278.huskchat.user.UserCacheWriter;
+import net.william278.huskchat.util.SerializedComponentCache;
 import org.bstats.bungeecord.Metrics;
 import org.jetbrains.annotations.NotNull;
 
 import java.io.InputStream;
 import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.logging.Level;
 
 @Getter
@@ -63,7 +76,18 @@ public final class BungeeHuskChat extends Plugin implements HuskChat, BungeeEven
     // bStats ID
     private static final int METRICS_ID = 11882;
 
-    private final List<ChatFilter> filtersAndReplacers = new ArrayList<>();
+    // The first protocol version to support hex colors (1.16)
+    private static final int HEX_COLOR_PROTOCOL = 735;
+
+    private final List<ChatFilter> filtersAndReplacers = new CopyOnWriteArrayList<>();
+    private final FilterVerdictCache filterVerdictCache = new FilterVerdictCache(0);
+    private final FilterOrdering filterOrdering = new FilterOrdering(false, 1);
+    private final FilterPipeline filterPipeline = new FilterPipeline(filterVerdictCache);
+    private final UserCacheWriter userCacheWriter = new UserCacheWriter(this);
+    private final ReplyTargetStore replyTargets = new ReplyTargetStore();
+    private final JoinQuitAnnouncer joinQuitAnnouncer = new JoinQuitAnnouncer(this);
+    private final SpyIndex spyIndex = new SpyIndex();
+    private final SerializedComponentCache serializedComponents = new SerializedComponentCache();
     private final List<PlaceholderReplacer> placeholderReplacers = new ArrayList<>();
 
     @Getter(AccessLevel.NONE)
@@ -81,6 +105,9 @@ public final class BungeeHuskChat extends Plugin implements HuskChat, BungeeEven
     @Setter
     @Getter(AccessLevel.NONE)
     private DiscordHook discordHook;
+    @Setter
+    @Getter(AccessLevel.NONE)
+    private ChatNetwork chatNetwork;
     private DataGetter dataGetter;
 
     @Override
@@ -115,6 +142,9 @@ public final class BungeeHuskChat extends Plugin implements HuskChat, BungeeEven
         // Setup Discord
         this.loadDiscordHook();
 
+        // Connect to the other proxies on the network
+        this.loadChatNetwork();
+
         // Register events
         getProxy().getPluginManager().registerListener(this, new BungeeListener(this));
 
@@ -131,6 +161,15 @@ public final class BungeeHuskChat extends Plugin implements HuskChat, BungeeEven
         log(Level.INFO, "Enabled HuskChat version " + this.getVersion());
     }
 
+    @Override
+    public void onDisable() {
+        // Disconnect from the network, stop sending queued messages and save any pending user cache changes
+        this.getDiscordHook().ifPresent(DiscordHook::close);
+        this.getChatNetwork().ifPresent(ChatNetwork::close);
+        this.getJoinQuitAnnouncer().close();
+        this.getUserCacheWriter().close();
+    }
+
 
     @NotNull
     @Override
@@ -155,6 +194,11 @@ public final class BungeeHuskChat extends Plugin implements HuskChat, BungeeEven
         return Optional.ofNullable(discordHook);
     }
 
+    @Override
+    public Optional<ChatNetwork> getChatNetwork() {
+        return Optional.ofNullable(chatNetwork);
+    }
+
     @Override
     public Optional<OnlineUser> getPlayer(@NotNull UUID uuid) {
         final ProxiedPlayer player = ProxyServer.getInstance().getPlayer(uuid);
@@ -232,7 +276,7 @@ public final class BungeeHuskChat extends Plugin implements HuskChat, BungeeEven
     @NotNull
     @Override
     public Audience getAudience(@NotNull UUID user) {
-        return audiences.player(user);
+        return new PlayerAudience(this, user);
     }
 
     @NotNull
@@ -247,4 +291,33 @@ public final class BungeeHuskChat extends Plugin implements HuskChat, BungeeEven
         return this;
     }
 
+    // Sends chat messages as components serialized once per message and protocol family, and everything else
+    // through adventure-platform
+    private record PlayerAudience(@NotNull BungeeHuskChat plugin, @NotNull UUID user)
+            implements ForwardingAudience.Single {
+
+        @NotNull
+        @Override
+        public Audience audience() {
+            return plugin.audiences.player(user);
+        }
+
+        @Override
+        public void sendMessage(@NotNull Component message) {
+            final ProxiedPlayer player = plugin.getProxy().getPlayer(user);
+            if (player == null || !player.isConnected()) {
+                return;
+            }
+            final boolean modern = player.getPendingConnection().getVersion() >= HEX_COLOR_PROTOCOL;
+            final BungeeComponentSerializer serializer = modern
+                    ? BungeeComponentSerializer.get() : BungeeComponentSerializer.legacy();
+            player.sendMessage(plugin.getSerializedComponents().get(
+                    message,
+                    modern ? SerializedComponentCache.Format.MODERN : SerializedComponentCache.Format.LEGACY,
+                    serializer::serialize
+            ));
+        }
+
+    }
+
 }
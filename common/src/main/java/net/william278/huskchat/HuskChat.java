@@ -28,13 +28,17 @@ import net.william278.huskchat.discord.WebHook;
 import net.william278.huskchat.event.EventProvider;
 import net.william278.huskchat.filter.FilterProvider;
 import net.william278.huskchat.getter.DataGetter;
+import net.william278.huskchat.message.JoinQuitAnnouncer;
+import net.william278.huskchat.network.ChatNetwork;
 import net.william278.huskchat.placeholders.PlaceholderReplacer;
 import net.william278.huskchat.user.OnlineUser;
+import net.william278.huskchat.user.RemoteUser;
 import net.william278.huskchat.util.AudiencesProvider;
 import org.jetbrains.annotations.NotNull;
 
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
@@ -47,15 +51,30 @@ public interface HuskChat extends AudiencesProvider, ConfigProvider, FilterProvi
     // Initialize webhook dispatcher
     default void loadDiscordHook() {
         if (getSettings().getDiscord().isEnabled()) {
+            getDiscordHook().ifPresent(DiscordHook::close);
             setDiscordHook(getSettings().getDiscord().getSpicord().isEnabled() && isPluginPresent("Spicord")
                     ? new SpicordHook(this) : new WebHook(this));
         }
     }
 
+    // Connect to the other proxies on the network
+    default void loadChatNetwork() {
+        if (getSettings().getNetwork().isEnabled()) {
+            getChatNetwork().ifPresent(ChatNetwork::close);
+            ChatNetwork.connect(this).ifPresent(this::setChatNetwork);
+        }
+    }
+
     @NotNull
     List<PlaceholderReplacer> getPlaceholderReplacers();
 
     default CompletableFuture<String> replacePlaceholders(@NotNull OnlineUser player, @NotNull String message) {
+        // Players on other proxies bring the values their own proxy resolved for them, such as LuckPerms prefixes
+        if (player instanceof RemoteUser remote) {
+            for (Map.Entry<String, String> placeholder : remote.getPlaceholders().entrySet()) {
+                message = message.replace(placeholder.getKey(), placeholder.getValue());
+            }
+        }
         CompletableFuture<String> future = CompletableFuture.completedFuture(message);
         for (PlaceholderReplacer replacer : getPlaceholderReplacers()) {
             future = future.thenComposeAsync(toFormat -> replacer.formatPlaceholders(toFormat, player));
@@ -66,10 +85,17 @@ public interface HuskChat extends AudiencesProvider, ConfigProvider, FilterProvi
     @NotNull
     DataGetter getDataGetter();
 
+    @NotNull
+    JoinQuitAnnouncer getJoinQuitAnnouncer();
+
     Optional<DiscordHook> getDiscordHook();
 
     void setDiscordHook(@NotNull DiscordHook discordHook);
 
+    Optional<ChatNetwork> getChatNetwork();
+
+    void setChatNetwork(@NotNull ChatNetwork chatNetwork);
+
     @NotNull
     Version getVersion();
 
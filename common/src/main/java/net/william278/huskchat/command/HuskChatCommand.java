@@ -25,22 +25,29 @@ import net.kyori.adventure.text.format.TextColor;
 import net.william278.desertwell.about.AboutMenu;
 import net.william278.desertwell.util.UpdateChecker;
 import net.william278.huskchat.HuskChat;
+import net.william278.huskchat.discord.DiscordHook;
+import net.william278.huskchat.filter.ChatFilter;
+import net.william278.huskchat.filter.FilterOrdering;
+import net.william278.huskchat.filter.FilterStatistics;
+import net.william278.huskchat.filter.FilterVerdictCache;
+import net.william278.huskchat.network.ChatNetwork;
 import net.william278.huskchat.user.OnlineUser;
 import org.jetbrains.annotations.NotNull;
 
 import java.util.Arrays;
 import java.util.List;
 import java.util.Locale;
+import java.util.Optional;
 
 public class HuskChatCommand extends CommandBase {
 
-    private final static String[] COMMAND_TAB_ARGUMENTS = {"about", "reload", "update"};
+    private final static String[] COMMAND_TAB_ARGUMENTS = {"about", "reload", "update", "filters", "discord", "network"};
 
     private final UpdateChecker updateChecker;
     private final AboutMenu aboutMenu;
 
     public HuskChatCommand(@NotNull HuskChat plugin) {
-        super(List.of("huskchat"), "[about|reload|update]", plugin);
+        super(List.of("huskchat"), "[about|reload|update|filters|discord|network]", plugin);
         this.updateChecker = plugin.getUpdateChecker();
         this.aboutMenu = AboutMenu.builder()
                 .title(Component.text("HuskChat"))
@@ -81,8 +88,12 @@ public class HuskChatCommand extends CommandBase {
                 });
                 case "reload" -> {
                     plugin.loadConfig();
+                    plugin.loadFilters();
                     player.sendMessage(new MineDown("[HuskChat](#00fb9a bold) &#00fb9a&| Reloaded config & message files."));
                 }
+                case "filters" -> sendFilterStatus(player);
+                case "discord" -> sendDiscordStatus(player);
+                case "network" -> sendNetworkStatus(player);
                 default -> plugin.getLocales().sendMessage(player, "error_invalid_syntax", getUsage());
             }
             return;
@@ -91,6 +102,61 @@ public class HuskChatCommand extends CommandBase {
         player.sendMessage(aboutMenu.toComponent());
     }
 
+    // Show the current filter order, with each filter's recorded cost and rejection rate
+    private void sendFilterStatus(@NotNull OnlineUser player) {
+        final FilterVerdictCache cache = plugin.getFilterVerdictCache();
+        player.sendMessage(new MineDown(String.format(Locale.ROOT,
+                "[HuskChat](#00fb9a bold) &#00fb9a&| Filter order (verdict cache: %d hits, %d misses, %.1f%% hit rate; "
+                + "%d async timeouts):", cache.getHits(), cache.getMisses(), cache.getHitRate() * 100,
+                plugin.getFilterPipeline().getTimeouts())));
+        final List<ChatFilter> filters = plugin.getFiltersAndReplacers();
+        if (filters.isEmpty()) {
+            player.sendMessage(new MineDown("&7No filters or replacers are enabled."));
+            return;
+        }
+        for (int i = 0; i < filters.size(); i++) {
+            final ChatFilter filter = filters.get(i);
+            final FilterStatistics statistics = filter.getStatistics();
+            final String kind = filter instanceof ChatFilter.ReplacerFilter ? "replacer"
+                    : FilterOrdering.isReorderable(filter) ? "reorderable" : "fixed";
+            player.sendMessage(new MineDown(String.format(Locale.ROOT,
+                    "&7%d. &f%s &8(%s) &7— %d checks, %.1f%% rejected, %.1fµs avg",
+                    i + 1, filter.getClass().getSimpleName(), kind, statistics.getEvaluations(),
+                    statistics.getRejectionRate() * 100, statistics.getAverageNanos() / 1000d)));
+        }
+    }
+
+    // Show how many messages are waiting to be sent to Discord, and how quickly they are being sent
+    private void sendDiscordStatus(@NotNull OnlineUser player) {
+        final Optional<DiscordHook> hook = plugin.getDiscordHook();
+        if (hook.isEmpty()) {
+            player.sendMessage(new MineDown("[HuskChat](#00fb9a bold) &#00fb9a&| The Discord hook is not enabled."));
+            return;
+        }
+        player.sendMessage(new MineDown("[HuskChat](#00fb9a bold) &#00fb9a&| Discord message queues:"));
+        for (DiscordHook.QueueStatus status : hook.get().getQueueStatus()) {
+            player.sendMessage(new MineDown(String.format(Locale.ROOT,
+                    "&7%s: &f%d queued &7— %d sent, %d failed, %.1fms avg",
+                    status.name(), status.queueDepth(), status.sent(), status.failed(),
+                    status.averageLatencyMillis())));
+        }
+    }
+
+    // Show which proxies this proxy is connected to, and how many players are on them
+    private void sendNetworkStatus(@NotNull OnlineUser player) {
+        final Optional<ChatNetwork> network = plugin.getChatNetwork();
+        if (network.isEmpty()) {
+            player.sendMessage(new MineDown("[HuskChat](#00fb9a bold) &#00fb9a&| The network is not enabled."));
+            return;
+        }
+        player.sendMessage(new MineDown(String.format(Locale.ROOT,
+                "[HuskChat](#00fb9a bold) &#00fb9a&| Connected to the network as &f%s &#00fb9a&(%s):",
+                network.get().getProxyName(), plugin.getSettings().getNetwork().getBroker())));
+        player.sendMessage(new MineDown(String.format(Locale.ROOT,
+                "&7%d other proxies connected &7— %d players on other proxies",
+                network.get().getBroker().getConnectedPeers(), network.get().getDirectory().getPlayers().size())));
+    }
+
     @Override
     @NotNull
     public List<String> onTabComplete(@NotNull OnlineUser player, @NotNull String[] args) {
@@ -53,7 +53,7 @@ public class LocalSpyCommand extends CommandBase {
 
             final UserCache.SpyColor color = selectedColor.get();
             plugin.editUserCache(c -> c.setLocalSpy(player, color));
-            plugin.getLocales().sendMessage(player, "local_spy_toggled_on_color",
+            plugin.getLocales().sendParsedMessage(player, "local_spy_toggled_on_color",
                     color.colorCode, color.name().toLowerCase().replaceAll("_", " "));
             return;
         }
@@ -74,6 +74,8 @@ public class MessageCommand extends CommandBase {
                     userNames.add(connectedPlayer.getName());
                 }
             }
+            plugin.getChatNetwork().ifPresent(network -> network.getDirectory().getPlayers()
+                    .forEach(remote -> userNames.add(remote.player().name())));
             String currentText = (args.length == 1) ? args[0] : "";
             String precursoryText = "";
             String[] names = new String[0];
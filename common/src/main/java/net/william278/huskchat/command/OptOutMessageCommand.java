@@ -24,7 +24,6 @@ import net.william278.huskchat.user.OnlineUser;
 import org.jetbrains.annotations.NotNull;
 
 import java.util.List;
-import java.util.UUID;
 import java.util.stream.Collectors;
 
 public class OptOutMessageCommand extends CommandBase {
@@ -35,16 +34,12 @@ public class OptOutMessageCommand extends CommandBase {
 
     @Override
     public void onExecute(@NotNull OnlineUser player, @NotNull String[] args) {
-        plugin.getUserCache().getLastMessengers(player.getUuid()).ifPresentOrElse(lastMessengers -> {
+        plugin.getReplyTargets().getTargets(player.getUuid()).ifPresentOrElse(lastMessengers -> {
             if (lastMessengers.size() <= 1) {
                 plugin.getLocales().sendMessage(player, "error_last_message_not_group");
                 return;
             }
 
-            for (UUID uuid : lastMessengers) {
-                plugin.getUserCache().getLastMessengers(uuid).ifPresent(last -> last.remove(player.getUuid()));
-            }
-
             String playerList = lastMessengers.stream().flatMap(u -> plugin.getPlayer(u).stream())
                     .map(OnlineUser::getName).collect(Collectors.joining(", "));
             StringBuilder builder = new StringBuilder();
@@ -54,7 +49,7 @@ public class OptOutMessageCommand extends CommandBase {
             builder.append(playerList.substring(lastComma + 1));
 
             plugin.getLocales().sendMessage(player, "removed_from_group_message", builder.toString());
-            lastMessengers.clear();
+            plugin.getReplyTargets().leave(player.getUuid());
         }, () -> plugin.getLocales().sendMessage(player, "error_no_messages_opt_out"));
     }
 
@@ -37,7 +37,7 @@ public class ReplyCommand extends CommandBase {
     @Override
     public void onExecute(@NotNull OnlineUser player, @NotNull String[] args) {
         if (args.length >= 1) {
-            final Optional<Set<UUID>> lastMessengers = plugin.getUserCache().getLastMessengers(player.getUuid());
+            final Optional<Set<UUID>> lastMessengers = plugin.getReplyTargets().getTargets(player.getUuid());
             if (lastMessengers.isEmpty()) {
                 plugin.getLocales().sendMessage(player, "error_reply_no_messages");
                 return;
@@ -48,7 +48,9 @@ public class ReplyCommand extends CommandBase {
                 if (ConsoleUser.isConsolePlayer(lastMessenger)) {
                     lastPlayers.add(ConsoleUser.wrap(plugin).getName());
                 } else {
-                    plugin.getPlayer(lastMessenger).ifPresent(online -> lastPlayers.add(online.getName()));
+                    plugin.getPlayer(lastMessenger)
+                            .or(() -> plugin.getChatNetwork().flatMap(network -> network.getPlayer(lastMessenger)))
+                            .ifPresent(online -> lastPlayers.add(online.getName()));
                 }
             }
 
@@ -53,7 +53,7 @@ public class SocialSpyCommand extends CommandBase {
 
             final UserCache.SpyColor color = selectedColor.get();
             plugin.editUserCache(c -> c.setSocialSpy(player, color));
-            plugin.getLocales().sendMessage(player, "social_spy_toggled_on_color",
+            plugin.getLocales().sendParsedMessage(player, "social_spy_toggled_on_color",
                     color.colorCode, color.name().toLowerCase().replaceAll("_", " "));
             return;
         }
@@ -25,12 +25,22 @@ import de.exlll.configlib.YamlConfigurationStore;
 import de.exlll.configlib.YamlConfigurations;
 import net.william278.huskchat.HuskChat;
 import net.william278.huskchat.user.UserCache;
+import net.william278.huskchat.user.H2UserCacheStorage;
+import net.william278.huskchat.user.JournalUserCacheStorage;
+import net.william278.huskchat.user.ReplyTargetStore;
+import net.william278.huskchat.user.SpyIndex;
+import net.william278.huskchat.user.UserCacheStorage;
+import net.william278.huskchat.user.UserCacheWriter;
+import net.william278.huskchat.user.YamlUserCacheStorage;
 import org.jetbrains.annotations.NotNull;
 
 import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 import java.util.logging.Level;
 
@@ -174,7 +184,10 @@ public interface ConfigProvider {
         // Read existing locales if present
         final Path path = getConfigDirectory().resolve(String.format("messages-%s.yml", getSettings().getLanguage()));
         if (Files.exists(path)) {
-            setLocales(store.load(path));
+            final Locales locales = store.load(path);
+            locales.compile();
+            locales.compileFormats(getSettings(), getChannels());
+            setLocales(locales);
             return;
         }
 
@@ -182,6 +195,8 @@ public interface ConfigProvider {
         try (InputStream input = getResource(String.format("locales/%s.yml", getSettings().getLanguage()))) {
             final Locales locales = store.read(input);
             store.save(locales, path);
+            locales.compile();
+            locales.compileFormats(getSettings(), getChannels());
             setLocales(locales);
         } catch (Throwable e) {
             getPlugin().log(Level.SEVERE, "An error occurred loading the locales (invalid lang code?)", e);
@@ -193,19 +208,99 @@ public interface ConfigProvider {
 
     void setUserCache(@NotNull UserCache.Editor userCache);
 
+    @NotNull
+    UserCacheWriter getUserCacheWriter();
+
+    @NotNull
+    ReplyTargetStore getReplyTargets();
+
+    @NotNull
+    SpyIndex getSpyIndex();
+
     default void loadUserCache() {
-        final Path cacheFile = getConfigDirectory().resolve("user_cache.yml");
-        setUserCache(cacheFile.toFile().exists()
-                ? YamlConfigurations.load(cacheFile, UserCache.Editor.class)
-                : new UserCache.Editor());
+        final Settings.ReplyTargetSettings replyTargets = getSettings().getReplyTargets();
+        getReplyTargets().configure(
+                TimeUnit.SECONDS.toMillis(replyTargets.getExpireAfterSeconds()),
+                replyTargets.getMaxEntries(),
+                TimeUnit.SECONDS.toMillis(replyTargets.getQuitGraceSeconds())
+        );
+
+        // Save pending changes to the current storage before re-reading on reload
+        getUserCacheWriter().open(null);
+
+        final UserCacheStorage storage = switch (getSettings().getUserCache().getStorageType()) {
+            case YAML -> new YamlUserCacheStorage(getConfigDirectory());
+            case JOURNAL -> new JournalUserCacheStorage(getConfigDirectory());
+            case H2 -> new H2UserCacheStorage(getConfigDirectory());
+        };
+        try {
+            if (storage instanceof JournalUserCacheStorage journal && journal.migrate(getConfigDirectory())) {
+                getPlugin().log(Level.INFO, "Migrated the user cache from "
+                        + YamlUserCacheStorage.FILE_NAME + " to " + JournalUserCacheStorage.FILE_NAME);
+            }
+            if (storage instanceof H2UserCacheStorage database && database.migrate()) {
+                getPlugin().log(Level.INFO, "Migrated the user cache to " + H2UserCacheStorage.FILE_NAME);
+            }
+            final UserCache.Editor userCache = storage.load();
+            if (storage instanceof JournalUserCacheStorage journal && journal.getTruncatedBytes() > 0) {
+                getPlugin().log(Level.WARNING, "Discarded " + journal.getTruncatedBytes() + " bytes of "
+                        + "incomplete changes from the end of " + JournalUserCacheStorage.FILE_NAME);
+            }
+            userCache.setStorage(storage);
+            userCache.setSpyIndex(getSpyIndex());
+            getUserCacheWriter().open(storage);
+            setUserCache(userCache);
+            getSpyIndex().reindex(userCache);
+            getPlugin().getOnlinePlayers().forEach(player -> loadUserData(player.getUuid())
+                    .thenRun(() -> getSpyIndex().track(player, player.getServerName(), getUserCache())));
+        } catch (Throwable e) {
+            // Leave the writer without a storage, so the stored cache isn't saved over with an empty one
+            getPlugin().log(Level.SEVERE, "Failed to load the user cache; changes will not be saved", e);
+            final UserCache.Editor userCache = new UserCache.Editor();
+            userCache.setSpyIndex(getSpyIndex());
+            setUserCache(userCache);
+            getSpyIndex().reindex(userCache);
+        }
     }
 
-    default void editUserCache(@NotNull Consumer<UserCache.Editor> userCache) {
-        userCache.accept((UserCache.Editor) getUserCache());
-        YamlConfigurations.save(
-                getConfigDirectory().resolve("user_cache.yml"),
-                UserCache.class, getUserCache()
-        );
+    /**
+     * Load a player's data into the user cache, for storages that only keep online players' data loaded
+     *
+     * @param uuid The player's UUID
+     * @return a future completing once the player's data has been loaded, or failed to load
+     */
+    @NotNull
+    default CompletableFuture<Void> loadUserData(@NotNull UUID uuid) {
+        final UserCache.Editor userCache = (UserCache.Editor) getUserCache();
+        return getUserCacheWriter().getStorage()
+                .map(storage -> storage.loadUser(uuid, userCache).exceptionally(e -> {
+                    getPlugin().log(Level.WARNING, "Failed to load user data for " + uuid, e);
+                    return null;
+                }))
+                .orElse(CompletableFuture.completedFuture(null));
+    }
+
+    /**
+     * Evict a player's data from the user cache, for storages that only keep online players' data loaded
+     *
+     * @param uuid The player's UUID
+     */
+    default void unloadUserData(@NotNull UUID uuid) {
+        final UserCache.Editor userCache = (UserCache.Editor) getUserCache();
+        getUserCacheWriter().getStorage().ifPresent(storage -> storage.unloadUser(uuid, userCache));
+    }
+
+    /**
+     * Edit the user cache. Changes apply immediately and are saved to disk in the background
+     *
+     * @param editor The edit to make
+     */
+    default void editUserCache(@NotNull Consumer<UserCache.Editor> editor) {
+        final UserCache.Editor userCache = (UserCache.Editor) getUserCache();
+        synchronized (userCache) {
+            editor.accept(userCache);
+        }
+        getUserCacheWriter().markDirty();
     }
 
     /**
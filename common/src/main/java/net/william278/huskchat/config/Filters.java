@@ -19,11 +19,13 @@
 
 package net.william278.huskchat.config;
 
+import de.exlll.configlib.Comment;
 import de.exlll.configlib.Configuration;
 import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import net.william278.huskchat.filter.ChatFilter;
+import net.william278.huskchat.filter.FilterPipeline;
 import org.jetbrains.annotations.NotNull;
 
 import java.util.HashMap;
@@ -60,6 +62,25 @@ public class Filters {
             ChatFilter.Type.EMOJI, ChatFilter.Type.EMOJI.getDefaultSettings()
     ));
 
+    @Comment({"How many verdicts from content-only filters (advertising, caps, ascii, regex, profanity) to cache,",
+            "so identical messages sent by many players are only checked once. Set to 0 to disable"})
+    private int verdictCacheSize = 2048;
+
+    @Comment({"Whether to periodically reorder content-only filters so cheap filters that often reject messages run first.",
+            "Replacers and the spam and repeat filters always keep their position, and no filter moves past them"})
+    private boolean adaptiveOrdering = true;
+
+    @Comment("How many filtered messages to wait between reordering filters")
+    private int reorderInterval = 500;
+
+    @Comment("How long to wait for slow filters that run in the background (e.g. profanity), in milliseconds")
+    private long asyncFilterDeadlineMillis = 250;
+
+    @Comment({"What to do with a message if background filters don't finish in time.",
+            "BLOCK cancels it and ALLOW sends it unchecked.",
+            "A background filter that fails always cancels the message"})
+    private FilterPipeline.TimeoutPolicy asyncFilterTimeoutPolicy = FilterPipeline.TimeoutPolicy.BLOCK;
+
     public boolean isFilterEnabled(@NotNull ChatFilter.Type type) {
         return filters.get(type).isEnabled();
     }
@@ -0,0 +1,456 @@
+/*
+ * This file is part of HuskChat, licensed under the Apache License 2.0.
+ *
+ *  Copyright (c) William278 <will27528@gmail.com>
+ *  Copyright (c) contributors
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package net.william278.huskchat.config;
+
+import de.themoep.minedown.adventure.MineDown;
+import lombok.Getter;
+import net.kyori.adventure.text.Component;
+import net.kyori.adventure.text.format.Style;
+import net.kyori.adventure.text.format.TextColor;
+import net.kyori.adventure.text.format.TextDecoration;
+import net.william278.huskchat.HuskChat;
+import net.william278.huskchat.user.OnlineUser;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.StringJoiner;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A MineDown message format (for channels, private messages, spies and broadcasts) compiled once into a component
+ * tree, in which only the {@code %placeholder%} regions are re-evaluated when a message is rendered.
+ * <p>
+ * Placeholders are resolved for the message's subject, or its receiver when prefixed with {@code receiver_}, by
+ * passing just the placeholder tokens through the {@link net.william278.huskchat.placeholders.PlaceholderReplacer
+ * placeholder replacers} in a single query. Plain-text values are slotted into the pre-parsed format. Values with
+ * formatting (such as a prefix ending in a colour code) are substituted into the format and parsed with it, so
+ * that formatting they leave open carries on into the rest of the format; that parse is memoised, as the same
+ * names and prefixes repeat.
+ * <p>
+ * The style the format leaves open at its end, which a message appended after it takes on, is worked out once when
+ * the format is compiled. It is only looked up again from the rendered tree when a value with formatting was parsed
+ * into the format, as that formatting may carry on to the end.
+ */
+public final class FormatTemplate {
+
+    /**
+     * Format variables that are supplied when rendering, rather than resolved by the placeholder replacers
+     */
+    public static final Set<String> VARIABLES = Set.of(
+            "channel", "spy_color", "group_amount", "group_amount_subscript",
+            "group_members", "group_members_comma_separated", "players", "others_count"
+    );
+    private static final Pattern TOKEN_PATTERN = Pattern.compile("%([^%\\s]+)%");
+    private static final String SEPARATOR = "\uE002";
+    private static final String RECEIVER_PREFIX = "receiver_";
+    private static final String SENDER_PREFIX = "sender_";
+    private static final String FORMATTING_CHARACTERS = "&§[]\\.";
+    private static final String DOUBLED_FORMATTING_CHARACTERS = "*#_~?";
+    private static final int MAX_PARSED_FORMATS = 256;
+
+    /**
+     * The source format
+     */
+    @Getter
+    @NotNull
+    private final String format;
+
+    /**
+     * The colour and decorations the format leaves text appended after it in, before placeholder values are filled in
+     */
+    @Getter
+    @NotNull
+    private final Style trailingStyle;
+
+    // The format with slot markers in place of its tokens, and its compiled tree if every slot could be reached
+    @NotNull
+    private final String marked;
+    @Nullable
+    private final SlotTree tree;
+
+    // The distinct tokens of the format, indexed by slot, with how each is resolved
+    private final String[] tokens;
+    private final Source[] sources;
+    private final int variableOccurrences;
+    private final String subjectQuery;
+    private final String receiverQuery;
+
+    private final Map<String, SlotTree> parsedFormats = new ConcurrentHashMap<>();
+    private final Map<String, FormatTemplate> resolved = new ConcurrentHashMap<>();
+
+    private FormatTemplate(@NotNull String format, @NotNull String marked, @NotNull Style trailingStyle,
+                           @Nullable SlotTree tree, @NotNull String[] tokens, @NotNull Source[] sources,
+                           int variableOccurrences) {
+        this.format = format;
+        this.marked = marked;
+        this.trailingStyle = trailingStyle;
+        this.tree = tree;
+        this.tokens = tokens;
+        this.sources = sources;
+        this.variableOccurrences = variableOccurrences;
+        this.subjectQuery = query(Source.SUBJECT);
+        this.receiverQuery = query(Source.RECEIVER);
+    }
+
+    /**
+     * Compile a MineDown format into a template
+     *
+     * @param format the format
+     * @return the compiled template
+     */
+    @NotNull
+    public static FormatTemplate compile(@NotNull String format) {
+        final Map<String, Integer> slots = new LinkedHashMap<>();
+        final StringBuilder marked = new StringBuilder(format.length());
+        final Matcher matcher = TOKEN_PATTERN.matcher(format);
+        int occurrences = 0;
+        int variableOccurrences = 0;
+        while (matcher.find()) {
+            final int slot = slots.computeIfAbsent(matcher.group(1), token -> slots.size());
+            matcher.appendReplacement(marked, Matcher.quoteReplacement(SlotTree.marker(slot)));
+            occurrences++;
+            variableOccurrences += VARIABLES.contains(matcher.group(1)) ? 1 : 0;
+        }
+        matcher.appendTail(marked);
+
+        final String[] tokens = slots.keySet().toArray(String[]::new);
+        final Source[] sources = new Source[tokens.length];
+        for (int i = 0; i < tokens.length; i++) {
+            sources[i] = VARIABLES.contains(tokens[i]) ? Source.VARIABLE
+                    : tokens[i].startsWith(RECEIVER_PREFIX) ? Source.RECEIVER : Source.SUBJECT;
+        }
+
+        // Slots that MineDown moved somewhere other than text, hover text or a click value can't be reached
+        final Component parsed = new MineDown(marked.toString()).toComponent();
+        final SlotTree tree = SlotTree.compile(parsed);
+        return new FormatTemplate(format, marked.toString(), findTrailingStyle(parsed),
+                tree.getSlots() == occurrences ? tree : null, tokens, sources, variableOccurrences);
+    }
+
+    /**
+     * Get the colour and decorations in effect at the end of a rendered format, which text appended after it should
+     * take on
+     *
+     * @param component the rendered format
+     * @return the trailing style
+     */
+    @NotNull
+    public static Style findTrailingStyle(@NotNull Component component) {
+        final Style.Builder style = Style.style();
+        Component node = component;
+        while (true) {
+            if (node.color() != null) {
+                style.color(node.color());
+            }
+            for (TextDecoration decoration : TextDecoration.values()) {
+                final TextDecoration.State state = node.decoration(decoration);
+                if (state != TextDecoration.State.NOT_SET) {
+                    style.decoration(decoration, state);
+                }
+            }
+            final List<Component> children = node.children();
+            if (children.isEmpty()) {
+                return style.build();
+            }
+            node = children.get(children.size() - 1);
+        }
+    }
+
+    /**
+     * Get the colour in effect at the end of a rendered format, which text appended after it should take on
+     *
+     * @param component the rendered format
+     * @return the trailing colour, if any
+     */
+    @Nullable
+    public static TextColor findTrailingColor(@NotNull Component component) {
+        return findTrailingStyle(component).color();
+    }
+
+    /**
+     * Get the colour the format leaves text appended after it in, if any, before placeholder values are filled in
+     *
+     * @return the trailing colour, if any
+     */
+    @Nullable
+    public TextColor getTrailingColor() {
+        return trailingStyle.color();
+    }
+
+    /**
+     * Get this template with a variable's value fixed at compile time, such as a spy's colour, so that its
+     * formatting applies to the rest of the format
+     *
+     * @param variable the variable name
+     * @param value    the value to compile in
+     * @return the compiled template with the variable resolved
+     */
+    @NotNull
+    public FormatTemplate resolve(@NotNull String variable, @NotNull String value) {
+        return resolved.computeIfAbsent(variable + SEPARATOR + value,
+                key -> compile(format.replace("%" + variable + "%", value)));
+    }
+
+    /**
+     * Render the format, resolving its placeholders through the plugin's placeholder replacers
+     *
+     * @param plugin    the plugin instance
+     * @param subject   the user to resolve unprefixed (and {@code sender_}-prefixed) placeholders for
+     * @param receiver  the user to resolve {@code receiver_}-prefixed placeholders for, if any
+     * @param variables the values of the format {@link #VARIABLES variables}
+     * @return a future completing with the rendered format
+     */
+    @NotNull
+    public CompletableFuture<Component> render(@NotNull HuskChat plugin, @NotNull OnlineUser subject,
+                                               @Nullable OnlineUser receiver, @NotNull Map<String, String> variables) {
+        return renderTrailing(plugin, subject, receiver, variables).thenApply(Rendered::component);
+    }
+
+    /**
+     * Render the format, resolving its placeholders through the plugin's placeholder replacers, and append a message
+     * after it in the style the format leaves open at its end
+     *
+     * @param plugin    the plugin instance
+     * @param subject   the user to resolve unprefixed (and {@code sender_}-prefixed) placeholders for
+     * @param receiver  the user to resolve {@code receiver_}-prefixed placeholders for, if any
+     * @param variables the values of the format {@link #VARIABLES variables}
+     * @param message   a function building the message to append from the format's trailing style
+     * @return a future completing with the rendered format and message
+     */
+    @NotNull
+    public CompletableFuture<Component> render(@NotNull HuskChat plugin, @NotNull OnlineUser subject,
+                                               @Nullable OnlineUser receiver, @NotNull Map<String, String> variables,
+                                               @NotNull Function<Style, Component> message) {
+        return renderTrailing(plugin, subject, receiver, variables).thenApply(rendered -> Component.text()
+                .append(rendered.component()).append(message.apply(rendered.trailingStyle())).build());
+    }
+
+    @NotNull
+    private CompletableFuture<Rendered> renderTrailing(@NotNull HuskChat plugin, @NotNull OnlineUser subject,
+                                                       @Nullable OnlineUser receiver,
+                                                       @NotNull Map<String, String> variables) {
+        final CompletableFuture<String[]> subjectValues = query(plugin, subject, subjectQuery);
+        final CompletableFuture<String[]> receiverValues = receiver == null
+                ? CompletableFuture.completedFuture(new String[0]) : query(plugin, receiver, receiverQuery);
+        return subjectValues.thenCombine(receiverValues, (subjects, receivers) -> {
+            if (subjects == null || receivers == null) {
+                return null;
+            }
+            final String[] raw = new String[tokens.length];
+            int subjectIndex = 0, receiverIndex = 0;
+            for (int i = 0; i < tokens.length; i++) {
+                switch (sources[i]) {
+                    case SUBJECT -> raw[i] = subjects[subjectIndex++];
+                    case RECEIVER -> raw[i] = receiver == null ? "%" + tokens[i] + "%" : receivers[receiverIndex++];
+                    case VARIABLE -> raw[i] = variables.getOrDefault(tokens[i], "%" + tokens[i] + "%");
+                }
+            }
+            return fill(raw);
+        }).thenCompose(rendered -> rendered != null ? CompletableFuture.completedFuture(rendered)
+                : renderFully(plugin, subject, receiver, variables)
+                .thenApply(component -> new Rendered(component, findTrailingStyle(component))));
+    }
+
+    /**
+     * Render the format with only its {@link #VARIABLES variables} filled, leaving any placeholders as written
+     *
+     * @param variables the values of the format variables
+     * @return the rendered format
+     */
+    @NotNull
+    public Component render(@NotNull Map<String, String> variables) {
+        return render(variables, Map.of());
+    }
+
+    // Render the format with its placeholders already resolved to the given values
+    @NotNull
+    Component render(@NotNull Map<String, String> variables, @NotNull Map<String, String> placeholders) {
+        final String[] raw = new String[tokens.length];
+        for (int i = 0; i < tokens.length; i++) {
+            raw[i] = (sources[i] == Source.VARIABLE ? variables : placeholders)
+                    .getOrDefault(tokens[i], "%" + tokens[i] + "%");
+        }
+        return fill(raw).component();
+    }
+
+    // Fill the slots with resolved values, slotting them straight into the compiled tree if they are plain text
+    @NotNull
+    private Rendered fill(@NotNull String[] raw) {
+        boolean plain = tree != null;
+        for (int i = 0; plain && i < raw.length; i++) {
+            plain = sources[i] == Source.VARIABLE || isPlain(raw[i]);
+        }
+        final Component[] values = new Component[raw.length];
+        for (int i = 0; i < raw.length; i++) {
+            values[i] = Component.text(raw[i]);
+        }
+        if (plain) {
+            return new Rendered(tree.fill(values, raw), trailingStyle);
+        }
+
+        // Parse the placeholder values with the format, keeping the variables in slots so they stay plain text
+        final String[] substituted = new String[raw.length];
+        for (int i = 0; i < raw.length; i++) {
+            substituted[i] = sources[i] == Source.VARIABLE ? SlotTree.marker(i) : raw[i];
+        }
+        final String source = SlotTree.fill(marked, substituted);
+        SlotTree parsed = parsedFormats.get(source);
+        if (parsed == null) {
+            if (parsedFormats.size() >= MAX_PARSED_FORMATS) {
+                parsedFormats.clear();
+            }
+            parsed = parsedFormats.computeIfAbsent(source, s -> SlotTree.compile(new MineDown(s).toComponent()));
+        }
+        if (parsed.getSlots() == variableOccurrences) {
+            final Component filled = parsed.fill(values, raw);
+            return new Rendered(filled, findTrailingStyle(filled));
+        }
+
+        // A value moved a variable somewhere the tree can't reach, so substitute everything and parse it in full
+        for (int i = 0; i < raw.length; i++) {
+            substituted[i] = sources[i] == Source.VARIABLE ? MineDown.escape(raw[i]) : raw[i];
+        }
+        final Component parsedFully = new MineDown(SlotTree.fill(marked, substituted)).toComponent();
+        return new Rendered(parsedFully, findTrailingStyle(parsedFully));
+    }
+
+    // Whether MineDown would parse a value to the same plain text, such that it can't affect formatting around it
+    private static boolean isPlain(@NotNull String value) {
+        for (int i = 0; i < value.length(); i++) {
+            final char character = value.charAt(i);
+            if (FORMATTING_CHARACTERS.indexOf(character) >= 0 || (i > 0 && character == value.charAt(i - 1)
+                    && DOUBLED_FORMATTING_CHARACTERS.indexOf(character) >= 0)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Get the placeholders this format resolves for its subject, as they are passed to the placeholder replacers
+     *
+     * @return the placeholders, e.g. {@code %prefix%}
+     */
+    @NotNull
+    public List<String> getSubjectPlaceholders() {
+        return subjectQuery.isEmpty() ? List.of() : List.of(subjectQuery.split(SEPARATOR, -1));
+    }
+
+    /**
+     * Resolve placeholders for a user through the plugin's placeholder replacers, in a single query
+     *
+     * @param plugin       the plugin instance
+     * @param user         the user to resolve the placeholders for
+     * @param placeholders the placeholders, e.g. {@code %prefix%}
+     * @return a future completing with the value of each placeholder, or with no values if the replacers mangled
+     * the query
+     */
+    @NotNull
+    public static CompletableFuture<Map<String, String>> resolvePlaceholders(@NotNull HuskChat plugin,
+                                                                             @NotNull OnlineUser user,
+                                                                             @NotNull Collection<String> placeholders) {
+        final List<String> tokens = List.copyOf(placeholders);
+        return query(plugin, user, String.join(SEPARATOR, tokens)).thenApply(values -> {
+            if (values == null) {
+                return Map.of();
+            }
+            final Map<String, String> resolved = new LinkedHashMap<>();
+            for (int i = 0; i < tokens.size(); i++) {
+                resolved.put(tokens.get(i), values[i]);
+            }
+            return resolved;
+        });
+    }
+
+    // Resolve the placeholder tokens of a query for a user, or null if the replacers mangled the query
+    @NotNull
+    private static CompletableFuture<String[]> query(@NotNull HuskChat plugin, @NotNull OnlineUser user,
+                                                     @NotNull String query) {
+        if (query.isEmpty()) {
+            return CompletableFuture.completedFuture(new String[0]);
+        }
+        final int expected = query.split(SEPARATOR, -1).length;
+        return plugin.replacePlaceholders(user, query).thenApply(replaced -> {
+            final String[] values = replaced.split(SEPARATOR, -1);
+            return values.length == expected ? values : null;
+        });
+    }
+
+    @NotNull
+    private String query(@NotNull Source source) {
+        final StringJoiner query = new StringJoiner(SEPARATOR);
+        for (int i = 0; i < tokens.length; i++) {
+            if (sources[i] != source) {
+                continue;
+            }
+            String token = tokens[i];
+            if (token.startsWith(RECEIVER_PREFIX)) {
+                token = token.substring(RECEIVER_PREFIX.length());
+            } else if (token.startsWith(SENDER_PREFIX)) {
+                token = token.substring(SENDER_PREFIX.length());
+            }
+            query.add("%" + token + "%");
+        }
+        return query.toString();
+    }
+
+    // Render the format by substituting every value into the source and parsing it, as a last resort
+    @NotNull
+    private CompletableFuture<Component> renderFully(@NotNull HuskChat plugin, @NotNull OnlineUser subject,
+                                                     @Nullable OnlineUser receiver,
+                                                     @NotNull Map<String, String> variables) {
+        final Map<String, String> escaped = new LinkedHashMap<>();
+        variables.forEach((name, value) -> escaped.put(name, MineDown.escape(value)));
+        return plugin.replacePlaceholders(subject, replaceVariables(format, escaped).replace("%" + SENDER_PREFIX, "%"))
+                .thenCompose(replaced -> receiver == null ? CompletableFuture.completedFuture(replaced)
+                        : plugin.replacePlaceholders(receiver, replaced.replace("%" + RECEIVER_PREFIX, "%")))
+                .thenApply(replaced -> new MineDown(replaced).toComponent());
+    }
+
+    @NotNull
+    private static String replaceVariables(@NotNull String format, @NotNull Map<String, String> variables) {
+        for (Map.Entry<String, String> variable : variables.entrySet()) {
+            format = format.replace("%" + variable.getKey() + "%", variable.getValue());
+        }
+        return format;
+    }
+
+    // A rendered format, with the style it leaves open at its end
+    private record Rendered(@NotNull Component component, @NotNull Style trailingStyle) {
+    }
+
+    // Where the value of a slot comes from
+    private enum Source {
+        SUBJECT,
+        RECEIVER,
+        VARIABLE
+    }
+
+}
@@ -0,0 +1,156 @@
+/*
+ * This file is part of HuskChat, licensed under the Apache License 2.0.
+ *
+ *  Copyright (c) William278 <will27528@gmail.com>
+ *  Copyright (c) contributors
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package net.william278.huskchat.config;
+
+import de.themoep.minedown.adventure.MineDown;
+import net.kyori.adventure.text.Component;
+import net.kyori.adventure.text.TextComponent;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A locale compiled once from its MineDown source, with the static parts pre-parsed into components and the
+ * numbered argument placeholders ({@code %1%}, {@code %2%}, ...) turned into slots that are filled without
+ * scanning or re-parsing the locale. Slots may sit in the locale text, in hover text or in click event values.
+ */
+public final class LocaleTemplate {
+
+    private static final Pattern SLOT_PATTERN = Pattern.compile("%([1-9][0-9]{0,2})%");
+
+    @NotNull
+    private final String source;
+
+    // The compiled locale, or null if some slots can't be reached and the source is re-parsed on every use
+    @Nullable
+    private final SlotTree tree;
+
+    // The highest placeholder number in the locale
+    private final int slots;
+
+    private LocaleTemplate(@NotNull String source, @Nullable SlotTree tree, int slots) {
+        this.source = source;
+        this.tree = tree;
+        this.slots = slots;
+    }
+
+    /**
+     * Compile a MineDown-formatted locale into a template
+     *
+     * @param locale the raw locale
+     * @return the compiled template
+     */
+    @NotNull
+    public static LocaleTemplate compile(@NotNull String locale) {
+        final Matcher matcher = SLOT_PATTERN.matcher(locale);
+        final StringBuilder marked = new StringBuilder(locale.length());
+        int occurrences = 0;
+        int slots = 0;
+        while (matcher.find()) {
+            final int number = Integer.parseInt(matcher.group(1));
+            matcher.appendReplacement(marked, Matcher.quoteReplacement(SlotTree.marker(number - 1)));
+            slots = Math.max(slots, number);
+            occurrences++;
+        }
+        matcher.appendTail(marked);
+
+        final SlotTree tree = SlotTree.compile(new MineDown(marked.toString()).toComponent());
+        return new LocaleTemplate(locale, tree.getSlots() == occurrences ? tree : null, slots);
+    }
+
+    /**
+     * Fill the template's slots with plain-text arguments, styled as the surrounding locale text
+     *
+     * @param arguments the arguments, in slot order
+     * @return the formatted locale
+     */
+    @NotNull
+    public Component format(@NotNull String... arguments) {
+        final Component[] components = new Component[arguments.length];
+        for (int i = 0; i < arguments.length; i++) {
+            components[i] = Component.text(arguments[i]);
+        }
+        return format(components);
+    }
+
+    /**
+     * Fill the template's slots with component arguments. Where a slot is in a click event value, the
+     * argument's text content is used.
+     *
+     * @param arguments the arguments, in slot order
+     * @return the formatted locale
+     */
+    @NotNull
+    public Component format(@NotNull Component... arguments) {
+        if (tree == null) {
+            final String[] strings = new String[arguments.length];
+            for (int i = 0; i < arguments.length; i++) {
+                strings[i] = MineDown.escape(plain(arguments[i]));
+            }
+            return formatParsed(strings);
+        }
+
+        // Placeholders without an argument are left as written
+        final Component[] values = new Component[slots];
+        final String[] raw = new String[tree.hasClickSlots() ? slots : 0];
+        for (int i = 0; i < slots; i++) {
+            values[i] = i < arguments.length ? arguments[i] : Component.text("%" + (i + 1) + "%");
+            if (raw.length > 0) {
+                raw[i] = plain(values[i]);
+            }
+        }
+        return tree.fill(values, raw);
+    }
+
+    /**
+     * Substitute MineDown-formatted arguments into the locale source and parse the result, so that formatting
+     * in one argument (e.g. a legacy color code) carries on into the text after it. This re-parses the locale on
+     * every call, so it is meant for the few locales whose arguments carry formatting.
+     *
+     * @param arguments the arguments, in slot order
+     * @return the formatted locale
+     */
+    @NotNull
+    public Component formatParsed(@NotNull String... arguments) {
+        final Matcher matcher = SLOT_PATTERN.matcher(source);
+        final StringBuilder builder = new StringBuilder(source.length());
+        while (matcher.find()) {
+            final int index = Integer.parseInt(matcher.group(1));
+            matcher.appendReplacement(builder, Matcher.quoteReplacement(
+                    index <= arguments.length ? arguments[index - 1] : matcher.group()));
+        }
+        return new MineDown(matcher.appendTail(builder).toString()).toComponent();
+    }
+
+    // Concatenate the text content of a component tree
+    @NotNull
+    private static String plain(@NotNull Component component) {
+        final StringBuilder builder = new StringBuilder();
+        if (component instanceof TextComponent text) {
+            builder.append(text.content());
+        }
+        component.children().forEach(child -> builder.append(plain(child)));
+        return builder.toString();
+    }
+
+}
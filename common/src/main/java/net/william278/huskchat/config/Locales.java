@@ -20,25 +20,33 @@
 package net.william278.huskchat.config;
 
 import de.exlll.configlib.Configuration;
+import de.exlll.configlib.Ignore;
 import de.themoep.minedown.adventure.MineDown;
 import de.themoep.minedown.adventure.MineDownParser;
 import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import net.kyori.adventure.text.Component;
-import net.kyori.adventure.text.TextComponent;
-import net.kyori.adventure.text.format.TextColor;
+import net.kyori.adventure.text.format.Style;
 import net.william278.huskchat.HuskChat;
 import net.william278.huskchat.channel.Channel;
+import net.william278.huskchat.message.JoinQuitAnnouncer;
 import net.william278.huskchat.user.OnlineUser;
 import net.william278.huskchat.user.UserCache;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.StringJoiner;
 import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
 
 @SuppressWarnings("FieldMayBeFinal")
 @Getter
@@ -55,191 +63,299 @@ public class Locales {
             ┣╸ Formatted in MineDown: https://github.com/Phoenix616/MineDown
             ┗╸ Translate HuskClaims: https://william278.net/docs/huskchat/translations""";
 
-    private static final String SILENT_JOIN_PERMISSION = "huskchat.silent_join";
-    private static final String SILENT_QUIT_PERMISSION = "huskchat.silent_quit";
+    public static final String SILENT_JOIN_PERMISSION = "huskchat.silent_join";
+    public static final String SILENT_QUIT_PERMISSION = "huskchat.silent_quit";
     private static final String FORMATTED_CHAT_PERMISSION = "huskchat.formatted_chat";
     static final String DEFAULT_LOCALE = "en-gb";
 
     // The raw set of locales loaded from yaml
     Map<String, String> locales = new TreeMap<>();
 
+    // The locales compiled into templates, replaced as a whole whenever the locales are compiled
+    @Ignore
+    @Getter(AccessLevel.NONE)
+    private volatile Map<String, LocaleTemplate> templates;
+
+    // The message formats compiled into templates, keyed by their source
+    @Ignore
+    @Getter(AccessLevel.NONE)
+    private final Map<String, FormatTemplate> formatTemplates = new ConcurrentHashMap<>();
+
     @Nullable
     public String getRawLocale(@NotNull String id) {
         return locales.get(id);
     }
 
-    public void sendMessage(@NotNull OnlineUser player, @NotNull String id, @NotNull String... replacements) {
-        String locale = getRawLocale(id);
+    /**
+     * Compile every locale into a {@link LocaleTemplate}, replacing the previously compiled set
+     */
+    public void compile() {
+        final Map<String, LocaleTemplate> compiled = new HashMap<>();
+        locales.forEach((id, locale) -> {
+            if (locale != null && !locale.isEmpty()) {
+                compiled.put(id, LocaleTemplate.compile(locale));
+            }
+        });
+        this.templates = Map.copyOf(compiled);
+    }
 
-        // Don't send empty messages
-        if (locale == null || locale.isEmpty()) {
-            return;
+    /**
+     * Get the compiled template of a locale
+     *
+     * @param id the locale ID
+     * @return the template, if the locale exists and is not empty
+     */
+    @NotNull
+    public Optional<LocaleTemplate> getTemplate(@NotNull String id) {
+        if (templates == null) {
+            compile();
         }
+        return Optional.ofNullable(templates.get(id));
+    }
 
-        // Replace placeholders
-        int replacementIndexer = 1;
-        for (String replacement : replacements) {
-            String replacementString = "%" + replacementIndexer + "%";
-            locale = locale.replace(replacementString, replacement);
-            replacementIndexer = replacementIndexer + 1;
-        }
+    public void sendMessage(@NotNull OnlineUser player, @NotNull String id, @NotNull String... replacements) {
+        getTemplate(id).ifPresent(template -> player.sendMessage(template.format(replacements)));
+    }
 
-        player.sendMessage(new MineDown(locale));
+    public void sendFormattedMessage(@NotNull OnlineUser player, @NotNull String id,
+                                     @NotNull Component... replacements) {
+        getTemplate(id).ifPresent(template -> player.sendMessage(template.format(replacements)));
     }
 
-    public void sendChannelMessage(@NotNull OnlineUser target, @NotNull OnlineUser sender, @NotNull Channel channel,
-                                   @NotNull String message, @NotNull HuskChat plugin) {
-        plugin.replacePlaceholders(sender, channel.getFormat()).thenAccept(replaced -> {
-            final Component format = new MineDown(replaced).toComponent();
-            final TextComponent.Builder builder = Component.text().append(format);
-            if (sender.hasPermission(FORMATTED_CHAT_PERMISSION, false)) {
-                builder.append(new MineDown(message)
-                        .disable(MineDownParser.Option.ADVANCED_FORMATTING)
-                        .toComponent().color(getFormatColor(format)));
-            } else {
-                builder.append(Component.text(message).color(getFormatColor(format)));
-            }
-            target.sendMessage(builder.build());
-        });
+    // Send a locale whose arguments carry MineDown formatting, such as a legacy color code for the text after it
+    public void sendParsedMessage(@NotNull OnlineUser player, @NotNull String id, @NotNull String... replacements) {
+        getTemplate(id).ifPresent(template -> player.sendMessage(template.formatParsed(replacements)));
     }
 
-    public void sendOutboundPrivateMessage(@NotNull OnlineUser sender, @NotNull List<OnlineUser> recipients,
-                                           @NotNull String message, @NotNull HuskChat plugin) {
-        plugin.replacePlaceholders(recipients.get(0), recipients.size() == 1
-                ? plugin.getSettings().getMessageCommand().getFormat().getOutbound()
-                : plugin.getSettings().getMessageCommand().getFormat().getGroupOutbound()
-        ).thenAccept(replaced -> {
-            if (recipients.size() > 1) {
-                replaced = replaced.replace("%group_amount_subscript%", superscriptNumber(recipients.size() - 1))
-                        .replace("%group_amount%", Integer.toString(recipients.size() - 1))
-                        .replace("%group_members_comma_separated%", getGroupMemberList(recipients, ","))
-                        .replace("%group_members%", MineDown.escape(getGroupMemberList(recipients, "\n")));
-            }
+    /**
+     * Compile the message formats in the plugin settings and channels into {@link FormatTemplate}s ahead of use
+     *
+     * @param settings the plugin settings
+     * @param channels the channel settings
+     */
+    public void compileFormats(@NotNull Settings settings, @NotNull Channels channels) {
+        channels.getChannels().forEach(channel -> getFormatTemplate(channel.getFormat()));
+        final Settings.MessageSettings.MessageFormat message = settings.getMessageCommand().getFormat();
+        List.of(message.getInbound(), message.getOutbound(), message.getGroupInbound(), message.getGroupOutbound(),
+                settings.getSocialSpy().getFormat(), settings.getSocialSpy().getGroupFormat(),
+                settings.getLocalSpy().getFormat(), settings.getBroadcastCommand().getFormat(),
+                settings.getJoinAndQuitMessages().getJoin().getFormat(),
+                settings.getJoinAndQuitMessages().getQuit().getFormat(),
+                settings.getJoinAndQuitMessages().getAggregation().getJoinFormat(),
+                settings.getJoinAndQuitMessages().getAggregation().getQuitFormat()
+        ).forEach(this::getFormatTemplate);
+    }
 
-            final TextComponent.Builder builder = Component.text();
-            final Component format = new MineDown(replaced).toComponent();
-            builder.append(format);
-            if (sender.hasPermission(FORMATTED_CHAT_PERMISSION, false)) {
-                builder.append(new MineDown(message).disable(MineDownParser.Option.ADVANCED_FORMATTING)
-                        .toComponent().color(getFormatColor(format)));
-            } else {
-                builder.append(Component.text(message).color(getFormatColor(format)));
-            }
+    /**
+     * Get the compiled template of a message format, compiling it if it has not been used before
+     *
+     * @param format the MineDown format
+     * @return the compiled template
+     */
+    @NotNull
+    public FormatTemplate getFormatTemplate(@NotNull String format) {
+        return formatTemplates.computeIfAbsent(format, FormatTemplate::compile);
+    }
 
-            sender.sendMessage(builder.build());
-        });
+    /**
+     * Render a message sent in a channel. The channel format depends only on the sender, so the message is rendered
+     * once and the same component is sent to every recipient
+     *
+     * @param sender  the sender of the message
+     * @param channel the channel the message was sent in
+     * @param message the message, after filtering
+     * @param plugin  the plugin instance
+     * @return a future completing with the rendered message
+     */
+    @NotNull
+    public CompletableFuture<Component> renderChannelMessage(@NotNull OnlineUser sender, @NotNull Channel channel,
+                                                             @NotNull String message, @NotNull HuskChat plugin) {
+        return getFormatTemplate(channel.getFormat()).render(plugin, sender, null, Map.of(),
+                formatMessage(sender, message));
     }
 
-    // Gets the last TextColor from a component
-    @Nullable
-    private TextColor getFormatColor(@NotNull Component component) {
-        // get the last color in the format
-        TextColor color = component.color();
-        if (component.children().isEmpty()) {
-            return color;
-        }
-        for (Component child : component.children()) {
-            TextColor childColor = getFormatColor(child);
-            if (childColor != null) {
-                color = childColor;
-            }
-        }
-        return color;
+    public void sendOutboundPrivateMessage(@NotNull OnlineUser sender, @NotNull List<OnlineUser> recipients,
+                                           @NotNull String message, @NotNull HuskChat plugin) {
+        renderOutboundPrivateMessage(sender, recipients, message, plugin).thenAccept(sender::sendMessage);
+    }
+
+    @NotNull
+    public CompletableFuture<Component> renderOutboundPrivateMessage(@NotNull OnlineUser sender,
+                                                                     @NotNull List<OnlineUser> recipients,
+                                                                     @NotNull String message,
+                                                                     @NotNull HuskChat plugin) {
+        final FormatTemplate template = getFormatTemplate(recipients.size() == 1
+                ? plugin.getSettings().getMessageCommand().getFormat().getOutbound()
+                : plugin.getSettings().getMessageCommand().getFormat().getGroupOutbound());
+        return template.render(plugin, recipients.get(0), null, getGroupVariables(recipients),
+                formatMessage(sender, message));
     }
 
     public void sendInboundPrivateMessage(@NotNull List<OnlineUser> recipients, @NotNull OnlineUser sender,
                                           @NotNull String message, @NotNull HuskChat plugin) {
-        plugin.replacePlaceholders(sender, recipients.size() == 1
-                ? plugin.getSettings().getMessageCommand().getFormat().getInbound()
-                : plugin.getSettings().getMessageCommand().getFormat().getGroupInbound()
-        ).thenAccept(replaced -> {
-            if (recipients.size() > 1) {
-                replaced = replaced.replace("%group_amount_subscript%", superscriptNumber(recipients.size() - 1))
-                        .replace("%group_amount%", Integer.toString(recipients.size() - 1))
-                        .replace("%group_members_comma_separated%", getGroupMemberList(recipients, ","))
-                        .replace("%group_members%", MineDown.escape(getGroupMemberList(recipients, "\n")));
-            }
-
-            final TextComponent.Builder builder = Component.text();
-            final Component format = new MineDown(replaced).toComponent();
-            builder.append(format);
-            if (sender.hasPermission(FORMATTED_CHAT_PERMISSION, false)) {
-                builder.append(new MineDown(message).disable(MineDownParser.Option.ADVANCED_FORMATTING)
-                        .toComponent().color(getFormatColor(format)));
-            } else {
-                builder.append(Component.text(message).color(getFormatColor(format)));
-            }
-
+        renderInboundPrivateMessage(recipients, sender, message, plugin).thenAccept(component -> {
             for (final OnlineUser recipient : recipients) {
-                recipient.sendMessage(builder.build());
+                recipient.sendMessage(component);
             }
         });
     }
 
+    @NotNull
+    public CompletableFuture<Component> renderInboundPrivateMessage(@NotNull List<OnlineUser> recipients,
+                                                                    @NotNull OnlineUser sender,
+                                                                    @NotNull String message,
+                                                                    @NotNull HuskChat plugin) {
+        final FormatTemplate template = getFormatTemplate(recipients.size() == 1
+                ? plugin.getSettings().getMessageCommand().getFormat().getInbound()
+                : plugin.getSettings().getMessageCommand().getFormat().getGroupInbound());
+        return template.render(plugin, sender, null, getGroupVariables(recipients),
+                formatMessage(sender, message));
+    }
+
     public void sendLocalSpy(@NotNull OnlineUser spy, @NotNull UserCache.SpyColor spyColor, @NotNull OnlineUser sender,
                              @NotNull Channel channel, @NotNull String message, @NotNull HuskChat plugin) {
-        plugin.replacePlaceholders(sender, plugin.getSettings().getLocalSpy().getFormat())
-                .thenAccept(replaced -> {
-                    final TextComponent.Builder componentBuilder = Component.text()
-                            .append(new MineDown(replaced.replace("%spy_color%", spyColor.colorCode)
-                                    .replace("%channel%", channel.getId()) +
-                                    MineDown.escape(message)).toComponent());
-                    spy.sendMessage(componentBuilder.build());
-                });
+        final FormatTemplate template = getFormatTemplate(plugin.getSettings().getLocalSpy().getFormat())
+                .resolve("spy_color", spyColor.colorCode);
+        template.render(plugin, sender, null, Map.of("channel", channel.getId()),
+                style -> Component.text(message, style)).thenAccept(spy::sendMessage);
     }
 
     public void sendSocialSpy(@NotNull OnlineUser spy, @NotNull UserCache.SpyColor spyColor, @NotNull OnlineUser sender,
                               @NotNull List<OnlineUser> receivers, @NotNull String message, @NotNull HuskChat plugin) {
-        plugin.replacePlaceholders(sender, receivers.size() == 1
+        renderSocialSpy(spyColor, sender, receivers, message, plugin).thenAccept(spy::sendMessage);
+    }
+
+    @NotNull
+    public CompletableFuture<Component> renderSocialSpy(@NotNull UserCache.SpyColor spyColor,
+                                                        @NotNull OnlineUser sender,
+                                                        @NotNull List<OnlineUser> receivers,
+                                                        @NotNull String message, @NotNull HuskChat plugin) {
+        final FormatTemplate template = getFormatTemplate(receivers.size() == 1
                 ? plugin.getSettings().getSocialSpy().getFormat()
                 : plugin.getSettings().getSocialSpy().getGroupFormat()
-                .replace("%sender_", "%")
-        ).thenAccept(senderReplaced -> plugin.replacePlaceholders(receivers.get(0), senderReplaced
-                .replace("%receiver_", "%")
-        ).thenAccept(replaced -> {
-            if (receivers.size() > 1) {
-                replaced = replaced.replace("%group_amount_subscript%", superscriptNumber(receivers.size() - 1))
-                        .replace("%group_amount%", Integer.toString(receivers.size() - 1))
-                        .replace("%group_members_comma_separated%", getGroupMemberList(receivers, ","))
-                        .replace("%group_members%", MineDown.escape(getGroupMemberList(receivers, "\n")));
-            }
-            spy.sendMessage(new MineDown(
-                    replaced.replace("%spy_color%", spyColor.colorCode) + MineDown.escape(message)
-            ));
-        }));
+        ).resolve("spy_color", spyColor.colorCode);
+        return template.render(plugin, sender, receivers.get(0), getGroupVariables(receivers),
+                style -> Component.text(message, style));
+    }
+
+    @NotNull
+    public Component getBroadcastFormat(@NotNull HuskChat plugin) {
+        return getFormatTemplate(plugin.getSettings().getBroadcastCommand().getFormat()).render(Map.of());
+    }
+
+    // Build a chat message to append to its format, in the style the format leaves open at its end
+    @NotNull
+    private Function<Style, Component> formatMessage(@NotNull OnlineUser sender, @NotNull String message) {
+        if (sender.hasPermission(FORMATTED_CHAT_PERMISSION, false)) {
+            return style -> new MineDown(message).disable(MineDownParser.Option.ADVANCED_FORMATTING)
+                    .toComponent().applyFallbackStyle(style);
+        }
+        return style -> Component.text(message, style);
+    }
+
+    // Get the format variables describing the other members of a group message
+    @NotNull
+    private Map<String, String> getGroupVariables(@NotNull List<OnlineUser> members) {
+        if (members.size() <= 1) {
+            return Map.of();
+        }
+        return Map.of(
+                "group_amount_subscript", superscriptNumber(members.size() - 1),
+                "group_amount", Integer.toString(members.size() - 1),
+                "group_members_comma_separated", getGroupMemberList(members, ","),
+                "group_members", getGroupMemberList(members, "\n")
+        );
     }
 
     public void sendJoinMessage(@NotNull OnlineUser player, @NotNull HuskChat plugin) {
+        sendJoinMessage(player, player.getServerName(), plugin);
+    }
+
+    /**
+     * Send a player's join message, as if they were on the given server
+     *
+     * @param player     the player who joined
+     * @param serverName the server the player was on when they joined
+     * @param plugin     the plugin instance
+     */
+    public void sendJoinMessage(@NotNull OnlineUser player, @NotNull String serverName, @NotNull HuskChat plugin) {
         if (player.hasPermission(SILENT_JOIN_PERMISSION, false)) {
             return;
         }
-        plugin.replacePlaceholders(player,
-                        plugin.getDataGetter().getTextFromNode(player, "huskchat.join_message")
-                                .orElse(plugin.getSettings().getJoinAndQuitMessages().getJoin().getFormat()))
-                .thenAccept(replaced -> sendJoinQuitMessage(player, new MineDown(replaced).toComponent(), plugin));
+        getFormatTemplate(plugin.getDataGetter().getTextFromNode(player, "huskchat.join_message")
+                .orElse(plugin.getSettings().getJoinAndQuitMessages().getJoin().getFormat()))
+                .render(plugin, player, null, Map.of())
+                .thenAccept(component -> sendJoinQuitMessage(serverName, component, plugin));
     }
 
     public void sendQuitMessage(@NotNull OnlineUser player, @NotNull HuskChat plugin) {
+        sendQuitMessage(player, player.getServerName(), plugin);
+    }
+
+    /**
+     * Send a player's quit message, as if they were on the given server
+     *
+     * @param player     the player who quit
+     * @param serverName the server the player was on when they quit
+     * @param plugin     the plugin instance
+     */
+    public void sendQuitMessage(@NotNull OnlineUser player, @NotNull String serverName, @NotNull HuskChat plugin) {
         if (player.hasPermission(SILENT_QUIT_PERMISSION, false)) {
             return;
         }
-        plugin.replacePlaceholders(player,
-                        plugin.getDataGetter().getTextFromNode(player, "huskchat.quit_message")
-                                .orElse(plugin.getSettings().getJoinAndQuitMessages().getQuit().getFormat()))
-                .thenAccept(replaced -> sendJoinQuitMessage(player, new MineDown(replaced).toComponent(), plugin));
+        getFormatTemplate(plugin.getDataGetter().getTextFromNode(player, "huskchat.quit_message")
+                .orElse(plugin.getSettings().getJoinAndQuitMessages().getQuit().getFormat()))
+                .render(plugin, player, null, Map.of())
+                .thenAccept(component -> sendJoinQuitMessage(serverName, component, plugin));
+    }
+
+    /**
+     * Send one line summarising a batch of players joining or quitting, per server if join and quit messages are
+     * local to the player's server
+     *
+     * @param players the players who joined or quit and the servers they were on at the time, in order
+     * @param joined  {@code true} if the players joined; {@code false} if they quit
+     * @param plugin  the plugin instance
+     */
+    public void sendJoinQuitSummary(@NotNull List<JoinQuitAnnouncer.Announcement> players, boolean joined,
+                                    @NotNull HuskChat plugin) {
+        final Settings.JoinQuitSettings.AggregationSettings settings = plugin.getSettings()
+                .getJoinAndQuitMessages().getAggregation();
+        final FormatTemplate template = getFormatTemplate(joined ? settings.getJoinFormat() : settings.getQuitFormat());
+        final Map<String, List<OnlineUser>> byServer = new LinkedHashMap<>();
+        for (JoinQuitAnnouncer.Announcement announcement : players) {
+            byServer.computeIfAbsent(isJoinQuitLocal(plugin) ? announcement.server() : "",
+                    server -> new ArrayList<>()).add(announcement.player());
+        }
+        byServer.forEach((server, batch) -> {
+            final int named = Math.max(0, Math.min(batch.size(), settings.getMaxNames()));
+            final Component summary = template.render(Map.of(
+                    "players", getGroupMemberList(batch.subList(0, named), ", "),
+                    "others_count", Integer.toString(batch.size() - named)
+            ));
+            sendJoinQuitMessage(server, summary, plugin);
+        });
     }
 
     // Dispatch a join/quit message to the correct server
-    private void sendJoinQuitMessage(@NotNull OnlineUser player, @NotNull Component component,
+    private void sendJoinQuitMessage(@NotNull String serverName, @NotNull Component component,
                                      @NotNull HuskChat plugin) {
-        boolean local = List.of(Channel.BroadcastScope.LOCAL, Channel.BroadcastScope.LOCAL_PASSTHROUGH)
-                .contains(plugin.getSettings().getJoinAndQuitMessages().getBroadcastScope());
+        if (!isJoinQuitLocal(plugin)) {
+            plugin.getAudience(plugin.getOnlinePlayers()).sendMessage(component);
+            return;
+        }
+        final List<OnlineUser> recipients = new ArrayList<>();
         for (OnlineUser online : plugin.getOnlinePlayers()) {
-            if (local && !online.getServerName().equals(player.getServerName())) {
-                continue;
+            if (online.getServerName().equals(serverName)) {
+                recipients.add(online);
             }
-            online.sendMessage(component);
         }
+        plugin.getAudience(recipients).sendMessage(component);
+    }
+
+    private boolean isJoinQuitLocal(@NotNull HuskChat plugin) {
+        return List.of(Channel.BroadcastScope.LOCAL, Channel.BroadcastScope.LOCAL_PASSTHROUGH)
+                .contains(plugin.getSettings().getJoinAndQuitMessages().getBroadcastScope());
     }
 
     // Returns a newline-separated list of player names
@@ -27,11 +27,15 @@ import lombok.Getter;
 import lombok.NoArgsConstructor;
 import net.william278.huskchat.channel.Channel;
 import net.william278.huskchat.discord.DiscordHook;
+import net.william278.huskchat.discord.InboundDispatcher;
+import net.william278.huskchat.network.MessageBroker;
+import net.william278.huskchat.user.UserCacheStorage;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Unmodifiable;
 
 import java.net.URI;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -310,6 +314,32 @@ public class Settings {
         @Comment("Note that on Velocity/Bungee, PASSTHROUGH modes won't cancel local join/quit messages")
         private Channel.BroadcastScope broadcastScope = Channel.BroadcastScope.GLOBAL;
 
+        @Comment({"Summarise join and quit messages into one line when many players connect at once,",
+                "e.g. after a restart. A summary replaces the players' own join and quit messages,",
+                "including any set with the permissions above."})
+        private AggregationSettings aggregation = new AggregationSettings();
+
+        @Getter
+        @Configuration
+        @NoArgsConstructor(access = AccessLevel.PRIVATE)
+        public static class AggregationSettings {
+            private boolean enabled = false;
+
+            @Comment("Summarise once more than this many players join (or quit) within the window")
+            private int threshold = 5;
+
+            @Comment({"How long to count joins and quits over, and to collect them for before summarising,",
+                    "in milliseconds"})
+            private long windowMillis = 3000;
+
+            @Comment("The most player names to list in a summary before counting the rest")
+            private int maxNames = 3;
+
+            @Comment("Summary formats. %players% lists the first names, and %others_count% counts the rest")
+            private String joinFormat = "&e%players% and %others_count% others joined the network";
+            private String quitFormat = "&e%players% and %others_count% others left the network";
+        }
+
         @Getter
         @Configuration
         @NoArgsConstructor(access = AccessLevel.PRIVATE)
@@ -337,9 +367,45 @@ public class Settings {
         @Getter(AccessLevel.NONE)
         private Map<String, String> channelWebhooks = new HashMap<>();
 
+        @Comment("Settings for sending messages to webhooks")
+        private WebhookDeliverySettings webhookDelivery = new WebhookDeliverySettings();
+
+        @Comment("Settings for saving messages to disk while Discord is unavailable, to send once it recovers")
+        private SpoolSettings spool = new SpoolSettings();
+
         @Comment("Whether to hook into Spicord for two-way chat")
         private SpicordSettings spicord = new SpicordSettings();
 
+        @Getter
+        @Configuration
+        @NoArgsConstructor(access = AccessLevel.PRIVATE)
+        public static class WebhookDeliverySettings {
+            @Comment("How long to wait for more messages to send in the same request, in milliseconds")
+            private long batchWindowMillis = 500;
+
+            @Comment("The most messages to queue for each webhook. The oldest are dropped first")
+            private int maxQueueSize = 1000;
+
+            @Comment("How many times to retry a request Discord failed to receive before saving it to the spool, "
+                    + "or dropping it")
+            private int maxRetries = 3;
+        }
+
+        @Getter
+        @Configuration
+        @NoArgsConstructor(access = AccessLevel.PRIVATE)
+        public static class SpoolSettings {
+            @Comment("Whether to save messages to disk while Discord is unavailable. If disabled, they are dropped")
+            private boolean enabled = true;
+
+            @Comment("The most space saved messages can take up for each webhook or Discord channel, in kilobytes. "
+                    + "The oldest are dropped first")
+            private long maxSizeKilobytes = 8192;
+
+            @Comment("How long to keep saved messages before dropping them, in minutes")
+            private long maxAgeMinutes = 1440;
+        }
+
         @Getter
         @Configuration
         @NoArgsConstructor(access = AccessLevel.PRIVATE)
@@ -359,6 +425,42 @@ public class Settings {
             private Map<String, String> sendChannelMap = new HashMap<>(Map.of(
                     "123456789012345678", "global"
             ));
+
+            @Comment("How long to wait for more messages to send to a Discord channel as one message, in milliseconds")
+            private long batchWindowMillis = 500;
+
+            @Comment("The most messages to queue for each Discord channel. The oldest are dropped first")
+            private int maxQueueSize = 1000;
+
+            @Comment("Limits on Discord messages sent to in-game channels, to protect the game from raids")
+            private InboundSettings inbound = new InboundSettings();
+
+            @Getter
+            @Configuration
+            @NoArgsConstructor(access = AccessLevel.PRIVATE)
+            public static class InboundSettings {
+                @Comment("How many messages each Discord channel can send in a burst")
+                private int channelBurst = 5;
+
+                @Comment("How many messages per second each Discord channel can send after a burst")
+                private double channelMessagesPerSecond = 1;
+
+                @Comment("How many messages each Discord user can send in a burst")
+                private int authorBurst = 3;
+
+                @Comment("How many messages per second each Discord user can send after a burst")
+                private double authorMessagesPerSecond = 0.5;
+
+                @Comment("What to do with messages over the limits. DROP discards them; QUEUE delays them until "
+                        + "they are within the limits")
+                private InboundDispatcher.LimitAction limitAction = InboundDispatcher.LimitAction.DROP;
+
+                @Comment("The most messages to hold waiting to be sent in-game. Messages beyond this are dropped")
+                private int maxQueued = 100;
+
+                @Comment("When queueing, drop messages that would wait longer than this, in milliseconds")
+                private long maxQueueDelayMillis = 10000;
+            }
         }
 
         @NotNull
@@ -381,6 +483,84 @@ public class Settings {
             Map.of("very-long-server-name", "VLSN")
     );
 
+    @Comment("User cache (saved channels and spy settings) storage settings")
+    private UserCacheSettings userCache = new UserCacheSettings();
+
+    @Getter
+    @Configuration
+    @NoArgsConstructor(access = AccessLevel.PRIVATE)
+    public static class UserCacheSettings {
+        @Comment("How long to wait before saving changes to disk, in milliseconds. Changes made meanwhile are saved together")
+        private long saveDelayMillis = 3000;
+
+        @Comment("How to store the user cache. YAML (user_cache.yml), JOURNAL (user_cache.journal, an append-only "
+                + "binary log that saves faster for large servers) or H2 (user_cache.mv.db, an embedded database that "
+                + "only keeps online players in memory). An existing cache is migrated to JOURNAL or H2")
+        private UserCacheStorage.Type storageType = UserCacheStorage.Type.YAML;
+    }
+
+    @Comment("Settings for who players can /reply to")
+    private ReplyTargetSettings replyTargets = new ReplyTargetSettings();
+
+    @Getter
+    @Configuration
+    @NoArgsConstructor(access = AccessLevel.PRIVATE)
+    public static class ReplyTargetSettings {
+        @Comment("How long a player can reply to their last conversation after it was last used, in seconds")
+        private long expireAfterSeconds = 3600;
+
+        @Comment("The most players to remember reply targets for. The least recently used are forgotten first")
+        private int maxEntries = 10000;
+
+        @Comment("How long to remember a player's reply targets after they quit, in seconds")
+        private long quitGraceSeconds = 300;
+    }
+
+    @Comment("Settings for how chat messages are delivered to players")
+    private DeliverySettings delivery = new DeliverySettings();
+
+    @Getter
+    @Configuration
+    @NoArgsConstructor(access = AccessLevel.PRIVATE)
+    public static class DeliverySettings {
+        @Comment("(Velocity only) Encode each message into a chat packet once per client version and write the same "
+                + "bytes to every recipient, instead of encoding it again for each player. Applies to channel "
+                + "messages, broadcasts and join/quit messages. Players on versions before 1.19 are still sent "
+                + "messages normally")
+        private boolean encodeOnce = false;
+    }
+
+    @Comment("Settings for sending chat between multiple proxies running HuskChat")
+    private NetworkSettings network = new NetworkSettings();
+
+    @Getter
+    @Configuration
+    @NoArgsConstructor(access = AccessLevel.PRIVATE)
+    public static class NetworkSettings {
+        @Comment("(Proxy only) Whether to send chat, private messages and broadcasts to players on the other proxies")
+        private boolean enabled = false;
+
+        @Comment("The name of this proxy. Must be different on every proxy on the network")
+        private String proxyName = "proxy-1";
+
+        @Comment("How to connect to the other proxies. TCP (connect directly to the peers below) or LOOPBACK "
+                + "(only proxies running in the same JVM, for testing)")
+        private MessageBroker.Type broker = MessageBroker.Type.TCP;
+
+        @Comment("The address to listen for the other proxies on")
+        private String bindAddress = "0.0.0.0";
+
+        @Comment("The port to listen for the other proxies on")
+        private int port = 7776;
+
+        @Comment("The addresses of the other proxies, as host:port")
+        private List<String> peers = new ArrayList<>();
+
+        @Comment("A secret shared by every proxy on the network, required for the TCP broker. Proxies with a "
+                + "different secret are refused. Traffic is not encrypted, so only connect proxies over a private network")
+        private String secret = "";
+    }
+
     @NotNull
 <<<<<<< HEAD
     public String getLanguage() {
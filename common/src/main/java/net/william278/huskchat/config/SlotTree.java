@@ -0,0 +1,246 @@
+/*
+ * This file is part of HuskChat, licensed under the Apache License 2.0.
+ *
+ *  Copyright (c) William278 <will27528@gmail.com>
+ *  Copyright (c) contributors
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.william278.huskchat.config;
+
+import net.kyori.adventure.text.Component;
+import net.kyori.adventure.text.TextComponent;
+import net.kyori.adventure.text.event.ClickEvent;
+import net.kyori.adventure.text.event.HoverEvent;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A component parsed once from MineDown in which slot markers stood in for placeholders, compiled into a tree that
+ * fills the slots without re-parsing. Slots may be in text content, hover text or click event values.
+ * <p>
+ * Shared by {@link LocaleTemplate} and {@link FormatTemplate}, which each decide what goes in a slot.
+ */
+final class SlotTree {
+
+    private static final char SLOT_START = '\uE000';
+    private static final char SLOT_END = '\uE001';
+
+    @NotNull
+    private final Part root;
+    private final int slots;
+    private final boolean clickSlots;
+
+    private SlotTree(@NotNull Part root, int slots, boolean clickSlots) {
+        this.root = root;
+        this.slots = slots;
+        this.clickSlots = clickSlots;
+    }
+
+    /**
+     * Get the marker to put in MineDown source in place of a placeholder, before parsing it for {@link #compile}
+     *
+     * @param index the zero-based slot index
+     * @return the slot marker
+     */
+    @NotNull
+    static String marker(int index) {
+        return SLOT_START + Integer.toString(index) + SLOT_END;
+    }
+
+    /**
+     * Replace the slot markers in a string with values
+     *
+     * @param marked the string with slot markers
+     * @param values the slot values, by index
+     * @return the filled string
+     */
+    @NotNull
+    static String fill(@NotNull String marked, @NotNull String[] values) {
+        return TextSlots.compile(marked, new int[1]).fill(values);
+    }
+
+    /**
+     * Compile a parsed component with slot markers into a tree
+     *
+     * @param parsed the parsed component
+     * @return the compiled tree
+     */
+    @NotNull
+    static SlotTree compile(@NotNull Component parsed) {
+        final int[] found = {0, 0};
+        final Part root = compile(parsed, found);
+        return new SlotTree(root, found[0], found[1] > 0);
+    }
+
+    // Count slots into found[0], and slots in click values into found[1]
+    @NotNull
+    private static Part compile(@NotNull Component component, int @NotNull [] found) {
+        final List<Part> parts = new ArrayList<>();
+        final boolean split = component instanceof TextComponent text && text.content().indexOf(SLOT_START) >= 0;
+        boolean slotted = split;
+
+        // Split the text content on slot markers
+        if (split) {
+            final TextSlots content = TextSlots.compile(((TextComponent) component).content(), found);
+            for (int i = 0; i < content.slots.length; i++) {
+                if (!content.literals[i].isEmpty()) {
+                    parts.add(new Static(Component.text(content.literals[i])));
+                }
+                parts.add(new Slot(content.slots[i]));
+            }
+            if (!content.literals[content.slots.length].isEmpty()) {
+                parts.add(new Static(Component.text(content.literals[content.slots.length])));
+            }
+        }
+
+        for (Component child : component.children()) {
+            final Part part = compile(child, found);
+            slotted |= !(part instanceof Static);
+            parts.add(part);
+        }
+
+        // Slots may also be in the hover text or click value
+        Part hover = null;
+        if (component.hoverEvent() != null && component.hoverEvent().value() instanceof Component hoverText) {
+            final Part part = compile(hoverText, found);
+            hover = part instanceof Static ? null : part;
+        }
+        TextSlots click = null;
+        if (component.clickEvent() != null && component.clickEvent().value().indexOf(SLOT_START) >= 0) {
+            click = TextSlots.compile(component.clickEvent().value(), found);
+            found[1] += click.slots.length;
+        }
+        if (!slotted && hover == null && click == null) {
+            return new Static(component);
+        }
+
+        // Keep the component's style on a shell without the split content, so that slot values inherit it
+        Component shell = component.children(List.of());
+        if (split) {
+            shell = ((TextComponent) shell).content("");
+        }
+        return new Branch(shell, parts.toArray(Part[]::new), hover,
+                click != null ? component.clickEvent().action() : null, click);
+    }
+
+    /**
+     * Get the number of slots the tree could reach. If a placeholder was put somewhere else (such as an insertion),
+     * this is less than the number of markers in the source and the tree can't be used.
+     *
+     * @return the number of slots found
+     */
+    int getSlots() {
+        return slots;
+    }
+
+    /**
+     * Get whether any slot is in a click event value, which is filled from the {@code raw} values
+     *
+     * @return {@code true} if a click value has a slot
+     */
+    boolean hasClickSlots() {
+        return clickSlots;
+    }
+
+    /**
+     * Fill the tree's slots
+     *
+     * @param values the component to put in each slot of text content or hover text, by index
+     * @param raw    the string to put in each slot of a click value, by index; may be empty if there are none
+     * @return the filled component, or the pre-parsed component itself if it has no slots
+     */
+    @NotNull
+    Component fill(@NotNull Component[] values, @NotNull String[] raw) {
+        return root.fill(values, raw);
+    }
+
+    // A node of the compiled tree
+    private sealed interface Part permits Static, Slot, Branch {
+        @NotNull
+        Component fill(@NotNull Component[] values, @NotNull String[] raw);
+    }
+
+    // A pre-parsed component containing no slots, shared between every filled component
+    private record Static(@NotNull Component component) implements Part {
+        @NotNull
+        @Override
+        public Component fill(@NotNull Component[] values, @NotNull String[] raw) {
+            return component;
+        }
+    }
+
+    // A slot in text content
+    private record Slot(int index) implements Part {
+        @NotNull
+        @Override
+        public Component fill(@NotNull Component[] values, @NotNull String[] raw) {
+            return values[index];
+        }
+    }
+
+    // A styled component with slots in its content, children, hover text or click value
+    private record Branch(@NotNull Component shell, @NotNull Part[] parts, @Nullable Part hover,
+                          @Nullable ClickEvent.Action clickAction, @Nullable TextSlots click) implements Part {
+        @NotNull
+        @Override
+        public Component fill(@NotNull Component[] values, @NotNull String[] raw) {
+            final List<Component> children = new ArrayList<>(parts.length);
+            for (Part part : parts) {
+                children.add(part.fill(values, raw));
+            }
+            Component filled = shell.children(children);
+            if (hover != null) {
+                filled = filled.hoverEvent(HoverEvent.showText(hover.fill(values, raw)));
+            }
+            if (click != null && clickAction != null) {
+                filled = filled.clickEvent(ClickEvent.clickEvent(clickAction, click.fill(raw)));
+            }
+            return filled;
+        }
+    }
+
+    // A plain string split on slot markers, such that literals[i] precedes slots[i]
+    private record TextSlots(@NotNull String[] literals, int @NotNull [] slots) {
+        @NotNull
+        private static TextSlots compile(@NotNull String text, int @NotNull [] found) {
+            final List<String> literals = new ArrayList<>();
+            final List<Integer> slots = new ArrayList<>();
+            int copiedTo = 0;
+            int start;
+            while ((start = text.indexOf(SLOT_START, copiedTo)) >= 0) {
+                final int end = text.indexOf(SLOT_END, start);
+                literals.add(text.substring(copiedTo, start));
+                slots.add(Integer.parseInt(text.substring(start + 1, end)));
+                copiedTo = end + 1;
+                found[0]++;
+            }
+            literals.add(text.substring(copiedTo));
+            return new TextSlots(literals.toArray(String[]::new), slots.stream().mapToInt(Integer::intValue).toArray());
+        }
+
+        @NotNull
+        private String fill(@NotNull String[] raw) {
+            final StringBuilder builder = new StringBuilder(literals[0]);
+            for (int i = 0; i < slots.length; i++) {
+                builder.append(raw[slots[i]]).append(literals[i + 1]);
+            }
+            return builder.toString();
+        }
+    }
+
+}
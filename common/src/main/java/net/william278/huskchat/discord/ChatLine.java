@@ -0,0 +1,116 @@
+/*
+ * This file is part of HuskChat, licensed under the Apache License 2.0.
+ *
+ *  Copyright (c) William278 <will27528@gmail.com>
+ *  Copyright (c) contributors
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.william278.huskchat.discord;
+
+import net.william278.huskchat.message.ChatMessage;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.UUID;
+
+/**
+ * A chat message queued to be sent to Discord, by webhook or through Spicord, and saved to a {@link DiskSpool} while
+ * it waits
+ *
+ * @param senderUuid the sender's UUID
+ * @param senderName the sender's username
+ * @param serverName the server the sender was on
+ * @param channelId  the ID of the channel the message was sent in
+ * @param timestamp  when the message was sent, as an ISO local date-time
+ * @param message    the message text
+ */
+public record ChatLine(@NotNull UUID senderUuid, @NotNull String senderName, @NotNull String serverName,
+                       @NotNull String channelId, @NotNull String timestamp, @NotNull String message) {
+
+    @NotNull
+    public static ChatLine of(@NotNull ChatMessage message) {
+        return new ChatLine(
+                message.getSender().getUuid(), message.getSender().getName(), message.getSender().getServerName(),
+                message.getChannel().getId(), ZonedDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME),
+                message.getMessage()
+        );
+    }
+
+    /**
+     * Read a line written by {@link #toBytes()}
+     *
+     * @param data the written line
+     * @return the line
+     * @throws IOException if the data is not a written line
+     */
+    @NotNull
+    public static ChatLine fromBytes(@NotNull byte[] data) throws IOException {
+        try (DataInputStream input = new DataInputStream(new ByteArrayInputStream(data))) {
+            return new ChatLine(
+                    new UUID(input.readLong(), input.readLong()), input.readUTF(), input.readUTF(),
+                    input.readUTF(), input.readUTF(), input.readUTF()
+            );
+        }
+    }
+
+    /**
+     * Write the line to bytes, to save it in a {@link DiskSpool}
+     *
+     * @return the written line
+     * @throws IOException if a field is too long to write
+     */
+    @NotNull
+    public byte[] toBytes() throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + message.length());
+        try (DataOutputStream output = new DataOutputStream(bytes)) {
+            output.writeLong(senderUuid.getMostSignificantBits());
+            output.writeLong(senderUuid.getLeastSignificantBits());
+            output.writeUTF(senderName);
+            output.writeUTF(serverName);
+            output.writeUTF(channelId);
+            output.writeUTF(timestamp);
+            output.writeUTF(message);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Get when the message was sent, in this server's time zone
+     *
+     * @return the time the message was sent
+     */
+    @NotNull
+    public OffsetDateTime getDateTime() {
+        return LocalDateTime.parse(timestamp).atZone(ZoneId.systemDefault()).toOffsetDateTime();
+    }
+
+    boolean isSameSender(@NotNull ChatLine other) {
+        return senderUuid.equals(other.senderUuid) && senderName.equals(other.senderName);
+    }
+
+    boolean isSameSource(@NotNull ChatLine other) {
+        return isSameSender(other) && channelId.equals(other.channelId);
+    }
+
+}
@@ -25,14 +25,29 @@ import org.jetbrains.annotations.NotNull;
 
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
-import java.time.ZonedDateTime;
-import java.time.format.DateTimeFormatter;
+import java.util.List;
 import java.util.Locale;
 
 public interface DiscordHook {
 
     void postMessage(@NotNull ChatMessage message);
 
+    /**
+     * Get the status of the hook's outbound message queues
+     *
+     * @return the status of each queue
+     */
+    @NotNull
+    default List<QueueStatus> getQueueStatus() {
+        return List.of();
+    }
+
+    /**
+     * Stop sending messages. Called when the plugin shuts down
+     */
+    default void close() {
+    }
+
     /**
      * Get the discord chat message json for the given message.
      *
@@ -41,17 +56,20 @@ public interface DiscordHook {
      * @return the json message as a byte array
      */
     static byte[] getDiscordMessageJson(@NotNull HuskChat plugin, @NotNull ChatMessage message) {
-        return plugin.getSettings().getDiscord().getFormatStyle()
-                .getPostMessageFormat(plugin)
-                .replace("{SENDER_UUID}", message.getSender().getUuid().toString())
-                .replace("{SENDER_CHANNEL}", message.getChannel().getId())
-                .replace("{CURRENT_TIMESTAMP}", ZonedDateTime.now()
-                        .format(DateTimeFormatter.ISO_LOCAL_DATE_TIME))
-                .replace("{SENDER_USERNAME}", message.getSender().getName())
-                .replace("{CHAT_MESSAGE}", message.getMessage()
-                        .replace("\\", "\\\\")
-                        .replace("\"", "\\\""))
-                .getBytes(StandardCharsets.UTF_8);
+        return plugin.getSettings().getDiscord().getFormatStyle().getPayloads(plugin)
+                .build(List.of(ChatLine.of(message))).get(0).body();
+    }
+
+    /**
+     * The status of an outbound message queue
+     *
+     * @param name                 the name of the queue
+     * @param queueDepth           the number of messages waiting to be sent
+     * @param sent                 the number of messages sent
+     * @param failed               the number of messages that could not be sent
+     * @param averageLatencyMillis the average time taken to send a request, in milliseconds
+     */
+    record QueueStatus(@NotNull String name, int queueDepth, long sent, long failed, double averageLatencyMillis) {
     }
 
     /**
@@ -62,17 +80,17 @@ public interface DiscordHook {
         EMBEDDED,
         INLINE;
 
-        private String format;
+        private WebhookPayloads payloads;
 
         @NotNull
-        private String getPostMessageFormat(@NotNull HuskChat plugin) {
-            if (this.format != null) {
-                return this.format;
+        public WebhookPayloads getPayloads(@NotNull HuskChat plugin) {
+            if (this.payloads != null) {
+                return this.payloads;
             }
             try {
-                return this.format = new String(plugin.getResource(String.format(
+                return this.payloads = WebhookPayloads.compile(new String(plugin.getResource(String.format(
                         "discord/%s_message.json", name().toLowerCase(Locale.ENGLISH)
-                )).readAllBytes(), StandardCharsets.UTF_8);
+                )).readAllBytes(), StandardCharsets.UTF_8));
             } catch (IOException e) {
                 throw new IllegalStateException("Unable to load \"" + name() + "\" Discord message format", e);
             }
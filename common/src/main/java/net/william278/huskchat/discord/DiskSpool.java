@@ -0,0 +1,367 @@
+/*
+ * This file is part of HuskChat, licensed under the Apache License 2.0.
+ *
+ *  Copyright (c) William278 <will27528@gmail.com>
+ *  Copyright (c) contributors
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.william278.huskchat.discord;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.LongSupplier;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * A bounded, durable queue of records on disk, used to hold outbound Discord messages while Discord is unavailable
+ * and replay them in order once it recovers.
+ * <p>
+ * Records are appended to memory-mapped segment files, each named by the sequence number of its first record, and
+ * flushed to disk as they are written. Each record has a header of its length, sequence number, timestamp and CRC32,
+ * so a record torn by a crash is detected and discarded on recovery. The {@code spool.index} file holds the sequence
+ * number of the last record that was delivered (or dropped); segments holding only such records are deleted.
+ * <p>
+ * A mapped segment is only unmapped once it is garbage collected, and on Windows a file can't be deleted while it is
+ * mapped. A segment that can't be deleted yet is left on disk and deleted the next time the spool is opened, before
+ * it is mapped again.
+ * <p>
+ * Once the records waiting exceed the size limit, or are older than the age limit, the oldest are dropped.
+ */
+public final class DiskSpool {
+
+    private static final int SEGMENT_BYTES = 1 << 20;
+    private static final int HEADER_BYTES = Integer.BYTES + Long.BYTES * 2 + Integer.BYTES;
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final String INDEX_FILE = "spool.index";
+
+    private final Path directory;
+    private final long maxBytes;
+    private final long maxAgeMillis;
+    private final LongSupplier clock;
+    private final FileChannel index;
+    private final ArrayDeque<Segment> segments = new ArrayDeque<>();
+    private final ArrayDeque<Record> records = new ArrayDeque<>();
+    private long committed;
+    private long nextSequence;
+    private long bytes;
+    private long dropped;
+
+    private DiskSpool(@NotNull Path directory, long maxBytes, long maxAgeMillis, @NotNull LongSupplier clock)
+            throws IOException {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        this.maxAgeMillis = maxAgeMillis;
+        this.clock = clock;
+        Files.createDirectories(directory);
+        this.index = FileChannel.open(directory.resolve(INDEX_FILE),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.committed = readIndex();
+        this.nextSequence = committed + 1;
+        recover();
+    }
+
+    /**
+     * Open the spool in a directory, recovering any records left from before a restart
+     *
+     * @param directory    the directory to keep the spool in
+     * @param maxBytes     the most bytes of records to keep waiting
+     * @param maxAgeMillis how long to keep records waiting, in milliseconds
+     * @param clock        supplies the current time, in milliseconds
+     * @return the opened spool
+     * @throws IOException if the spool could not be opened
+     */
+    @NotNull
+    public static DiskSpool open(@NotNull Path directory, long maxBytes, long maxAgeMillis,
+                                 @NotNull LongSupplier clock) throws IOException {
+        return new DiskSpool(directory, maxBytes, maxAgeMillis, clock);
+    }
+
+    /**
+     * Append a record to the end of the spool, dropping the oldest records if the spool is over its limits
+     *
+     * @param data the record
+     * @return the sequence number of the record
+     * @throws IOException if the record could not be written
+     */
+    public synchronized long append(@NotNull byte[] data) throws IOException {
+        final int size = HEADER_BYTES + data.length;
+        Segment segment = segments.peekLast();
+        if (segment == null || segment.position + size > segment.buffer.capacity()) {
+            segment = createSegment(nextSequence, Math.max(SEGMENT_BYTES, size));
+        }
+
+        final CRC32 crc = new CRC32();
+        crc.update(data);
+        final long sequence = nextSequence++;
+        final long timestamp = clock.getAsLong();
+        final int position = segment.position;
+        final MappedByteBuffer buffer = segment.buffer;
+        buffer.putLong(position + Integer.BYTES, sequence);
+        buffer.putLong(position + Integer.BYTES + Long.BYTES, timestamp);
+        buffer.putInt(position + Integer.BYTES + Long.BYTES * 2, (int) crc.getValue());
+        buffer.put(position + HEADER_BYTES, data);
+
+        // Write the length last, so that a record is only read back once it is complete
+        buffer.putInt(position, data.length);
+        buffer.force(position, size);
+        segment.position += size;
+        segment.lastSequence = sequence;
+
+        records.add(new Record(sequence, timestamp, segment, position, data.length));
+        bytes += size;
+        expire();
+        return sequence;
+    }
+
+    /**
+     * Get the oldest records waiting, without removing them
+     *
+     * @param max the most records to get
+     * @return the records, oldest first
+     * @throws IOException if expired records could not be dropped
+     */
+    @NotNull
+    public synchronized List<Entry> peek(int max) throws IOException {
+        expire();
+        final List<Entry> entries = new ArrayList<>(Math.min(max, records.size()));
+        final Iterator<Record> iterator = records.iterator();
+        while (iterator.hasNext() && entries.size() < max) {
+            final Record record = iterator.next();
+            final byte[] data = new byte[record.length];
+            record.segment.buffer.get(record.position + HEADER_BYTES, data);
+            entries.add(new Entry(record.sequence, record.timestamp, data));
+        }
+        return entries;
+    }
+
+    /**
+     * Remove every record up to and including a sequence number, once they have been delivered
+     *
+     * @param sequence the sequence number of the last delivered record
+     * @throws IOException if the index could not be written
+     */
+    public synchronized void commit(long sequence) throws IOException {
+        if (sequence <= committed) {
+            return;
+        }
+        while (!records.isEmpty() && records.peek().sequence <= sequence) {
+            bytes -= HEADER_BYTES + records.poll().length;
+        }
+        committed = sequence;
+        writeIndex();
+
+        // Delete segments that only hold delivered records, keeping the one being written to
+        while (segments.size() > 1 && segments.peek().lastSequence <= committed) {
+            deleteSegment(segments.poll().path);
+        }
+    }
+
+    /**
+     * Returns whether no records are waiting
+     *
+     * @return {@code true} if the spool is empty
+     */
+    public synchronized boolean isEmpty() {
+        return records.isEmpty();
+    }
+
+    /**
+     * Get the number of records waiting
+     *
+     * @return the number of records
+     */
+    public synchronized int size() {
+        return records.size();
+    }
+
+    /**
+     * Get the number of records dropped for being over the size or age limit
+     *
+     * @return the number of records dropped
+     */
+    public synchronized long getDropped() {
+        return dropped;
+    }
+
+    /**
+     * Close the spool, flushing its files. Records waiting are kept on disk for when it is next opened
+     *
+     * @throws IOException if the index could not be closed
+     */
+    public synchronized void close() throws IOException {
+        for (Segment segment : segments) {
+            segment.buffer.force();
+        }
+        segments.clear();
+        index.close();
+    }
+
+    // Drop the oldest records while the spool is over its size or age limit
+    private void expire() throws IOException {
+        final long oldest = clock.getAsLong() - maxAgeMillis;
+        long last = -1;
+        while (!records.isEmpty() && (bytes > maxBytes || records.peek().timestamp < oldest)) {
+            final Record record = records.poll();
+            bytes -= HEADER_BYTES + record.length;
+            last = record.sequence;
+            dropped++;
+        }
+        if (last >= 0) {
+            commit(last);
+        }
+    }
+
+    // Read back the records in every segment, stopping at the first incomplete or corrupt record
+    private void recover() throws IOException {
+        final List<Path> files;
+        try (Stream<Path> stream = Files.list(directory)) {
+            files = stream.filter(path -> path.getFileName().toString().endsWith(SEGMENT_SUFFIX)).sorted().toList();
+        }
+        for (int i = 0; i < files.size(); i++) {
+            final Path file = files.get(i);
+
+            // A segment whose records are all before the next segment's first was left undeleted, so isn't mapped
+            if (i + 1 < files.size() && parseFirstSequence(files.get(i + 1)) - 1 <= committed) {
+                deleteSegment(file);
+                continue;
+            }
+            final Segment segment = mapSegment(file, Files.size(file), parseFirstSequence(file));
+            final MappedByteBuffer buffer = segment.buffer;
+            int position = 0;
+            while (position + HEADER_BYTES <= buffer.capacity()) {
+                final int length = buffer.getInt(position);
+                if (length <= 0 || position + HEADER_BYTES + length > buffer.capacity()) {
+                    break;
+                }
+                final long sequence = buffer.getLong(position + Integer.BYTES);
+                final long timestamp = buffer.getLong(position + Integer.BYTES + Long.BYTES);
+                final int checksum = buffer.getInt(position + Integer.BYTES + Long.BYTES * 2);
+                final byte[] data = new byte[length];
+                buffer.get(position + HEADER_BYTES, data);
+                final CRC32 crc = new CRC32();
+                crc.update(data);
+                if ((int) crc.getValue() != checksum) {
+                    break;
+                }
+                if (sequence > committed) {
+                    records.add(new Record(sequence, timestamp, segment, position, length));
+                    bytes += HEADER_BYTES + length;
+                }
+                segment.lastSequence = sequence;
+                nextSequence = Math.max(nextSequence, sequence + 1);
+                position += HEADER_BYTES + length;
+            }
+            segment.position = position;
+
+            // Clear anything after the last good record, so it is not mistaken for a record later
+            for (int i = position; i < Math.min(buffer.capacity(), position + HEADER_BYTES); i++) {
+                buffer.put(i, (byte) 0);
+            }
+            segments.add(segment);
+        }
+
+        // Delete segments that only hold delivered records
+        while (!segments.isEmpty() && segments.peek().lastSequence <= committed
+               && (segments.size() > 1 || records.isEmpty())) {
+            deleteSegment(segments.poll().path);
+        }
+    }
+
+    // Delete a segment file, leaving it to be deleted when the spool is next opened if it is still mapped
+    private static void deleteSegment(@NotNull Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException ignored) {
+        }
+    }
+
+    @NotNull
+    private Segment createSegment(long firstSequence, int size) throws IOException {
+        final Segment segment = mapSegment(directory.resolve(String.format("%020d%s", firstSequence, SEGMENT_SUFFIX)),
+                size, firstSequence);
+        segments.add(segment);
+        return segment;
+    }
+
+    @NotNull
+    private static Segment mapSegment(@NotNull Path path, long size, long firstSequence) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+            file.setLength(size);
+            final MappedByteBuffer buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+            return new Segment(path, buffer, firstSequence - 1);
+        }
+    }
+
+    private static long parseFirstSequence(@NotNull Path file) {
+        final String name = file.getFileName().toString();
+        try {
+            return Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private long readIndex() throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(Long.BYTES);
+        return index.read(buffer, 0) == Long.BYTES ? buffer.getLong(0) : 0;
+    }
+
+    private void writeIndex() throws IOException {
+        index.write(ByteBuffer.allocate(Long.BYTES).putLong(0, committed), 0);
+        index.force(false);
+    }
+
+    /**
+     * A record read from the spool
+     *
+     * @param sequence  the record's sequence number, to {@link #commit(long) commit} once it is delivered
+     * @param timestamp when the record was appended, in milliseconds
+     * @param data      the record
+     */
+    public record Entry(long sequence, long timestamp, @NotNull byte[] data) {
+    }
+
+    // Where a waiting record is stored
+    private record Record(long sequence, long timestamp, @NotNull Segment segment, int position, int length) {
+    }
+
+    // A memory-mapped segment file
+    private static final class Segment {
+        private final Path path;
+        private final MappedByteBuffer buffer;
+        private long lastSequence;
+        private int position;
+
+        private Segment(@NotNull Path path, @NotNull MappedByteBuffer buffer, long lastSequence) {
+            this.path = path;
+            this.buffer = buffer;
+            this.lastSequence = lastSequence;
+        }
+    }
+
+}
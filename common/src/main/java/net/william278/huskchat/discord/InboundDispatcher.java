@@ -0,0 +1,168 @@
+/*
+ * This file is part of HuskChat, licensed under the Apache License 2.0.
+ *
+ *  Copyright (c) William278 <will27528@gmail.com>
+ *  Copyright (c) contributors
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.william278.huskchat.discord;
+
+import net.william278.huskchat.util.TokenBucket;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Runs messages from Discord on a dedicated HuskChat thread, limited per Discord channel and per author with
+ * {@link TokenBucket token buckets}, so that a raid in a bridged channel can neither flood the game nor block the bot.
+ * <p>
+ * Messages over a limit are either dropped, or queued until both limits allow them. At most a fixed number of messages
+ * wait at once; beyond that, or if a message would wait too long, it is dropped.
+ */
+public final class InboundDispatcher {
+
+    private static final int MAX_AUTHORS = 1024;
+
+    private final int channelBurst;
+    private final double channelPerSecond;
+    private final int authorBurst;
+    private final double authorPerSecond;
+    private final LimitAction limitAction;
+    private final int maxQueued;
+    private final long maxQueueDelayNanos;
+    private final LongSupplier clock;
+    private final Map<String, TokenBucket> channels = new LinkedHashMap<>();
+    private final Map<String, TokenBucket> authors = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, TokenBucket> eldest) {
+            return size() > MAX_AUTHORS;
+        }
+    };
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        final Thread thread = new Thread(runnable, "HuskChat-DiscordInbound");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicInteger queued = new AtomicInteger();
+    private final LongAdder delivered = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+
+    public InboundDispatcher(int channelBurst, double channelPerSecond, int authorBurst, double authorPerSecond,
+                             @NotNull LimitAction limitAction, int maxQueued, long maxQueueDelayMillis,
+                             @NotNull LongSupplier clock) {
+        this.channelBurst = channelBurst;
+        this.channelPerSecond = channelPerSecond;
+        this.authorBurst = authorBurst;
+        this.authorPerSecond = authorPerSecond;
+        this.limitAction = limitAction;
+        this.maxQueued = Math.max(1, maxQueued);
+        this.maxQueueDelayNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, maxQueueDelayMillis));
+        this.clock = clock;
+    }
+
+    /**
+     * Run a message from Discord once it is within the limits of its channel and author
+     *
+     * @param channelId the ID of the Discord channel the message was sent in
+     * @param authorId  the ID of the message's author
+     * @param task      sends the message in-game
+     * @return {@code true} if the message was accepted; {@code false} if it was dropped
+     */
+    public boolean submit(@NotNull String channelId, @NotNull String authorId, @NotNull Runnable task) {
+        if (queued.get() >= maxQueued) {
+            dropped.increment();
+            return false;
+        }
+
+        final long delay = acquire(channelId, authorId);
+        if (delay < 0) {
+            dropped.increment();
+            return false;
+        }
+
+        queued.incrementAndGet();
+        final long submittedAt = clock.getAsLong();
+        try {
+            executor.schedule(() -> {
+                queued.decrementAndGet();
+                waitNanos.add(clock.getAsLong() - submittedAt);
+                delivered.increment();
+                task.run();
+            }, delay, TimeUnit.NANOSECONDS);
+            return true;
+        } catch (RejectedExecutionException e) {
+            // The dispatcher has been closed
+            queued.decrementAndGet();
+            dropped.increment();
+            return false;
+        }
+    }
+
+    // Take a token from both buckets, returning how long to wait before running, or -1 to drop the message
+    private synchronized long acquire(@NotNull String channelId, @NotNull String authorId) {
+        final TokenBucket channel = channels.computeIfAbsent(channelId,
+                id -> new TokenBucket(channelBurst, channelPerSecond, clock));
+        final TokenBucket author = authors.computeIfAbsent(authorId,
+                id -> new TokenBucket(authorBurst, authorPerSecond, clock));
+        final long wait = Math.max(channel.getWaitNanos(), author.getWaitNanos());
+        if (wait > 0 && (limitAction == LimitAction.DROP || wait > maxQueueDelayNanos)) {
+            return -1;
+        }
+        return Math.max(channel.reserve(), author.reserve());
+    }
+
+    /**
+     * Get the status of the inbound queue
+     *
+     * @return the queue status, with the average time messages waited to be sent in-game
+     */
+    @NotNull
+    public DiscordHook.QueueStatus getQueueStatus() {
+        final long count = delivered.sum();
+        return new DiscordHook.QueueStatus("Inbound", queued.get(), count, dropped.sum(),
+                count == 0 ? 0d : waitNanos.sum() / (count * 1_000_000d));
+    }
+
+    /**
+     * Stop running messages, discarding any that are waiting. Called when the plugin shuts down
+     */
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * What to do with Discord messages over the rate limits
+     */
+    public enum LimitAction {
+        /**
+         * Discard the message
+         */
+        DROP,
+        /**
+         * Delay the message until it is within the limits
+         */
+        QUEUE
+    }
+
+}
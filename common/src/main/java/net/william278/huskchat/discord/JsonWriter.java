@@ -0,0 +1,176 @@
+/*
+ * This file is part of HuskChat, licensed under the Apache License 2.0.
+ *
+ *  Copyright (c) William278 <will27528@gmail.com>
+ *  Copyright (c) contributors
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.william278.huskchat.discord;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Writes JSON text straight into a reusable UTF-8 byte buffer, escaping string contents as RFC 8259 requires.
+ * <p>
+ * Call {@link #reset()} to reuse the buffer for the next document.
+ */
+public final class JsonWriter {
+
+    private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
+    private byte[] buffer;
+    private int size;
+
+    public JsonWriter(int initialCapacity) {
+        this.buffer = new byte[Math.max(16, initialCapacity)];
+    }
+
+    /**
+     * Encode text as UTF-8, for writing verbatim with {@link #raw(byte[])}
+     *
+     * @param text the text to encode
+     * @return the encoded text
+     */
+    @NotNull
+    public static byte[] encode(@NotNull String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Write pre-encoded JSON text verbatim
+     *
+     * @param bytes the UTF-8 encoded text
+     * @return this writer
+     */
+    @NotNull
+    public JsonWriter raw(@NotNull byte[] bytes) {
+        ensureCapacity(bytes.length);
+        System.arraycopy(bytes, 0, buffer, size, bytes.length);
+        size += bytes.length;
+        return this;
+    }
+
+    /**
+     * Write the contents of a JSON string, without its surrounding quotes. Quotes, backslashes and control characters
+     * are escaped, and unpaired surrogates are replaced with {@code U+FFFD}
+     *
+     * @param text the text to write
+     * @return this writer
+     */
+    @NotNull
+    public JsonWriter string(@NotNull CharSequence text) {
+        final int length = text.length();
+        ensureCapacity(length);
+        for (int i = 0; i < length; i++) {
+            final char character = text.charAt(i);
+            if (character >= 0x20 && character < 0x80) {
+                if (character == '"' || character == '\\') {
+                    ensureCapacity(2);
+                    buffer[size++] = '\\';
+                }
+                ensureCapacity(1);
+                buffer[size++] = (byte) character;
+            } else if (character < 0x20) {
+                writeControl(character);
+            } else if (character < 0x800) {
+                ensureCapacity(2);
+                buffer[size++] = (byte) (0xC0 | (character >> 6));
+                buffer[size++] = (byte) (0x80 | (character & 0x3F));
+            } else if (Character.isHighSurrogate(character) && i + 1 < length
+                       && Character.isLowSurrogate(text.charAt(i + 1))) {
+                final int codePoint = Character.toCodePoint(character, text.charAt(++i));
+                ensureCapacity(4);
+                buffer[size++] = (byte) (0xF0 | (codePoint >> 18));
+                buffer[size++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                buffer[size++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                buffer[size++] = (byte) (0x80 | (codePoint & 0x3F));
+            } else {
+                writeThreeBytes(Character.isSurrogate(character) ? '\uFFFD' : character);
+            }
+        }
+        return this;
+    }
+
+    private void writeControl(char character) {
+        final char shorthand = switch (character) {
+            case '\b' -> 'b';
+            case '\f' -> 'f';
+            case '\n' -> 'n';
+            case '\r' -> 'r';
+            case '\t' -> 't';
+            default -> 0;
+        };
+        if (shorthand != 0) {
+            ensureCapacity(2);
+            buffer[size++] = '\\';
+            buffer[size++] = (byte) shorthand;
+            return;
+        }
+        ensureCapacity(6);
+        buffer[size++] = '\\';
+        buffer[size++] = 'u';
+        buffer[size++] = '0';
+        buffer[size++] = '0';
+        buffer[size++] = HEX[character >> 4];
+        buffer[size++] = HEX[character & 0xF];
+    }
+
+    private void writeThreeBytes(char character) {
+        ensureCapacity(3);
+        buffer[size++] = (byte) (0xE0 | (character >> 12));
+        buffer[size++] = (byte) (0x80 | ((character >> 6) & 0x3F));
+        buffer[size++] = (byte) (0x80 | (character & 0x3F));
+    }
+
+    private void ensureCapacity(int additional) {
+        if (size + additional > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + additional));
+        }
+    }
+
+    /**
+     * Get the number of bytes written since the last reset
+     *
+     * @return the number of bytes written
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Copy out the bytes written since the last reset
+     *
+     * @return the written UTF-8 bytes
+     */
+    @NotNull
+    public byte[] toByteArray() {
+        return Arrays.copyOf(buffer, size);
+    }
+
+    /**
+     * Clear the writer, keeping its buffer for the next document
+     *
+     * @return this writer
+     */
+    @NotNull
+    public JsonWriter reset() {
+        size = 0;
+        return this;
+    }
+
+}
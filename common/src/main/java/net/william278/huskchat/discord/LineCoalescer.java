@@ -0,0 +1,140 @@
+/*
+ * This file is part of HuskChat, licensed under the Apache License 2.0.
+ *
+ *  Copyright (c) William278 <will27528@gmail.com>
+ *  Copyright (c) contributors
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.william278.huskchat.discord;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+
+/**
+ * Collects lines for each destination and hands them on in batches, so that lines arriving within a short window of
+ * the first are sent together rather than one request each.
+ * <p>
+ * Each destination holds at most a fixed number of lines; once full, its oldest line is dropped.
+ *
+ * @param <K> the type of destination
+ * @param <T> the type of line
+ */
+public final class LineCoalescer<K, T> {
+
+    private final long windowMillis;
+    private final int maxQueued;
+    private final BiConsumer<K, List<T>> flusher;
+    private final ScheduledExecutorService scheduler;
+    private final Map<K, ArrayDeque<T>> queues = new ConcurrentHashMap<>();
+    private final LongAdder dropped = new LongAdder();
+
+    public LineCoalescer(@NotNull String threadName, long windowMillis, int maxQueued,
+                         @NotNull BiConsumer<K, List<T>> flusher) {
+        this.windowMillis = Math.max(0, windowMillis);
+        this.maxQueued = Math.max(1, maxQueued);
+        this.flusher = flusher;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, threadName);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Queue a line for a destination, starting a window if it has no lines waiting
+     *
+     * @param destination where the line is going
+     * @param line        the line
+     */
+    public void add(@NotNull K destination, @NotNull T line) {
+        final ArrayDeque<T> queue = queues.computeIfAbsent(destination, key -> new ArrayDeque<>());
+        synchronized (queue) {
+            if (queue.size() >= maxQueued) {
+                queue.poll();
+                dropped.increment();
+            }
+            queue.add(line);
+            if (queue.size() > 1) {
+                return;
+            }
+        }
+        try {
+            scheduler.schedule(() -> flush(destination), windowMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // The coalescer has been closed, so send straight away
+            flush(destination);
+        }
+    }
+
+    private void flush(@NotNull K destination) {
+        final ArrayDeque<T> queue = queues.get(destination);
+        if (queue == null) {
+            return;
+        }
+        final List<T> batch;
+        synchronized (queue) {
+            if (queue.isEmpty()) {
+                return;
+            }
+            batch = new ArrayList<>(queue);
+            queue.clear();
+        }
+        flusher.accept(destination, batch);
+    }
+
+    /**
+     * Get the number of lines waiting for their window to close, across every destination
+     *
+     * @return the queue depth
+     */
+    public int getQueueDepth() {
+        int depth = 0;
+        for (ArrayDeque<T> queue : queues.values()) {
+            synchronized (queue) {
+                depth += queue.size();
+            }
+        }
+        return depth;
+    }
+
+    /**
+     * Get the number of lines dropped because a destination's queue was full
+     *
+     * @return the number of lines dropped
+     */
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    /**
+     * Stop collecting lines, handing on any that are waiting straight away. Called when the plugin shuts down
+     */
+    public void close() {
+        scheduler.shutdownNow();
+        queues.keySet().forEach(this::flush);
+    }
+
+}
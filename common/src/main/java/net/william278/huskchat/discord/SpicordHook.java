@@ -23,11 +23,23 @@ import dev.vankka.mcdiscordreserializer.discord.DiscordSerializer;
 import net.dv8tion.jda.api.EmbedBuilder;
 import net.dv8tion.jda.api.JDA;
 import net.dv8tion.jda.api.entities.Message;
+import net.dv8tion.jda.api.entities.MessageEmbed;
 import net.dv8tion.jda.api.entities.User;
 import net.dv8tion.jda.api.entities.channel.middleman.GuildChannel;
 import net.dv8tion.jda.api.entities.channel.middleman.GuildMessageChannel;
+import net.dv8tion.jda.api.events.GenericEvent;
+import net.dv8tion.jda.api.events.channel.GenericChannelEvent;
+import net.dv8tion.jda.api.events.guild.GuildLeaveEvent;
+import net.dv8tion.jda.api.events.guild.member.GenericGuildMemberEvent;
+import net.dv8tion.jda.api.events.guild.member.GuildMemberRoleAddEvent;
+import net.dv8tion.jda.api.events.guild.member.GuildMemberRoleRemoveEvent;
+import net.dv8tion.jda.api.events.guild.override.GenericPermissionOverrideEvent;
 import net.dv8tion.jda.api.events.message.MessageReceivedEvent;
+import net.dv8tion.jda.api.events.role.GenericRoleEvent;
+import net.dv8tion.jda.api.exceptions.ErrorResponseException;
+import net.dv8tion.jda.api.hooks.EventListener;
 import net.dv8tion.jda.api.utils.messages.MessageCreateBuilder;
+import net.dv8tion.jda.api.utils.messages.MessageCreateData;
 import net.kyori.adventure.audience.Audience;
 import net.kyori.adventure.text.Component;
 import net.william278.huskchat.HuskChat;
@@ -41,12 +53,22 @@ import org.spicord.Spicord;
 import org.spicord.api.addon.SimpleAddon;
 import org.spicord.bot.DiscordBot;
 
-import java.time.OffsetDateTime;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.logging.Level;
+import java.util.stream.Stream;
 
 public class SpicordHook implements DiscordHook {
 
@@ -68,25 +90,44 @@ public class SpicordHook implements DiscordHook {
         if (message.getSender() instanceof SpicordOnlineUser) {
             return;
         }
-        CompletableFuture.runAsync(() -> this.addon.sendMessage(message));
+        this.addon.queueMessage(message);
     }
 
+    @NotNull
+    @Override
+    public List<QueueStatus> getQueueStatus() {
+        return List.of(addon.getQueueStatus(), addon.inbound.getQueueStatus());
+    }
+
+    @Override
+    public void close() {
+        addon.close();
+    }
+
+    /**
+     * A Discord user sending messages in-game. One instance is kept for each recent author, and replies go to their
+     * latest message
+     */
     public static class SpicordOnlineUser extends OnlineUser {
-        private final Settings.DiscordSettings settings;
-        private final User discordUser;
-        private final Message context;
+        private volatile User discordUser;
+        private volatile Message context;
 
         private SpicordOnlineUser(@NotNull HuskChat plugin, @NotNull User discordUser, @NotNull Message context) {
             super("", UUID.nameUUIDFromBytes(discordUser.getId().getBytes()), plugin);
             this.discordUser = discordUser;
             this.context = context;
-            this.settings = plugin.getSettings().getDiscord();
+        }
+
+        // Update the user and message this user was last seen sending
+        private void update(@NotNull User discordUser, @NotNull Message context) {
+            this.discordUser = discordUser;
+            this.context = context;
         }
 
         @NotNull
         @Override
         public String getName() {
-            return settings.getSpicord().getUsernameFormat()
+            return plugin.getSettings().getDiscord().getSpicord().getUsernameFormat()
                     .replaceAll(
                             "%discord_handle%",
                             getDiscriminatorString()
@@ -149,82 +190,314 @@ public class SpicordHook implements DiscordHook {
 
     private static class Addon extends SimpleAddon {
 
+        private static final int MAX_CACHED_USERS = 256;
+        private static final String SPOOL_DIRECTORY = "discord_spool/spicord";
+        private static final int SPOOL_BATCH_SIZE = 50;
+        private static final long SPOOL_RETRY_MILLIS = 30_000;
+
         private final HuskChat plugin;
-        private final Settings.DiscordSettings settings;
+        private final LineCoalescer<GuildMessageChannel, ChatLine> outbox;
+        private final Map<String, Optional<GuildMessageChannel>> channels = new ConcurrentHashMap<>();
+        private final Map<Long, ChannelSpool> spools = new ConcurrentHashMap<>();
+        private final EventListener channelListener = event -> {
+            if (isChannelChange(event)) {
+                channels.clear();
+            }
+        };
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final LongAdder sent = new LongAdder();
+        private final LongAdder failed = new LongAdder();
+        private final LongAdder requests = new LongAdder();
+        private final LongAdder latencyNanos = new LongAdder();
+        private final InboundDispatcher inbound;
+        private final Map<String, SpicordOnlineUser> users = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, SpicordOnlineUser> eldest) {
+                return size() > MAX_CACHED_USERS;
+            }
+        };
+        private Settings channelSettings;
+        private JDA listeningTo;
         private DiscordBot bot;
 
         private Addon(@NotNull HuskChat plugin) {
             super("HuskChat", "huskchat", "William278", plugin.getVersion().toString());
             this.plugin = plugin;
-            this.settings = plugin.getSettings().getDiscord();
+            final Settings.DiscordSettings.SpicordSettings settings = plugin.getSettings().getDiscord().getSpicord();
+            this.outbox = new LineCoalescer<>("HuskChat-SpicordOutbox", settings.getBatchWindowMillis(),
+                    settings.getMaxQueueSize(), this::dispatchLines);
+            final Settings.DiscordSettings.SpicordSettings.InboundSettings limits = settings.getInbound();
+            this.inbound = new InboundDispatcher(
+                    limits.getChannelBurst(), limits.getChannelMessagesPerSecond(),
+                    limits.getAuthorBurst(), limits.getAuthorMessagesPerSecond(),
+                    limits.getLimitAction(), limits.getMaxQueued(), limits.getMaxQueueDelayMillis(),
+                    System::nanoTime
+            );
         }
 
-        private void sendMessage(@NotNull ChatMessage message) {
-            final Optional<Long> discordChannelId = Optional.ofNullable(
-                    settings.getSpicord().getReceiveChannelMap().get(message.getChannel().getId())
-            ).flatMap(id -> {
-                try {
-                    return Optional.of(Long.parseLong(id.trim()));
-                } catch (NumberFormatException e) {
-                    plugin.log(Level.WARNING, "Invalid Discord channel ID found in Spicord channel send map");
-                    return Optional.empty();
-                }
-            });
-            if (discordChannelId.isEmpty()) {
-                return;
+        private void queueMessage(@NotNull ChatMessage message) {
+            getDiscordChannel(message.getChannel().getId())
+                    .ifPresent(channel -> outbox.add(channel, ChatLine.of(message)));
+        }
+
+        // Get the Discord channel to send an in-game channel's messages to. Channels are resolved once, until Discord
+        // channels, roles or permissions change or the settings are reloaded
+        private Optional<GuildMessageChannel> getDiscordChannel(@NotNull String channelId) {
+            if (!plugin.getSettings().getDiscord().getSpicord().getReceiveChannelMap().containsKey(channelId)) {
+                return Optional.empty();
             }
             if (bot == null || bot.getJda() == null) {
                 plugin.log(Level.WARNING, "No active bots found to dispatch message! " +
                         "Have you added \"huskchat\" to the \"addons:\" section of a bot in your Spicord config?");
-                return;
+                return Optional.empty();
             }
 
             final JDA jda = bot.getJda();
-            final GuildChannel channel = jda.getGuildChannelById(discordChannelId.get());
+            final boolean connected;
+            synchronized (this) {
+                final Settings settings = plugin.getSettings();
+                if (settings != channelSettings || jda != listeningTo) {
+                    channels.clear();
+                    channelSettings = settings;
+                }
+                connected = jda != listeningTo;
+                if (connected) {
+                    if (listeningTo != null) {
+                        listeningTo.removeEventListener(channelListener);
+                    }
+                    jda.addEventListener(channelListener);
+                    listeningTo = jda;
+                }
+            }
+            if (connected) {
+                replaySpools(jda);
+            }
+            return channels.computeIfAbsent(channelId, id -> resolveDiscordChannel(jda, id));
+        }
+
+        private Optional<GuildMessageChannel> resolveDiscordChannel(@NotNull JDA jda, @NotNull String channelId) {
+            final String discordChannelId = plugin.getSettings().getDiscord().getSpicord()
+                    .getReceiveChannelMap().get(channelId);
+            if (discordChannelId == null) {
+                return Optional.empty();
+            }
+            final long id;
+            try {
+                id = Long.parseLong(discordChannelId.trim());
+            } catch (NumberFormatException e) {
+                plugin.log(Level.WARNING, "Invalid Discord channel ID found in Spicord channel send map");
+                return Optional.empty();
+            }
+
+            final GuildChannel channel = jda.getGuildChannelById(id);
             if (!(channel instanceof GuildMessageChannel guildChannel)) {
-                plugin.log(Level.WARNING, "Unable to find Discord channel with ID " + discordChannelId.get());
-                return;
+                plugin.log(Level.WARNING, "Unable to find Discord channel with ID " + id);
+                return Optional.empty();
             }
 
             // Check if the bot has permission to send messages to the channel
             if (!guildChannel.canTalk()) {
-                plugin.log(Level.WARNING, "Unable to send message to Discord channel with ID "
-                        + discordChannelId.get() + " (no permission)");
+                plugin.log(Level.WARNING, "Unable to send message to Discord channel with ID " + id
+                        + " (no permission)");
+                return Optional.empty();
+            }
+            return Optional.of(guildChannel);
+        }
+
+        // Returns whether an event may change which channels exist or whether the bot can talk in them
+        private static boolean isChannelChange(@NotNull GenericEvent event) {
+            if (event instanceof GuildMemberRoleAddEvent || event instanceof GuildMemberRoleRemoveEvent) {
+                return ((GenericGuildMemberEvent) event).getMember().getIdLong()
+                       == event.getJDA().getSelfUser().getIdLong();
+            }
+            return event instanceof GenericChannelEvent
+                   || event instanceof GenericPermissionOverrideEvent
+                   || event instanceof GenericRoleEvent
+                   || event instanceof GuildLeaveEvent;
+        }
+
+        // Send a batch of lines to a Discord channel in as few messages as Discord's limits allow. While the
+        // channel has saved lines waiting to be sent, the batch is saved after them to keep the lines in order
+        private void dispatchLines(@NotNull GuildMessageChannel channel, @NotNull List<ChatLine> lines) {
+            final ChannelSpool spool = getSpool(channel.getIdLong());
+            if (spool != null && spool.isSpooling()) {
+                spool.save(lines);
+                spool.replay(channel);
                 return;
             }
 
-            // Send the message
-            this.dispatchMessage(message, guildChannel);
+            int start = 0;
+            while (start < lines.size()) {
+                final MessageCreateBuilder builder = createMessage();
+                final int end = appendLines(builder, lines, start);
+                send(channel, builder.build(), lines.subList(start, end), spool);
+                start = end;
+            }
         }
 
-        private void dispatchMessage(@NotNull ChatMessage message, @NotNull GuildMessageChannel channel) {
-            final Format format = settings.getFormatStyle();
-            channel.sendMessage(new MessageCreateBuilder()
+        @NotNull
+        private MessageCreateBuilder createMessage() {
+            return new MessageCreateBuilder()
                     // Disable mentions
-                    .setAllowedMentions(List.of())
-
-                    // Embedded formatting
-                    .setEmbeds(format == Format.EMBEDDED ? List.of(new EmbedBuilder()
-                            .setDescription(message.getMessage())
-                            .setColor(0x00fb9a)
-                            .setFooter(
-                                    String.format("%s • %s",
-                                            message.getSender().getName(),
-                                            message.getSender().getServerName()
-                                    ),
-                                    String.format("https://minotar.net/avatar/%s/64",
-                                            message.getSender().getUuid()
-                                    )
-                            )
-                            .setTimestamp(OffsetDateTime.now())
-                            .build()) : List.of())
-
-                    // Inline formatting
-                    .setContent(format == Format.INLINE ? String.format("### %s\n%s",
-                            message.getSender().getName(), message.getMessage()) : null)
-
-                    .build()
-            ).queue();
+                    .setAllowedMentions(List.of());
+        }
+
+        // Add lines to a message in the configured format, returning the end (exclusive) of the lines added
+        private int appendLines(@NotNull MessageCreateBuilder builder, @NotNull List<ChatLine> lines, int start) {
+            return plugin.getSettings().getDiscord().getFormatStyle() == Format.EMBEDDED
+                    ? appendEmbeds(builder, lines, start) : appendContent(builder, lines, start);
+        }
+
+        // Add one embed per line, returning the end (exclusive) of the lines added
+        private int appendEmbeds(@NotNull MessageCreateBuilder builder, @NotNull List<ChatLine> lines, int start) {
+            final List<MessageEmbed> embeds = new ArrayList<>();
+            int length = 0;
+            int end = start;
+            while (end < lines.size() && embeds.size() < WebhookPayloads.MAX_EMBEDS) {
+                final ChatLine line = lines.get(end);
+                length += line.message().length();
+                if (!embeds.isEmpty() && length > WebhookPayloads.MAX_EMBED_TEXT_LENGTH) {
+                    break;
+                }
+                embeds.add(new EmbedBuilder()
+                        .setDescription(line.message())
+                        .setColor(0x00fb9a)
+                        .setFooter(
+                                String.format("%s • %s", line.senderName(), line.serverName()),
+                                String.format("https://minotar.net/avatar/%s/64", line.senderUuid())
+                        )
+                        .setTimestamp(line.getDateTime())
+                        .build());
+                end++;
+            }
+            builder.setEmbeds(embeds);
+            return end;
+        }
+
+        // Add lines to the message content under a heading for each sender, returning the end (exclusive) of the
+        // lines added
+        private int appendContent(@NotNull MessageCreateBuilder builder, @NotNull List<ChatLine> lines, int start) {
+            final StringBuilder content = new StringBuilder();
+            ChatLine previous = null;
+            int end = start;
+            while (end < lines.size()) {
+                final ChatLine line = lines.get(end);
+                final String next = previous != null && previous.isSameSender(line) ? "\n" + line.message()
+                        : String.format("%s### %s\n%s", content.isEmpty() ? "" : "\n", line.senderName(),
+                        line.message());
+                if (!content.isEmpty() && content.length() + next.length() > WebhookPayloads.MAX_CONTENT_LENGTH) {
+                    break;
+                }
+                content.append(next);
+                previous = line;
+                end++;
+            }
+            builder.setContent(content.toString());
+            return end;
+        }
+
+        // Send a message, saving its lines to the spool if Discord is unavailable
+        private void send(@NotNull GuildMessageChannel channel, @NotNull MessageCreateData message,
+                          @NotNull List<ChatLine> lines, @Nullable ChannelSpool spool) {
+            final long startedAt = System.nanoTime();
+            inFlight.addAndGet(lines.size());
+            channel.sendMessage(message).queue(sentMessage -> {
+                onSent(startedAt, lines.size());
+                sent.add(lines.size());
+            }, error -> {
+                onSent(startedAt, lines.size());
+                if (spool != null && isUnavailable(error)) {
+                    spool.onUnavailable(channel, error);
+                    spool.save(lines);
+                    spool.retryLater(channel);
+                    return;
+                }
+                failed.add(lines.size());
+                plugin.log(Level.WARNING, "Unable to send message to Discord channel with ID " + channel.getId(),
+                        error);
+            });
+        }
+
+        // Returns whether a message failed to send because Discord could not be reached, rather than rejecting it
+        private static boolean isUnavailable(@NotNull Throwable error) {
+            return !(error instanceof ErrorResponseException response) || response.isServerError();
+        }
+
+        // Get the spool for a Discord channel, opening it when first needed, or null if spooling is disabled
+        @Nullable
+        private ChannelSpool getSpool(long channelId) {
+            final Settings.DiscordSettings.SpoolSettings settings = plugin.getSettings().getDiscord().getSpool();
+            if (!settings.isEnabled()) {
+                return null;
+            }
+            return spools.computeIfAbsent(channelId, id -> {
+                try {
+                    return new ChannelSpool(DiskSpool.open(
+                            plugin.getConfigDirectory().resolve(SPOOL_DIRECTORY).resolve(Long.toString(id)),
+                            settings.getMaxSizeKilobytes() * 1024,
+                            TimeUnit.MINUTES.toMillis(settings.getMaxAgeMinutes()), System::currentTimeMillis
+                    ));
+                } catch (IOException e) {
+                    plugin.log(Level.WARNING, "Unable to open the spool for saving Discord messages", e);
+                    return null;
+                }
+            });
+        }
+
+        // Start sending lines saved to disk before a restart, once connected to Discord
+        private void replaySpools(@NotNull JDA jda) {
+            final Path directory = plugin.getConfigDirectory().resolve(SPOOL_DIRECTORY);
+            if (!plugin.getSettings().getDiscord().getSpool().isEnabled() || !Files.isDirectory(directory)) {
+                return;
+            }
+            try (Stream<Path> directories = Files.list(directory)) {
+                for (Path path : directories.toList()) {
+                    final long id;
+                    try {
+                        id = Long.parseLong(path.getFileName().toString());
+                    } catch (NumberFormatException e) {
+                        continue;
+                    }
+                    final ChannelSpool spool = getSpool(id);
+                    if (spool != null && spool.isSpooling()
+                        && jda.getGuildChannelById(id) instanceof GuildMessageChannel channel) {
+                        spool.replay(channel);
+                    }
+                }
+            } catch (IOException e) {
+                plugin.log(Level.WARNING, "Unable to read saved Discord messages", e);
+            }
+        }
+
+        private void onSent(long startedAt, int lines) {
+            inFlight.addAndGet(-lines);
+            requests.increment();
+            latencyNanos.add(System.nanoTime() - startedAt);
+        }
+
+        @NotNull
+        private QueueStatus getQueueStatus() {
+            final long count = requests.sum();
+            int spooled = 0;
+            long dropped = outbox.getDropped();
+            for (ChannelSpool spool : spools.values()) {
+                spooled += spool.spool.size();
+                dropped += spool.spool.getDropped();
+            }
+            return new QueueStatus("Spicord", outbox.getQueueDepth() + inFlight.get() + spooled, sent.sum(),
+                    failed.sum() + dropped, count == 0 ? 0d : latencyNanos.sum() / (count * 1_000_000d));
+        }
+
+        private void close() {
+            inbound.close();
+            outbox.close();
+            spools.values().forEach(ChannelSpool::close);
+            synchronized (this) {
+                if (listeningTo != null) {
+                    listeningTo.removeEventListener(channelListener);
+                    listeningTo = null;
+                }
+            }
         }
 
         @Override
@@ -241,19 +514,38 @@ public class SpicordHook implements DiscordHook {
             }
 
             // Get the channel ID, send an in-game message.
+            final String channelId = event.getGuildChannel().getId();
             final Optional<Channel> serverChannel = Optional.ofNullable(
-                    settings.getSpicord().getSendChannelMap().get(event.getGuildChannel().getId())
+                    plugin.getSettings().getDiscord().getSpicord().getSendChannelMap().get(channelId)
             ).flatMap(plugin.getChannels()::getChannel);
             if (serverChannel.isEmpty()) {
                 return;
             }
 
-            new ChatMessage(
+            // Dispatch off the JDA event thread, within the channel's and author's rate limits
+            final User author = event.getAuthor();
+            final Message message = event.getMessage();
+            inbound.submit(channelId, author.getId(), () -> new ChatMessage(
                     serverChannel.get(),
-                    new SpicordOnlineUser(plugin, event.getAuthor(), event.getMessage()),
-                    event.getMessage().getContentRaw(),
+                    getUser(author, message),
+                    message.getContentRaw(),
                     plugin
-            ).dispatch();
+            ).dispatch());
+        }
+
+        // Get the cached user for a Discord author, updated with the message they just sent
+        @NotNull
+        private SpicordOnlineUser getUser(@NotNull User author, @NotNull Message message) {
+            synchronized (users) {
+                final SpicordOnlineUser user = users.get(author.getId());
+                if (user != null) {
+                    user.update(author, message);
+                    return user;
+                }
+                final SpicordOnlineUser created = new SpicordOnlineUser(plugin, author, message);
+                users.put(author.getId(), created);
+                return created;
+            }
         }
 
         @Override
@@ -261,7 +553,150 @@ public class SpicordHook implements DiscordHook {
             plugin.log(Level.INFO, "Shutting down HuskChat Spicord addon...");
         }
 
-    }
+        // Lines saved to disk while a Discord channel is unavailable, sent in order one message at a time once it
+        // recovers. Lines are only removed from the spool once Discord has accepted them
+        private final class ChannelSpool {
+            private final DiskSpool spool;
+            private boolean replaying;
+            private boolean retryScheduled;
+            private boolean unavailable;
+            private boolean closed;
+
+            private ChannelSpool(@NotNull DiskSpool spool) {
+                this.spool = spool;
+            }
 
+            private boolean isSpooling() {
+                return !spool.isEmpty();
+            }
+
+            private void save(@NotNull List<ChatLine> lines) {
+                int saved = 0;
+                try {
+                    for (ChatLine line : lines) {
+                        spool.append(line.toBytes());
+                        saved++;
+                    }
+                } catch (IOException e) {
+                    failed.add(lines.size() - saved);
+                    plugin.log(Level.WARNING, "Unable to save " + (lines.size() - saved) + " Discord message(s) "
+                                              + "to the spool", e);
+                }
+            }
+
+            private synchronized void onUnavailable(@NotNull GuildMessageChannel channel, @NotNull Throwable error) {
+                if (!unavailable) {
+                    unavailable = true;
+                    plugin.log(Level.WARNING, "Discord channel with ID " + channel.getId() + " is unavailable ("
+                                              + error.getMessage() + "), saving messages to send once it recovers");
+                }
+            }
+
+            private synchronized void replay(@NotNull GuildMessageChannel channel) {
+                if (replaying || closed) {
+                    return;
+                }
+                replaying = true;
+                sendNext(channel);
+            }
+
+            private synchronized void retryLater(@NotNull GuildMessageChannel channel) {
+                if (retryScheduled || closed) {
+                    return;
+                }
+                retryScheduled = true;
+                CompletableFuture.delayedExecutor(SPOOL_RETRY_MILLIS, TimeUnit.MILLISECONDS).execute(() -> {
+                    synchronized (this) {
+                        retryScheduled = false;
+                    }
+                    replay(channel);
+                });
+            }
+
+            // Send the oldest saved lines as one message, then the next once Discord has accepted it
+            private void sendNext(@NotNull GuildMessageChannel channel) {
+                final List<ChatLine> lines = new ArrayList<>();
+                final long[] sequences;
+                synchronized (this) {
+                    final List<DiskSpool.Entry> entries;
+                    try {
+                        entries = closed ? List.of() : spool.peek(SPOOL_BATCH_SIZE);
+                    } catch (IOException e) {
+                        plugin.log(Level.WARNING, "Unable to read saved Discord messages", e);
+                        replaying = false;
+                        return;
+                    }
+                    if (entries.isEmpty()) {
+                        replaying = false;
+                        if (unavailable && !closed) {
+                            unavailable = false;
+                            plugin.log(Level.INFO, "Sent saved messages to Discord channel with ID "
+                                                   + channel.getId());
+                        }
+                        return;
+                    }
+                    sequences = new long[entries.size()];
+                    for (DiskSpool.Entry entry : entries) {
+                        try {
+                            sequences[lines.size()] = entry.sequence();
+                            lines.add(ChatLine.fromBytes(entry.data()));
+                        } catch (IOException e) {
+                            plugin.log(Level.WARNING, "Skipped an unreadable saved Discord message", e);
+                        }
+                    }
+                    if (lines.isEmpty()) {
+                        commit(entries.get(entries.size() - 1).sequence());
+                        sendNext(channel);
+                        return;
+                    }
+                }
+
+                final MessageCreateBuilder builder = createMessage();
+                final int end = appendLines(builder, lines, 0);
+                final long startedAt = System.nanoTime();
+                channel.sendMessage(builder.build()).queue(sentMessage -> {
+                    onSent(startedAt, 0);
+                    sent.add(end);
+                    commit(sequences[end - 1]);
+                    sendNext(channel);
+                }, error -> {
+                    onSent(startedAt, 0);
+                    if (isUnavailable(error)) {
+                        synchronized (this) {
+                            replaying = false;
+                        }
+                        retryLater(channel);
+                        return;
+                    }
+                    failed.add(end);
+                    plugin.log(Level.WARNING, "Unable to send saved message to Discord channel with ID "
+                                              + channel.getId(), error);
+                    commit(sequences[end - 1]);
+                    sendNext(channel);
+                });
+            }
+
+            private synchronized void commit(long sequence) {
+                if (closed) {
+                    return;
+                }
+                try {
+                    spool.commit(sequence);
+                } catch (IOException e) {
+                    plugin.log(Level.WARNING, "Unable to update saved Discord messages", e);
+                }
+            }
+
+            private synchronized void close() {
+                closed = true;
+                try {
+                    spool.close();
+                } catch (IOException e) {
+                    plugin.log(Level.WARNING, "Unable to close the spool of saved Discord messages", e);
+                }
+            }
+        }
+
+    }
 
 }
@@ -20,15 +20,17 @@
 package net.william278.huskchat.discord;
 
 import net.william278.huskchat.HuskChat;
+import net.william278.huskchat.config.Settings;
 import net.william278.huskchat.message.ChatMessage;
 import org.jetbrains.annotations.NotNull;
 
-import java.io.OutputStream;
-import java.net.HttpURLConnection;
+import java.net.URI;
 import java.net.URL;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
-import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 
 /**
@@ -36,46 +38,65 @@ import java.util.logging.Level;
  */
 public class WebHook implements DiscordHook {
 
+    private static final String SPOOL_DIRECTORY = "discord_spool/webhooks";
+
     private final HuskChat plugin;
+    private final WebhookDispatcher dispatcher;
+    private Settings webhookSettings;
+    private Map<String, URI> webhookUris = Map.of();
 
-    // Get the webhook URL for a channel by its ID
-    private Optional<URL> getWebhookUrl(@NotNull String channelId) {
-        final Map<String, URL> urls = plugin.getSettings().getDiscord().getChannelWebhooks();
-        if (urls.containsKey(channelId)) {
-            return Optional.of(urls.get(channelId));
+    // Get the webhook URI for a channel by its ID, re-reading the mapped URLs if the settings were reloaded
+    private synchronized Optional<URI> getWebhookUri(@NotNull String channelId) {
+        final Settings settings = plugin.getSettings();
+        if (settings != webhookSettings) {
+            final Map<String, URI> uris = new HashMap<>();
+            try {
+                for (Map.Entry<String, URL> entry : settings.getDiscord().getChannelWebhooks().entrySet()) {
+                    uris.put(entry.getKey(), entry.getValue().toURI());
+                }
+            } catch (Throwable e) {
+                plugin.log(Level.WARNING, "Unable to read Discord webhook URLs", e);
+            }
+            this.webhookUris = uris;
+            this.webhookSettings = settings;
         }
-        return Optional.empty();
+        return Optional.ofNullable(webhookUris.get(channelId));
     }
 
     public WebHook(@NotNull HuskChat plugin) {
         this.plugin = plugin;
+        final Settings.DiscordSettings settings = plugin.getSettings().getDiscord();
+        final Settings.DiscordSettings.WebhookDeliverySettings delivery = settings.getWebhookDelivery();
+        final Settings.DiscordSettings.SpoolSettings spool = settings.getSpool();
+        this.dispatcher = new WebhookDispatcher(
+                settings.getFormatStyle().getPayloads(plugin), delivery.getBatchWindowMillis(),
+                delivery.getMaxQueueSize(), delivery.getMaxRetries(),
+                spool.isEnabled() ? plugin.getConfigDirectory().resolve(SPOOL_DIRECTORY) : null,
+                spool.getMaxSizeKilobytes() * 1024, TimeUnit.MINUTES.toMillis(spool.getMaxAgeMinutes()), plugin::log
+        );
     }
 
     /**
-     * Dispatch a {@link ChatMessage} to a discord webhook
+     * Queue a {@link ChatMessage} to be sent to a discord webhook
      *
      * @param message The message to dispatch
      */
     @Override
     public void postMessage(@NotNull ChatMessage message) {
-        CompletableFuture.runAsync(() -> getWebhookUrl(message.getChannel().getId()).ifPresent(webhookUrl -> {
-            try {
-                final HttpURLConnection webhookConnection = (HttpURLConnection) webhookUrl.openConnection();
-                webhookConnection.setRequestMethod("POST");
-                webhookConnection.setDoOutput(true);
+        getWebhookUri(message.getChannel().getId())
+                .ifPresent(webhook -> dispatcher.enqueue(webhook, ChatLine.of(message)));
+    }
 
-                final byte[] jsonMessage = DiscordHook.getDiscordMessageJson(plugin, message);
-                final int messageLength = jsonMessage.length;
-                webhookConnection.setFixedLengthStreamingMode(messageLength);
-                webhookConnection.setRequestProperty("Content-Type", "application/json; charset=UTF-8");
-                webhookConnection.connect();
-                try (OutputStream messageOutputStream = webhookConnection.getOutputStream()) {
-                    messageOutputStream.write(jsonMessage);
-                }
-            } catch (Throwable e) {
-                plugin.log(Level.WARNING, "Unable to send message to Discord webhook", e);
-            }
-        }));
+    @NotNull
+    @Override
+    public List<QueueStatus> getQueueStatus() {
+        return List.of(new QueueStatus("Webhooks", dispatcher.getQueueDepth(), dispatcher.getSent(),
+                dispatcher.getFailed() + dispatcher.getDropped(), dispatcher.getAverageLatencyMillis()));
+    }
+
+    @Override
+    public void close() {
+        dispatcher.close();
     }
 
 }
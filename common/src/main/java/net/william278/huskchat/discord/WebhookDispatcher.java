@@ -0,0 +1,569 @@
+/*
+ * This file is part of HuskChat, licensed under the Apache License 2.0.
+ *
+ *  Copyright (c) William278 <will27528@gmail.com>
+ *  Copyright (c) contributors
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.william278.huskchat.discord;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.stream.Stream;
+
+/**
+ * Sends queued lines to Discord webhooks over a single shared {@link HttpClient}, so connections are kept alive and
+ * reused between requests.
+ * <p>
+ * Each webhook has its own queue with at most one request in flight, so lines are delivered in order. Lines arriving
+ * within the batch window are coalesced into as few requests as {@link WebhookPayloads} allows. Responses are read:
+ * a {@code 429} pauses the queue for its {@code Retry-After}, an exhausted rate-limit bucket pauses it until the bucket
+ * resets, and server or connection errors are retried with backoff before the request is dropped.
+ * <p>
+ * If a spool directory is given, requests that run out of retries and lines that overflow the queue are instead saved
+ * to a {@link DiskSpool} for the webhook. While a webhook's spool has lines, new lines are added to it too, and the
+ * spool is replayed in order as Discord accepts them. Lines still queued on shutdown are saved there as well, except
+ * a request already in flight, which is not sent again; spools left from before a restart are replayed when the
+ * dispatcher is created.
+ */
+public final class WebhookDispatcher {
+
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(10);
+    private static final long DEFAULT_RETRY_MILLIS = 1000;
+    private static final long MAX_BACKOFF_MILLIS = 30_000;
+    private static final int SPOOL_BATCH_SIZE = 50;
+    private static final String SPOOL_WEBHOOK_FILE = "webhook";
+
+    private final WebhookPayloads payloads;
+    private final long batchWindowMillis;
+    private final int maxQueueSize;
+    private final int maxRetries;
+    @Nullable
+    private final Path spoolDirectory;
+    private final long spoolMaxBytes;
+    private final long spoolMaxAgeMillis;
+    private final Log log;
+    private final HttpClient client = HttpClient.newBuilder()
+            .connectTimeout(REQUEST_TIMEOUT)
+            .build();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        final Thread thread = new Thread(runnable, "HuskChat-WebhookDispatcher");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Map<URI, Queue> queues = new ConcurrentHashMap<>();
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder latencyNanos = new LongAdder();
+
+    public WebhookDispatcher(@NotNull WebhookPayloads payloads, long batchWindowMillis, int maxQueueSize,
+                             int maxRetries, @NotNull Log log) {
+        this(payloads, batchWindowMillis, maxQueueSize, maxRetries, null, 0, 0, log);
+    }
+
+    public WebhookDispatcher(@NotNull WebhookPayloads payloads, long batchWindowMillis, int maxQueueSize,
+                             int maxRetries, @Nullable Path spoolDirectory, long spoolMaxBytes,
+                             long spoolMaxAgeMillis, @NotNull Log log) {
+        this.payloads = payloads;
+        this.batchWindowMillis = Math.max(0, batchWindowMillis);
+        this.maxQueueSize = Math.max(1, maxQueueSize);
+        this.maxRetries = Math.max(0, maxRetries);
+        this.spoolDirectory = spoolDirectory;
+        this.spoolMaxBytes = spoolMaxBytes;
+        this.spoolMaxAgeMillis = spoolMaxAgeMillis;
+        this.log = log;
+        replaySpools();
+    }
+
+    /**
+     * Queue a line to be sent to a webhook. If the webhook's queue is full, its oldest line is dropped
+     *
+     * @param webhook the webhook URI
+     * @param line    the line to send
+     */
+    public void enqueue(@NotNull URI webhook, @NotNull ChatLine line) {
+        queues.computeIfAbsent(webhook, Queue::new).add(line);
+    }
+
+    /**
+     * Get the number of lines waiting to be sent, including those in spools, across every webhook
+     *
+     * @return the queue depth
+     */
+    public int getQueueDepth() {
+        int depth = 0;
+        for (Queue queue : queues.values()) {
+            depth += queue.getDepth();
+        }
+        return depth;
+    }
+
+    /**
+     * Get the number of lines Discord accepted
+     *
+     * @return the number of lines sent
+     */
+    public long getSent() {
+        return sent.sum();
+    }
+
+    /**
+     * Get the number of lines dropped after Discord rejected them or retries ran out
+     *
+     * @return the number of lines that failed
+     */
+    public long getFailed() {
+        return failed.sum();
+    }
+
+    /**
+     * Get the number of lines dropped because a webhook's queue was full
+     *
+     * @return the number of lines dropped
+     */
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    /**
+     * Get the average time between sending a request and receiving its response
+     *
+     * @return the average send latency in milliseconds, or {@code 0} if nothing has been sent
+     */
+    public double getAverageLatencyMillis() {
+        final long count = requests.sum();
+        return count == 0 ? 0d : latencyNanos.sum() / (count * 1_000_000d);
+    }
+
+    /**
+     * Stop sending queued lines, saving them to the spool if there is one. Called when the plugin shuts down
+     */
+    public void close() {
+        scheduler.shutdownNow();
+        int unsent = 0;
+        for (Queue queue : queues.values()) {
+            unsent += queue.close();
+        }
+        if (unsent > 0) {
+            log.log(Level.WARNING, "Discarded " + unsent + " unsent Discord webhook message(s) on shutdown");
+        }
+    }
+
+    // Open the spools left from before a restart, so their lines are sent
+    private void replaySpools() {
+        if (spoolDirectory == null || !Files.isDirectory(spoolDirectory)) {
+            return;
+        }
+        try (Stream<Path> directories = Files.list(spoolDirectory)) {
+            for (Path directory : directories.toList()) {
+                final Path webhookFile = directory.resolve(SPOOL_WEBHOOK_FILE);
+                if (Files.isRegularFile(webhookFile)) {
+                    final URI webhook = URI.create(Files.readString(webhookFile, StandardCharsets.UTF_8).trim());
+                    queues.computeIfAbsent(webhook, Queue::new).replay();
+                }
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            log.log(Level.WARNING, "Unable to read saved Discord webhook messages", e);
+        }
+    }
+
+    // Get how long to wait before retrying a request that was rate limited, from its response headers
+    static long getRetryAfterMillis(@NotNull HttpResponse<?> response) {
+        return parseSeconds(response.headers().firstValue("Retry-After"))
+                .or(() -> parseSeconds(response.headers().firstValue("X-RateLimit-Reset-After")))
+                .orElse(DEFAULT_RETRY_MILLIS);
+    }
+
+    // Get how long to wait before sending again if the rate-limit bucket has been used up, or zero if it has not
+    static long getBucketResetMillis(@NotNull HttpResponse<?> response) {
+        final boolean exhausted = response.headers().firstValue("X-RateLimit-Remaining")
+                .map(remaining -> remaining.trim().equals("0"))
+                .orElse(false);
+        return exhausted ? parseSeconds(response.headers().firstValue("X-RateLimit-Reset-After"))
+                .orElse(DEFAULT_RETRY_MILLIS) : 0;
+    }
+
+    @NotNull
+    private static Optional<Long> parseSeconds(@NotNull Optional<String> header) {
+        try {
+            return header.map(seconds -> (long) Math.ceil(Double.parseDouble(seconds.trim()) * 1000));
+        } catch (NumberFormatException e) {
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Receives warnings from the dispatcher, as {@link net.william278.huskchat.HuskChat#log} does
+     */
+    @FunctionalInterface
+    public interface Log {
+        void log(@NotNull Level level, @NotNull String message, @NotNull Throwable... exceptions);
+    }
+
+    // The lines and requests waiting to be sent to one webhook
+    private final class Queue {
+        private final URI webhook;
+        private final ArrayDeque<ChatLine> lines = new ArrayDeque<>();
+        private final ArrayDeque<Pending> pending = new ArrayDeque<>();
+        @Nullable
+        private DiskSpool spool;
+        private boolean scheduled;
+        private boolean inFlight;
+        private boolean unavailable;
+        private boolean closed;
+        private int attempts;
+        private long pausedUntil;
+
+        private Queue(@NotNull URI webhook) {
+            this.webhook = webhook;
+        }
+
+        private synchronized void add(@NotNull ChatLine line) {
+            if (closed) {
+                return;
+            }
+            lines.add(line);
+            if (isSpooling()) {
+                spoolWaiting();
+            } else if (lines.size() > maxQueueSize && !spoolWaiting()) {
+                lines.poll();
+                dropped.increment();
+            }
+            if (!scheduled && !inFlight) {
+                schedule(Math.max(batchWindowMillis, getPauseMillis()));
+            }
+        }
+
+        // Start sending lines left in the spool from before a restart
+        private synchronized void replay() {
+            if (getSpool() != null && isSpooling() && !scheduled && !inFlight) {
+                schedule(0);
+            }
+        }
+
+        private synchronized int getDepth() {
+            int depth = lines.size();
+            for (Pending request : pending) {
+                if (request.sequence() < 0) {
+                    depth += request.lines().size();
+                }
+            }
+            return depth + (spool == null ? 0 : spool.size());
+        }
+
+        // Schedule the next flush, unless the dispatcher has been closed
+        private void schedule(long delayMillis) {
+            try {
+                scheduler.schedule(this::flush, Math.max(0, delayMillis), TimeUnit.MILLISECONDS);
+                scheduled = true;
+            } catch (RejectedExecutionException ignored) {
+            }
+        }
+
+        // Send the next request, first coalescing any waiting lines (or spooled lines) into requests
+        private void flush() {
+            final Pending request;
+            synchronized (this) {
+                scheduled = false;
+                if (inFlight || closed) {
+                    return;
+                }
+                final long wait = getPauseMillis();
+                if (wait > 0) {
+                    schedule(wait);
+                    return;
+                }
+                if (pending.isEmpty()) {
+                    if (isSpooling()) {
+                        readSpool();
+                    } else if (!lines.isEmpty()) {
+                        final List<ChatLine> batch = new ArrayList<>(lines);
+                        lines.clear();
+                        addPending(batch, null);
+                    }
+                }
+                request = pending.peek();
+                if (request == null) {
+                    return;
+                }
+                inFlight = true;
+            }
+            send(request);
+        }
+
+        // Build requests for a batch of lines, each remembering the spool sequence of its last line, if spooled
+        private void addPending(@NotNull List<ChatLine> batch, @Nullable long[] sequences) {
+            int start = 0;
+            for (WebhookPayloads.Payload payload : payloads.build(batch)) {
+                final int end = start + payload.lines();
+                final long sequence = sequences == null ? -1 : sequences[end - 1];
+                pending.add(new Pending(payload, batch.subList(start, end), sequence));
+                start = end;
+            }
+        }
+
+        private void send(@NotNull Pending request) {
+            final HttpRequest httpRequest = HttpRequest.newBuilder(webhook)
+                    .timeout(REQUEST_TIMEOUT)
+                    .header("Content-Type", "application/json; charset=UTF-8")
+                    .POST(HttpRequest.BodyPublishers.ofByteArray(request.payload().body()))
+                    .build();
+            final long startedAt = System.nanoTime();
+            client.sendAsync(httpRequest, HttpResponse.BodyHandlers.ofString())
+                    .whenComplete((response, error) -> {
+                        requests.increment();
+                        latencyNanos.add(System.nanoTime() - startedAt);
+                        onResponse(request, response, error);
+                    });
+        }
+
+        private void onResponse(@NotNull Pending request, @Nullable HttpResponse<String> response,
+                                @Nullable Throwable error) {
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                inFlight = false;
+                pausedUntil = 0;
+                final int status = response == null ? -1 : response.statusCode();
+                if (status == 429) {
+                    pause(getRetryAfterMillis(response));
+                } else if (error != null || status >= 500) {
+                    final String reason = error != null ? error.getMessage() : "HTTP " + status;
+                    if (++attempts <= maxRetries) {
+                        pause(getBackoffMillis());
+                    } else if (!spoolUnavailable(request, reason)) {
+                        drop(request, reason);
+                    }
+                } else if (status >= 400) {
+                    drop(request, "HTTP " + status + ": " + response.body());
+                } else {
+                    pending.poll();
+                    attempts = 0;
+                    sent.add(request.lines().size());
+                    commit(request);
+                    if (unavailable) {
+                        unavailable = false;
+                        log.log(Level.INFO, "Discord webhook is available again, sending saved messages");
+                    }
+                    pause(getBucketResetMillis(response));
+                }
+
+                if (!scheduled && (!pending.isEmpty() || !lines.isEmpty() || isSpooling())) {
+                    schedule(getPauseMillis());
+                }
+            }
+        }
+
+        private long getPauseMillis() {
+            final long remaining = pausedUntil - System.nanoTime();
+            return pausedUntil == 0 || remaining <= 0 ? 0 : (remaining + 999_999) / 1_000_000;
+        }
+
+        private long getBackoffMillis() {
+            return Math.min(MAX_BACKOFF_MILLIS, DEFAULT_RETRY_MILLIS << Math.min(attempts - 1, 5));
+        }
+
+        private void pause(long millis) {
+            if (millis > 0) {
+                pausedUntil = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+            }
+        }
+
+        private void drop(@NotNull Pending request, @Nullable String reason) {
+            pending.poll();
+            attempts = 0;
+            failed.add(request.lines().size());
+            commit(request);
+            log.log(Level.WARNING, "Unable to send " + request.lines().size() + " message(s) to Discord webhook ("
+                                   + reason + ")");
+        }
+
+        // Keep a request that ran out of retries in the spool, to try again once the webhook recovers
+        private boolean spoolUnavailable(@NotNull Pending request, @Nullable String reason) {
+            if (getSpool() == null) {
+                return false;
+            }
+            if (request.sequence() < 0) {
+                if (!spoolWaiting()) {
+                    return false;
+                }
+            } else {
+                // Requests read from the spool are still in it, so they are read again later
+                pending.clear();
+            }
+            // Keep counting attempts, so the spool is retried with increasing backoff until the webhook recovers
+            pause(getBackoffMillis());
+            if (!unavailable) {
+                unavailable = true;
+                log.log(Level.WARNING, "Discord webhook is unavailable (" + reason + "), saving messages to send "
+                                       + "once it recovers");
+            }
+            return true;
+        }
+
+        // Move the lines waiting in memory to the end of the spool, except a request in flight
+        private boolean spoolWaiting() {
+            final DiskSpool spool = getSpool();
+            if (spool == null) {
+                return false;
+            }
+            final List<ChatLine> waiting = new ArrayList<>();
+            final Iterator<Pending> requests = pending.iterator();
+            if (inFlight && requests.hasNext()) {
+                requests.next();
+            }
+            while (requests.hasNext()) {
+                final Pending request = requests.next();
+                if (request.sequence() < 0) {
+                    waiting.addAll(request.lines());
+                }
+                requests.remove();
+            }
+            waiting.addAll(lines);
+            lines.clear();
+
+            int saved = 0;
+            try {
+                for (ChatLine line : waiting) {
+                    spool.append(line.toBytes());
+                    saved++;
+                }
+            } catch (IOException e) {
+                failed.add(waiting.size() - saved);
+                log.log(Level.WARNING, "Unable to save " + (waiting.size() - saved) + " Discord webhook "
+                                       + "message(s) to the spool", e);
+            }
+            return true;
+        }
+
+        // Read the oldest lines in the spool into requests
+        private void readSpool() {
+            final DiskSpool spool = this.spool;
+            if (spool == null) {
+                return;
+            }
+            try {
+                final List<DiskSpool.Entry> entries = spool.peek(SPOOL_BATCH_SIZE);
+                final List<ChatLine> batch = new ArrayList<>(entries.size());
+                final long[] sequences = new long[entries.size()];
+                for (DiskSpool.Entry entry : entries) {
+                    try {
+                        sequences[batch.size()] = entry.sequence();
+                        batch.add(ChatLine.fromBytes(entry.data()));
+                    } catch (IOException e) {
+                        log.log(Level.WARNING, "Skipped an unreadable saved Discord webhook message", e);
+                    }
+                }
+                if (batch.isEmpty() && !entries.isEmpty()) {
+                    spool.commit(entries.get(entries.size() - 1).sequence());
+                    return;
+                }
+                addPending(batch, sequences);
+            } catch (IOException e) {
+                log.log(Level.WARNING, "Unable to read saved Discord webhook messages", e);
+            }
+        }
+
+        // Remove a request's lines from the spool once it has been sent or rejected
+        private void commit(@NotNull Pending request) {
+            if (request.sequence() >= 0 && spool != null) {
+                try {
+                    spool.commit(request.sequence());
+                } catch (IOException e) {
+                    log.log(Level.WARNING, "Unable to update saved Discord webhook messages", e);
+                }
+            }
+        }
+
+        private boolean isSpooling() {
+            return spool != null && !spool.isEmpty();
+        }
+
+        // Get the webhook's spool, opening it when first needed, or null if there is none
+        @Nullable
+        private DiskSpool getSpool() {
+            if (spool != null || spoolDirectory == null) {
+                return spool;
+            }
+            try {
+                final String name = UUID.nameUUIDFromBytes(webhook.toString().getBytes(StandardCharsets.UTF_8))
+                        .toString();
+                final Path directory = spoolDirectory.resolve(name);
+                spool = DiskSpool.open(directory, spoolMaxBytes, spoolMaxAgeMillis, System::currentTimeMillis);
+                Files.writeString(directory.resolve(SPOOL_WEBHOOK_FILE), webhook.toString(), StandardCharsets.UTF_8);
+            } catch (IOException e) {
+                log.log(Level.WARNING, "Unable to open the spool for saving Discord webhook messages", e);
+            }
+            return spool;
+        }
+
+        // Save waiting lines to the spool and close it, returning the number of lines that could not be saved
+        private synchronized int close() {
+            closed = true;
+
+            // The request in flight may still be delivered, so it is left out of the spool, not sent again on restart
+            if (inFlight) {
+                commit(Objects.requireNonNull(pending.poll()));
+                inFlight = false;
+            }
+            if (!lines.isEmpty() || pending.stream().anyMatch(request -> request.sequence() < 0)) {
+                spoolWaiting();
+            }
+            final int unsent = getDepth() - (spool == null ? 0 : spool.size());
+            if (spool != null) {
+                try {
+                    spool.close();
+                } catch (IOException e) {
+                    log.log(Level.WARNING, "Unable to close the spool of saved Discord webhook messages", e);
+                }
+            }
+            return unsent;
+        }
+    }
+
+    // A request to send, with its lines and, if they were read from the spool, the sequence of the last one
+    private record Pending(@NotNull WebhookPayloads.Payload payload, @NotNull List<ChatLine> lines,
+                           long sequence) {
+    }
+
+}
@@ -0,0 +1,269 @@
+/*
+ * This file is part of HuskChat, licensed under the Apache License 2.0.
+ *
+ *  Copyright (c) William278 <will27528@gmail.com>
+ *  Copyright (c) contributors
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.william278.huskchat.discord;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Builds Discord webhook request bodies from a {@link DiscordHook.Format} template, coalescing queued lines into as
+ * few requests as Discord's limits allow.
+ * <p>
+ * If the template has an {@code embeds} array, each line becomes one embed and up to {@value #MAX_EMBEDS} are sent
+ * per request. Otherwise consecutive lines from the same sender and channel are joined into one message of up to
+ * {@value #MAX_CONTENT_LENGTH} characters.
+ * <p>
+ * Templates are compiled once into encoded text and placeholder segments, and each request body is written by a
+ * {@link JsonWriter} into a reused buffer, with placeholder values fully escaped.
+ */
+public final class WebhookPayloads {
+
+    static final int MAX_CONTENT_LENGTH = 2000;
+    static final int MAX_EMBEDS = 10;
+    static final int MAX_EMBED_TEXT_LENGTH = 6000;
+
+    private static final byte[] ESCAPED_NEWLINE = JsonWriter.encode("\\n");
+    private static final byte[] COMMA = JsonWriter.encode(",");
+
+    private final Segment[] template;
+    private final Segment[] embedPrefix;
+    private final Segment[] embed;
+    private final Segment[] embedSuffix;
+    private final JsonWriter writer = new JsonWriter(1024);
+
+    private WebhookPayloads(@NotNull String template) {
+        this.template = Segment.compile(template);
+        final int[] bounds = findEmbed(template);
+        if (bounds == null) {
+            this.embedPrefix = this.embed = this.embedSuffix = null;
+        } else {
+            this.embedPrefix = Segment.compile(template.substring(0, bounds[0]));
+            this.embed = Segment.compile(template.substring(bounds[0], bounds[1]));
+            this.embedSuffix = Segment.compile(template.substring(bounds[1]));
+        }
+    }
+
+    /**
+     * Compile a webhook message template
+     *
+     * @param template the JSON template, with {@code {SENDER_UUID}}, {@code {SENDER_CHANNEL}},
+     *                 {@code {CURRENT_TIMESTAMP}}, {@code {SENDER_USERNAME}} and {@code {CHAT_MESSAGE}} placeholders
+     * @return the compiled template
+     */
+    @NotNull
+    public static WebhookPayloads compile(@NotNull String template) {
+        return new WebhookPayloads(template);
+    }
+
+    /**
+     * Returns whether lines are sent as embeds, rather than as message content
+     *
+     * @return {@code true} if the template has an embeds array
+     */
+    public boolean isEmbedded() {
+        return embed != null;
+    }
+
+    /**
+     * Build the request bodies to send a batch of lines, in order
+     *
+     * @param lines the lines to send
+     * @return the request bodies, each with the number of lines it carries
+     */
+    @NotNull
+    public synchronized List<Payload> build(@NotNull List<ChatLine> lines) {
+        final List<Payload> payloads = new ArrayList<>();
+        int start = 0;
+        while (start < lines.size()) {
+            final int end = isEmbedded() ? nextEmbedBatch(lines, start) : nextContentBatch(lines, start);
+            payloads.add(new Payload(render(lines.subList(start, end)), end - start));
+            start = end;
+        }
+        return payloads;
+    }
+
+    // Find the end (exclusive) of the next run of lines that fit in one embedded message
+    private int nextEmbedBatch(@NotNull List<ChatLine> lines, int start) {
+        int end = start + 1;
+        int length = lines.get(start).message().length();
+        while (end < lines.size() && end - start < MAX_EMBEDS) {
+            length += lines.get(end).message().length();
+            if (length > MAX_EMBED_TEXT_LENGTH) {
+                break;
+            }
+            end++;
+        }
+        return end;
+    }
+
+    // Find the end (exclusive) of the next run of lines from the same sender that fit in one message's content
+    private int nextContentBatch(@NotNull List<ChatLine> lines, int start) {
+        final ChatLine first = lines.get(start);
+        int end = start + 1;
+        int length = first.message().length();
+        while (end < lines.size() && lines.get(end).isSameSource(first)) {
+            length += 1 + lines.get(end).message().length();
+            if (length > MAX_CONTENT_LENGTH) {
+                break;
+            }
+            end++;
+        }
+        return end;
+    }
+
+    // Render a batch into the reusable writer, copying out only the finished request body
+    @NotNull
+    private byte[] render(@NotNull List<ChatLine> batch) {
+        writer.reset();
+        if (!isEmbedded()) {
+            write(template, batch.get(0), batch);
+            return writer.toByteArray();
+        }
+
+        write(embedPrefix, batch.get(0), List.of());
+        for (int i = 0; i < batch.size(); i++) {
+            if (i > 0) {
+                writer.raw(COMMA);
+            }
+            write(embed, batch.get(i), batch.subList(i, i + 1));
+        }
+        write(embedSuffix, batch.get(0), List.of());
+        return writer.toByteArray();
+    }
+
+    // Write template segments, filling placeholders from a line and the chat message from the lines of a batch
+    private void write(@NotNull Segment[] segments, @NotNull ChatLine line, @NotNull List<ChatLine> messages) {
+        for (Segment segment : segments) {
+            if (segment.literal() != null) {
+                writer.raw(segment.literal());
+                continue;
+            }
+            switch (segment.placeholder()) {
+                case SENDER_UUID -> writer.string(line.senderUuid().toString());
+                case SENDER_CHANNEL -> writer.string(line.channelId());
+                case CURRENT_TIMESTAMP -> writer.string(line.timestamp());
+                case SENDER_USERNAME -> writer.string(line.senderName());
+                case CHAT_MESSAGE -> {
+                    for (int i = 0; i < messages.size(); i++) {
+                        if (i > 0) {
+                            writer.raw(ESCAPED_NEWLINE);
+                        }
+                        writer.string(messages.get(i).message());
+                    }
+                }
+            }
+        }
+    }
+
+    // Find the start (inclusive) and end (exclusive) of the first object in the template's embeds array
+    @Nullable
+    private static int[] findEmbed(@NotNull String template) {
+        final int key = template.indexOf("\"embeds\"");
+        if (key < 0) {
+            return null;
+        }
+        final int array = template.indexOf('[', key);
+        final int start = array < 0 ? -1 : template.indexOf('{', array);
+        if (start < 0) {
+            return null;
+        }
+        int depth = 0;
+        boolean inString = false;
+        for (int i = start; i < template.length(); i++) {
+            final char character = template.charAt(i);
+            if (inString) {
+                if (character == '\\') {
+                    i++;
+                } else if (character == '"') {
+                    inString = false;
+                }
+            } else if (character == '"') {
+                inString = true;
+            } else if (character == '{') {
+                depth++;
+            } else if (character == '}' && --depth == 0) {
+                return new int[]{start, i + 1};
+            }
+        }
+        return null;
+    }
+
+    // Placeholders that can appear inside JSON strings in a template
+    private enum Placeholder {
+        SENDER_UUID,
+        SENDER_CHANNEL,
+        CURRENT_TIMESTAMP,
+        SENDER_USERNAME,
+        CHAT_MESSAGE
+    }
+
+    // Either UTF-8 encoded template text or a placeholder, written escaped
+    private record Segment(@Nullable byte[] literal, @Nullable Placeholder placeholder) {
+
+        @NotNull
+        private static Segment[] compile(@NotNull String template) {
+            final List<Segment> segments = new ArrayList<>();
+            int literalStart = 0;
+            int index = template.indexOf('{');
+            while (index >= 0) {
+                final Placeholder placeholder = findPlaceholder(template, index);
+                if (placeholder == null) {
+                    index = template.indexOf('{', index + 1);
+                    continue;
+                }
+                if (index > literalStart) {
+                    segments.add(new Segment(JsonWriter.encode(template.substring(literalStart, index)), null));
+                }
+                segments.add(new Segment(null, placeholder));
+                literalStart = index + placeholder.name().length() + 2;
+                index = template.indexOf('{', literalStart);
+            }
+            if (literalStart < template.length()) {
+                segments.add(new Segment(JsonWriter.encode(template.substring(literalStart)), null));
+            }
+            return segments.toArray(Segment[]::new);
+        }
+
+        @Nullable
+        private static Placeholder findPlaceholder(@NotNull String template, int index) {
+            for (Placeholder placeholder : Placeholder.values()) {
+                final String name = placeholder.name();
+                if (template.startsWith(name, index + 1) && template.startsWith("}", index + 1 + name.length())) {
+                    return placeholder;
+                }
+            }
+            return null;
+        }
+
+    }
+
+    /**
+     * A request body ready to send to a webhook
+     *
+     * @param body  the JSON request body
+     * @param lines the number of lines the body carries
+     */
+    public record Payload(@NotNull byte[] body, int lines) {
+    }
+
+}
@@ -86,7 +86,21 @@ public class AdvertisingFilterer extends ChatFilter {
 
     @Override
     public boolean isAllowed(@NotNull OnlineUser player, @NotNull String message) {
-        return !(domainPattern.matcher(message).matches());
+        return isAllowed(player, MessageAnalysis.of(message));
+    }
+
+    @Override
+    public boolean isAllowed(@NotNull OnlineUser player, @NotNull MessageAnalysis analysis) {
+        // The pattern must match the whole message, which can't contain ASCII whitespace and must contain a dot
+        if (analysis.isAsciiWhitespace() || analysis.getPeriods() == 0) {
+            return true;
+        }
+        return !(domainPattern.matcher(analysis.getMessage()).matches());
+    }
+
+    @Override
+    public boolean isCacheable() {
+        return true;
     }
 
     @Override
@@ -22,18 +22,11 @@ package net.william278.huskchat.filter;
 import net.william278.huskchat.user.OnlineUser;
 import org.jetbrains.annotations.NotNull;
 
-import java.util.regex.Pattern;
-
 /**
  * A {@link ChatFilter} that filters against unicode (non-ASCII) characters
  */
 public class AsciiFilter extends ChatFilter {
 
-    /**
-     * Regex pattern matching only ascii characters
-     */
-    private final Pattern asciiPattern = Pattern.compile("^[\\u0000-\\u007F]*$");
-
     public AsciiFilter(@NotNull FilterSettings settings) {
         super(settings);
     }
@@ -45,7 +38,17 @@ public class AsciiFilter extends ChatFilter {
 
     @Override
     public boolean isAllowed(@NotNull OnlineUser player, @NotNull String message) {
-        return asciiPattern.matcher(message).matches();
+        return isAllowed(player, MessageAnalysis.of(message));
+    }
+
+    @Override
+    public boolean isAllowed(@NotNull OnlineUser player, @NotNull MessageAnalysis analysis) {
+        return !analysis.containsNonAscii();
+    }
+
+    @Override
+    public boolean isCacheable() {
+        return true;
     }
 
     @Override
@@ -43,18 +43,20 @@ public class CapsFilter extends ChatFilter {
 
     @Override
     public boolean isAllowed(@NotNull OnlineUser player, @NotNull String message) {
-        double messageLength = message.length();
-        if (messageLength <= 5) {
+        return isAllowed(player, MessageAnalysis.of(message));
+    }
+
+    @Override
+    public boolean isAllowed(@NotNull OnlineUser player, @NotNull MessageAnalysis analysis) {
+        if (analysis.getLength() <= 5) {
             return true;
         }
-        int capsLetters = 0;
-        for (char messageChar : message.toCharArray()) {
-            if (Character.isUpperCase(messageChar)) {
-                capsLetters++;
-            }
-        }
-        double capsProportion = (double) capsLetters / messageLength;
-        return !(capsProportion > ((CapsFilterSettings) settings).getMaxCapsPercentage());
+        return !(analysis.getUppercaseRatio() > ((CapsFilterSettings) settings).getMaxCapsPercentage());
+    }
+
+    @Override
+    public boolean isCacheable() {
+        return true;
     }
 
     @Override
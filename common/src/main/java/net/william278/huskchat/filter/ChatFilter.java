@@ -28,6 +28,8 @@ import org.jetbrains.annotations.NotNull;
 
 import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import java.util.function.Function;
 
 /**
@@ -40,6 +42,7 @@ import java.util.function.Function;
 public abstract class ChatFilter {
 
     protected final FilterSettings settings;
+    private final FilterStatistics statistics = new FilterStatistics();
 
     /**
      * Takes a user's message and returns true if the message passes the filter
@@ -49,6 +52,51 @@ public abstract class ChatFilter {
      */
     public abstract boolean isAllowed(@NotNull OnlineUser sender, @NotNull String message);
 
+    /**
+     * Takes a user's message, pre-analysed once for the whole filter chain, and returns true if the message
+     * passes the filter. Filters that can work from the analysis should override this to avoid re-scanning the text
+     *
+     * @param analysis The analysis of the user's message
+     * @return {@code true} if the filter allows the message to pass; {@code false} otherwise
+     */
+    public boolean isAllowed(@NotNull OnlineUser sender, @NotNull MessageAnalysis analysis) {
+        return isAllowed(sender, analysis.getMessage());
+    }
+
+    /**
+     * Whether this filter is slow enough that it should be evaluated off the chat thread. Asynchronous filters
+     * are evaluated in parallel by the {@link FilterPipeline}, which only waits for them up to a deadline
+     *
+     * @return {@code true} if this filter should be evaluated asynchronously
+     */
+    public boolean isAsync() {
+        return false;
+    }
+
+    /**
+     * Takes a user's message and returns a future completing with whether the message passes the filter.
+     * By default, this runs {@link #isAllowed(OnlineUser, MessageAnalysis)} on the given executor
+     *
+     * @param analysis The analysis of the user's message
+     * @param executor The executor to run blocking filter work on
+     * @return a future completing with {@code true} if the filter allows the message to pass; {@code false} otherwise
+     */
+    @NotNull
+    public CompletableFuture<Boolean> isAllowedAsync(@NotNull OnlineUser sender, @NotNull MessageAnalysis analysis,
+                                                     @NotNull Executor executor) {
+        return CompletableFuture.supplyAsync(() -> isAllowed(sender, analysis), executor);
+    }
+
+    /**
+     * Whether this filter's verdict depends only on the message content and its settings, and not on the sender
+     * or any state kept between messages, so that verdicts can be cached in the {@link FilterVerdictCache}
+     *
+     * @return {@code true} if this filter's verdicts can be cached
+     */
+    public boolean isCacheable() {
+        return false;
+    }
+
     /**
      * The ID of the locale to send the player if their message fails the filter
      *
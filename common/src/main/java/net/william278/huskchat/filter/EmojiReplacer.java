@@ -27,42 +27,25 @@ import net.william278.huskchat.user.OnlineUser;
 import org.jetbrains.annotations.NotNull;
 
 import java.util.HashMap;
-import java.util.Locale;
 import java.util.Map;
-import java.util.StringJoiner;
 
 /**
  * A {@link ReplacerFilter} that replaces chat emoji with the character emote
  */
 public class EmojiReplacer extends ChatFilter.ReplacerFilter {
 
+    private final EmojiTrie emoji;
+
     public EmojiReplacer(@NotNull FilterSettings settings) {
         super(settings);
+        final EmojiReplacerSettings emojiSettings = (EmojiReplacerSettings) settings;
+        this.emoji = EmojiTrie.compile(emojiSettings.getEmoji(), emojiSettings.isCaseInsensitive());
     }
 
     @Override
     @NotNull
     public String replace(@NotNull String message) {
-        String[] words = message.split(" ");
-        StringJoiner replacedMessage = new StringJoiner(" ");
-        final EmojiReplacerSettings settings = (EmojiReplacerSettings) this.settings;
-        for (String word : words) {
-            for (String emoteFormat : settings.getEmoji().keySet()) {
-                if (!settings.isCaseInsensitive()) {
-                    if (word.equals(emoteFormat)) {
-                        word = settings.getEmoji().get(emoteFormat);
-                        break;
-                    }
-                } else {
-                    if (word.toLowerCase(Locale.ROOT).equals(emoteFormat)) {
-                        word = settings.getEmoji().get(emoteFormat);
-                        break;
-                    }
-                }
-            }
-            replacedMessage.add(word);
-        }
-        return replacedMessage.toString();
+        return emoji.replace(message);
     }
 
     @NotNull
@@ -0,0 +1,163 @@
+/*
+ * This file is part of HuskChat, licensed under the Apache License 2.0.
+ *
+ *  Copyright (c) William278 <will27528@gmail.com>
+ *  Copyright (c) contributors
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.william278.huskchat.filter;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A character trie of emoji shortcodes, compiled once from the {@link EmojiReplacer} settings and used to
+ * replace shortcodes in a single left-to-right pass with longest-match semantics
+ */
+public final class EmojiTrie {
+
+    private final Node root;
+    private final boolean caseInsensitive;
+
+    private EmojiTrie(@NotNull Node root, boolean caseInsensitive) {
+        this.root = root;
+        this.caseInsensitive = caseInsensitive;
+    }
+
+    /**
+     * Compile a map of shortcodes to their replacements into a trie
+     *
+     * @param emoji           map of shortcodes to replacement text
+     * @param caseInsensitive whether shortcodes should match regardless of case
+     * @return the compiled trie
+     */
+    @NotNull
+    public static EmojiTrie compile(@NotNull Map<String, String> emoji, boolean caseInsensitive) {
+        final Builder root = new Builder();
+        emoji.forEach((shortcode, replacement) -> {
+            if (shortcode == null || shortcode.isEmpty() || replacement == null) {
+                return;
+            }
+            Builder node = root;
+            for (int i = 0; i < shortcode.length(); i++) {
+                final char key = caseInsensitive ? fold(shortcode.charAt(i)) : shortcode.charAt(i);
+                node = node.children.computeIfAbsent(key, k -> new Builder());
+            }
+            node.value = replacement;
+        });
+        return new EmojiTrie(root.freeze(), caseInsensitive);
+    }
+
+    /**
+     * Replace every shortcode in the message with its emoji, preferring the longest shortcode at each position
+     *
+     * @param message the message to replace shortcodes in
+     * @return the replaced message, or the same instance if it contained no shortcodes
+     */
+    @NotNull
+    public String replace(@NotNull String message) {
+        final int length = message.length();
+        StringBuilder replaced = null;
+        int copiedTo = 0;
+        int position = 0;
+        while (position < length) {
+            String replacement = null;
+            int matchEnd = -1;
+            Node node = root;
+            for (int i = position; i < length; i++) {
+                final char next = caseInsensitive ? fold(message.charAt(i)) : message.charAt(i);
+                node = node.child(next);
+                if (node == null) {
+                    break;
+                }
+                if (node.value != null) {
+                    replacement = node.value;
+                    matchEnd = i + 1;
+                }
+            }
+
+            if (replacement == null) {
+                position++;
+                continue;
+            }
+            if (replaced == null) {
+                replaced = new StringBuilder(length + 16);
+            }
+            replaced.append(message, copiedTo, position).append(replacement);
+            position = copiedTo = matchEnd;
+        }
+        if (replaced == null) {
+            return message;
+        }
+        return replaced.append(message, copiedTo, length).toString();
+    }
+
+    private static char fold(char character) {
+        return Character.toLowerCase(Character.toUpperCase(character));
+    }
+
+    // An immutable trie node, with children stored as sorted parallel arrays for binary search
+    private static final class Node {
+        private static final char[] NO_KEYS = new char[0];
+        private static final Node[] NO_CHILDREN = new Node[0];
+
+        private final char[] keys;
+        private final Node[] children;
+        @Nullable
+        private final String value;
+
+        private Node(char[] keys, Node[] children, @Nullable String value) {
+            this.keys = keys;
+            this.children = children;
+            this.value = value;
+        }
+
+        @Nullable
+        private Node child(char key) {
+            if (keys.length == 0) {
+                return null;
+            }
+            final int index = Arrays.binarySearch(keys, key);
+            return index >= 0 ? children[index] : null;
+        }
+    }
+
+    // A mutable node used while compiling the trie
+    private static final class Builder {
+        private final TreeMap<Character, Builder> children = new TreeMap<>();
+        @Nullable
+        private String value;
+
+        @NotNull
+        private Node freeze() {
+            if (children.isEmpty()) {
+                return new Node(Node.NO_KEYS, Node.NO_CHILDREN, value);
+            }
+            final char[] keys = new char[children.size()];
+            final Node[] frozen = new Node[children.size()];
+            int index = 0;
+            for (Map.Entry<Character, Builder> entry : children.entrySet()) {
+                keys[index] = entry.getKey();
+                frozen[index++] = entry.getValue().freeze();
+            }
+            return new Node(keys, frozen, value);
+        }
+    }
+
+}
@@ -0,0 +1,129 @@
+/*
+ * This file is part of HuskChat, licensed under the Apache License 2.0.
+ *
+ *  Copyright (c) William278 <will27528@gmail.com>
+ *  Copyright (c) contributors
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.william278.huskchat.filter;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Periodically reorders the loaded filters so that cheap filters which often reject messages run first,
+ * using the {@link FilterStatistics} recorded for each filter.
+ * <p>
+ * Only {@link ChatFilter#isCacheable() stateless} rejecting filters are moved, and only within the run of stateless
+ * filters they are already in; replacers and stateful filters (such as spam and repeat) keep their positions and no
+ * filter moves past them, so the messages they see and record are unchanged.
+ */
+public final class FilterOrdering {
+
+    // The number of evaluations a filter needs before its statistics are trusted
+    static final long MIN_SAMPLES = 32;
+
+    private final AtomicLong messages = new AtomicLong();
+    private volatile boolean enabled;
+    private volatile int interval;
+
+    public FilterOrdering(boolean enabled, int interval) {
+        configure(enabled, interval);
+    }
+
+    /**
+     * Update the ordering settings
+     *
+     * @param enabled  whether filters should be reordered
+     * @param interval the number of filtered messages between reorders
+     */
+    public void configure(boolean enabled, int interval) {
+        this.enabled = enabled;
+        this.interval = Math.max(1, interval);
+        this.messages.set(0);
+    }
+
+    /**
+     * Count a filtered message, reordering the filters every {@code interval} messages
+     *
+     * @param filters the mutable list of loaded filters and replacers
+     */
+    public void onMessageFiltered(@NotNull List<ChatFilter> filters) {
+        if (enabled && messages.incrementAndGet() % interval == 0) {
+            reorder(filters);
+        }
+    }
+
+    /**
+     * Reorder the list of filters in place
+     *
+     * @param filters the mutable list of loaded filters and replacers
+     */
+    public static void reorder(@NotNull List<ChatFilter> filters) {
+        final List<ChatFilter> order = order(filters);
+        final Map<ChatFilter, Integer> positions = new IdentityHashMap<>();
+        for (int i = 0; i < order.size(); i++) {
+            positions.put(order.get(i), i);
+        }
+        filters.sort(Comparator.comparingInt(filter -> positions.getOrDefault(filter, Integer.MAX_VALUE)));
+    }
+
+    /**
+     * Compute the cost-ordered arrangement of a list of filters. Each run of reorderable filters between replacers
+     * and stateful filters is sorted on its own
+     *
+     * @param filters the filters, in their current order
+     * @return a new list containing the filters in their preferred order
+     */
+    @NotNull
+    public static List<ChatFilter> order(@NotNull List<ChatFilter> filters) {
+        final List<ChatFilter> order = new ArrayList<>(filters);
+        int start = 0;
+        for (int i = 0; i <= order.size(); i++) {
+            if (i == order.size() || !isReorderable(order.get(i))) {
+                // Stable sort, so filters without enough samples keep their relative order at the back
+                order.subList(start, i).sort(Comparator.comparingDouble(FilterOrdering::getExpectedCost));
+                start = i + 1;
+            }
+        }
+        return order;
+    }
+
+    /**
+     * Whether a filter may be moved: it must be a stateless filter that can reject messages
+     *
+     * @param filter the filter
+     * @return {@code true} if the filter can safely be reordered
+     */
+    public static boolean isReorderable(@NotNull ChatFilter filter) {
+        return filter.isCacheable() && !(filter instanceof ChatFilter.ReplacerFilter);
+    }
+
+    // Running a filter with cost c and rejection rate p first is best when c / p is lowest
+    private static double getExpectedCost(@NotNull ChatFilter filter) {
+        final FilterStatistics statistics = filter.getStatistics();
+        if (statistics.getEvaluations() < MIN_SAMPLES) {
+            return Double.POSITIVE_INFINITY;
+        }
+        return statistics.getAverageNanos() / Math.max(statistics.getRejectionRate(), 1e-6);
+    }
+
+}
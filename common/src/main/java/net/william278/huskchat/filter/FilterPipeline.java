@@ -0,0 +1,300 @@
+/*
+ * This file is part of HuskChat, licensed under the Apache License 2.0.
+ *
+ *  Copyright (c) William278 <will27528@gmail.com>
+ *  Copyright (c) contributors
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.william278.huskchat.filter;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import net.william278.huskchat.user.OnlineUser;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runs a message through a chain of {@link ChatFilter}s.
+ * <p>
+ * Synchronous filters and replacers run in order on the calling thread. {@link ChatFilter#isAsync() Asynchronous}
+ * filters are started in parallel as they are reached, and the pipeline waits for their verdicts up to a deadline,
+ * after which the configured {@link TimeoutPolicy} decides what happens to the message. A filter that throws is
+ * treated as rejecting the message.
+ * <p>
+ * Checks still waiting to run are cancelled once the message has a verdict, so they don't hold up later messages.
+ * The default executor queues at most {@value #MAX_QUEUED_CHECKS} checks; when it is full, messages are treated as
+ * if their checks had timed out.
+ */
+public final class FilterPipeline {
+
+    private static final String BYPASS_PERMISSION = "huskchat.bypass_filters";
+    private static final int MAX_QUEUED_CHECKS = 256;
+
+    private final FilterVerdictCache verdictCache;
+    private final Executor executor;
+    private final LongAdder timeouts = new LongAdder();
+    private volatile long deadlineMillis = 250;
+    private volatile TimeoutPolicy timeoutPolicy = TimeoutPolicy.BLOCK;
+
+    public FilterPipeline(@NotNull FilterVerdictCache verdictCache, @NotNull Executor executor) {
+        this.verdictCache = verdictCache;
+        this.executor = executor;
+    }
+
+    public FilterPipeline(@NotNull FilterVerdictCache verdictCache) {
+        this(verdictCache, createExecutor());
+    }
+
+    @NotNull
+    private static ExecutorService createExecutor() {
+        final AtomicInteger threads = new AtomicInteger();
+        final int size = Math.max(2, Runtime.getRuntime().availableProcessors() / 2);
+        return new ThreadPoolExecutor(size, size, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(MAX_QUEUED_CHECKS), runnable -> {
+            final Thread thread = new Thread(runnable, "HuskChat-Filter-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }, new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * Update the asynchronous filter settings
+     *
+     * @param deadlineMillis the time to wait for asynchronous filter verdicts, in milliseconds
+     * @param timeoutPolicy  what to do with a message when the deadline passes
+     */
+    public void configure(long deadlineMillis, @NotNull TimeoutPolicy timeoutPolicy) {
+        this.deadlineMillis = Math.max(1, deadlineMillis);
+        this.timeoutPolicy = timeoutPolicy;
+    }
+
+    /**
+     * Get the number of messages whose asynchronous filters did not all finish before the deadline
+     *
+     * @return the number of timed-out messages
+     */
+    public long getTimeouts() {
+        return timeouts.sum();
+    }
+
+    /**
+     * Run a message through a list of filters and replacers
+     *
+     * @param sender  the user who sent the message
+     * @param message the message
+     * @param filters the filters and replacers to apply, in order
+     * @return a future completing with the result of filtering; already complete if no asynchronous filters ran
+     */
+    @NotNull
+    public CompletableFuture<Result> filter(@NotNull OnlineUser sender, @NotNull String message,
+                                            @NotNull List<ChatFilter> filters) {
+        final boolean bypass = sender.hasPermission(BYPASS_PERMISSION, false);
+        final MessageAnalysis analysis = MessageAnalysis.of(message);
+        final List<ChatFilter> asyncFilters = new ArrayList<>();
+        final List<CompletableFuture<Boolean>> asyncVerdicts = new ArrayList<>();
+        final List<CompletableFuture<Boolean>> asyncChecks = new ArrayList<>();
+        String filtered = message;
+        for (ChatFilter filter : filters) {
+            if (sender.hasPermission(filter.getIgnorePermission(), false)) {
+                continue;
+            }
+            if (filter instanceof ChatFilter.ReplacerFilter replacer) {
+                filtered = replacer.replace(filtered);
+            }
+            if (bypass) {
+                continue;
+            }
+
+            if (filter.isAsync()) {
+                final Boolean cached = filter.isCacheable() ? verdictCache.getIfPresent(filter, analysis) : null;
+                if (cached == null) {
+                    asyncFilters.add(filter);
+                    asyncVerdicts.add(evaluateAsync(filter, sender, analysis, asyncChecks));
+                    continue;
+                }
+                if (!cached) {
+                    cancel(asyncChecks);
+                    return CompletableFuture.completedFuture(Result.rejected(filter, filtered));
+                }
+                continue;
+            }
+            if (!evaluate(filter, sender, analysis)) {
+                cancel(asyncChecks);
+                return CompletableFuture.completedFuture(Result.rejected(filter, filtered));
+            }
+        }
+        if (asyncVerdicts.isEmpty()) {
+            return CompletableFuture.completedFuture(Result.allowed(filtered));
+        }
+        return awaitVerdicts(asyncFilters, asyncVerdicts, asyncChecks, filtered);
+    }
+
+    // Cancel asynchronous checks, so that those still queued don't run
+    private static void cancel(@NotNull List<CompletableFuture<Boolean>> checks) {
+        checks.forEach(check -> check.cancel(false));
+    }
+
+    // Complete as soon as any asynchronous filter rejects the message, once all allow it, or at the deadline
+    @NotNull
+    private CompletableFuture<Result> awaitVerdicts(@NotNull List<ChatFilter> filters,
+                                                    @NotNull List<CompletableFuture<Boolean>> verdicts,
+                                                    @NotNull List<CompletableFuture<Boolean>> checks,
+                                                    @NotNull String filtered) {
+        final CompletableFuture<Result> result = new CompletableFuture<>();
+        final Result timedOut = onTimeout(filtered);
+        final AtomicInteger remaining = new AtomicInteger(verdicts.size());
+        for (int i = 0; i < verdicts.size(); i++) {
+            final ChatFilter filter = filters.get(i);
+            verdicts.get(i).whenComplete((allowed, error) -> {
+                // A check the executor had no room for is treated as not finishing in time
+                if (error != null && (error instanceof RejectedExecutionException
+                                      || error.getCause() instanceof RejectedExecutionException)) {
+                    result.complete(timedOut);
+                    return;
+                }
+                // A filter that failed hasn't checked the message, so it can't let it through
+                if (error != null || !allowed) {
+                    result.complete(Result.rejected(filter, filtered));
+                    return;
+                }
+                if (remaining.decrementAndGet() == 0) {
+                    result.complete(Result.allowed(filtered));
+                }
+            });
+        }
+
+        result.completeOnTimeout(timedOut, deadlineMillis, TimeUnit.MILLISECONDS);
+        return result.whenComplete((completed, error) -> {
+            if (completed == timedOut) {
+                timeouts.increment();
+            }
+            cancel(checks);
+        });
+    }
+
+    @NotNull
+    private Result onTimeout(@NotNull String filtered) {
+        return switch (timeoutPolicy) {
+            case ALLOW -> Result.allowed(filtered);
+            case BLOCK -> new Result(Outcome.TIMED_OUT, filtered, null);
+        };
+    }
+
+    private boolean evaluate(@NotNull ChatFilter filter, @NotNull OnlineUser sender,
+                             @NotNull MessageAnalysis analysis) {
+        return filter.isCacheable()
+                ? verdictCache.isAllowed(filter, analysis, () -> evaluateUncached(filter, sender, analysis))
+                : evaluateUncached(filter, sender, analysis);
+    }
+
+    // Statistics are only recorded when the filter actually runs, so they reflect its real cost
+    private boolean evaluateUncached(@NotNull ChatFilter filter, @NotNull OnlineUser sender,
+                                     @NotNull MessageAnalysis analysis) {
+        final long start = System.nanoTime();
+        final boolean allowed = filter.isAllowed(sender, analysis);
+        filter.getStatistics().record(System.nanoTime() - start, allowed);
+        return allowed;
+    }
+
+    @NotNull
+    private CompletableFuture<Boolean> evaluateAsync(@NotNull ChatFilter filter, @NotNull OnlineUser sender,
+                                                     @NotNull MessageAnalysis analysis,
+                                                     @NotNull List<CompletableFuture<Boolean>> checks) {
+        final long start = System.nanoTime();
+        final CompletableFuture<Boolean> check;
+        try {
+            check = filter.isAllowedAsync(sender, analysis, executor);
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        checks.add(check);
+        return check.thenApply(allowed -> {
+            filter.getStatistics().record(System.nanoTime() - start, allowed);
+            if (filter.isCacheable()) {
+                verdictCache.put(filter, analysis, allowed);
+            }
+            return allowed;
+        });
+    }
+
+    /**
+     * What to do with a message when asynchronous filters don't return a verdict before the deadline
+     */
+    public enum TimeoutPolicy {
+        /**
+         * Let the message through
+         */
+        ALLOW,
+        /**
+         * Block the message, telling the sender it couldn't be checked
+         */
+        BLOCK
+    }
+
+    /**
+     * The outcome of running a message through the pipeline
+     */
+    public enum Outcome {
+        ALLOWED,
+        REJECTED,
+        TIMED_OUT
+    }
+
+    /**
+     * The result of running a message through the pipeline
+     */
+    @Getter
+    @AllArgsConstructor(access = AccessLevel.PRIVATE)
+    public static final class Result {
+
+        @NotNull
+        private final Outcome outcome;
+
+        /**
+         * The message, after replacers have been applied
+         */
+        @NotNull
+        private final String message;
+
+        /**
+         * The filter that rejected the message, if it was {@link Outcome#REJECTED rejected}
+         */
+        @Nullable
+        private final ChatFilter rejectedBy;
+
+        @NotNull
+        private static Result allowed(@NotNull String message) {
+            return new Result(Outcome.ALLOWED, message, null);
+        }
+
+        @NotNull
+        private static Result rejected(@NotNull ChatFilter filter, @NotNull String message) {
+            return new Result(Outcome.REJECTED, message, filter);
+        }
+
+        public boolean isAllowed() {
+            return outcome == Outcome.ALLOWED;
+        }
+
+    }
+
+}
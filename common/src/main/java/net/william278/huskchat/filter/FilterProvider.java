@@ -26,15 +26,30 @@ import net.william278.huskchat.user.OnlineUser;
 import org.jetbrains.annotations.NotNull;
 
 import java.util.List;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 import java.util.logging.Level;
 
 public interface FilterProvider {
 
     List<ChatFilter> getFiltersAndReplacers();
 
+    @NotNull
+    FilterVerdictCache getFilterVerdictCache();
+
+    @NotNull
+    FilterOrdering getFilterOrdering();
+
+    @NotNull
+    FilterPipeline getFilterPipeline();
+
     default void loadFilters() {
         final Filters settings = getPlugin().getFilterSettings();
+        getFiltersAndReplacers().clear();
+        getFilterVerdictCache().setCapacity(settings.getVerdictCacheSize());
+        getFilterOrdering().configure(settings.isAdaptiveOrdering(), settings.getReorderInterval());
+        getFilterPipeline().configure(settings.getAsyncFilterDeadlineMillis(), settings.getAsyncFilterTimeoutPolicy());
         settings.getFilters().entrySet().stream()
                 .filter(entry -> entry.getValue().isEnabled())
                 .forEach(entry -> {
@@ -43,25 +58,41 @@ public interface FilterProvider {
                     getFiltersAndReplacers().add(type.getCreator().apply(filterSettings));
                     getPlugin().log(Level.INFO, "Loaded %s filter".formatted(type.name()));
                 });
+        settings.getReplacers().entrySet().stream()
+                .filter(entry -> entry.getValue().isEnabled())
+                .forEach(entry -> {
+                    final ChatFilter.Type type = entry.getKey();
+                    final ChatFilter.FilterSettings replacerSettings = entry.getValue();
+                    getFiltersAndReplacers().add(type.getCreator().apply(replacerSettings));
+                    getPlugin().log(Level.INFO, "Loaded %s replacer".formatted(type.name()));
+                });
+    }
+
+    /**
+     * Run a message through filters and replacers, notifying the sender if it is blocked. Completes immediately
+     * unless asynchronous filters are enabled, in which case it completes once they return or the deadline passes
+     *
+     * @param sender  the user who sent the message
+     * @param message the message
+     * @param filters the filters and replacers to apply
+     * @return a future completing with the filtered message, or empty if the message was blocked
+     */
+    default CompletableFuture<Optional<String>> filterAsync(@NotNull OnlineUser sender, @NotNull String message,
+                                                            @NotNull List<ChatFilter> filters) {
+        return getFilterPipeline().filter(sender, message, filters).thenApply(result -> {
+            getFilterOrdering().onMessageFiltered(getFiltersAndReplacers());
+            switch (result.getOutcome()) {
+                case REJECTED -> getPlugin().getLocales().sendMessage(sender,
+                        Objects.requireNonNull(result.getRejectedBy()).getDisallowedLocale());
+                case TIMED_OUT -> getPlugin().getLocales().sendMessage(sender, "error_chat_filter_timeout");
+            }
+            return result.isAllowed() ? Optional.of(result.getMessage()) : Optional.empty();
+        });
     }
 
     default Optional<String> filter(@NotNull OnlineUser sender, @NotNull String message,
                                     @NotNull List<ChatFilter> filters) {
-        boolean bypass = sender.hasPermission("huskchat.bypass_filters", false);
-        final StringBuilder filtered = new StringBuilder(message);
-        for (ChatFilter filter : filters) {
-            if (sender.hasPermission(filter.getIgnorePermission(), false)) {
-                continue;
-            }
-            if (filter instanceof ChatFilter.ReplacerFilter replacer) {
-                filtered.replace(0, filtered.length(), replacer.replace(filtered.toString()));
-            }
-            if (!bypass && !filter.isAllowed(sender, message)) {
-                getPlugin().getLocales().sendMessage(sender, filter.getDisallowedLocale());
-                return Optional.empty();
-            }
-        }
-        return Optional.of(filtered.toString());
+        return filterAsync(sender, message, filters).join();
     }
 
     default List<ChatFilter> getChannelFilters(@NotNull Channel channel) {
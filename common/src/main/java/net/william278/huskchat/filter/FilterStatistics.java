@@ -0,0 +1,76 @@
+/*
+ * This file is part of HuskChat, licensed under the Apache License 2.0.
+ *
+ *  Copyright (c) William278 <will27528@gmail.com>
+ *  Copyright (c) contributors
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.william278.huskchat.filter;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Running totals of how often a {@link ChatFilter} is evaluated, how often it rejects a message, and how long
+ * it takes, used to order filters by expected cost
+ */
+public final class FilterStatistics {
+
+    private final LongAdder evaluations = new LongAdder();
+    private final LongAdder rejections = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+
+    /**
+     * Record the outcome of evaluating the filter against a message
+     *
+     * @param nanos   the time the evaluation took, in nanoseconds
+     * @param allowed whether the filter allowed the message
+     */
+    public void record(long nanos, boolean allowed) {
+        evaluations.increment();
+        totalNanos.add(nanos);
+        if (!allowed) {
+            rejections.increment();
+        }
+    }
+
+    public long getEvaluations() {
+        return evaluations.sum();
+    }
+
+    public long getRejections() {
+        return rejections.sum();
+    }
+
+    /**
+     * Get the mean time taken to evaluate the filter
+     *
+     * @return the average evaluation time, in nanoseconds
+     */
+    public double getAverageNanos() {
+        final long evaluations = getEvaluations();
+        return evaluations == 0 ? 0d : (double) totalNanos.sum() / evaluations;
+    }
+
+    /**
+     * Get the proportion of evaluated messages the filter rejected
+     *
+     * @return the rejection rate, from {@code 0.0} to {@code 1.0}
+     */
+    public double getRejectionRate() {
+        final long evaluations = getEvaluations();
+        return evaluations == 0 ? 0d : (double) getRejections() / evaluations;
+    }
+
+}
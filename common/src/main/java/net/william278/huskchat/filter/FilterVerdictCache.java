@@ -0,0 +1,207 @@
+/*
+ * This file is part of HuskChat, licensed under the Apache License 2.0.
+ *
+ *  Copyright (c) William278 <will27528@gmail.com>
+ *  Copyright (c) contributors
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.william278.huskchat.filter;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BooleanSupplier;
+
+/**
+ * A bounded, content-addressed LRU cache of verdicts from {@link ChatFilter#isCacheable() cacheable} filters, so that
+ * identical messages (e.g. during a spam wave) are only evaluated once per filter.
+ * <p>
+ * Entries are keyed by the filter instance and the message content, and the cache is split into independently
+ * locked segments so concurrent chat threads rarely contend.
+ */
+public final class FilterVerdictCache {
+
+    private static final int SEGMENTS = 16;
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private volatile int segmentCapacity;
+
+    public FilterVerdictCache(int capacity) {
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment();
+        }
+        setCapacity(capacity);
+    }
+
+    /**
+     * Get the verdict of a filter for a message, evaluating and caching it if it is not already cached
+     *
+     * @param filter    the cacheable filter
+     * @param analysis  the analysis of the message being filtered
+     * @param evaluator supplies the filter's verdict if it is not cached
+     * @return {@code true} if the filter allows the message to pass; {@code false} otherwise
+     */
+    public boolean isAllowed(@NotNull ChatFilter filter, @NotNull MessageAnalysis analysis,
+                             @NotNull BooleanSupplier evaluator) {
+        final Boolean cached = getIfPresent(filter, analysis);
+        if (cached != null) {
+            return cached;
+        }
+
+        // Evaluate outside the segment lock, as filters may be slow
+        final boolean verdict = evaluator.getAsBoolean();
+        put(filter, analysis, verdict);
+        return verdict;
+    }
+
+    /**
+     * Get the cached verdict of a filter for a message, if present
+     *
+     * @param filter   the cacheable filter
+     * @param analysis the analysis of the message being filtered
+     * @return the cached verdict, or {@code null} if it is not cached
+     */
+    @Nullable
+    public Boolean getIfPresent(@NotNull ChatFilter filter, @NotNull MessageAnalysis analysis) {
+        if (segmentCapacity <= 0) {
+            return null;
+        }
+        final Key key = new Key(filter, analysis.getContentHash(), analysis.getMessage());
+        final Segment segment = getSegment(key);
+        final Boolean cached;
+        synchronized (segment) {
+            cached = segment.get(key);
+        }
+        if (cached != null) {
+            hits.increment();
+        } else {
+            misses.increment();
+        }
+        return cached;
+    }
+
+    /**
+     * Cache the verdict of a filter for a message
+     *
+     * @param filter   the cacheable filter
+     * @param analysis the analysis of the message that was filtered
+     * @param verdict  whether the filter allowed the message
+     */
+    public void put(@NotNull ChatFilter filter, @NotNull MessageAnalysis analysis, boolean verdict) {
+        if (segmentCapacity <= 0) {
+            return;
+        }
+        final Key key = new Key(filter, analysis.getContentHash(), analysis.getMessage());
+        final Segment segment = getSegment(key);
+        synchronized (segment) {
+            segment.put(key, verdict);
+        }
+    }
+
+    @NotNull
+    private Segment getSegment(@NotNull Key key) {
+        return segments[key.hashCode() & (SEGMENTS - 1)];
+    }
+
+    /**
+     * Set the maximum number of verdicts held by the cache, clearing it. A capacity of {@code 0} disables caching
+     *
+     * @param capacity the maximum number of cached verdicts
+     */
+    public void setCapacity(int capacity) {
+        this.segmentCapacity = capacity <= 0 ? 0 : Math.max(1, capacity / SEGMENTS);
+        invalidateAll();
+    }
+
+    /**
+     * Clear all cached verdicts, such as when filters are reloaded
+     */
+    public void invalidateAll() {
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                segment.clear();
+            }
+        }
+    }
+
+    /**
+     * Get the number of verdicts currently cached
+     *
+     * @return the cache size
+     */
+    public int getSize() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * Get the proportion of lookups that were served from the cache
+     *
+     * @return the hit rate, from {@code 0.0} to {@code 1.0}
+     */
+    public double getHitRate() {
+        final long hits = getHits();
+        final long total = hits + getMisses();
+        return total == 0 ? 0d : (double) hits / total;
+    }
+
+    // An access-ordered map segment, evicting its least recently used entry when full
+    private final class Segment extends LinkedHashMap<Key, Boolean> {
+        private Segment() {
+            super(16, 0.75f, true);
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, Boolean> eldest) {
+            return size() > segmentCapacity;
+        }
+    }
+
+    // Filters are compared by identity, so verdicts from filters replaced on reload are never reused
+    private record Key(@NotNull ChatFilter filter, long hash, @NotNull String message) {
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Key key && key.filter == filter && key.hash == hash
+                    && key.message.equals(message);
+        }
+
+        @Override
+        public int hashCode() {
+            final int hash = 31 * System.identityHashCode(filter) + Long.hashCode(this.hash);
+            return hash ^ (hash >>> 16);
+        }
+
+    }
+
+}
@@ -0,0 +1,246 @@
+/*
+ * This file is part of HuskChat, licensed under the Apache License 2.0.
+ *
+ *  Copyright (c) William278 <will27528@gmail.com>
+ *  Copyright (c) contributors
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.william278.huskchat.filter;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+
+/**
+ * The result of a single pass over a chat message, computed once per message and shared by every
+ * {@link ChatFilter} in the chain so that no filter needs to re-scan the text
+ */
+@Getter
+public final class MessageAnalysis {
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    /**
+     * The message that was analysed
+     */
+    @NotNull
+    private final String message;
+
+    /**
+     * The message lower-cased per code point, for case-insensitive comparisons
+     */
+    @NotNull
+    private final String folded;
+
+    /**
+     * A 64-bit FNV-1a hash of the message's UTF-16 content
+     */
+    private final long contentHash;
+
+    private final int codePoints;
+    private final int letters;
+
+    /**
+     * The number of UTF-16 characters that are uppercase, including symbols with uppercase forms such as
+     * circled letters
+     */
+    private final int uppercase;
+    private final int lowercase;
+    private final int digits;
+    private final int whitespace;
+    private final int nonAscii;
+    private final int periods;
+
+    /**
+     * Whether the message contains an ASCII whitespace character ({@code [ \t\n\x0B\f\r]})
+     */
+    private final boolean asciiWhitespace;
+
+    @Getter(AccessLevel.NONE)
+    private final int[] tokens;
+    private final int tokenCount;
+
+    private MessageAnalysis(@NotNull String message) {
+        final int length = message.length();
+        StringBuilder folded = null;
+        long hash = FNV_OFFSET_BASIS;
+        int codePoints = 0, letters = 0, uppercase = 0, lowercase = 0, digits = 0;
+        int whitespace = 0, nonAscii = 0, periods = 0;
+        boolean asciiWhitespace = false;
+        int[] tokens = new int[8];
+        int tokenCount = 0;
+        int tokenStart = -1;
+
+        int index = 0;
+        while (index < length) {
+            final int codePoint = message.codePointAt(index);
+            final int width = Character.charCount(codePoint);
+            for (int i = index; i < index + width; i++) {
+                final char character = message.charAt(i);
+                hash = (hash ^ character) * FNV_PRIME;
+                if (Character.isUpperCase(character)) {
+                    uppercase++;
+                } else if (Character.isLowerCase(character)) {
+                    lowercase++;
+                }
+            }
+            codePoints++;
+
+            // Classify the code point
+            final boolean isWhitespace = Character.isWhitespace(codePoint);
+            if (isWhitespace) {
+                whitespace++;
+                if (codePoint <= ' ' && codePoint != 0x1C && codePoint != 0x1D
+                        && codePoint != 0x1E && codePoint != 0x1F) {
+                    asciiWhitespace = true;
+                }
+            } else if (Character.isLetter(codePoint)) {
+                letters++;
+            } else if (Character.isDigit(codePoint)) {
+                digits++;
+            } else if (codePoint == '.') {
+                periods++;
+            }
+            if (codePoint > 0x7F) {
+                nonAscii++;
+            }
+
+            // Case-fold, only allocating once the first code point changes
+            final int foldedCodePoint = Character.toLowerCase(codePoint);
+            if (folded == null && foldedCodePoint != codePoint) {
+                folded = new StringBuilder(length).append(message, 0, index);
+            }
+            if (folded != null) {
+                folded.appendCodePoint(foldedCodePoint);
+            }
+
+            // Record whitespace-separated token boundaries
+            if (isWhitespace && tokenStart >= 0) {
+                tokens = pushToken(tokens, tokenCount++, tokenStart, index);
+                tokenStart = -1;
+            } else if (!isWhitespace && tokenStart < 0) {
+                tokenStart = index;
+            }
+            index += width;
+        }
+        if (tokenStart >= 0) {
+            tokens = pushToken(tokens, tokenCount++, tokenStart, length);
+        }
+
+        this.message = message;
+        this.folded = folded == null ? message : folded.toString();
+        this.contentHash = hash;
+        this.codePoints = codePoints;
+        this.letters = letters;
+        this.uppercase = uppercase;
+        this.lowercase = lowercase;
+        this.digits = digits;
+        this.whitespace = whitespace;
+        this.nonAscii = nonAscii;
+        this.periods = periods;
+        this.asciiWhitespace = asciiWhitespace;
+        this.tokens = tokens;
+        this.tokenCount = tokenCount;
+    }
+
+    /**
+     * Analyse a message
+     *
+     * @param message the message to analyse
+     * @return the analysis of the message
+     */
+    @NotNull
+    public static MessageAnalysis of(@NotNull String message) {
+        return new MessageAnalysis(message);
+    }
+
+    private static int[] pushToken(int[] tokens, int tokenIndex, int start, int end) {
+        if (tokens.length < (tokenIndex + 1) * 2) {
+            tokens = Arrays.copyOf(tokens, tokens.length * 2);
+        }
+        tokens[tokenIndex * 2] = start;
+        tokens[tokenIndex * 2 + 1] = end;
+        return tokens;
+    }
+
+    /**
+     * Get the length of the message, in UTF-16 characters
+     *
+     * @return the message length
+     */
+    public int getLength() {
+        return message.length();
+    }
+
+    /**
+     * Get the proportion of the message's characters that are uppercase letters
+     *
+     * @return the uppercase ratio, from {@code 0.0} to {@code 1.0}
+     */
+    public double getUppercaseRatio() {
+        return message.isEmpty() ? 0d : (double) uppercase / message.length();
+    }
+
+    /**
+     * Returns whether the message contains any character outside the ASCII range
+     *
+     * @return {@code true} if the message contains non-ASCII characters
+     */
+    public boolean containsNonAscii() {
+        return nonAscii > 0;
+    }
+
+    /**
+     * Get the start index (inclusive) of a whitespace-separated token
+     *
+     * @param token the token index, from {@code 0} to {@link #getTokenCount()}
+     * @return the start index of the token in the message
+     */
+    public int getTokenStart(int token) {
+        return tokens[checkToken(token) * 2];
+    }
+
+    /**
+     * Get the end index (exclusive) of a whitespace-separated token
+     *
+     * @param token the token index, from {@code 0} to {@link #getTokenCount()}
+     * @return the end index of the token in the message
+     */
+    public int getTokenEnd(int token) {
+        return tokens[checkToken(token) * 2 + 1];
+    }
+
+    /**
+     * Get a whitespace-separated token of the message
+     *
+     * @param token the token index, from {@code 0} to {@link #getTokenCount()}
+     * @return the token text
+     */
+    @NotNull
+    public String getToken(int token) {
+        return message.substring(getTokenStart(token), getTokenEnd(token));
+    }
+
+    private int checkToken(int token) {
+        if (token < 0 || token >= tokenCount) {
+            throw new IndexOutOfBoundsException("Token " + token + " out of bounds for " + tokenCount + " tokens");
+        }
+        return token;
+    }
+
+}
@@ -28,12 +28,17 @@ import org.jetbrains.annotations.NotNull;
 /**
  * A {@link ChatFilter} that filters against profanity using machine learning
  * Uses <a href="https://github.com/WiIIiam278/ProfanityCheckerAPI/">ProfanityCheckerAPI</a>, which uses jep to run a python
- * machine learning algorithm to determine the probability that a string contains profanity
+ * machine learning algorithm to determine the probability that a string contains profanity.
+ * <p>
+ * A jep interpreter belongs to the thread that created it, so each filter thread keeps its own checker and reuses it
+ * for every message it checks, rather than starting an interpreter per message.
  */
 public class ProfanityFilterer extends ChatFilter {
 
     @NotNull
     private final ProfanityChecker.ProfanityCheckerBuilder builder;
+    @NotNull
+    private final ThreadLocal<ProfanityChecker> checker;
 
     public ProfanityFilterer(@NotNull FilterSettings settings) {
         super(settings);
@@ -47,6 +52,7 @@ public class ProfanityFilterer extends ChatFilter {
             builder.useThreshold(true);
             builder.threshold(profanitySettings.getTolerance());
         }
+        this.checker = ThreadLocal.withInitial(builder::build);
         initialize();
     }
 
@@ -70,14 +76,26 @@ public class ProfanityFilterer extends ChatFilter {
 
     @Override
     public boolean isAllowed(@NotNull OnlineUser player, @NotNull String message) {
-        try (final ProfanityChecker checker = builder.build()) {
-            return !checker.isProfane(message);
-        } catch (UnsatisfiedLinkError e) {
+        try {
+            return !checker.get().isProfane(message);
+        } catch (UnsatisfiedLinkError | IllegalStateException e) {
+            // Start a new checker on this thread next time, in case this one is no longer usable
+            checker.remove();
             e.printStackTrace();
             return false;
         }
     }
 
+    @Override
+    public boolean isAsync() {
+        return true;
+    }
+
+    @Override
+    public boolean isCacheable() {
+        return true;
+    }
+
     @Override
     @NotNull
     public String getDisallowedLocale() {
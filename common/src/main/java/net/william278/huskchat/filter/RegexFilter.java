@@ -46,6 +46,11 @@ public class RegexFilter extends ChatFilter {
         return true;
     }
 
+    @Override
+    public boolean isCacheable() {
+        return true;
+    }
+
     @Override
     @NotNull
     public String getDisallowedLocale() {
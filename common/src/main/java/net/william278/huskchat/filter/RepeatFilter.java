@@ -52,12 +52,19 @@ public class RepeatFilter extends ChatFilter {
 
     @Override
     public boolean isAllowed(@NotNull OnlineUser player, @NotNull String message) {
+        return isAllowed(player, MessageAnalysis.of(message));
+    }
+
+    @Override
+    public boolean isAllowed(@NotNull OnlineUser player, @NotNull MessageAnalysis analysis) {
+        // Queues hold case-folded messages, so previous messages need no re-folding on comparison
+        final String message = analysis.getFolded();
         if (!userMessageQueues.containsKey(player.getUuid())) {
             userMessageQueues.put(player.getUuid(), new LinkedList<>());
         }
         if (!userMessageQueues.get(player.getUuid()).isEmpty()) {
             for (String previousMessage : userMessageQueues.get(player.getUuid())) {
-                if (message.equalsIgnoreCase(previousMessage)) {
+                if (message.equals(previousMessage)) {
                     return false;
                 }
             }
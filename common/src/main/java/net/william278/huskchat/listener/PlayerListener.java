@@ -33,8 +33,15 @@ public abstract class PlayerListener {
 
     protected final HuskChat plugin;
 
-    // Handle server switches
+    // Handle server switches, once the player's data has loaded
     public final void handlePlayerSwitchServer(@NotNull OnlineUser player, @NotNull String newServer) {
+        plugin.getChatNetwork().ifPresent(network -> network.publishPlayerUpdate(player, newServer));
+        plugin.loadUserData(player.getUuid()).thenRun(() -> switchServer(player, newServer));
+    }
+
+    private void switchServer(@NotNull OnlineUser player, @NotNull String newServer) {
+        plugin.getSpyIndex().track(player, newServer, plugin.getUserCache());
+
         // Switch to the default channel for the server if there is one
         final Map<String, String> defaultChannels = plugin.getChannels().getServerDefaultChannels();
         if (defaultChannels.containsKey(newServer)) {
@@ -60,22 +67,27 @@ public abstract class PlayerListener {
 
     // Handle player joins
     public final void handlePlayerJoin(@NotNull OnlineUser player) {
+        plugin.getReplyTargets().onJoin(player.getUuid());
         handlePlayerSwitchServer(player, player.getServerName());
         if (plugin.getSettings().getJoinAndQuitMessages().getBroadcastScope() == Channel.BroadcastScope.PASSTHROUGH) {
             return;
         }
         if (plugin.getSettings().getJoinAndQuitMessages().getJoin().isEnabled()) {
-            plugin.getLocales().sendJoinMessage(player, plugin);
+            plugin.getJoinQuitAnnouncer().announceJoin(player);
         }
     }
 
     // Handle player quits
     public final void handlePlayerQuit(@NotNull OnlineUser player) {
+        plugin.unloadUserData(player.getUuid());
+        plugin.getReplyTargets().onQuit(player.getUuid());
+        plugin.getSpyIndex().remove(player.getUuid());
+        plugin.getChatNetwork().ifPresent(network -> network.publishPlayerQuit(player));
         if (plugin.getSettings().getJoinAndQuitMessages().getBroadcastScope() == Channel.BroadcastScope.PASSTHROUGH) {
             return;
         }
         if (plugin.getSettings().getJoinAndQuitMessages().getQuit().isEnabled()) {
-            plugin.getLocales().sendQuitMessage(player, plugin);
+            plugin.getJoinQuitAnnouncer().announceQuit(player);
         }
     }
 
@@ -28,7 +28,6 @@ import net.william278.huskchat.config.Settings;
 import net.william278.huskchat.user.OnlineUser;
 import org.jetbrains.annotations.NotNull;
 
-import java.util.Optional;
 import java.util.logging.Level;
 
 /**
@@ -59,27 +58,66 @@ public class BroadcastMessage {
             message = event.getMessage();
 
             // If the message is to be filtered, then perform filter checks (unless they have the bypass permission)
-            final Optional<String> filtered = plugin.filter(sender, message, plugin.getBroadcastFilters());
-            if (filtered.isEmpty()) {
-                return;
-            }
-            message = filtered.get();
+            plugin.filterAsync(sender, message, plugin.getBroadcastFilters()).thenAccept(filtered -> {
+                if (filtered.isEmpty()) {
+                    return;
+                }
+                message = filtered.get();
 
-            // Send the broadcast
-            plugin.getOnlinePlayers().forEach(this::sendMessage);
+                deliver(message, plugin);
+                plugin.getChatNetwork().ifPresent(network -> network.publishBroadcast(message));
 
-            // Log to console
-            if (settings.isLogToConsole()) {
-                plugin.log(Level.INFO, settings.getLogFormat() + message);
-            }
+                // Log to console
+                if (settings.isLogToConsole()) {
+                    plugin.log(Level.INFO, settings.getLogFormat() + message);
+                }
+            }).exceptionally(e -> {
+                plugin.log(Level.SEVERE, "Failed to dispatch broadcast message", e);
+                return null;
+            });
         });
     }
 
+    /**
+     * Show a broadcast to every player on this proxy. Broadcasts sent on another proxy on the network are delivered
+     * here after that proxy has filtered them and fired their events
+     *
+     * @param message the broadcast message
+     * @param plugin  the implementing HuskChat plugin
+     */
+    public static void deliver(@NotNull String message, @NotNull HuskChat plugin) {
+        // Render the broadcast once, then send it to every player through one forwarding audience
+        plugin.getAudience(plugin.getOnlinePlayers()).sendMessage(
+                render(plugin.getLocales().getBroadcastFormat(plugin), message));
+    }
+
     public void sendMessage(@NotNull OnlineUser player) {
+        player.sendMessage(render());
+    }
+
+    /**
+     * Render the broadcast message with its format
+     *
+     * @return the rendered broadcast
+     */
+    @NotNull
+    public Component render() {
+        return render(plugin.getLocales().getBroadcastFormat(plugin), message);
+    }
+
+    /**
+     * Render a broadcast message after its pre-rendered format
+     *
+     * @param format  the rendered broadcast format
+     * @param message the message to broadcast, which may use basic MineDown formatting
+     * @return the rendered broadcast
+     */
+    @NotNull
+    public static Component render(@NotNull Component format, @NotNull String message) {
         final TextComponent.Builder componentBuilder = Component.text();
-        componentBuilder.append(new MineDown(plugin.getSettings().getBroadcastCommand().getFormat()).toComponent());
+        componentBuilder.append(format);
         componentBuilder.append(new MineDown(message).disable(MineDownParser.Option.ADVANCED_FORMATTING).toComponent());
-        player.sendMessage(componentBuilder.build());
+        return componentBuilder.build();
     }
 
 }
\ No newline at end of file
@@ -26,12 +26,15 @@ import net.william278.huskchat.HuskChat;
 import net.william278.huskchat.channel.Channel;
 import net.william278.huskchat.user.ConsoleUser;
 import net.william278.huskchat.user.OnlineUser;
-import net.william278.huskchat.user.UserCache;
+import net.william278.huskchat.user.RemoteUser;
 import org.jetbrains.annotations.NotNull;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashSet;
-import java.util.Map;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.Level;
 
@@ -90,20 +93,32 @@ public class ChatMessage {
             return true;
         }
 
-        final Optional<String> formatted = getPlugin().filter(getSender(), getMessage(), getPlugin().getChannelFilters(channel.get()));
-        if (formatted.isEmpty()) {
-            return true;
+        // Passthrough messages must be filtered before we decide whether to cancel them; others can finish later
+        final CompletableFuture<Optional<String>> filtered = getPlugin().filterAsync(
+                getSender(), getMessage(), getPlugin().getChannelFilters(channel.get()));
+        if (scope.isPassThrough()) {
+            final Optional<String> formatted = filtered.join();
+            if (formatted.isEmpty()) {
+                return true;
+            }
+            send(channel, scope, formatted.get());
+            return false;
         }
-        setMessage(formatted.get());
+        filtered.thenAccept(formatted -> formatted.ifPresent(message -> send(channel, scope, message)))
+                .exceptionally(e -> {
+                    getPlugin().log(Level.SEVERE, "Failed to dispatch chat message", e);
+                    return null;
+                });
 
-        HashSet<OnlineUser> messageRecipients = new HashSet<>();
-        switch (scope) {
-            case GLOBAL, GLOBAL_PASSTHROUGH -> messageRecipients.addAll(getPlugin().getOnlinePlayers());
-            case LOCAL, LOCAL_PASSTHROUGH ->
-                    messageRecipients.addAll(getPlugin().getOnlinePlayersOnServer(getSender()));
-            default -> {
-            } // No message recipients if the channel is exclusively passed through; let the backend handle it
-        }
+        // Non-passthrough messages should always be canceled in the proxy-specific code
+        return true;
+    }
+
+    // Send a message that has passed the filters to its recipients
+    private void send(@NotNull AtomicReference<Channel> channel, @NotNull Channel.BroadcastScope scope,
+                      @NotNull String formatted) {
+        setMessage(formatted);
+        final Collection<OnlineUser> messageRecipients = getRecipients(scope);
 
         // The events API has no effect on messages in passthrough channels.
         // Local/global passthrough channels will have their proxy-side message affected,
@@ -119,39 +134,7 @@ public class ChatMessage {
             if (!event.getChannelId().equals(channel.get().getId())) {
                 getPlugin().getChannels().getChannel(event.getChannelId()).ifPresent(channel::set);
             }
-
-            // Dispatch message to all applicable users in the scope with permission who are not on a restricted server
-            messageRecipients.forEach(recipient -> {
-                boolean isSender = recipient.getUuid().equals(getSender().getUuid());
-                if (!isSender && !getChannel().canUserReceive(recipient)) {
-                    return;
-                }
-
-                if (channel.get().isServerRestricted(recipient.getServerName())) {
-                    return;
-                }
-                getPlugin().getLocales().sendChannelMessage(recipient, getSender(), channel.get(), getMessage(), getPlugin());
-
-
-                // If the message is on a local channel, dispatch local spy messages to appropriate spies.
-                if (getPlugin().getSettings().getLocalSpy().isEnabled()
-                        && !getPlugin().getSettings().getLocalSpy().getExcludedLocalChannels().contains(channel.get().getId())
-                        && scope.isOneOf(Channel.BroadcastScope.LOCAL, Channel.BroadcastScope.LOCAL_PASSTHROUGH)) {
-                    final Map<OnlineUser, UserCache.SpyColor> spies = getPlugin().getUserCache()
-                            .getLocalSpies(getSender().getServerName(), getPlugin());
-                    for (OnlineUser spy : spies.keySet()) {
-                        if (spy.getUuid().equals(getSender().getUuid())) {
-                            continue;
-                        }
-                        if (!spy.hasPermission("huskchat.command.localspy", false)) {
-                            plugin.editUserCache(c -> c.removeLocalSpy(spy));
-                            continue;
-                        }
-                        final UserCache.SpyColor color = spies.get(spy);
-                        getPlugin().getLocales().sendLocalSpy(spy, color, getSender(), channel.get(), getMessage(), getPlugin());
-                    }
-                }
-            });
+            deliver(channel.get(), scope, messageRecipients);
 
             // Log a message to console if enabled on the channel
             if (channel.get().isLogToConsole()) {
@@ -165,10 +148,88 @@ public class ChatMessage {
             if (getPlugin().getSettings().getDiscord().isEnabled()) {
                 getPlugin().getDiscordHook().ifPresent(hook -> hook.postMessage(this));
             }
+
+            // Publish the message for players on the other proxies on the network
+            if (scope != Channel.BroadcastScope.PASSTHROUGH) {
+                getPlugin().getChatNetwork().ifPresent(network -> network.publishChat(
+                        getSender(), channel.get(), getMessage()));
+            }
         });
+    }
 
-        // Non-passthrough messages should always be canceled in the proxy-specific code
-        return !scope.isPassThrough();
+    /**
+     * Deliver a message sent on another proxy on the network to the players on this proxy. The proxy it was sent on
+     * has already filtered the message, fired its events and logged it
+     */
+    public void deliver() {
+        final Channel.BroadcastScope scope = getChannel().getBroadcastScope();
+        deliver(getChannel(), scope, getRecipients(scope));
+    }
+
+    // Determine the players who will receive the message
+    @NotNull
+    private Collection<OnlineUser> getRecipients(@NotNull Channel.BroadcastScope scope) {
+        final HashSet<OnlineUser> messageRecipients = new HashSet<>();
+        switch (scope) {
+            case GLOBAL, GLOBAL_PASSTHROUGH -> messageRecipients.addAll(getPlugin().getOnlinePlayers());
+            case LOCAL, LOCAL_PASSTHROUGH -> {
+                if (getSender() instanceof RemoteUser) {
+                    // Players on the sender's server who are connected through this proxy
+                    getPlugin().getOnlinePlayers().stream()
+                            .filter(player -> player.getServerName().equals(getSender().getServerName()))
+                            .forEach(messageRecipients::add);
+                } else {
+                    messageRecipients.addAll(getPlugin().getOnlinePlayersOnServer(getSender()));
+                }
+            }
+            default -> {
+            } // No message recipients if the channel is exclusively passed through; let the backend handle it
+        }
+        return messageRecipients;
+    }
+
+    // Send the message to its recipients with permission who are not on a restricted server, and to local spies
+    private void deliver(@NotNull Channel channel, @NotNull Channel.BroadcastScope scope,
+                         @NotNull Collection<OnlineUser> messageRecipients) {
+        final List<OnlineUser> recipients = new ArrayList<>(messageRecipients.size());
+        for (OnlineUser recipient : messageRecipients) {
+            boolean isSender = recipient.getUuid().equals(getSender().getUuid());
+            if (!isSender && !getChannel().canUserReceive(recipient)) {
+                continue;
+            }
+
+            if (channel.isServerRestricted(recipient.getServerName())) {
+                continue;
+            }
+            recipients.add(recipient);
+        }
+
+        // Render the message once and send the same component to every recipient
+        if (!recipients.isEmpty()) {
+            getPlugin().getLocales().renderChannelMessage(getSender(), channel, getMessage(), getPlugin())
+                    .thenAccept(rendered -> getPlugin().getAudience(recipients).sendMessage(rendered))
+                    .exceptionally(e -> {
+                        getPlugin().log(Level.SEVERE, "Failed to deliver chat message", e);
+                        return null;
+                    });
+        }
+
+        // If the message is on a local channel, dispatch local spy messages to appropriate spies.
+        if (getPlugin().getSettings().getLocalSpy().isEnabled()
+                && !getPlugin().getSettings().getLocalSpy().getExcludedLocalChannels().contains(channel.getId())
+                && scope.isOneOf(Channel.BroadcastScope.LOCAL, Channel.BroadcastScope.LOCAL_PASSTHROUGH)) {
+            getPlugin().getSpyIndex().forEachLocalSpy(getSender().getServerName(), spy -> {
+                if (spy.user().getUuid().equals(getSender().getUuid())) {
+                    return;
+                }
+                if (!spy.user().hasPermission("huskchat.command.localspy", false)) {
+                    plugin.editUserCache(c -> c.removeLocalSpy(spy.user()));
+                    return;
+                }
+                getPlugin().getLocales().sendLocalSpy(spy.user(), spy.color(), getSender(), channel,
+                        getMessage(), getPlugin());
+            });
+        }
     }
 
-}
\ No newline at end of file
+}
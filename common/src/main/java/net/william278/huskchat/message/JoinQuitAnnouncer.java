@@ -0,0 +1,209 @@
+/*
+ * This file is part of HuskChat, licensed under the Apache License 2.0.
+ *
+ *  Copyright (c) William278 <will27528@gmail.com>
+ *  Copyright (c) contributors
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package net.william278.huskchat.message;
+
+import net.william278.huskchat.HuskChat;
+import net.william278.huskchat.config.Locales;
+import net.william278.huskchat.config.Settings;
+import net.william278.huskchat.user.OnlineUser;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Announces players joining and quitting.
+ * <p>
+ * At normal rates each player gets their own message. Once more players join (or quit) within the aggregation window
+ * than the configured threshold, such as when the proxy restarts and everyone reconnects, further announcements are
+ * collected for a window and sent as one summary line, rendered once for every recipient.
+ */
+public final class JoinQuitAnnouncer {
+
+    private final HuskChat plugin;
+    private final Window<Announcement> joins;
+    private final Window<Announcement> quits;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        final Thread thread = new Thread(runnable, "HuskChat-JoinQuitAnnouncer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public JoinQuitAnnouncer(@NotNull HuskChat plugin) {
+        this.plugin = plugin;
+        this.joins = new Window<>(System::currentTimeMillis);
+        this.quits = new Window<>(System::currentTimeMillis);
+    }
+
+    /**
+     * Announce that a player joined, unless they join silently
+     *
+     * @param player the player who joined
+     */
+    public void announceJoin(@NotNull OnlineUser player) {
+        if (!player.hasPermission(Locales.SILENT_JOIN_PERMISSION, false)) {
+            announce(player, true);
+        }
+    }
+
+    /**
+     * Announce that a player quit, unless they quit silently
+     *
+     * @param player the player who quit
+     */
+    public void announceQuit(@NotNull OnlineUser player) {
+        if (!player.hasPermission(Locales.SILENT_QUIT_PERMISSION, false)) {
+            announce(player, false);
+        }
+    }
+
+    private void announce(@NotNull OnlineUser player, boolean joined) {
+        // Keep the server the player is on now, as they will have left it by the time a batch of quits is sent
+        final Announcement announcement = new Announcement(player, player.getServerName());
+        final Settings.JoinQuitSettings.AggregationSettings settings = getSettings();
+        if (!settings.isEnabled()) {
+            sendIndividually(announcement, joined);
+            return;
+        }
+        switch ((joined ? joins : quits).offer(announcement, settings.getWindowMillis(), settings.getThreshold())) {
+            case SEND -> sendIndividually(announcement, joined);
+            case BATCH_STARTED -> {
+                try {
+                    scheduler.schedule(() -> flush(joined), Math.max(0, settings.getWindowMillis()),
+                            TimeUnit.MILLISECONDS);
+                } catch (RejectedExecutionException e) {
+                    // The announcer has been closed, so send straight away
+                    flush(joined);
+                }
+            }
+            case BATCHED -> {
+            }
+        }
+    }
+
+    // Send the collected batch, as a summary unless it is small enough to name everyone
+    private void flush(boolean joined) {
+        final List<Announcement> batch = (joined ? joins : quits).drain();
+        if (batch.size() <= getSettings().getMaxNames()) {
+            batch.forEach(announcement -> sendIndividually(announcement, joined));
+            return;
+        }
+        plugin.getLocales().sendJoinQuitSummary(batch, joined, plugin);
+    }
+
+    private void sendIndividually(@NotNull Announcement announcement, boolean joined) {
+        if (joined) {
+            plugin.getLocales().sendJoinMessage(announcement.player(), announcement.server(), plugin);
+        } else {
+            plugin.getLocales().sendQuitMessage(announcement.player(), announcement.server(), plugin);
+        }
+    }
+
+    @NotNull
+    private Settings.JoinQuitSettings.AggregationSettings getSettings() {
+        return plugin.getSettings().getJoinAndQuitMessages().getAggregation();
+    }
+
+    /**
+     * Stop collecting announcements. Called when the plugin shuts down
+     */
+    public void close() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * A player joining or quitting
+     *
+     * @param player the player who joined or quit
+     * @param server the server the player was on when they joined or quit
+     */
+    public record Announcement(@NotNull OnlineUser player, @NotNull String server) {
+    }
+
+    /**
+     * Counts announcements of one kind in fixed windows, and collects them into a batch once there are too many
+     *
+     * @param <T> the type of announcement
+     */
+    static final class Window<T> {
+
+        private final LongSupplier clock;
+        private long windowStart;
+        private int count;
+        private List<T> batch;
+
+        Window(@NotNull LongSupplier clock) {
+            this.clock = clock;
+        }
+
+        /**
+         * Count an announcement, adding it to the batch if there have been too many in this window
+         *
+         * @param announcement the announcement
+         * @param windowMillis the length of the window, in milliseconds
+         * @param threshold    the most announcements to send individually per window
+         * @return what to do with the announcement
+         */
+        @NotNull
+        synchronized Offer offer(@NotNull T announcement, long windowMillis, int threshold) {
+            final long now = clock.getAsLong();
+            if (count == 0 || now - windowStart >= windowMillis) {
+                windowStart = now;
+                count = 0;
+            }
+            count++;
+            if (batch != null) {
+                batch.add(announcement);
+                return Offer.BATCHED;
+            }
+            if (count <= threshold) {
+                return Offer.SEND;
+            }
+            batch = new ArrayList<>();
+            batch.add(announcement);
+            return Offer.BATCH_STARTED;
+        }
+
+        /**
+         * Take the collected batch, ending it
+         *
+         * @return the announcements collected, in order
+         */
+        @NotNull
+        synchronized List<T> drain() {
+            final List<T> drained = batch == null ? List.of() : batch;
+            batch = null;
+            return drained;
+        }
+
+        enum Offer {
+            SEND,
+            BATCH_STARTED,
+            BATCHED
+        }
+    }
+
+}
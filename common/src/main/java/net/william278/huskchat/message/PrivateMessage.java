@@ -19,14 +19,20 @@
 
 package net.william278.huskchat.message;
 
+import net.kyori.adventure.text.Component;
 import net.william278.huskchat.HuskChat;
+import net.william278.huskchat.config.Locales;
 import net.william278.huskchat.config.Settings;
 import net.william278.huskchat.user.ConsoleUser;
+import net.william278.huskchat.user.Conversation;
 import net.william278.huskchat.user.OnlineUser;
+import net.william278.huskchat.user.RemoteUser;
+import net.william278.huskchat.user.SpyIndex;
 import net.william278.huskchat.user.UserCache;
 import org.jetbrains.annotations.NotNull;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.Level;
 
@@ -75,7 +81,8 @@ public class PrivateMessage {
             if (ConsoleUser.isConsolePlayer(targetUsername)) {
                 targetPlayer = Optional.of(ConsoleUser.wrap(plugin));
             } else {
-                targetPlayer = plugin.findPlayer(targetUsername);
+                targetPlayer = plugin.findPlayer(targetUsername).or(() -> plugin.getChatNetwork()
+                        .flatMap(network -> network.findPlayer(targetUsername)));
             }
 
             // Remove duplicate users from the array
@@ -114,11 +121,17 @@ public class PrivateMessage {
         }
 
         // If the message is to be filtered, then perform filter checks (unless they have the bypass permission)
-        final Optional<String> filtered = plugin.filter(sender, message, plugin.getMessageFilters());
-        if (filtered.isEmpty()) {
-            return;
-        }
-        final AtomicReference<String> finalMessage = new AtomicReference<>(filtered.get());
+        plugin.filterAsync(sender, message, plugin.getMessageFilters())
+                .thenAccept(filtered -> filtered.ifPresent(message -> send(targetPlayers, message)))
+                .exceptionally(e -> {
+                    plugin.log(Level.SEVERE, "Failed to dispatch private message", e);
+                    return null;
+                });
+    }
+
+    // Send a message that has passed the filters to its recipients
+    private void send(@NotNull List<OnlineUser> targetPlayers, @NotNull String filtered) {
+        final AtomicReference<String> finalMessage = new AtomicReference<>(filtered);
 
         plugin.firePrivateMessageEvent(sender, targetPlayers, finalMessage.get()).thenAccept(event -> {
             if (event.isCancelled()) return;
@@ -128,38 +141,16 @@ public class PrivateMessage {
             finalMessage.set(event.getMessage());
 
             // Show that the message has been sent
-            plugin.editUserCache(c -> c.setLastMessenger(sender.getUuid(), receivers));
-            plugin.getLocales().sendOutboundPrivateMessage(sender, receivers, finalMessage.get(), plugin);
-
-            // Show the received message
-            plugin.editUserCache(c -> receivers.forEach(target -> {
-                final ArrayList<OnlineUser> receivedMessageFrom = new ArrayList<>(receivers);
-                receivedMessageFrom.removeIf(player -> player.getUuid().equals(target.getUuid()));
-                receivedMessageFrom.add(0, sender);
-                c.setLastMessenger(target.getUuid(), receivedMessageFrom);
-            }));
-            plugin.getLocales().sendInboundPrivateMessage(receivers, sender, finalMessage.get(), plugin);
-
-            // Show a message to social spies
-            if (plugin.getSettings().getSocialSpy().isEnabled()) {
-                if (!(sender.hasPermission("huskchat.command.socialspy.bypass", false) || receivers.stream()
-                        .findFirst().orElseThrow(() -> new IllegalStateException("No receivers available for message"))
-                        .hasPermission("huskchat.command.socialspy.bypass", false))) {
-                    final Map<OnlineUser, UserCache.SpyColor> spies = plugin.getUserCache().getSocialSpies(receivers, plugin);
-                    for (OnlineUser spy : spies.keySet()) {
-                        if (spy.getUuid().equals(sender.getUuid())) {
-                            continue;
-                        }
-                        if (!spy.hasPermission("huskchat.command.socialspy", false)) {
-                            plugin.editUserCache(c -> c.removeSocialSpy(spy));
-                            continue;
-                        }
-                        final UserCache.SpyColor color = spies.get(spy);
-                        plugin.getLocales().sendSocialSpy(spy, color, sender, receivers, finalMessage.get(), plugin);
-                    }
-                }
+            plugin.getLocales().renderOutboundPrivateMessage(sender, receivers, finalMessage.get(), plugin)
+                    .thenAccept(sender::sendMessage);
 
-            }
+            // Messages to or from players with the bypass permission are hidden from social spies on every proxy
+            final boolean bypassSpy = sender.hasPermission("huskchat.command.socialspy.bypass", false)
+                                      || receivers.stream().findFirst().map(receiver -> receiver.hasPermission(
+                    "huskchat.command.socialspy.bypass", false)).orElse(false);
+            deliver(sender, receivers, finalMessage.get(), bypassSpy, plugin);
+            plugin.getChatNetwork().ifPresent(network -> network.publishPrivateMessage(
+                    sender, receivers, finalMessage.get(), bypassSpy));
 
             // Log the private message to console if that is enabled
             if (settings.isLogToConsole()) {
@@ -177,4 +168,51 @@ public class PrivateMessage {
         });
     }
 
-}
\ No newline at end of file
+    /**
+     * Show a private message to its recipients and social spies on this proxy. Private messages sent on another proxy
+     * on the network are delivered here after that proxy has filtered them and fired their events
+     *
+     * @param sender    the player who sent the message
+     * @param receivers the players the message was sent to
+     * @param message   the message
+     * @param bypassSpy whether the message should be hidden from social spies
+     * @param plugin    the implementing HuskChat plugin
+     */
+    public static void deliver(@NotNull OnlineUser sender, @NotNull List<OnlineUser> receivers,
+                               @NotNull String message, boolean bypassSpy, @NotNull HuskChat plugin) {
+        // Record the conversation for replies, if it includes a player on this proxy
+        final List<UUID> members = new ArrayList<>(receivers.size() + 1);
+        members.add(sender.getUuid());
+        receivers.forEach(receiver -> members.add(receiver.getUuid()));
+        final Conversation conversation = !(sender instanceof RemoteUser)
+                                          || receivers.stream().anyMatch(receiver -> !(receiver instanceof RemoteUser))
+                ? plugin.getReplyTargets().setConversation(members) : Conversation.of(members);
+
+        // Show the received message, rendered once for every recipient
+        final Locales locales = plugin.getLocales();
+        locales.renderInboundPrivateMessage(receivers, sender, message, plugin).thenAccept(inbound -> {
+            for (OnlineUser receiver : receivers) {
+                receiver.sendMessage(inbound);
+            }
+        });
+
+        // Show a message to social spies, rendered once per spy colour
+        if (plugin.getSettings().getSocialSpy().isEnabled() && !bypassSpy) {
+            final Map<UserCache.SpyColor, CompletableFuture<Component>> spyMessages =
+                    new EnumMap<>(UserCache.SpyColor.class);
+            for (SpyIndex.Spy spy : plugin.getSpyIndex().getSocialSpies()) {
+                if (conversation.contains(spy.user().getUuid())) {
+                    continue;
+                }
+                if (!spy.user().hasPermission("huskchat.command.socialspy", false)) {
+                    plugin.editUserCache(c -> c.removeSocialSpy(spy.user()));
+                    continue;
+                }
+                spyMessages.computeIfAbsent(spy.color(), color -> locales.renderSocialSpy(
+                        color, sender, receivers, message, plugin
+                )).thenAccept(spy.user()::sendMessage);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,320 @@
+/*
+ * This file is part of HuskChat, licensed under the Apache License 2.0.
+ *
+ *  Copyright (c) William278 <will27528@gmail.com>
+ *  Copyright (c) contributors
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.william278.huskchat.network;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import net.william278.huskchat.HuskChat;
+import net.william278.huskchat.channel.Channel;
+import net.william278.huskchat.config.FormatTemplate;
+import net.william278.huskchat.config.Settings;
+import net.william278.huskchat.message.BroadcastMessage;
+import net.william278.huskchat.message.ChatMessage;
+import net.william278.huskchat.message.PrivateMessage;
+import net.william278.huskchat.user.OnlineUser;
+import net.william278.huskchat.user.RemoteUser;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.logging.Level;
+
+/**
+ * Connects this proxy to the other proxies running HuskChat on the network, so that players on every proxy receive
+ * chat, private messages and broadcasts.
+ * <p>
+ * Messages are filtered, passed through the API events and logged by the proxy they were sent on, then published
+ * through the {@link MessageBroker} for every other proxy to deliver to its own players. Each proxy also publishes
+ * who is online, so that players on other proxies can be found in the {@link RemotePlayerDirectory}.
+ */
+@Getter
+public class ChatNetwork implements MessageBroker.Receiver {
+
+    @Getter(AccessLevel.NONE)
+    private final HuskChat plugin;
+    private final String proxyName;
+    private final MessageBroker broker;
+    private final RemotePlayerDirectory directory = new RemotePlayerDirectory();
+    @Getter(AccessLevel.NONE)
+    private CompletableFuture<Void> published = CompletableFuture.completedFuture(null);
+
+    public ChatNetwork(@NotNull HuskChat plugin, @NotNull String proxyName, @NotNull MessageBroker broker) {
+        this.plugin = plugin;
+        this.proxyName = proxyName;
+        this.broker = broker;
+    }
+
+    /**
+     * Connect to the other proxies on the network, as configured in the network settings
+     *
+     * @param plugin the implementing HuskChat plugin
+     * @return the connected network, or empty if the network settings are invalid
+     */
+    @NotNull
+    public static Optional<ChatNetwork> connect(@NotNull HuskChat plugin) {
+        final Settings.NetworkSettings settings = plugin.getSettings().getNetwork();
+        final String proxyName = settings.getProxyName();
+        if (settings.getBroker() == MessageBroker.Type.TCP && settings.getSecret().isBlank()) {
+            plugin.log(Level.SEVERE, "Not connecting to the network: a network secret is required for the TCP broker");
+            return Optional.empty();
+        }
+        final MessageBroker broker = switch (settings.getBroker()) {
+            case TCP -> new TcpPeerBroker(proxyName, new InetSocketAddress(settings.getBindAddress(),
+                    settings.getPort()), parsePeers(settings.getPeers(), plugin), settings.getSecret(), plugin::log);
+            case LOOPBACK -> new LoopbackBroker(proxyName, plugin::log);
+        };
+
+        final ChatNetwork network = new ChatNetwork(plugin, proxyName, broker);
+        try {
+            broker.connect(network);
+            plugin.log(Level.INFO, "Connected to the network as proxy \"" + proxyName + "\" using "
+                                   + settings.getBroker());
+        } catch (IOException e) {
+            plugin.log(Level.SEVERE, "Unable to listen for other proxies on " + settings.getBindAddress() + ":"
+                                     + settings.getPort(), e);
+        }
+        network.publishPlayerList();
+        return Optional.of(network);
+    }
+
+    // Parse "host:port" peer addresses, skipping any that are invalid
+    @NotNull
+    private static List<InetSocketAddress> parsePeers(@NotNull List<String> peers, @NotNull HuskChat plugin) {
+        final List<InetSocketAddress> addresses = new ArrayList<>(peers.size());
+        for (String peer : peers) {
+            final int separator = peer.lastIndexOf(':');
+            try {
+                addresses.add(InetSocketAddress.createUnresolved(peer.substring(0, separator).trim(),
+                        Integer.parseInt(peer.substring(separator + 1).trim())));
+            } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+                plugin.log(Level.WARNING, "Invalid proxy address in network peers (expected host:port): " + peer);
+            }
+        }
+        return addresses;
+    }
+
+    /**
+     * Publish a chat message that has been delivered on this proxy, for other proxies to deliver to their players
+     *
+     * @param sender  the player who sent the message
+     * @param channel the channel the message was sent in
+     * @param message the message, after filters and events
+     */
+    public void publishChat(@NotNull OnlineUser sender, @NotNull Channel channel, @NotNull String message) {
+        if (!(sender instanceof RemoteUser)) {
+            publish(Envelope.Type.CHAT, Envelope.Player.of(sender), channel.getId(), List.of(), message, false,
+                    resolvePlaceholders(sender, List.of(
+                            channel.getFormat(),
+                            plugin.getSettings().getLocalSpy().getFormat()
+                    )));
+        }
+    }
+
+    /**
+     * Publish a private message that has been delivered on this proxy, for other proxies to deliver to their players
+     * and social spies
+     *
+     * @param sender    the player who sent the message
+     * @param receivers the players the message was sent to
+     * @param message   the message, after filters and events
+     * @param bypassSpy whether the message should be hidden from social spies
+     */
+    public void publishPrivateMessage(@NotNull OnlineUser sender, @NotNull List<OnlineUser> receivers,
+                                      @NotNull String message, boolean bypassSpy) {
+        if (!(sender instanceof RemoteUser)) {
+            final Settings settings = plugin.getSettings();
+            final boolean single = receivers.size() == 1;
+            publish(Envelope.Type.PRIVATE_MESSAGE, Envelope.Player.of(sender), "",
+                    receivers.stream().map(Envelope.Player::of).toList(), message, bypassSpy,
+                    resolvePlaceholders(sender, List.of(
+                            single ? settings.getMessageCommand().getFormat().getInbound()
+                                    : settings.getMessageCommand().getFormat().getGroupInbound(),
+                            single ? settings.getSocialSpy().getFormat() : settings.getSocialSpy().getGroupFormat()
+                    )));
+        }
+    }
+
+    /**
+     * Publish a broadcast that has been delivered on this proxy, for other proxies to deliver to their players
+     *
+     * @param message the broadcast message, after filters and events
+     */
+    public void publishBroadcast(@NotNull String message) {
+        publish(Envelope.Type.BROADCAST, null, "", List.of(), message, false);
+    }
+
+    /**
+     * Publish that a player joined this proxy or switched servers
+     *
+     * @param player the player
+     * @param server the name of the server the player is now connected to
+     */
+    public void publishPlayerUpdate(@NotNull OnlineUser player, @NotNull String server) {
+        publish(Envelope.Type.PLAYER_UPDATE, null, "",
+                List.of(new Envelope.Player(player.getUuid(), player.getName(), server)), "", false);
+    }
+
+    /**
+     * Publish that a player left this proxy
+     *
+     * @param player the player
+     */
+    public void publishPlayerQuit(@NotNull OnlineUser player) {
+        publish(Envelope.Type.PLAYER_QUIT, null, "", List.of(Envelope.Player.of(player)), "", false);
+    }
+
+    // Publish every player on this proxy, replacing those other proxies know of
+    private void publishPlayerList() {
+        publish(Envelope.Type.PLAYER_LIST, null, "",
+                plugin.getOnlinePlayers().stream().map(Envelope.Player::of).toList(), "", false);
+    }
+
+    private void publish(@NotNull Envelope.Type type, @Nullable Envelope.Player sender, @NotNull String channel,
+                         @NotNull List<Envelope.Player> players, @NotNull String message, boolean bypassSpy) {
+        publish(type, sender, channel, players, message, bypassSpy, CompletableFuture.completedFuture(Map.of()));
+    }
+
+    // Envelopes are published in order, each once the placeholders resolved for its sender are ready
+    private synchronized void publish(@NotNull Envelope.Type type, @Nullable Envelope.Player sender,
+                                      @NotNull String channel, @NotNull List<Envelope.Player> players,
+                                      @NotNull String message, boolean bypassSpy,
+                                      @NotNull CompletableFuture<Map<String, String>> placeholders) {
+        published = published.thenCombine(placeholders.exceptionally(e -> {
+                    plugin.log(Level.WARNING, "Failed to resolve placeholders for a " + type + " envelope", e);
+                    return Map.of();
+                }), (previous, resolved) -> resolved)
+                .thenAccept(resolved -> broker.publish(new Envelope(type, proxyName, sender, channel, players,
+                        message, bypassSpy, resolved)))
+                .exceptionally(e -> {
+                    plugin.log(Level.WARNING, "Failed to publish a " + type + " envelope to the network", e);
+                    return null;
+                });
+    }
+
+    // Resolve the placeholders the sender's messages are formatted with, for other proxies to format them with
+    @NotNull
+    private CompletableFuture<Map<String, String>> resolvePlaceholders(@NotNull OnlineUser sender,
+                                                                       @NotNull List<String> formats) {
+        final Set<String> placeholders = new LinkedHashSet<>();
+        for (String format : formats) {
+            placeholders.addAll(plugin.getLocales().getFormatTemplate(format).getSubjectPlaceholders());
+        }
+        return FormatTemplate.resolvePlaceholders(plugin, sender, placeholders);
+    }
+
+    /**
+     * Find a player on another proxy by their username, or the start of it
+     *
+     * @param username the username
+     * @return the player, if one is on another proxy
+     */
+    public Optional<OnlineUser> findPlayer(@NotNull String username) {
+        return directory.find(username).map(this::adapt);
+    }
+
+    /**
+     * Get a player on another proxy by their UUID
+     *
+     * @param uuid the player's UUID
+     * @return the player, if they are on another proxy
+     */
+    public Optional<OnlineUser> getPlayer(@NotNull UUID uuid) {
+        return directory.get(uuid).map(this::adapt);
+    }
+
+    /**
+     * Get every player on another proxy
+     *
+     * @return the players
+     */
+    @NotNull
+    public Collection<OnlineUser> getRemotePlayers() {
+        return directory.getPlayers().stream().map(this::adapt).toList();
+    }
+
+    @NotNull
+    private OnlineUser adapt(@NotNull RemotePlayerDirectory.Entry entry) {
+        return RemoteUser.of(entry.player(), entry.proxy(), plugin);
+    }
+
+    // Get a player named in an envelope, preferring a player on this proxy
+    @NotNull
+    private OnlineUser getUser(@NotNull Envelope.Player player, @NotNull String proxy) {
+        return plugin.getPlayer(player.uuid()).orElseGet(() -> RemoteUser.of(player, directory.get(player.uuid())
+                .map(RemotePlayerDirectory.Entry::proxy).orElse(proxy), plugin));
+    }
+
+    @Override
+    public void connected(@NotNull String proxy) {
+        plugin.log(Level.INFO, "Proxy \"" + proxy + "\" connected to the network");
+        publishPlayerList();
+    }
+
+    @Override
+    public void receive(@NotNull Envelope envelope) {
+        final String origin = envelope.origin();
+        switch (envelope.type()) {
+            case PLAYER_LIST -> directory.replace(origin, envelope.players());
+            case PLAYER_UPDATE -> envelope.players().forEach(player -> directory.update(origin, player));
+            case PLAYER_QUIT -> envelope.players().forEach(player -> directory.remove(origin, player.uuid()));
+            case CHAT -> {
+                if (envelope.sender() != null) {
+                    final OnlineUser sender = RemoteUser.of(envelope.sender(), origin, envelope.placeholders(), plugin);
+                    plugin.getChannels().getChannel(envelope.channel()).ifPresent(channel ->
+                            new ChatMessage(channel, sender, envelope.message(), plugin).deliver());
+                }
+            }
+            case PRIVATE_MESSAGE -> {
+                if (envelope.sender() != null) {
+                    PrivateMessage.deliver(RemoteUser.of(envelope.sender(), origin, envelope.placeholders(), plugin),
+                            envelope.players().stream().map(player -> getUser(player, origin)).toList(),
+                            envelope.message(), envelope.bypassSpy(), plugin);
+                }
+            }
+            case BROADCAST -> BroadcastMessage.deliver(envelope.message(), plugin);
+            default -> {
+            }
+        }
+    }
+
+    @Override
+    public void disconnected(@NotNull String proxy) {
+        plugin.log(Level.INFO, "Proxy \"" + proxy + "\" disconnected from the network");
+        directory.removeProxy(proxy);
+    }
+
+    /**
+     * Disconnect from the network. Called when the plugin shuts down
+     */
+    public void close() {
+        broker.close();
+    }
+
+}
@@ -0,0 +1,194 @@
+/*
+ * This file is part of HuskChat, licensed under the Apache License 2.0.
+ *
+ *  Copyright (c) William278 <will27528@gmail.com>
+ *  Copyright (c) contributors
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.william278.huskchat.network;
+
+import net.william278.huskchat.user.OnlineUser;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * A message sent between proxies on the network by a {@link MessageBroker}
+ *
+ * @param type         what the envelope carries
+ * @param origin       the name of the proxy that sent the envelope
+ * @param sender       the player who sent the message, if any
+ * @param channel      the ID of the channel a chat message was sent in, or an empty string
+ * @param players      the recipients of a private message, or the players an update is about
+ * @param message      the message text, after filters and events have been applied by the origin proxy
+ * @param bypassSpy    whether the private message should be hidden from social spies
+ * @param placeholders the sender's placeholder values (e.g. {@code %prefix%}), as resolved by the origin proxy
+ */
+public record Envelope(@NotNull Type type, @NotNull String origin, @Nullable Player sender, @NotNull String channel,
+                       @NotNull List<Player> players, @NotNull String message, boolean bypassSpy,
+                       @NotNull Map<String, String> placeholders) {
+
+    private static final int MAX_ENTRIES = 65_535;
+
+    public Envelope(@NotNull Type type, @NotNull String origin, @Nullable Player sender, @NotNull String channel,
+                    @NotNull List<Player> players, @NotNull String message, boolean bypassSpy) {
+        this(type, origin, sender, channel, players, message, bypassSpy, Map.of());
+    }
+
+    /**
+     * Read an envelope written by {@link #toBytes()}
+     *
+     * @param data the written envelope
+     * @return the envelope
+     * @throws IOException if the data is not a written envelope
+     */
+    @NotNull
+    public static Envelope fromBytes(@NotNull byte[] data) throws IOException {
+        try (DataInputStream input = new DataInputStream(new ByteArrayInputStream(data))) {
+            final int typeIndex = input.readUnsignedByte();
+            if (typeIndex >= Type.values().length) {
+                throw new IOException("Unknown envelope type " + typeIndex);
+            }
+            final Type type = Type.values()[typeIndex];
+            final String origin = input.readUTF();
+            final Player sender = input.readBoolean() ? Player.read(input) : null;
+            final String channel = input.readUTF();
+            final int count = input.readUnsignedShort();
+            final List<Player> players = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                players.add(Player.read(input));
+            }
+            final String message = input.readUTF();
+            final boolean bypassSpy = input.readBoolean();
+            final int placeholderCount = input.readUnsignedShort();
+            final Map<String, String> placeholders = new LinkedHashMap<>(placeholderCount);
+            for (int i = 0; i < placeholderCount; i++) {
+                placeholders.put(input.readUTF(), input.readUTF());
+            }
+            return new Envelope(type, origin, sender, channel, players, message, bypassSpy, placeholders);
+        }
+    }
+
+    /**
+     * Write the envelope to bytes, to send to other proxies
+     *
+     * @return the written envelope
+     * @throws IOException if a field is too long to write
+     */
+    @NotNull
+    public byte[] toBytes() throws IOException {
+        if (players.size() > MAX_ENTRIES) {
+            throw new IOException("Too many players in envelope (" + players.size() + ")");
+        }
+        if (placeholders.size() > MAX_ENTRIES) {
+            throw new IOException("Too many placeholders in envelope (" + placeholders.size() + ")");
+        }
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + message.length() + players.size() * 48);
+        try (DataOutputStream output = new DataOutputStream(bytes)) {
+            output.writeByte(type.ordinal());
+            output.writeUTF(origin);
+            output.writeBoolean(sender != null);
+            if (sender != null) {
+                sender.write(output);
+            }
+            output.writeUTF(channel);
+            output.writeShort(players.size());
+            for (Player player : players) {
+                player.write(output);
+            }
+            output.writeUTF(message);
+            output.writeBoolean(bypassSpy);
+            output.writeShort(placeholders.size());
+            for (Map.Entry<String, String> placeholder : placeholders.entrySet()) {
+                output.writeUTF(placeholder.getKey());
+                output.writeUTF(placeholder.getValue());
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * What an envelope carries
+     */
+    public enum Type {
+        /**
+         * Sent first on each connection to a proxy, with the network secret as its message
+         */
+        HELLO,
+        /**
+         * Every player on the origin proxy, replacing those previously known
+         */
+        PLAYER_LIST,
+        /**
+         * Players who joined the origin proxy or switched servers
+         */
+        PLAYER_UPDATE,
+        /**
+         * Players who left the origin proxy
+         */
+        PLAYER_QUIT,
+        /**
+         * A message in a chat channel
+         */
+        CHAT,
+        /**
+         * A private message to one or more players
+         */
+        PRIVATE_MESSAGE,
+        /**
+         * A broadcast to every player
+         */
+        BROADCAST
+    }
+
+    /**
+     * A player on a proxy, as sent between proxies
+     *
+     * @param uuid   the player's UUID
+     * @param name   the player's username
+     * @param server the name of the server the player is connected to
+     */
+    public record Player(@NotNull UUID uuid, @NotNull String name, @NotNull String server) {
+
+        @NotNull
+        public static Player of(@NotNull OnlineUser user) {
+            return new Player(user.getUuid(), user.getName(), user.getServerName());
+        }
+
+        @NotNull
+        private static Player read(@NotNull DataInputStream input) throws IOException {
+            return new Player(new UUID(input.readLong(), input.readLong()), input.readUTF(), input.readUTF());
+        }
+
+        private void write(@NotNull DataOutputStream output) throws IOException {
+            output.writeLong(uuid.getMostSignificantBits());
+            output.writeLong(uuid.getLeastSignificantBits());
+            output.writeUTF(name);
+            output.writeUTF(server);
+        }
+
+    }
+
+}
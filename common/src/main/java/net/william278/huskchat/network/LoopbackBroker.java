@@ -0,0 +1,139 @@
+/*
+ * This file is part of HuskChat, licensed under the Apache License 2.0.
+ *
+ *  Copyright (c) William278 <will27528@gmail.com>
+ *  Copyright (c) contributors
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.william278.huskchat.network;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.logging.Level;
+
+/**
+ * A {@link MessageBroker} connecting proxies running in the same process through a shared {@link Hub}, so that a
+ * network can be tested on one machine.
+ * <p>
+ * Envelopes are still written to bytes and read back, as they would be over a network, and are delivered to each
+ * proxy in order on its own thread.
+ */
+public final class LoopbackBroker implements MessageBroker {
+
+    private static final Hub SHARED_HUB = new Hub();
+
+    private final String proxyName;
+    private final Hub hub;
+    private final Log log;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        final Thread thread = new Thread(runnable, "HuskChat-LoopbackBroker");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private volatile Receiver receiver;
+
+    public LoopbackBroker(@NotNull String proxyName, @NotNull Hub hub, @NotNull Log log) {
+        this.proxyName = proxyName;
+        this.hub = hub;
+        this.log = log;
+    }
+
+    /**
+     * Create a broker connected to every other proxy in this process
+     *
+     * @param proxyName the name of this proxy
+     * @param log       receives warnings
+     */
+    public LoopbackBroker(@NotNull String proxyName, @NotNull Log log) {
+        this(proxyName, SHARED_HUB, log);
+    }
+
+    @Override
+    public void connect(@NotNull Receiver receiver) {
+        this.receiver = receiver;
+        for (LoopbackBroker peer : hub.brokers) {
+            peer.deliver(() -> peer.receiver.connected(proxyName));
+            deliver(() -> receiver.connected(peer.proxyName));
+        }
+        hub.brokers.add(this);
+    }
+
+    @Override
+    public void publish(@NotNull Envelope envelope) {
+        final byte[] data;
+        try {
+            data = envelope.toBytes();
+        } catch (IOException e) {
+            log.log(Level.WARNING, "Unable to write " + envelope.type() + " envelope for the network", e);
+            return;
+        }
+        for (LoopbackBroker peer : hub.brokers) {
+            if (peer != this) {
+                peer.deliver(() -> peer.receive(data));
+            }
+        }
+    }
+
+    @Override
+    public int getConnectedPeers() {
+        return hub.brokers.contains(this) ? hub.brokers.size() - 1 : 0;
+    }
+
+    @Override
+    public void close() {
+        if (hub.brokers.remove(this)) {
+            for (LoopbackBroker peer : hub.brokers) {
+                peer.deliver(() -> peer.receiver.disconnected(proxyName));
+            }
+        }
+        executor.shutdown();
+    }
+
+    private void receive(@NotNull byte[] data) {
+        try {
+            receiver.receive(Envelope.fromBytes(data));
+        } catch (IOException e) {
+            log.log(Level.WARNING, "Received an unreadable envelope from the network", e);
+        }
+    }
+
+    // Run a callback on this broker's thread, logging anything it throws
+    private void deliver(@NotNull Runnable callback) {
+        try {
+            executor.execute(() -> {
+                try {
+                    callback.run();
+                } catch (Throwable e) {
+                    log.log(Level.WARNING, "Failed to handle an envelope from the network", e);
+                }
+            });
+        } catch (RejectedExecutionException ignored) {
+        }
+    }
+
+    /**
+     * Connects the loopback brokers that share it
+     */
+    public static final class Hub {
+        private final List<LoopbackBroker> brokers = new CopyOnWriteArrayList<>();
+    }
+
+}
@@ -0,0 +1,113 @@
+/*
+ * This file is part of HuskChat, licensed under the Apache License 2.0.
+ *
+ *  Copyright (c) William278 <will27528@gmail.com>
+ *  Copyright (c) contributors
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.william278.huskchat.network;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.util.logging.Level;
+
+/**
+ * Carries {@link Envelope envelopes} between the proxies on a network, so that players on every proxy receive chat,
+ * private messages and broadcasts.
+ * <p>
+ * A broker delivers each published envelope to every other connected proxy, but never back to the proxy that
+ * published it. Envelopes from one proxy are received in the order they were published.
+ */
+public interface MessageBroker {
+
+    /**
+     * Connect to the network, and start receiving envelopes from other proxies
+     *
+     * @param receiver receives envelopes from other proxies, and is told when proxies connect or disconnect
+     * @throws IOException if the broker could not start listening for other proxies
+     */
+    void connect(@NotNull Receiver receiver) throws IOException;
+
+    /**
+     * Send an envelope to every other connected proxy
+     *
+     * @param envelope the envelope to send
+     */
+    void publish(@NotNull Envelope envelope);
+
+    /**
+     * Get the number of other proxies this proxy is receiving envelopes from
+     *
+     * @return the number of connected proxies
+     */
+    int getConnectedPeers();
+
+    /**
+     * Disconnect from the network
+     */
+    void close();
+
+    /**
+     * Receives envelopes from the other proxies on the network
+     */
+    interface Receiver {
+
+        /**
+         * Called when a proxy connects, once it has said hello
+         *
+         * @param proxy the name of the proxy
+         */
+        void connected(@NotNull String proxy);
+
+        /**
+         * Called for each envelope received from another proxy
+         *
+         * @param envelope the envelope
+         */
+        void receive(@NotNull Envelope envelope);
+
+        /**
+         * Called when a proxy disconnects
+         *
+         * @param proxy the name of the proxy
+         */
+        void disconnected(@NotNull String proxy);
+
+    }
+
+    /**
+     * Receives warnings from the broker, as {@link net.william278.huskchat.HuskChat#log} does
+     */
+    @FunctionalInterface
+    interface Log {
+        void log(@NotNull Level level, @NotNull String message, @NotNull Throwable... exceptions);
+    }
+
+    /**
+     * How proxies on the network connect to each other
+     */
+    enum Type {
+        /**
+         * Each proxy listens on a TCP port and connects directly to every other proxy
+         */
+        TCP,
+        /**
+         * Only proxies running in the same process are connected, for testing
+         */
+        LOOPBACK
+    }
+
+}
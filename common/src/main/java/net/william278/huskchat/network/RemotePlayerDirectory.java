@@ -0,0 +1,167 @@
+/*
+ * This file is part of HuskChat, licensed under the Apache License 2.0.
+ *
+ *  Copyright (c) William278 <will27528@gmail.com>
+ *  Copyright (c) contributors
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.william278.huskchat.network;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * The players connected to other proxies on the network, kept up to date from the player envelopes they send
+ */
+public final class RemotePlayerDirectory {
+
+    private final Map<UUID, Entry> players = new HashMap<>();
+    private final Map<String, UUID> names = new HashMap<>();
+
+    /**
+     * Add a player to the directory, or update the server they are on
+     *
+     * @param proxy  the name of the proxy the player is on
+     * @param player the player
+     */
+    public synchronized void update(@NotNull String proxy, @NotNull Envelope.Player player) {
+        final Entry previous = players.put(player.uuid(), new Entry(proxy, player));
+        if (previous != null) {
+            names.remove(fold(previous.player().name()), player.uuid());
+        }
+        names.put(fold(player.name()), player.uuid());
+    }
+
+    /**
+     * Remove a player from the directory, unless they have since joined another proxy
+     *
+     * @param proxy the name of the proxy the player left
+     * @param uuid  the player's UUID
+     */
+    public synchronized void remove(@NotNull String proxy, @NotNull UUID uuid) {
+        final Entry entry = players.get(uuid);
+        if (entry != null && entry.proxy().equals(proxy)) {
+            players.remove(uuid);
+            names.remove(fold(entry.player().name()), uuid);
+        }
+    }
+
+    /**
+     * Replace every player on a proxy
+     *
+     * @param proxy   the name of the proxy
+     * @param players the players now on the proxy
+     */
+    public synchronized void replace(@NotNull String proxy, @NotNull Collection<Envelope.Player> players) {
+        removeProxy(proxy);
+        players.forEach(player -> update(proxy, player));
+    }
+
+    /**
+     * Remove every player on a proxy, when it disconnects
+     *
+     * @param proxy the name of the proxy
+     */
+    public synchronized void removeProxy(@NotNull String proxy) {
+        for (Entry entry : List.copyOf(players.values())) {
+            if (entry.proxy().equals(proxy)) {
+                remove(proxy, entry.player().uuid());
+            }
+        }
+    }
+
+    /**
+     * Get a player by their UUID
+     *
+     * @param uuid the player's UUID
+     * @return the player, if they are on another proxy
+     */
+    @NotNull
+    public synchronized Optional<Entry> get(@NotNull UUID uuid) {
+        return Optional.ofNullable(players.get(uuid));
+    }
+
+    /**
+     * Find a player by their username, ignoring case, or else the player with the shortest username starting with it
+     *
+     * @param username the username, or the start of it
+     * @return the player, if one is on another proxy
+     */
+    @NotNull
+    public synchronized Optional<Entry> find(@NotNull String username) {
+        if (username.isEmpty()) {
+            return Optional.empty();
+        }
+        final String folded = fold(username);
+        final UUID exact = names.get(folded);
+        if (exact != null) {
+            return Optional.of(players.get(exact));
+        }
+        return players.values().stream()
+                .filter(entry -> fold(entry.player().name()).startsWith(folded))
+                .min(Comparator.comparingInt((Entry entry) -> entry.player().name().length())
+                        .thenComparing(entry -> entry.player().name()));
+    }
+
+    /**
+     * Get every player on another proxy
+     *
+     * @return the players
+     */
+    @NotNull
+    public synchronized List<Entry> getPlayers() {
+        return new ArrayList<>(players.values());
+    }
+
+    /**
+     * Get the number of players on other proxies connected to a server
+     *
+     * @param server the name of the server
+     * @return the number of players on the server
+     */
+    public synchronized int getPlayersOnServer(@NotNull String server) {
+        int count = 0;
+        for (Entry entry : players.values()) {
+            if (entry.player().server().equals(server)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @NotNull
+    private static String fold(@NotNull String name) {
+        return name.toLowerCase(Locale.ENGLISH);
+    }
+
+    /**
+     * A player on another proxy
+     *
+     * @param proxy  the name of the proxy the player is on
+     * @param player the player
+     */
+    public record Entry(@NotNull String proxy, @NotNull Envelope.Player player) {
+    }
+
+}
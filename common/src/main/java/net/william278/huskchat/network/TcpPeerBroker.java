@@ -0,0 +1,318 @@
+/*
+ * This file is part of HuskChat, licensed under the Apache License 2.0.
+ *
+ *  Copyright (c) William278 <will27528@gmail.com>
+ *  Copyright (c) contributors
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.william278.huskchat.network;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+/**
+ * A {@link MessageBroker} connecting proxies in a full mesh of plain TCP connections.
+ * <p>
+ * Each proxy listens on a port for envelopes from the others, and keeps one outgoing connection to every peer in its
+ * list to publish envelopes on, reconnecting with backoff if it drops. Each connection starts with a
+ * {@link Envelope.Type#HELLO HELLO} carrying the network secret, and incoming connections with the wrong secret are
+ * closed. Envelopes are sent as frames of their length followed by their bytes. While a peer is unreachable, up to
+ * {@value #MAX_QUEUED} envelopes are queued for it and the oldest are dropped beyond that.
+ * <p>
+ * Connections are neither encrypted nor authenticated beyond the secret, so the port should only be reachable from
+ * the other proxies.
+ */
+public final class TcpPeerBroker implements MessageBroker {
+
+    private static final int MAX_FRAME_BYTES = 1 << 20;
+    private static final int MAX_QUEUED = 1000;
+    private static final int CONNECT_TIMEOUT_MILLIS = 5000;
+    private static final long MIN_RECONNECT_MILLIS = 1000;
+    private static final long MAX_RECONNECT_MILLIS = 30_000;
+
+    private final String proxyName;
+    private final InetSocketAddress bindAddress;
+    private final List<InetSocketAddress> peers;
+    private final byte[] secret;
+    private final Log log;
+    private final Map<String, Inbound> inbound = new ConcurrentHashMap<>();
+    private final List<Outbound> outbound;
+    private volatile boolean closed;
+    @Nullable
+    private ServerSocket server;
+
+    public TcpPeerBroker(@NotNull String proxyName, @NotNull InetSocketAddress bindAddress,
+                         @NotNull List<InetSocketAddress> peers, @NotNull String secret, @NotNull Log log) {
+        if (secret.isBlank()) {
+            throw new IllegalArgumentException("A network secret is required for the TCP broker");
+        }
+        this.proxyName = proxyName;
+        this.bindAddress = bindAddress;
+        this.peers = List.copyOf(peers);
+        this.secret = secret.getBytes(StandardCharsets.UTF_8);
+        this.log = log;
+        this.outbound = this.peers.stream().map(Outbound::new).toList();
+    }
+
+    @Override
+    public void connect(@NotNull Receiver receiver) throws IOException {
+        final ServerSocket server = new ServerSocket();
+        server.setReuseAddress(true);
+        server.bind(bindAddress);
+        this.server = server;
+        startThread("HuskChat-NetworkListener", () -> accept(server, receiver));
+        outbound.forEach(peer -> startThread("HuskChat-NetworkPeer-" + peer.address, peer::run));
+    }
+
+    /**
+     * Get the port this proxy is listening for other proxies on
+     *
+     * @return the local port, or {@code -1} if not connected
+     */
+    public int getLocalPort() {
+        final ServerSocket server = this.server;
+        return server == null ? -1 : server.getLocalPort();
+    }
+
+    @Override
+    public void publish(@NotNull Envelope envelope) {
+        final byte[] data;
+        try {
+            data = envelope.toBytes();
+        } catch (IOException e) {
+            log.log(Level.WARNING, "Unable to write " + envelope.type() + " envelope for the network", e);
+            return;
+        }
+        for (Outbound peer : outbound) {
+            peer.offer(data);
+        }
+    }
+
+    @Override
+    public int getConnectedPeers() {
+        return inbound.size();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        closeQuietly(server);
+        inbound.values().forEach(connection -> closeQuietly(connection.socket));
+        outbound.forEach(Outbound::close);
+    }
+
+    // Accept connections from other proxies until closed
+    private void accept(@NotNull ServerSocket server, @NotNull Receiver receiver) {
+        while (!closed) {
+            try {
+                final Socket socket = server.accept();
+                final Inbound connection = new Inbound(socket, receiver);
+                startThread("HuskChat-NetworkConnection-" + socket.getRemoteSocketAddress(), connection::run);
+            } catch (IOException e) {
+                if (!closed) {
+                    log.log(Level.WARNING, "Unable to accept a connection from another proxy", e);
+                }
+            }
+        }
+    }
+
+    private static void writeFrame(@NotNull DataOutputStream output, @NotNull byte[] data) throws IOException {
+        output.writeInt(data.length);
+        output.write(data);
+        output.flush();
+    }
+
+    @NotNull
+    private static byte[] readFrame(@NotNull DataInputStream input) throws IOException {
+        final int length = input.readInt();
+        if (length < 0 || length > MAX_FRAME_BYTES) {
+            throw new IOException("Invalid frame length " + length);
+        }
+        final byte[] data = new byte[length];
+        input.readFully(data);
+        return data;
+    }
+
+    private static void startThread(@NotNull String name, @NotNull Runnable task) {
+        final Thread thread = new Thread(task, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private static void closeQuietly(@Nullable AutoCloseable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (Exception ignored) {
+            }
+        }
+    }
+
+    // A connection from another proxy, which envelopes are read from
+    private final class Inbound {
+        private final Socket socket;
+        private final Receiver receiver;
+
+        private Inbound(@NotNull Socket socket, @NotNull Receiver receiver) {
+            this.socket = socket;
+            this.receiver = receiver;
+        }
+
+        private void run() {
+            String peer = null;
+            try (socket) {
+                socket.setKeepAlive(true);
+                socket.setSoTimeout(CONNECT_TIMEOUT_MILLIS);
+                final DataInputStream input = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                final Envelope hello = Envelope.fromBytes(readFrame(input));
+                if (hello.type() != Envelope.Type.HELLO || !MessageDigest.isEqual(secret,
+                        hello.message().getBytes(StandardCharsets.UTF_8))) {
+                    log.log(Level.WARNING, "Rejected a connection from " + socket.getRemoteSocketAddress()
+                                           + " with the wrong network secret");
+                    return;
+                }
+                peer = hello.origin();
+                socket.setSoTimeout(0);
+
+                // A proxy that reconnects replaces its old connection, which may not have noticed it was lost yet
+                final Inbound previous = inbound.put(peer, this);
+                if (previous != null) {
+                    closeQuietly(previous.socket);
+                }
+                receiver.connected(peer);
+                while (!closed) {
+                    receive(peer, readFrame(input));
+                }
+            } catch (IOException e) {
+                if (!closed && peer == null) {
+                    log.log(Level.WARNING, "Lost a connection from " + socket.getRemoteSocketAddress()
+                                           + " before it said hello", e);
+                }
+            } finally {
+                if (peer != null && inbound.remove(peer, this) && !closed) {
+                    receiver.disconnected(peer);
+                }
+            }
+        }
+
+        // Hand a frame to the receiver; the frame has been read whole, so a bad envelope doesn't end the connection
+        private void receive(@NotNull String peer, @NotNull byte[] frame) {
+            try {
+                receiver.receive(Envelope.fromBytes(frame));
+            } catch (IOException | RuntimeException e) {
+                log.log(Level.SEVERE, "Failed to handle an envelope from proxy \"" + peer + "\"", e);
+            }
+        }
+    }
+
+    // A connection to another proxy, which envelopes are published on
+    private final class Outbound {
+        private final InetSocketAddress address;
+        private final LinkedBlockingDeque<byte[]> queue = new LinkedBlockingDeque<>();
+        @Nullable
+        private volatile Socket socket;
+        private boolean warned;
+
+        private Outbound(@NotNull InetSocketAddress address) {
+            this.address = address;
+        }
+
+        private void offer(@NotNull byte[] data) {
+            while (queue.size() >= MAX_QUEUED) {
+                queue.pollFirst();
+            }
+            queue.offerLast(data);
+        }
+
+        // Connect to the peer and send queued envelopes, reconnecting with backoff until closed
+        private void run() {
+            long backoff = MIN_RECONNECT_MILLIS;
+            while (!closed) {
+                try (Socket socket = new Socket()) {
+                    this.socket = socket;
+                    socket.setKeepAlive(true);
+                    socket.setTcpNoDelay(true);
+                    // Resolve the address again on each attempt, in case the peer's address has changed
+                    socket.connect(new InetSocketAddress(address.getHostString(), address.getPort()),
+                            CONNECT_TIMEOUT_MILLIS);
+                    final DataOutputStream output = new DataOutputStream(
+                            new BufferedOutputStream(socket.getOutputStream()));
+                    writeFrame(output, new Envelope(Envelope.Type.HELLO, proxyName, null, "", List.of(),
+                            new String(secret, StandardCharsets.UTF_8), false).toBytes());
+                    if (warned) {
+                        warned = false;
+                        log.log(Level.INFO, "Reconnected to proxy at " + address);
+                    }
+                    backoff = MIN_RECONNECT_MILLIS;
+                    send(output);
+                } catch (IOException e) {
+                    if (!closed && !warned) {
+                        warned = true;
+                        log.log(Level.WARNING, "Unable to connect to proxy at " + address + " (" + e.getMessage()
+                                               + "), retrying in the background");
+                    }
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (!closed) {
+                    try {
+                        Thread.sleep(backoff);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    backoff = Math.min(MAX_RECONNECT_MILLIS, backoff * 2);
+                }
+            }
+        }
+
+        // Send queued envelopes until the connection fails, putting back the one that failed to send
+        private void send(@NotNull DataOutputStream output) throws IOException, InterruptedException {
+            while (!closed) {
+                final byte[] data = queue.pollFirst(1, TimeUnit.SECONDS);
+                if (data == null) {
+                    continue;
+                }
+                try {
+                    writeFrame(output, data);
+                } catch (IOException e) {
+                    queue.offerFirst(data);
+                    throw e;
+                }
+            }
+        }
+
+        private void close() {
+            closeQuietly(socket);
+        }
+    }
+
+}
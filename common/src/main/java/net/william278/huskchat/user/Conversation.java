@@ -0,0 +1,190 @@
+/*
+ * This file is part of HuskChat, licensed under the Apache License 2.0.
+ *
+ *  Copyright (c) William278 <will27528@gmail.com>
+ *  Copyright (c) contributors
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package net.william278.huskchat.user;
+
+import lombok.Getter;
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.ByteBuffer;
+import java.util.*;
+
+/**
+ * A private or group message conversation: an immutable set of members with a stable ID derived from who they are,
+ * so that messaging the same people again, in any order, resolves to the same conversation
+ */
+@Getter
+public final class Conversation {
+
+    static final Conversation EMPTY = of(Set.of());
+
+    /**
+     * The conversation ID, derived from the member set
+     */
+    @NotNull
+    private final UUID id;
+
+    /**
+     * An unmodifiable set of the conversation members, with the member who started it first
+     */
+    @NotNull
+    private final Set<UUID> members;
+
+    private Conversation(@NotNull UUID id, @NotNull Set<UUID> members) {
+        this.id = id;
+        this.members = members;
+    }
+
+    /**
+     * Create a conversation between a set of members
+     *
+     * @param members the members, with the member who started the conversation first
+     * @return the conversation
+     */
+    @NotNull
+    public static Conversation of(@NotNull Collection<UUID> members) {
+        final Set<UUID> ordered = Collections.unmodifiableSet(new LinkedHashSet<>(members));
+        return new Conversation(getId(ordered), ordered);
+    }
+
+    // Derive an ID from the sorted members, so that it doesn't depend on who started the conversation
+    @NotNull
+    private static UUID getId(@NotNull Set<UUID> members) {
+        final UUID[] sorted = members.toArray(UUID[]::new);
+        Arrays.sort(sorted);
+        final ByteBuffer buffer = ByteBuffer.allocate(sorted.length * 16);
+        for (UUID member : sorted) {
+            buffer.putLong(member.getMostSignificantBits()).putLong(member.getLeastSignificantBits());
+        }
+        return UUID.nameUUIDFromBytes(buffer.array());
+    }
+
+    /**
+     * Returns whether this is a group conversation, between more than two members
+     *
+     * @return {@code true} if this is a group conversation
+     */
+    public boolean isGroup() {
+        return members.size() > 2;
+    }
+
+    /**
+     * Returns whether a player is a member of the conversation
+     *
+     * @param player the player's UUID
+     * @return {@code true} if the player is a member
+     */
+    public boolean contains(@NotNull UUID player) {
+        return members.contains(player);
+    }
+
+    /**
+     * Get the members of the conversation other than a player
+     *
+     * @param player the player's UUID
+     * @return an unmodifiable view of the other members
+     */
+    @NotNull
+    public Set<UUID> getOthers(@NotNull UUID player) {
+        return new Others(members, player);
+    }
+
+    /**
+     * Get the conversation that remains after a member leaves
+     *
+     * @param player the UUID of the member leaving
+     * @return the conversation between the remaining members
+     */
+    @NotNull
+    public Conversation without(@NotNull UUID player) {
+        if (!members.contains(player)) {
+            return this;
+        }
+        final Set<UUID> remaining = new LinkedHashSet<>(members);
+        remaining.remove(player);
+        return of(remaining);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof Conversation other && id.equals(other.id);
+    }
+
+    @Override
+    public int hashCode() {
+        return id.hashCode();
+    }
+
+    // A view of a conversation's members, without one player
+    private static final class Others extends AbstractSet<UUID> {
+        private final Set<UUID> members;
+        private final UUID player;
+
+        private Others(@NotNull Set<UUID> members, @NotNull UUID player) {
+            this.members = members;
+            this.player = player;
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return !player.equals(o) && members.contains(o);
+        }
+
+        @Override
+        public int size() {
+            return members.contains(player) ? members.size() - 1 : members.size();
+        }
+
+        @NotNull
+        @Override
+        public Iterator<UUID> iterator() {
+            final Iterator<UUID> iterator = members.iterator();
+            return new Iterator<>() {
+                private UUID next = advance();
+
+                private UUID advance() {
+                    while (iterator.hasNext()) {
+                        final UUID member = iterator.next();
+                        if (!member.equals(player)) {
+                            return member;
+                        }
+                    }
+                    return null;
+                }
+
+                @Override
+                public boolean hasNext() {
+                    return next != null;
+                }
+
+                @Override
+                public UUID next() {
+                    if (next == null) {
+                        throw new NoSuchElementException();
+                    }
+                    final UUID current = next;
+                    next = advance();
+                    return current;
+                }
+            };
+        }
+    }
+
+}
@@ -0,0 +1,388 @@
+/*
+ * This file is part of HuskChat, licensed under the Apache License 2.0.
+ *
+ *  Copyright (c) William278 <will27528@gmail.com>
+ *  Copyright (c) contributors
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.william278.huskchat.user;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Stores the {@link UserCache} in an embedded H2 database, {@code user_cache.mv.db}, with one row per player.
+ * <p>
+ * Unlike the file storages, the cache starts empty: a player's row is loaded in the background when they join and
+ * evicted when they quit, so memory use follows the number of online players rather than every player who has ever
+ * joined. Changes are written through to the database as they are made. The database connection is only used from
+ * the storage's own thread, which also orders writes before later loads of the same player.
+ */
+public final class H2UserCacheStorage implements UserCacheStorage {
+
+    public static final String FILE_NAME = "user_cache.mv.db";
+
+    private static final String CREATE_TABLE = """
+            CREATE TABLE IF NOT EXISTS huskchat_users (
+                uuid UUID NOT NULL PRIMARY KEY,
+                channel VARCHAR(64),
+                local_spy VARCHAR(16),
+                social_spy VARCHAR(16)
+            )""";
+    private static final String SELECT_USER = "SELECT channel, local_spy, social_spy FROM huskchat_users WHERE uuid = ?";
+    private static final String COUNT_USERS = "SELECT COUNT(*) FROM huskchat_users";
+    private static final String MERGE_USER = "MERGE INTO huskchat_users (uuid, channel, local_spy, social_spy) "
+            + "KEY (uuid) VALUES (?, ?, ?, ?)";
+    private static final String MERGE_CHANNEL = "MERGE INTO huskchat_users (uuid, channel) KEY (uuid) VALUES (?, ?)";
+    private static final String MERGE_LOCAL_SPY = "MERGE INTO huskchat_users (uuid, local_spy) KEY (uuid) VALUES (?, ?)";
+    private static final String MERGE_SOCIAL_SPY = "MERGE INTO huskchat_users (uuid, social_spy) KEY (uuid) VALUES (?, ?)";
+    private static final int BATCH_SIZE = 1000;
+
+    private final Path directory;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        final Thread thread = new Thread(runnable, "HuskChat-UserCacheStorage");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Players whose data is loaded or loading
+    private final Map<UUID, CompletableFuture<Void>> loaded = new ConcurrentHashMap<>();
+
+    // Changes not yet written to the database; an empty spy color means the player stopped spying
+    private final Map<UUID, String> pendingChannels = new ConcurrentHashMap<>();
+    private final Map<UUID, Optional<UserCache.SpyColor>> pendingLocalSpies = new ConcurrentHashMap<>();
+    private final Map<UUID, Optional<UserCache.SpyColor>> pendingSocialSpies = new ConcurrentHashMap<>();
+    private final AtomicBoolean writeQueued = new AtomicBoolean();
+
+    // Only used from the executor thread
+    @Nullable
+    private Connection connection;
+
+    public H2UserCacheStorage(@NotNull Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Import the cache from {@code user_cache.journal} or {@code user_cache.yml}, if the database is empty. The
+     * imported file is renamed with a {@code .migrated} suffix afterwards, so that it is kept as a backup and only
+     * migrated once
+     *
+     * @return {@code true} if an existing cache was migrated
+     * @throws IOException if the existing cache could not be read, or the database could not be written
+     */
+    public boolean migrate() throws IOException {
+        final Path journalFile = directory.resolve(JournalUserCacheStorage.FILE_NAME);
+        final Path yamlFile = directory.resolve(YamlUserCacheStorage.FILE_NAME);
+        final Path source = Files.exists(journalFile) ? journalFile : Files.exists(yamlFile) ? yamlFile : null;
+        if (source == null) {
+            return false;
+        }
+        return call(() -> {
+            final Connection connection = connect();
+            try (Statement statement = connection.createStatement();
+                 ResultSet result = statement.executeQuery(COUNT_USERS)) {
+                result.next();
+                if (result.getLong(1) > 0) {
+                    return false;
+                }
+            }
+
+            final UserCache.Editor cache;
+            if (source == journalFile) {
+                final JournalUserCacheStorage journal = new JournalUserCacheStorage(directory);
+                cache = journal.load();
+                journal.close();
+            } else {
+                cache = new YamlUserCacheStorage(directory).load();
+            }
+            final Set<UUID> users = new LinkedHashSet<>(cache.playerChannels.keySet());
+            users.addAll(cache.localSpies.keySet());
+            users.addAll(cache.socialSpies.keySet());
+            try (PreparedStatement statement = connection.prepareStatement(MERGE_USER)) {
+                int batched = 0;
+                for (UUID uuid : users) {
+                    statement.setObject(1, uuid);
+                    statement.setString(2, cache.playerChannels.get(uuid));
+                    statement.setString(3, getName(cache.localSpies.get(uuid)));
+                    statement.setString(4, getName(cache.socialSpies.get(uuid)));
+                    statement.addBatch();
+                    if (++batched % BATCH_SIZE == 0) {
+                        statement.executeBatch();
+                    }
+                }
+                statement.executeBatch();
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            }
+            Files.move(source, source.resolveSibling(source.getFileName() + ".migrated"),
+                    StandardCopyOption.REPLACE_EXISTING);
+            return true;
+        });
+    }
+
+    @NotNull
+    @Override
+    public UserCache.Editor load() throws IOException {
+        call(this::connect);
+        return new UserCache.Editor();
+    }
+
+    @NotNull
+    @Override
+    public CompletableFuture<Void> loadUser(@NotNull UUID uuid, @NotNull UserCache.Editor cache) {
+        return loaded.computeIfAbsent(uuid, id -> {
+            final CompletableFuture<Void> future = new CompletableFuture<>();
+            try {
+                executor.execute(() -> {
+                    try {
+                        readUser(uuid, cache, future);
+                        future.complete(null);
+                    } catch (Throwable e) {
+                        loaded.remove(uuid, future);
+                        future.completeExceptionally(e);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                future.completeExceptionally(e);
+            }
+            return future;
+        });
+    }
+
+    // Read a player's row into the cache, keeping any changes made since they joined
+    private void readUser(@NotNull UUID uuid, @NotNull UserCache.Editor cache,
+                          @NotNull CompletableFuture<Void> future) throws SQLException {
+        String channel = null;
+        UserCache.SpyColor localSpy = null;
+        UserCache.SpyColor socialSpy = null;
+        try (PreparedStatement statement = connect().prepareStatement(SELECT_USER)) {
+            statement.setObject(1, uuid);
+            try (ResultSet result = statement.executeQuery()) {
+                if (result.next()) {
+                    channel = result.getString(1);
+                    localSpy = getColor(result.getString(2));
+                    socialSpy = getColor(result.getString(3));
+                }
+            }
+        }
+        channel = pendingChannels.getOrDefault(uuid, channel);
+        localSpy = pendingLocalSpies.getOrDefault(uuid, Optional.ofNullable(localSpy)).orElse(null);
+        socialSpy = pendingSocialSpies.getOrDefault(uuid, Optional.ofNullable(socialSpy)).orElse(null);
+
+        synchronized (cache) {
+            // The player quit while their data was loading
+            if (loaded.get(uuid) != future) {
+                return;
+            }
+            if (channel != null) {
+                cache.playerChannels.putIfAbsent(uuid, channel);
+            }
+            if (localSpy != null) {
+                cache.localSpies.putIfAbsent(uuid, localSpy);
+            }
+            if (socialSpy != null) {
+                cache.socialSpies.putIfAbsent(uuid, socialSpy);
+            }
+        }
+    }
+
+    @Override
+    public void unloadUser(@NotNull UUID uuid, @NotNull UserCache.Editor cache) {
+        synchronized (cache) {
+            loaded.remove(uuid);
+            cache.playerChannels.remove(uuid);
+            cache.localSpies.remove(uuid);
+            cache.socialSpies.remove(uuid);
+        }
+    }
+
+    @Override
+    public void onPlayerChannelSet(@NotNull UUID uuid, @NotNull String channelId) {
+        pendingChannels.put(uuid, channelId);
+        queueWrite();
+    }
+
+    @Override
+    public void onLocalSpySet(@NotNull UUID uuid, @Nullable UserCache.SpyColor color) {
+        pendingLocalSpies.put(uuid, Optional.ofNullable(color));
+        queueWrite();
+    }
+
+    @Override
+    public void onSocialSpySet(@NotNull UUID uuid, @Nullable UserCache.SpyColor color) {
+        pendingSocialSpies.put(uuid, Optional.ofNullable(color));
+        queueWrite();
+    }
+
+    // Write changes through to the database, coalescing changes made while a write is queued
+    private void queueWrite() {
+        if (!writeQueued.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                writeQueued.set(false);
+                try {
+                    writePending();
+                } catch (SQLException e) {
+                    // The changes stay pending, and the error is reported by the next save
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            writeQueued.set(false);
+        }
+    }
+
+    @Override
+    public void save(@NotNull UserCache cache) throws IOException {
+        call(() -> {
+            writePending();
+            return null;
+        });
+    }
+
+    private void writePending() throws SQLException {
+        final Map<UUID, String> channels = drain(pendingChannels);
+        final Map<UUID, Optional<UserCache.SpyColor>> localSpies = drain(pendingLocalSpies);
+        final Map<UUID, Optional<UserCache.SpyColor>> socialSpies = drain(pendingSocialSpies);
+        if (channels.isEmpty() && localSpies.isEmpty() && socialSpies.isEmpty()) {
+            return;
+        }
+
+        final Connection connection = connect();
+        try {
+            try (PreparedStatement statement = connection.prepareStatement(MERGE_CHANNEL)) {
+                for (Map.Entry<UUID, String> entry : channels.entrySet()) {
+                    statement.setObject(1, entry.getKey());
+                    statement.setString(2, entry.getValue());
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+            }
+            writeSpies(connection, MERGE_LOCAL_SPY, localSpies);
+            writeSpies(connection, MERGE_SOCIAL_SPY, socialSpies);
+            connection.commit();
+        } catch (SQLException e) {
+            connection.rollback();
+            // Restore the changes, unless they have been superseded meanwhile
+            channels.forEach(pendingChannels::putIfAbsent);
+            localSpies.forEach(pendingLocalSpies::putIfAbsent);
+            socialSpies.forEach(pendingSocialSpies::putIfAbsent);
+            throw e;
+        }
+    }
+
+    private static void writeSpies(@NotNull Connection connection, @NotNull String sql,
+                                   @NotNull Map<UUID, Optional<UserCache.SpyColor>> spies) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            for (Map.Entry<UUID, Optional<UserCache.SpyColor>> entry : spies.entrySet()) {
+                statement.setObject(1, entry.getKey());
+                statement.setString(2, getName(entry.getValue().orElse(null)));
+                statement.addBatch();
+            }
+            statement.executeBatch();
+        }
+    }
+
+    // Remove and return the pending changes, leaving any made concurrently for the next write
+    @NotNull
+    private static <V> Map<UUID, V> drain(@NotNull Map<UUID, V> pending) {
+        final Map<UUID, V> drained = new LinkedHashMap<>();
+        for (Map.Entry<UUID, V> entry : pending.entrySet()) {
+            if (pending.remove(entry.getKey(), entry.getValue())) {
+                drained.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return drained;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            call(() -> {
+                if (connection != null) {
+                    connection.close();
+                    connection = null;
+                }
+                return null;
+            });
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Get the number of players whose data is loaded or loading
+     *
+     * @return the number of loaded players
+     */
+    public int getLoadedUsers() {
+        return loaded.size();
+    }
+
+    // Open the database, creating the table if needed. Only called from the executor thread
+    @NotNull
+    private Connection connect() throws SQLException {
+        if (connection != null) {
+            return connection;
+        }
+        final String url = "jdbc:h2:" + directory.resolve("user_cache").toAbsolutePath();
+        final Connection connection = new org.h2.Driver().connect(url, new Properties());
+        try (Statement statement = connection.createStatement()) {
+            statement.execute(CREATE_TABLE);
+        }
+        connection.setAutoCommit(false);
+        return this.connection = connection;
+    }
+
+    // Run a task on the executor thread and wait for it
+    private <T> T call(@NotNull Callable<T> task) throws IOException {
+        try {
+            return executor.submit(task).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while accessing the user cache database", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException io) {
+                throw io;
+            }
+            throw new IOException("Failed to access the user cache database", e.getCause());
+        } catch (RejectedExecutionException e) {
+            throw new IOException("The user cache database has been closed", e);
+        }
+    }
+
+    @Nullable
+    private static String getName(@Nullable UserCache.SpyColor color) {
+        return color == null ? null : color.name();
+    }
+
+    @Nullable
+    private static UserCache.SpyColor getColor(@Nullable String name) {
+        return name == null ? null : UserCache.SpyColor.getColor(name).orElse(null);
+    }
+
+}
@@ -0,0 +1,408 @@
+/*
+ * This file is part of HuskChat, licensed under the Apache License 2.0.
+ *
+ *  Copyright (c) William278 <will27528@gmail.com>
+ *  Copyright (c) contributors
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.william278.huskchat.user;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.UnaryOperator;
+
+/**
+ * Stores the {@link UserCache} in {@code user_cache.journal}, an append-only binary log of changes.
+ * <p>
+ * Each record is a 16-byte player UUID, a one-byte opcode and the opcode's payload. Saves append the records made
+ * since the last save, so their cost depends on how much changed rather than on the size of the cache. The journal is
+ * replayed on load; a record left incomplete by a crash mid-write is discarded. Records stay pending until they
+ * have been written and forced to disk, and a failed save truncates whatever part of them it wrote. Once the
+ * journal holds many more records than the cache has entries, it is compacted into a snapshot with one record per
+ * entry.
+ */
+public final class JournalUserCacheStorage implements UserCacheStorage {
+
+    public static final String FILE_NAME = "user_cache.journal";
+
+    // "HCJ1", identifying the file format and version
+    private static final int MAGIC = 0x48434A31;
+    private static final int HEADER_BYTES = Integer.BYTES;
+    private static final int RECORD_HEADER_BYTES = Long.BYTES * 2 + Byte.BYTES;
+    private static final int MIN_COMPACTION_RECORDS = 10_000;
+
+    private static final byte SET_CHANNEL = 1;
+    private static final byte SET_LOCAL_SPY = 2;
+    private static final byte REMOVE_LOCAL_SPY = 3;
+    private static final byte SET_SOCIAL_SPY = 4;
+    private static final byte REMOVE_SOCIAL_SPY = 5;
+
+    private static final UserCache.SpyColor[] SPY_COLORS = UserCache.SpyColor.values();
+
+    private final Path file;
+    private final UnaryOperator<FileChannel> channels;
+    private final Object saveLock = new Object();
+
+    // Records made since the last save, guarded by this
+    private final ByteArrayOutputStream pending = new ByteArrayOutputStream(256);
+    private final DataOutputStream pendingOutput = new DataOutputStream(pending);
+
+    private long pendingRecords;
+
+    @Nullable
+    private FileChannel channel;
+    private volatile long records;
+    private volatile long truncatedBytes;
+
+    public JournalUserCacheStorage(@NotNull Path directory) {
+        this(directory, UnaryOperator.identity());
+    }
+
+    // Wraps each channel the journal is written through, so that tests can make writes fail
+    JournalUserCacheStorage(@NotNull Path directory, @NotNull UnaryOperator<FileChannel> channels) {
+        this.file = directory.resolve(FILE_NAME);
+        this.channels = channels;
+    }
+
+    /**
+     * Convert an existing {@code user_cache.yml} into a journal, if there is no journal yet. The YAML file is
+     * renamed to {@code user_cache.yml.migrated} afterwards, so that it is kept as a backup and only migrated once
+     *
+     * @param yamlDirectory the directory containing {@code user_cache.yml}
+     * @return {@code true} if the YAML cache was migrated
+     * @throws IOException if the YAML cache could not be read, or the journal could not be written
+     */
+    public boolean migrate(@NotNull Path yamlDirectory) throws IOException {
+        final Path yamlFile = yamlDirectory.resolve(YamlUserCacheStorage.FILE_NAME);
+        if (Files.exists(file) || !Files.exists(yamlFile)) {
+            return false;
+        }
+        writeSnapshot(new YamlUserCacheStorage(yamlDirectory).load());
+        Files.move(yamlFile, yamlFile.resolveSibling(YamlUserCacheStorage.FILE_NAME + ".migrated"),
+                StandardCopyOption.REPLACE_EXISTING);
+        return true;
+    }
+
+    @NotNull
+    @Override
+    public synchronized UserCache.Editor load() throws IOException {
+        close();
+        Files.createDirectories(file.getParent());
+        final FileChannel channel = channels.apply(FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE));
+        try {
+            final UserCache.Editor cache = new UserCache.Editor();
+            final long size = channel.size();
+            if (size < HEADER_BYTES) {
+                // A new journal, or one that was never fully created
+                channel.truncate(0);
+                channel.write(ByteBuffer.allocate(HEADER_BYTES).putInt(0, MAGIC));
+                this.records = 0;
+                this.truncatedBytes = size;
+            } else {
+                if (size > Integer.MAX_VALUE) {
+                    throw new IOException("User cache journal is too large to replay (" + size + " bytes)");
+                }
+                final ByteBuffer buffer = ByteBuffer.allocate((int) size);
+                while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                    // Read the whole journal
+                }
+                buffer.flip();
+                if (buffer.getInt() != MAGIC) {
+                    throw new IOException(file + " is not a user cache journal");
+                }
+                final long end = replay(buffer, cache);
+                this.truncatedBytes = size - end;
+                if (truncatedBytes > 0) {
+                    channel.truncate(end);
+                }
+            }
+            channel.position(channel.size());
+            this.channel = channel;
+            this.pending.reset();
+            this.pendingRecords = 0;
+            return cache;
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    // Apply every complete record to the cache, returning the offset of the end of the last one
+    private long replay(@NotNull ByteBuffer buffer, @NotNull UserCache.Editor cache) {
+        long count = 0;
+        int end = buffer.position();
+        replay:
+        while (buffer.remaining() >= RECORD_HEADER_BYTES) {
+            final UUID uuid = new UUID(buffer.getLong(), buffer.getLong());
+            final byte opcode = buffer.get();
+            switch (opcode) {
+                case SET_CHANNEL -> {
+                    if (buffer.remaining() < Short.BYTES) {
+                        break replay;
+                    }
+                    final int length = Short.toUnsignedInt(buffer.getShort());
+                    if (buffer.remaining() < length) {
+                        break replay;
+                    }
+                    final String channelId = new String(buffer.array(), buffer.position(), length,
+                            StandardCharsets.UTF_8);
+                    buffer.position(buffer.position() + length);
+                    cache.playerChannels.put(uuid, channelId);
+                }
+                case SET_LOCAL_SPY, SET_SOCIAL_SPY -> {
+                    if (buffer.remaining() < Byte.BYTES) {
+                        break replay;
+                    }
+                    final int color = Byte.toUnsignedInt(buffer.get());
+                    if (color >= SPY_COLORS.length) {
+                        break replay;
+                    }
+                    (opcode == SET_LOCAL_SPY ? cache.localSpies : cache.socialSpies).put(uuid, SPY_COLORS[color]);
+                }
+                case REMOVE_LOCAL_SPY -> cache.localSpies.remove(uuid);
+                case REMOVE_SOCIAL_SPY -> cache.socialSpies.remove(uuid);
+                default -> {
+                    // An unknown opcode can only come from a damaged write
+                    break replay;
+                }
+            }
+            end = buffer.position();
+            count++;
+        }
+        this.records = count;
+        return end;
+    }
+
+    @Override
+    public void onPlayerChannelSet(@NotNull UUID uuid, @NotNull String channelId) {
+        synchronized (this) {
+            writeChannel(pendingOutput, uuid, channelId);
+            pendingRecords++;
+        }
+    }
+
+    @Override
+    public void onLocalSpySet(@NotNull UUID uuid, @Nullable UserCache.SpyColor color) {
+        synchronized (this) {
+            writeSpy(pendingOutput, uuid, color == null ? REMOVE_LOCAL_SPY : SET_LOCAL_SPY, color);
+            pendingRecords++;
+        }
+    }
+
+    @Override
+    public void onSocialSpySet(@NotNull UUID uuid, @Nullable UserCache.SpyColor color) {
+        synchronized (this) {
+            writeSpy(pendingOutput, uuid, color == null ? REMOVE_SOCIAL_SPY : SET_SOCIAL_SPY, color);
+            pendingRecords++;
+        }
+    }
+
+    @Override
+    public void save(@NotNull UserCache cache) throws IOException {
+        synchronized (saveLock) {
+            final byte[] changes;
+            final long changeRecords;
+            final FileChannel channel;
+            synchronized (this) {
+                if (this.channel == null) {
+                    throw new IOException("The user cache journal has not been loaded");
+                }
+                changes = pending.toByteArray();
+                changeRecords = pendingRecords;
+                channel = this.channel;
+            }
+            if (changes.length > 0) {
+                append(channel, changes);
+
+                // Only drop the records once they are on disk, keeping any made while they were written
+                synchronized (this) {
+                    if (pending.size() >= changes.length) {
+                        final byte[] all = pending.toByteArray();
+                        pending.reset();
+                        pending.write(all, changes.length, all.length - changes.length);
+                        pendingRecords -= changeRecords;
+                    }
+                }
+                this.records += changeRecords;
+            }
+
+            final long entries;
+            synchronized (cache) {
+                entries = (long) cache.playerChannels.size() + cache.localSpies.size() + cache.socialSpies.size();
+            }
+            if (records > Math.max(MIN_COMPACTION_RECORDS, entries * 2)) {
+                compact(cache);
+            }
+        }
+    }
+
+    // Append records to the journal and force them to disk, removing any part written if that fails
+    private static void append(@NotNull FileChannel channel, @NotNull byte[] changes) throws IOException {
+        final long start = channel.position();
+        try {
+            final ByteBuffer buffer = ByteBuffer.wrap(changes);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+        } catch (IOException e) {
+            // A torn record would stop replay, hiding every record appended after it
+            try {
+                channel.position(start);
+                channel.truncate(start);
+            } catch (IOException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Rewrite the journal as a snapshot of the cache, with one record per entry
+     *
+     * @param cache the user cache
+     * @throws IOException if the snapshot could not be written
+     */
+    void compact(@NotNull UserCache cache) throws IOException {
+        // Copy the cache and drop pending records together, as the copy already includes their changes
+        final UserCache.Editor copy = new UserCache.Editor();
+        synchronized (cache) {
+            synchronized (this) {
+                copy.playerChannels.putAll(cache.playerChannels);
+                copy.localSpies.putAll(cache.localSpies);
+                copy.socialSpies.putAll(cache.socialSpies);
+                pending.reset();
+                pendingRecords = 0;
+            }
+        }
+        writeSnapshot(copy);
+
+        final FileChannel reopened = channels.apply(
+                FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE));
+        reopened.position(reopened.size());
+        final FileChannel previous;
+        synchronized (this) {
+            previous = this.channel;
+            this.channel = reopened;
+        }
+        if (previous != null) {
+            previous.close();
+        }
+    }
+
+    // Write a snapshot of the cache to a temporary file, then move it over the journal
+    private void writeSnapshot(@NotNull UserCache cache) throws IOException {
+        final Path temp = file.resolveSibling(FILE_NAME + ".tmp");
+        Files.createDirectories(file.getParent());
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            final DataOutputStream output = new DataOutputStream(
+                    new BufferedOutputStream(Channels.newOutputStream(channel), 65536)
+            );
+            output.writeInt(MAGIC);
+            for (Map.Entry<UUID, String> entry : cache.playerChannels.entrySet()) {
+                writeChannel(output, entry.getKey(), entry.getValue());
+            }
+            for (Map.Entry<UUID, UserCache.SpyColor> entry : cache.localSpies.entrySet()) {
+                writeSpy(output, entry.getKey(), SET_LOCAL_SPY, entry.getValue());
+            }
+            for (Map.Entry<UUID, UserCache.SpyColor> entry : cache.socialSpies.entrySet()) {
+                writeSpy(output, entry.getKey(), SET_SOCIAL_SPY, entry.getValue());
+            }
+            output.flush();
+            channel.force(true);
+        }
+        try {
+            Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+        this.records = (long) cache.playerChannels.size() + cache.localSpies.size() + cache.socialSpies.size();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    /**
+     * Get the number of records in the journal, including those replaced by later records
+     *
+     * @return the number of records
+     */
+    public long getRecords() {
+        return records;
+    }
+
+    /**
+     * Get the number of bytes discarded from the end of the journal when it was last loaded, because the last record
+     * was left incomplete by a crash or was otherwise unreadable
+     *
+     * @return the number of bytes discarded
+     */
+    public long getTruncatedBytes() {
+        return truncatedBytes;
+    }
+
+    private static void writeChannel(@NotNull DataOutput output, @NotNull UUID uuid, @NotNull String channelId) {
+        final byte[] encoded = channelId.getBytes(StandardCharsets.UTF_8);
+        if (encoded.length > 0xFFFF) {
+            throw new IllegalArgumentException("Channel ID is too long to store: " + channelId);
+        }
+        try {
+            writeHeader(output, uuid, SET_CHANNEL);
+            output.writeShort(encoded.length);
+            output.write(encoded);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void writeSpy(@NotNull DataOutput output, @NotNull UUID uuid, byte opcode,
+                                 @Nullable UserCache.SpyColor color) {
+        try {
+            writeHeader(output, uuid, opcode);
+            if (color != null) {
+                output.writeByte(color.ordinal());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void writeHeader(@NotNull DataOutput output, @NotNull UUID uuid, byte opcode) throws IOException {
+        output.writeLong(uuid.getMostSignificantBits());
+        output.writeLong(uuid.getLeastSignificantBits());
+        output.writeByte(opcode);
+    }
+
+}
@@ -0,0 +1,121 @@
+/*
+ * This file is part of HuskChat, licensed under the Apache License 2.0.
+ *
+ *  Copyright (c) William278 <will27528@gmail.com>
+ *  Copyright (c) contributors
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.william278.huskchat.user;
+
+import lombok.Getter;
+import net.kyori.adventure.audience.Audience;
+import net.william278.huskchat.HuskChat;
+import net.william278.huskchat.network.Envelope;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Map;
+
+/**
+ * A player connected to another proxy on the network.
+ * <p>
+ * Messages to remote users are not shown by this proxy; they are published to the network for the player's own
+ * proxy to show. Permissions can only be checked on the player's own proxy, so they are assumed to be their defaults.
+ * Placeholders such as prefixes are also resolved by the player's own proxy, and are sent along with their messages.
+ */
+@Getter
+public class RemoteUser extends OnlineUser {
+
+    /**
+     * The name of the proxy the player is connected to
+     */
+    @NotNull
+    private final String proxy;
+
+    @NotNull
+    private final String serverName;
+
+    /**
+     * The player's placeholder values (e.g. {@code %prefix%}), as resolved by their own proxy
+     */
+    @NotNull
+    private final Map<String, String> placeholders;
+
+    private RemoteUser(@NotNull Envelope.Player player, @NotNull String proxy,
+                       @NotNull Map<String, String> placeholders, @NotNull HuskChat plugin) {
+        super(player.name(), player.uuid(), plugin);
+        this.proxy = proxy;
+        this.serverName = player.server();
+        this.placeholders = placeholders;
+    }
+
+    /**
+     * Adapt a player on another proxy into a cross-platform one
+     *
+     * @param player the player
+     * @param proxy  the name of the proxy the player is connected to
+     * @param plugin the implementing HuskChat plugin
+     * @return the remote user
+     */
+    @NotNull
+    public static RemoteUser of(@NotNull Envelope.Player player, @NotNull String proxy, @NotNull HuskChat plugin) {
+        return new RemoteUser(player, proxy, Map.of(), plugin);
+    }
+
+    /**
+     * Adapt the sender of a message from another proxy into a cross-platform one
+     *
+     * @param player       the player
+     * @param proxy        the name of the proxy the player is connected to
+     * @param placeholders the player's placeholder values, as resolved by their own proxy
+     * @param plugin       the implementing HuskChat plugin
+     * @return the remote user
+     */
+    @NotNull
+    public static RemoteUser of(@NotNull Envelope.Player player, @NotNull String proxy,
+                                @NotNull Map<String, String> placeholders, @NotNull HuskChat plugin) {
+        return new RemoteUser(player, proxy, placeholders, plugin);
+    }
+
+    @Override
+    public int getPing() {
+        return 0;
+    }
+
+    @Override
+    public int getPlayersOnServer() {
+        int players = plugin.getChatNetwork()
+                .map(network -> network.getDirectory().getPlayersOnServer(serverName))
+                .orElse(0);
+        for (OnlineUser user : plugin.getOnlinePlayers()) {
+            if (user.getServerName().equals(serverName)) {
+                players++;
+            }
+        }
+        return players;
+    }
+
+    @Override
+    public boolean hasPermission(@Nullable String permission, boolean allowByDefault) {
+        return allowByDefault;
+    }
+
+    @NotNull
+    @Override
+    public Audience getAudience() {
+        return Audience.empty();
+    }
+
+}
@@ -0,0 +1,237 @@
+/*
+ * This file is part of HuskChat, licensed under the Apache License 2.0.
+ *
+ *  Copyright (c) William278 <will27528@gmail.com>
+ *  Copyright (c) contributors
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.william278.huskchat.user;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.*;
+import java.util.function.LongSupplier;
+
+/**
+ * Tracks who each player can {@code /reply} to: the other members of the last private or group conversation they
+ * took part in.
+ * <p>
+ * All members of a conversation share one {@link Conversation}, which is kept while the same members carry on
+ * talking, and each member's reply targets are a view of its members without themselves. Entries expire once
+ * unused for the configured time, are evicted least-recently-used first once there are too many, and are dropped a
+ * grace period after the player quits, unless they rejoin first.
+ */
+public final class ReplyTargetStore {
+
+    private static final long SWEEP_INTERVAL_MILLIS = 60_000;
+
+    // Access-ordered, so the least recently used entry is first. Guarded by this
+    private final LinkedHashMap<UUID, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final LongSupplier clock;
+    private long expireAfterMillis = 3_600_000;
+    private int maxEntries = 10_000;
+    private long quitGraceMillis = 300_000;
+    private long lastSweep;
+
+    public ReplyTargetStore() {
+        this(System::currentTimeMillis);
+    }
+
+    ReplyTargetStore(@NotNull LongSupplier clock) {
+        this.clock = clock;
+        this.lastSweep = clock.getAsLong();
+    }
+
+    /**
+     * Set how long reply targets are kept
+     *
+     * @param expireAfterMillis how long an entry is kept after it was last used, in milliseconds
+     * @param maxEntries        the most players to keep reply targets for
+     * @param quitGraceMillis   how long an entry is kept after its player quits, in milliseconds
+     */
+    public synchronized void configure(long expireAfterMillis, int maxEntries, long quitGraceMillis) {
+        this.expireAfterMillis = Math.max(0, expireAfterMillis);
+        this.maxEntries = Math.max(1, maxEntries);
+        this.quitGraceMillis = Math.max(0, quitGraceMillis);
+        trim();
+    }
+
+    /**
+     * Record a conversation, making each member's reply targets the other members
+     *
+     * @param members the members of the conversation, with the sender first
+     * @return the conversation, which is the same instance as before if the members are already talking
+     */
+    @NotNull
+    public synchronized Conversation setConversation(@NotNull Collection<UUID> members) {
+        final long now = clock.getAsLong();
+        Conversation conversation = Conversation.of(members);
+
+        // Keep the existing conversation if the same members are still talking
+        final Entry current = entries.get(conversation.getMembers().iterator().next());
+        if (current != null && !current.isExpired(now) && current.conversation.equals(conversation)) {
+            conversation = current.conversation;
+        }
+        for (UUID member : conversation.getMembers()) {
+            final Entry entry = entries.get(member);
+            if (entry != null && entry.conversation == conversation) {
+                entry.accessedAt = now;
+                entry.quitAt = -1;
+                continue;
+            }
+            entries.put(member, new Entry(conversation, now));
+        }
+        sweep(now);
+        trim();
+        return conversation;
+    }
+
+    /**
+     * Get the conversation a player last took part in
+     *
+     * @param player the player's UUID
+     * @return the conversation, if the player has one that hasn't expired
+     */
+    @NotNull
+    public synchronized Optional<Conversation> getConversation(@NotNull UUID player) {
+        final long now = clock.getAsLong();
+        final Entry entry = entries.get(player);
+        if (entry == null || entry.conversation == Conversation.EMPTY) {
+            return Optional.empty();
+        }
+        if (entry.isExpired(now)) {
+            entries.remove(player);
+            return Optional.empty();
+        }
+        entry.accessedAt = now;
+        return Optional.of(entry.conversation);
+    }
+
+    /**
+     * Get who a player can reply to
+     *
+     * @param player the player's UUID
+     * @return an unmodifiable view of the player's reply targets, if they have any
+     */
+    @NotNull
+    public synchronized Optional<Set<UUID>> getTargets(@NotNull UUID player) {
+        final long now = clock.getAsLong();
+        final Entry entry = entries.get(player);
+        if (entry == null) {
+            return Optional.empty();
+        }
+        if (entry.isExpired(now)) {
+            entries.remove(player);
+            return Optional.empty();
+        }
+        entry.accessedAt = now;
+        return Optional.of(entry.conversation.getOthers(player));
+    }
+
+    /**
+     * Remove a player from their conversation, leaving them with nobody to reply to
+     *
+     * @param player the player's UUID
+     */
+    public synchronized void leave(@NotNull UUID player) {
+        final Entry entry = entries.get(player);
+        if (entry == null) {
+            return;
+        }
+        final Conversation left = entry.conversation;
+        entry.conversation = Conversation.EMPTY;
+
+        // The remaining members share a new conversation without the player
+        final Conversation conversation = left.without(player);
+        for (UUID member : conversation.getMembers()) {
+            final Entry memberEntry = entries.get(member);
+            if (memberEntry != null && memberEntry.conversation == left) {
+                memberEntry.conversation = conversation;
+            }
+        }
+    }
+
+    /**
+     * Start a player's quit grace period, after which their reply targets are dropped
+     *
+     * @param player the player's UUID
+     */
+    public synchronized void onQuit(@NotNull UUID player) {
+        final Entry entry = entries.get(player);
+        if (entry == null) {
+            return;
+        }
+        if (quitGraceMillis == 0) {
+            entries.remove(player);
+            return;
+        }
+        entry.quitAt = clock.getAsLong();
+    }
+
+    /**
+     * Cancel a player's quit grace period, if they rejoin within it
+     *
+     * @param player the player's UUID
+     */
+    public synchronized void onJoin(@NotNull UUID player) {
+        final Entry entry = entries.get(player);
+        if (entry != null) {
+            entry.quitAt = -1;
+        }
+    }
+
+    /**
+     * Get the number of players with reply targets, including any that have expired but not yet been removed
+     *
+     * @return the number of entries
+     */
+    public synchronized int getSize() {
+        return entries.size();
+    }
+
+    // Remove expired entries, at most once per sweep interval
+    private void sweep(long now) {
+        if (now - lastSweep < SWEEP_INTERVAL_MILLIS) {
+            return;
+        }
+        lastSweep = now;
+        entries.values().removeIf(entry -> entry.isExpired(now));
+    }
+
+    // Evict the least recently used entries while there are too many
+    private void trim() {
+        final Iterator<Entry> iterator = entries.values().iterator();
+        while (entries.size() > maxEntries && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+        }
+    }
+
+    private final class Entry {
+        private Conversation conversation;
+        private long accessedAt;
+        private long quitAt = -1;
+
+        private Entry(@NotNull Conversation conversation, long accessedAt) {
+            this.conversation = conversation;
+            this.accessedAt = accessedAt;
+        }
+
+        private boolean isExpired(long now) {
+            return now - accessedAt >= expireAfterMillis || (quitAt >= 0 && now - quitAt >= quitGraceMillis);
+        }
+    }
+
+}
@@ -0,0 +1,172 @@
+/*
+ * This file is part of HuskChat, licensed under the Apache License 2.0.
+ *
+ *  Copyright (c) William278 <will27528@gmail.com>
+ *  Copyright (c) contributors
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.william278.huskchat.user;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * An index of the social and local spies who are online, so that finding the spies for a message only visits
+ * online spies.
+ * <p>
+ * It is kept up to date as players join, switch server and quit, and as the {@link UserCache.Editor} changes spy
+ * settings. Local spies are bucketed by server, so spies on the message's own server are skipped without being
+ * visited. Reads don't lock; changes are serialized.
+ */
+public final class SpyIndex {
+
+    // Where each online player is
+    private final Map<UUID, Presence> online = new ConcurrentHashMap<>();
+    private final Map<UUID, Spy> socialSpies = new ConcurrentHashMap<>();
+    private final Map<String, Map<UUID, Spy>> localSpies = new ConcurrentHashMap<>();
+
+    /**
+     * Track a player who has joined or switched server, indexing them if they are spying
+     *
+     * @param user   the player
+     * @param server the server the player is on
+     * @param cache  the user cache, holding the player's spy settings
+     */
+    public synchronized void track(@NotNull OnlineUser user, @NotNull String server, @NotNull UserCache cache) {
+        final UUID uuid = user.getUuid();
+        final Presence previous = online.put(uuid, new Presence(user, server));
+        if (previous != null) {
+            removeLocalSpy(uuid, previous.server());
+        }
+        cache.getSocialSpyColor(uuid).ifPresentOrElse(
+                color -> socialSpies.put(uuid, new Spy(user, color)),
+                () -> socialSpies.remove(uuid)
+        );
+        cache.getLocalSpyColor(uuid).ifPresent(color -> localSpies
+                .computeIfAbsent(server, s -> new ConcurrentHashMap<>())
+                .put(uuid, new Spy(user, color)));
+    }
+
+    /**
+     * Stop tracking a player who has quit
+     *
+     * @param uuid the player's UUID
+     */
+    public synchronized void remove(@NotNull UUID uuid) {
+        final Presence presence = online.remove(uuid);
+        socialSpies.remove(uuid);
+        if (presence != null) {
+            removeLocalSpy(uuid, presence.server());
+        }
+    }
+
+    /**
+     * Re-index every online player from a new user cache, such as after a reload
+     *
+     * @param cache the user cache
+     */
+    public synchronized void reindex(@NotNull UserCache cache) {
+        socialSpies.clear();
+        localSpies.clear();
+        for (Presence presence : online.values()) {
+            track(presence.user(), presence.server(), cache);
+        }
+    }
+
+    /**
+     * Called when a player's social spy color is set or removed
+     *
+     * @param uuid  the player's UUID
+     * @param color the spy color, or {@code null} if the player stopped social spying
+     */
+    public synchronized void onSocialSpySet(@NotNull UUID uuid, @Nullable UserCache.SpyColor color) {
+        final Presence presence = online.get(uuid);
+        if (presence == null || color == null) {
+            socialSpies.remove(uuid);
+            return;
+        }
+        socialSpies.put(uuid, new Spy(presence.user(), color));
+    }
+
+    /**
+     * Called when a player's local spy color is set or removed
+     *
+     * @param uuid  the player's UUID
+     * @param color the spy color, or {@code null} if the player stopped local spying
+     */
+    public synchronized void onLocalSpySet(@NotNull UUID uuid, @Nullable UserCache.SpyColor color) {
+        final Presence presence = online.get(uuid);
+        if (presence == null) {
+            return;
+        }
+        if (color == null) {
+            removeLocalSpy(uuid, presence.server());
+            return;
+        }
+        localSpies.computeIfAbsent(presence.server(), s -> new ConcurrentHashMap<>())
+                .put(uuid, new Spy(presence.user(), color));
+    }
+
+    /**
+     * Get the online social spies
+     *
+     * @return an unmodifiable view of the online social spies
+     */
+    @NotNull
+    public Collection<Spy> getSocialSpies() {
+        return Collections.unmodifiableCollection(socialSpies.values());
+    }
+
+    /**
+     * Visit the online local spies who are not on a server, and so can spy on its local chat
+     *
+     * @param server the server the local message was sent on
+     * @param action the action to run for each spy
+     */
+    public void forEachLocalSpy(@NotNull String server, @NotNull Consumer<Spy> action) {
+        for (Map.Entry<String, Map<UUID, Spy>> bucket : localSpies.entrySet()) {
+            if (!bucket.getKey().equals(server)) {
+                bucket.getValue().values().forEach(action);
+            }
+        }
+    }
+
+    private void removeLocalSpy(@NotNull UUID uuid, @NotNull String server) {
+        final Map<UUID, Spy> bucket = localSpies.get(server);
+        if (bucket != null) {
+            bucket.remove(uuid);
+        }
+    }
+
+    /**
+     * An online spy
+     *
+     * @param user  the spy
+     * @param color the color the spy sees spied messages in
+     */
+    public record Spy(@NotNull OnlineUser user, @NotNull UserCache.SpyColor color) {
+    }
+
+    private record Presence(@NotNull OnlineUser user, @NotNull String server) {
+    }
+
+}
@@ -24,55 +24,32 @@ import lombok.NoArgsConstructor;
 import net.william278.huskchat.HuskChat;
 import net.william278.huskchat.channel.Channel;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
- * A cache for persisting player data
+ * A cache for persisting player data.
+ * <p>
+ * The cache is read and edited from many threads at once, so its maps are concurrent.
  */
 @Configuration
 @NoArgsConstructor
 public class UserCache {
 
-    // Non-persisted data
-    protected transient final Map<UUID, Set<UUID>> lastMessagePlayers = new HashMap<>();
-
-    // Persisted data
-    protected LinkedHashMap<UUID, String> playerChannels = new LinkedHashMap<>();
-    protected LinkedHashMap<UUID, SpyColor> localSpies = new LinkedHashMap<>();
-    protected LinkedHashMap<UUID, SpyColor> socialSpies = new LinkedHashMap<>();
+    protected Map<UUID, String> playerChannels = new ConcurrentHashMap<>();
+    protected Map<UUID, SpyColor> localSpies = new ConcurrentHashMap<>();
+    protected Map<UUID, SpyColor> socialSpies = new ConcurrentHashMap<>();
 
     @NotNull
     public Optional<String> getPlayerChannel(@NotNull UUID uuid) {
         return Optional.ofNullable(playerChannels.get(uuid));
     }
 
-    public Optional<Set<UUID>> getLastMessengers(@NotNull UUID uuid) {
-        if (lastMessagePlayers.containsKey(uuid)) {
-            return Optional.of(lastMessagePlayers.get(uuid));
-        }
-        return Optional.empty();
-    }
-
     @NotNull
-    public Map<OnlineUser, SpyColor> getSocialSpies(@NotNull List<OnlineUser> recipients, @NotNull HuskChat plugin) {
-        final Map<OnlineUser, SpyColor> receivers = new LinkedHashMap<>();
-
-        calculateSpies:
-        for (UUID player : socialSpies.keySet()) {
-            final SpyColor color = socialSpies.get(player);
-            final Optional<OnlineUser> spy = plugin.getPlayer(player);
-            if (spy.isEmpty()) {
-                continue;
-            }
-            for (OnlineUser messageRecipient : recipients) {
-                if (player.equals(messageRecipient.getUuid())) {
-                    continue calculateSpies;
-                }
-            }
-            receivers.put(spy.get(), color);
-        }
-        return receivers;
+    public Optional<SpyColor> getSocialSpyColor(@NotNull UUID uuid) {
+        return Optional.ofNullable(socialSpies.get(uuid));
     }
 
     public boolean isSocialSpying(@NotNull OnlineUser player) {
@@ -80,20 +57,8 @@ public class UserCache {
     }
 
     @NotNull
-    public Map<OnlineUser, SpyColor> getLocalSpies(@NotNull String server, @NotNull HuskChat plugin) {
-        final Map<OnlineUser, SpyColor> receivers = new LinkedHashMap<>();
-        for (UUID player : localSpies.keySet()) {
-            final SpyColor color = localSpies.get(player);
-            final Optional<OnlineUser> spy = plugin.getPlayer(player);
-            if (spy.isEmpty()) {
-                continue;
-            }
-            if (spy.get().getServerName().equals(server)) {
-                continue;
-            }
-            receivers.put(spy.get(), color);
-        }
-        return receivers;
+    public Optional<SpyColor> getLocalSpyColor(@NotNull UUID uuid) {
+        return Optional.ofNullable(localSpies.get(uuid));
     }
 
     public boolean isLocalSpying(OnlineUser player) {
@@ -105,16 +70,27 @@ public class UserCache {
      */
     public static class Editor extends UserCache {
 
-        public void setLastMessenger(@NotNull UUID playerToSet, @NotNull List<OnlineUser> lastMessengers) {
-            final HashSet<UUID> uuidPlayers = new HashSet<>();
-            for (OnlineUser player : lastMessengers) {
-                uuidPlayers.add(player.getUuid());
-            }
-            lastMessagePlayers.put(playerToSet, uuidPlayers);
+        // The storage to report changes to
+        @Nullable
+        private transient UserCacheStorage storage;
+
+        // The index of online spies to report spy changes to
+        @Nullable
+        private transient SpyIndex spyIndex;
+
+        public void setStorage(@Nullable UserCacheStorage storage) {
+            this.storage = storage;
+        }
+
+        public void setSpyIndex(@Nullable SpyIndex spyIndex) {
+            this.spyIndex = spyIndex;
         }
 
         public void setPlayerChannel(@NotNull UUID uuid, @NotNull String channelId) {
             playerChannels.put(uuid, channelId);
+            if (storage != null) {
+                storage.onPlayerChannelSet(uuid, channelId);
+            }
         }
 
         /**
@@ -140,27 +116,49 @@ public class UserCache {
         }
 
         public void setSocialSpy(@NotNull User user) {
-            socialSpies.put(user.getUuid(), SpyColor.DEFAULT_SPY_COLOR);
+            setSocialSpy(user, SpyColor.DEFAULT_SPY_COLOR);
         }
 
         public void setSocialSpy(@NotNull User user, @NotNull SpyColor spyColor) {
             socialSpies.put(user.getUuid(), spyColor);
+            if (storage != null) {
+                storage.onSocialSpySet(user.getUuid(), spyColor);
+            }
+            if (spyIndex != null) {
+                spyIndex.onSocialSpySet(user.getUuid(), spyColor);
+            }
         }
 
         public void removeSocialSpy(@NotNull User user) {
-            socialSpies.remove(user.getUuid());
+            if (socialSpies.remove(user.getUuid()) != null && storage != null) {
+                storage.onSocialSpySet(user.getUuid(), null);
+            }
+            if (spyIndex != null) {
+                spyIndex.onSocialSpySet(user.getUuid(), null);
+            }
         }
 
         public void setLocalSpy(@NotNull User user) {
-            localSpies.put(user.getUuid(), SpyColor.DEFAULT_SPY_COLOR);
+            setLocalSpy(user, SpyColor.DEFAULT_SPY_COLOR);
         }
 
         public void setLocalSpy(@NotNull User user, @NotNull SpyColor spyColor) {
             localSpies.put(user.getUuid(), spyColor);
+            if (storage != null) {
+                storage.onLocalSpySet(user.getUuid(), spyColor);
+            }
+            if (spyIndex != null) {
+                spyIndex.onLocalSpySet(user.getUuid(), spyColor);
+            }
         }
 
         public void removeLocalSpy(@NotNull User user) {
-            localSpies.remove(user.getUuid());
+            if (localSpies.remove(user.getUuid()) != null && storage != null) {
+                storage.onLocalSpySet(user.getUuid(), null);
+            }
+            if (spyIndex != null) {
+                spyIndex.onLocalSpySet(user.getUuid(), null);
+            }
         }
     }
 
@@ -0,0 +1,131 @@
+/*
+ * This file is part of HuskChat, licensed under the Apache License 2.0.
+ *
+ *  Copyright (c) William278 <will27528@gmail.com>
+ *  Copyright (c) contributors
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.william278.huskchat.user;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A place the {@link UserCache} is persisted to.
+ * <p>
+ * The {@link UserCache.Editor} reports each change to its storage as it is made, under the cache's lock; storages
+ * that persist changes incrementally can record them, while snapshot-based storages can ignore them and write the
+ * whole cache on {@link #save(UserCache)}. Storages may also {@link #load() load} only an empty cache, loading each
+ * player's data when they {@link #loadUser(UUID, UserCache.Editor) join} and evicting it when they
+ * {@link #unloadUser(UUID, UserCache.Editor) quit}.
+ */
+public interface UserCacheStorage {
+
+    /**
+     * Load the user cache from storage
+     *
+     * @return the loaded user cache
+     * @throws IOException if the cache could not be read
+     */
+    @NotNull
+    UserCache.Editor load() throws IOException;
+
+    /**
+     * Save changes made to the user cache since the last save. Only ever called by one thread at a time
+     *
+     * @param cache the user cache
+     * @throws IOException if the cache could not be written
+     */
+    void save(@NotNull UserCache cache) throws IOException;
+
+    /**
+     * Release any resources held by the storage. Changes should have been {@link #save(UserCache) saved} first
+     *
+     * @throws IOException if the storage could not be closed cleanly
+     */
+    default void close() throws IOException {
+    }
+
+    /**
+     * Load a player's data into the cache, if it is not already loaded. Called when the player joins
+     *
+     * @param uuid  the player's UUID
+     * @param cache the user cache
+     * @return a future completing once the player's data has been loaded
+     */
+    @NotNull
+    default CompletableFuture<Void> loadUser(@NotNull UUID uuid, @NotNull UserCache.Editor cache) {
+        return CompletableFuture.completedFuture(null);
+    }
+
+    /**
+     * Evict a player's data from the cache. Called when the player quits
+     *
+     * @param uuid  the player's UUID
+     * @param cache the user cache
+     */
+    default void unloadUser(@NotNull UUID uuid, @NotNull UserCache.Editor cache) {
+    }
+
+    /**
+     * Called when a player's channel is set
+     *
+     * @param uuid      the player's UUID
+     * @param channelId the ID of the channel
+     */
+    default void onPlayerChannelSet(@NotNull UUID uuid, @NotNull String channelId) {
+    }
+
+    /**
+     * Called when a player's local spy color is set or removed
+     *
+     * @param uuid  the player's UUID
+     * @param color the spy color, or {@code null} if the player stopped local spying
+     */
+    default void onLocalSpySet(@NotNull UUID uuid, @Nullable UserCache.SpyColor color) {
+    }
+
+    /**
+     * Called when a player's social spy color is set or removed
+     *
+     * @param uuid  the player's UUID
+     * @param color the spy color, or {@code null} if the player stopped social spying
+     */
+    default void onSocialSpySet(@NotNull UUID uuid, @Nullable UserCache.SpyColor color) {
+    }
+
+    /**
+     * Types of user cache storage
+     */
+    enum Type {
+        /**
+         * The whole cache is written to {@code user_cache.yml}
+         */
+        YAML,
+        /**
+         * Changes are appended to the binary {@code user_cache.journal}, which is compacted periodically
+         */
+        JOURNAL,
+        /**
+         * Each player's data is a row in the embedded H2 database {@code user_cache.mv.db}, loaded while they are online
+         */
+        H2
+    }
+
+}
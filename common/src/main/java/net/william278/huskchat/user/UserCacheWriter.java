@@ -0,0 +1,170 @@
+/*
+ * This file is part of HuskChat, licensed under the Apache License 2.0.
+ *
+ *  Copyright (c) William278 <will27528@gmail.com>
+ *  Copyright (c) contributors
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.william278.huskchat.user;
+
+import net.william278.huskchat.HuskChat;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+
+/**
+ * Saves the {@link UserCache} to its {@link UserCacheStorage} in the background.
+ * <p>
+ * Edits mark the cache dirty and schedule a save after the configured delay; further edits made before then are
+ * saved together. A save that fails is retried, waiting twice as long after each further failure.
+ */
+public final class UserCacheWriter {
+
+    private static final long MIN_RETRY_DELAY_MILLIS = 1000;
+    private static final long MAX_RETRY_DELAY_MILLIS = 300_000;
+
+    private final HuskChat plugin;
+    @Nullable
+    private volatile UserCacheStorage storage;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        final Thread thread = new Thread(runnable, "HuskChat-UserCacheWriter");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicBoolean dirty = new AtomicBoolean();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private final Object writeLock = new Object();
+    private int failures;
+
+    public UserCacheWriter(@NotNull HuskChat plugin) {
+        this.plugin = plugin;
+    }
+
+    /**
+     * Start saving to a new storage, first saving any unsaved changes to and closing the current one
+     *
+     * @param storage the storage to save the user cache to, or {@code null} to stop saving it
+     */
+    public void open(@Nullable UserCacheStorage storage) {
+        synchronized (writeLock) {
+            flush();
+            closeStorage();
+            this.storage = storage;
+        }
+    }
+
+    /**
+     * Get the storage the user cache is saved to
+     *
+     * @return the storage, if the user cache has been loaded
+     */
+    @NotNull
+    public Optional<UserCacheStorage> getStorage() {
+        return Optional.ofNullable(storage);
+    }
+
+    /**
+     * Mark the user cache as changed, scheduling a save if one isn't already pending
+     */
+    public void markDirty() {
+        dirty.set(true);
+        if (!scheduleSave(getSaveDelay())) {
+            // The writer has been closed, so save straight away
+            flush();
+        }
+    }
+
+    // Schedule a save unless one is already pending, returning false if the writer has been closed
+    private boolean scheduleSave(long delayMillis) {
+        if (!scheduled.compareAndSet(false, true)) {
+            return true;
+        }
+        try {
+            scheduler.schedule(() -> {
+                scheduled.set(false);
+                flush();
+            }, delayMillis, TimeUnit.MILLISECONDS);
+            return true;
+        } catch (RejectedExecutionException e) {
+            scheduled.set(false);
+            return false;
+        }
+    }
+
+    private long getSaveDelay() {
+        return Math.max(0, plugin.getSettings().getUserCache().getSaveDelayMillis());
+    }
+
+    // The save delay, doubled for each failed save in a row
+    private long getRetryDelay() {
+        final long delay = Math.max(MIN_RETRY_DELAY_MILLIS, getSaveDelay()) << Math.min(failures - 1, 16);
+        return Math.min(delay, MAX_RETRY_DELAY_MILLIS);
+    }
+
+    /**
+     * Save the user cache now if it has unsaved changes, blocking until it is written
+     */
+    public void flush() {
+        synchronized (writeLock) {
+            final UserCacheStorage storage = this.storage;
+            if (storage == null || !dirty.getAndSet(false)) {
+                return;
+            }
+            try {
+                storage.save(plugin.getUserCache());
+                failures = 0;
+            } catch (Throwable e) {
+                dirty.set(true);
+                failures++;
+                final long retryDelay = getRetryDelay();
+                plugin.log(Level.SEVERE, "Failed to save the user cache, retrying in " + retryDelay + "ms", e);
+                scheduleSave(retryDelay);
+            }
+        }
+    }
+
+    /**
+     * Stop the background writer, save any unsaved changes and close the storage. Called when the plugin shuts down
+     */
+    public void close() {
+        scheduler.shutdownNow();
+        synchronized (writeLock) {
+            flush();
+            closeStorage();
+        }
+    }
+
+    private void closeStorage() {
+        final UserCacheStorage storage = this.storage;
+        if (storage == null) {
+            return;
+        }
+        try {
+            storage.close();
+        } catch (IOException e) {
+            plugin.log(Level.WARNING, "Failed to close the user cache storage", e);
+        }
+        this.storage = null;
+    }
+
+}
@@ -0,0 +1,90 @@
+/*
+ * This file is part of HuskChat, licensed under the Apache License 2.0.
+ *
+ *  Copyright (c) William278 <will27528@gmail.com>
+ *  Copyright (c) contributors
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.william278.huskchat.user;
+
+import de.exlll.configlib.YamlConfigurationProperties;
+import de.exlll.configlib.YamlConfigurationStore;
+import de.exlll.configlib.YamlConfigurations;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Stores the {@link UserCache} in {@code user_cache.yml}, rewriting the whole file on each save.
+ * <p>
+ * Saves write a snapshot to a temporary file, then move it over the cache file, so a crash mid-write never leaves a
+ * truncated cache behind.
+ */
+public final class YamlUserCacheStorage implements UserCacheStorage {
+
+    public static final String FILE_NAME = "user_cache.yml";
+
+    private final YamlConfigurationStore<UserCache> store = new YamlConfigurationStore<>(
+            UserCache.class, YamlConfigurationProperties.newBuilder().build()
+    );
+    private final Path file;
+
+    public YamlUserCacheStorage(@NotNull Path directory) {
+        this.file = directory.resolve(FILE_NAME);
+    }
+
+    @NotNull
+    @Override
+    public UserCache.Editor load() {
+        final UserCache.Editor cache = new UserCache.Editor();
+        if (!Files.exists(file)) {
+            return cache;
+        }
+
+        // Copy into the cache's concurrent maps, as maps are read from YAML as LinkedHashMaps
+        final UserCache loaded = YamlConfigurations.load(file, UserCache.Editor.class);
+        cache.playerChannels.putAll(loaded.playerChannels);
+        cache.localSpies.putAll(loaded.localSpies);
+        cache.socialSpies.putAll(loaded.socialSpies);
+        return cache;
+    }
+
+    @Override
+    public void save(@NotNull UserCache cache) throws IOException {
+        final Path temp = file.resolveSibling(FILE_NAME + ".tmp");
+        Files.createDirectories(file.getParent());
+        Files.write(temp, snapshot(cache));
+        try {
+            Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    // Serialize the cache while holding its lock, so edits can't interleave with the snapshot
+    private byte[] snapshot(@NotNull UserCache cache) {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream(8192);
+        synchronized (cache) {
+            store.write(cache, output);
+        }
+        return output.toByteArray();
+    }
+
+}
@@ -27,6 +27,9 @@ import net.william278.huskchat.user.ConsoleUser;
 import net.william278.huskchat.user.OnlineUser;
 import org.jetbrains.annotations.NotNull;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.UUID;
 
 /**
@@ -46,6 +49,22 @@ public interface AudiencesProvider {
     @NotNull
     Audience getAudience(@NotNull UUID user);
 
+    /**
+     * Get a single {@link Audience} forwarding to every given user, so that a message rendered once can be sent to
+     * all of them in one call
+     *
+     * @param users the users to forward to
+     * @return the forwarding {@link Audience}
+     */
+    @NotNull
+    default Audience getAudience(@NotNull Collection<? extends OnlineUser> users) {
+        final List<Audience> audiences = new ArrayList<>(users.size());
+        for (OnlineUser user : users) {
+            audiences.add(user.getAudience());
+        }
+        return Audience.audience(audiences);
+    }
+
     @NotNull
     Audience getConsole();
 
@@ -0,0 +1,147 @@
+/*
+ * This file is part of HuskChat, licensed under the Apache License 2.0.
+ *
+ *  Copyright (c) William278 <will27528@gmail.com>
+ *  Copyright (c) contributors
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.william278.huskchat.util;
+
+import net.kyori.adventure.text.Component;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+/**
+ * A small, short-lived cache of components serialized for a platform, keyed by component identity, so that a message
+ * rendered once and sent to every player is only converted once per {@link Format} rather than once per player.
+ * <p>
+ * Entries are kept for a fixed lifetime, after which the next lookup of the same component serializes it again. When
+ * the cache is full, the oldest entry is replaced.
+ */
+public final class SerializedComponentCache {
+
+    private static final int FORMATS = Format.values().length;
+
+    private final Entry[] entries;
+    private final long lifetimeNanos;
+    private final LongSupplier clock;
+
+    public SerializedComponentCache(int capacity, long lifetimeMillis, @NotNull LongSupplier clock) {
+        this.entries = new Entry[Math.max(1, capacity)];
+        this.lifetimeNanos = lifetimeMillis * 1_000_000L;
+        this.clock = clock;
+    }
+
+    public SerializedComponentCache() {
+        this(32, 1000, System::nanoTime);
+    }
+
+    /**
+     * Get a component serialized to a format, serializing and caching it if this instance was not recently serialized
+     *
+     * @param component  the component to serialize
+     * @param format     the format to serialize the component to
+     * @param serializer serializes the component to the format, if it is not cached
+     * @param <T>        the serialized type
+     * @return the serialized component
+     */
+    @NotNull
+    @SuppressWarnings("unchecked")
+    public <T> T get(@NotNull Component component, @NotNull Format format,
+                     @NotNull Function<? super Component, ? extends T> serializer) {
+        final Object cached = getIfPresent(component, format);
+        if (cached != null) {
+            return (T) cached;
+        }
+
+        // Serialize outside the lock; a concurrent miss on the same component only serializes it twice
+        final T serialized = serializer.apply(component);
+        put(component, format, serialized);
+        return serialized;
+    }
+
+    @Nullable
+    private synchronized Object getIfPresent(@NotNull Component component, @NotNull Format format) {
+        final long now = clock.getAsLong();
+        for (Entry entry : entries) {
+            if (entry != null && entry.component == component && now - entry.createdAt < lifetimeNanos) {
+                return entry.serialized[format.ordinal()];
+            }
+        }
+        return null;
+    }
+
+    private synchronized void put(@NotNull Component component, @NotNull Format format, @NotNull Object serialized) {
+        final long now = clock.getAsLong();
+        int target = -1;
+        long oldest = Long.MAX_VALUE;
+        for (int i = 0; i < entries.length; i++) {
+            final Entry entry = entries[i];
+            final boolean live = entry != null && now - entry.createdAt < lifetimeNanos;
+            if (live && entry.component == component) {
+                entry.serialized[format.ordinal()] = serialized;
+                return;
+            }
+
+            // Prefer an empty or expired slot, otherwise replace the oldest entry
+            final long createdAt = live ? entry.createdAt : Long.MIN_VALUE;
+            if (target < 0 || createdAt < oldest) {
+                target = i;
+                oldest = createdAt;
+            }
+        }
+        final Entry entry = new Entry(component, now);
+        entry.serialized[format.ordinal()] = serialized;
+        entries[target] = entry;
+    }
+
+    /**
+     * Clear every cached component
+     */
+    public synchronized void invalidate() {
+        Arrays.fill(entries, null);
+    }
+
+    /**
+     * Formats a component may be serialized to
+     */
+    public enum Format {
+        /**
+         * For clients on 1.16 and newer, which support hex colors
+         */
+        MODERN,
+        /**
+         * For clients before 1.16, with colors downsampled to the 16 named colors
+         */
+        LEGACY
+    }
+
+    // A component and its serialized forms, indexed by format ordinal
+    private static final class Entry {
+        private final Component component;
+        private final long createdAt;
+        private final Object[] serialized = new Object[FORMATS];
+
+        private Entry(@NotNull Component component, long createdAt) {
+            this.component = component;
+            this.createdAt = createdAt;
+        }
+    }
+
+}
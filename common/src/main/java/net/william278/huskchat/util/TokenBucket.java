@@ -0,0 +1,101 @@
+/*
+ * This file is part of HuskChat, licensed under the Apache License 2.0.
+ *
+ *  Copyright (c) William278 <will27528@gmail.com>
+ *  Copyright (c) contributors
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.william278.huskchat.util;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.function.LongSupplier;
+
+/**
+ * A token bucket rate limiter. The bucket holds up to a burst of tokens and refills at a steady rate; each action
+ * takes one token.
+ * <p>
+ * Tokens can also be {@link #reserve() reserved} ahead of time, taking the bucket into debt, so that an action can be
+ * delayed until its turn rather than refused.
+ */
+public final class TokenBucket {
+
+    private final double capacity;
+    private final double tokensPerNano;
+    private final LongSupplier clock;
+    private double tokens;
+    private long updatedAt;
+
+    public TokenBucket(int burst, double perSecond, @NotNull LongSupplier clock) {
+        this.capacity = Math.max(1, burst);
+        this.tokensPerNano = Math.max(0, perSecond) / 1_000_000_000d;
+        this.clock = clock;
+        this.tokens = capacity;
+        this.updatedAt = clock.getAsLong();
+    }
+
+    public TokenBucket(int burst, double perSecond) {
+        this(burst, perSecond, System::nanoTime);
+    }
+
+    /**
+     * Take a token if one is available
+     *
+     * @return {@code true} if a token was taken; {@code false} if the bucket is empty
+     */
+    public synchronized boolean tryAcquire() {
+        refill();
+        if (tokens < 1) {
+            return false;
+        }
+        tokens--;
+        return true;
+    }
+
+    /**
+     * Take a token, even if the bucket is empty
+     *
+     * @return how long to wait until the token would have been available, in nanoseconds
+     */
+    public synchronized long reserve() {
+        final long wait = getWaitNanos();
+        tokens--;
+        return wait;
+    }
+
+    /**
+     * Get how long until a token is available, without taking it
+     *
+     * @return the wait in nanoseconds, {@code 0} if a token is available now, or {@link Long#MAX_VALUE} if the
+     * bucket never refills
+     */
+    public synchronized long getWaitNanos() {
+        refill();
+        if (tokens >= 1) {
+            return 0;
+        }
+        if (tokensPerNano <= 0) {
+            return Long.MAX_VALUE;
+        }
+        return (long) Math.ceil((1 - tokens) / tokensPerNano);
+    }
+
+    private void refill() {
+        final long now = clock.getAsLong();
+        tokens = Math.min(capacity, tokens + (now - updatedAt) * tokensPerNano);
+        updatedAt = now;
+    }
+
+}
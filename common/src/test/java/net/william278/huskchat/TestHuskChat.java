@@ -0,0 +1,84 @@
+/*
+ * This file is part of HuskChat, licensed under the Apache License 2.0.
+ *
+ *  Copyright (c) William278 <will27528@gmail.com>
+ *  Copyright (c) contributors
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package net.william278.huskchat;
+
+import net.william278.huskchat.config.Locales;
+import net.william278.huskchat.config.Settings;
+import net.william278.huskchat.user.OnlineUser;
+import net.william278.huskchat.user.UserCache;
+import org.jetbrains.annotations.NotNull;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * A {@link HuskChat} instance for tests, with the default settings, no placeholder replacers and a fixed set of
+ * online players. Anything else a test reaches throws {@link UnsupportedOperationException}
+ */
+public final class TestHuskChat {
+
+    private TestHuskChat() {
+    }
+
+    @NotNull
+    public static HuskChat create(@NotNull Collection<OnlineUser> players) {
+        final Settings settings = instantiate(Settings.class);
+        final Locales locales = instantiate(Locales.class);
+        final UserCache.Editor userCache = new UserCache.Editor();
+        return (HuskChat) Proxy.newProxyInstance(HuskChat.class.getClassLoader(), new Class<?>[]{HuskChat.class},
+                (proxy, method, args) -> switch (method.getName()) {
+                    case "getSettings" -> settings;
+                    case "getLocales" -> locales;
+                    case "getOnlinePlayers" -> players;
+                    case "getUserCache" -> userCache;
+                    case "getPlaceholderReplacers" -> List.of();
+                    case "getDiscordHook", "getChatNetwork" -> Optional.empty();
+                    case "getPlugin" -> proxy;
+                    case "log" -> null;
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    case "equals" -> proxy == args[0];
+                    case "toString" -> "TestHuskChat";
+                    default -> {
+                        if (!method.isDefault()) {
+                            throw new UnsupportedOperationException(method.getName());
+                        }
+                        yield InvocationHandler.invokeDefault(proxy, method, args);
+                    }
+                });
+    }
+
+    // Create a config with its default values through its private constructor
+    @NotNull
+    private static <T> T instantiate(@NotNull Class<T> type) {
+        try {
+            final Constructor<T> constructor = type.getDeclaredConstructor();
+            constructor.setAccessible(true);
+            return constructor.newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Failed to create default " + type.getSimpleName(), e);
+        }
+    }
+
+}
@@ -0,0 +1,189 @@
+/*
+ * This file is part of HuskChat, licensed under the Apache License 2.0.
+ *
+ *  Copyright (c) William278 <will27528@gmail.com>
+ *  Copyright (c) contributors
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package net.william278.huskchat.config;
+
+import net.kyori.adventure.text.Component;
+import net.kyori.adventure.text.TextComponent;
+import net.kyori.adventure.text.event.ClickEvent;
+import net.kyori.adventure.text.event.HoverEvent;
+import net.kyori.adventure.text.format.NamedTextColor;
+import net.kyori.adventure.text.format.Style;
+import net.kyori.adventure.text.format.TextColor;
+import net.kyori.adventure.text.format.TextDecoration;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+public class FormatTemplateTests {
+
+    private static final String GROUP_FORMAT = "&e[Spy] &7%name% [₍₊%group_amount_subscript%₎](gray show_text=&7%group_members% suggest_command=/msg %group_members_comma_separated% ):%spy_color% ";
+
+    @Test
+    public void testStaticFormatReturnsSameInstance() {
+        final FormatTemplate template = FormatTemplate.compile("&6[Broadcast]&e ");
+        Assertions.assertSame(template.render(Map.of()), template.render(Map.of()));
+        Assertions.assertEquals("[Broadcast] ", plain(template.render(Map.of())));
+        Assertions.assertEquals(NamedTextColor.YELLOW, template.getTrailingColor());
+    }
+
+    @Test
+    public void testVariablesAreFilled() {
+        final FormatTemplate template = FormatTemplate.compile("&e[Spy] &7[%channel%] %name%&8: ");
+        Assertions.assertEquals("[Spy] [global] %name%: ",
+                plain(template.render(Map.of("channel", "global"))));
+    }
+
+    @Test
+    public void testVariablesAreNotParsed() {
+        final FormatTemplate template = FormatTemplate.compile("&7[%channel%] ");
+        Assertions.assertEquals("[__staff__] ", plain(template.render(Map.of("channel", "__staff__"))));
+    }
+
+    @Test
+    public void testResolvedVariableSetsTrailingColor() {
+        final FormatTemplate template = FormatTemplate.compile("&e[Spy] &7%name%&8:%spy_color% ");
+        final FormatTemplate resolved = template.resolve("spy_color", "&c");
+        Assertions.assertSame(resolved, template.resolve("spy_color", "&c"));
+        Assertions.assertEquals(NamedTextColor.RED, resolved.getTrailingColor());
+        Assertions.assertEquals(NamedTextColor.DARK_GRAY,
+                template.resolve("spy_color", "&8").getTrailingColor());
+    }
+
+    @Test
+    public void testVariablesInHoverAndClickAreFilled() {
+        final FormatTemplate template = FormatTemplate.compile(GROUP_FORMAT).resolve("spy_color", "&8");
+        final Component rendered = template.render(Map.of(
+                "group_amount_subscript", "₂",
+                "group_members", "Alice\nBob",
+                "group_members_comma_separated", "Alice,Bob"
+        ));
+        Assertions.assertEquals("[Spy] %name% ₍₊₂₎: ", plain(rendered));
+        Assertions.assertTrue(hoverOf(rendered).contains("Alice\nBob"));
+        Assertions.assertEquals("/msg Alice,Bob ", clickOf(rendered));
+    }
+
+    @Test
+    public void testPrefixColorCarriesIntoName() {
+        final FormatTemplate template = FormatTemplate.compile("&7%prefix%%name%&8: ");
+        final Component rendered = template.render(Map.of(), Map.of("prefix", "&6Admin &c", "name", "William"));
+        Assertions.assertEquals("Admin William: ", plain(rendered));
+        Assertions.assertEquals(NamedTextColor.RED, colorOf(rendered, "William"));
+        Assertions.assertEquals(NamedTextColor.DARK_GRAY, FormatTemplate.findTrailingColor(rendered));
+    }
+
+    @Test
+    public void testPrefixColorSetsTrailingColor() {
+        final FormatTemplate template = FormatTemplate.compile("%prefix%%name% ");
+        final Component rendered = template.render(Map.of(), Map.of("prefix", "&6Admin &c", "name", "William"));
+        Assertions.assertEquals(NamedTextColor.RED, FormatTemplate.findTrailingColor(rendered));
+    }
+
+    @Test
+    public void testTrailingDecorationsAreKept() {
+        final FormatTemplate template = FormatTemplate.compile("&e[Spy] &7%name%&8:&l&o ");
+        Assertions.assertEquals(NamedTextColor.DARK_GRAY, template.getTrailingColor());
+        Assertions.assertTrue(template.getTrailingStyle().hasDecoration(TextDecoration.BOLD));
+        Assertions.assertTrue(template.getTrailingStyle().hasDecoration(TextDecoration.ITALIC));
+    }
+
+    @Test
+    public void testPrefixDecorationSetsTrailingStyle() {
+        final FormatTemplate template = FormatTemplate.compile("%prefix%%name% ");
+        final Component rendered = template.render(Map.of(), Map.of("prefix", "&c&l", "name", "William"));
+        final Style style = FormatTemplate.findTrailingStyle(rendered);
+        Assertions.assertEquals(NamedTextColor.RED, style.color());
+        Assertions.assertTrue(style.hasDecoration(TextDecoration.BOLD));
+        Assertions.assertFalse(template.getTrailingStyle().hasDecoration(TextDecoration.BOLD));
+    }
+
+    @Test
+    public void testPlainValuesKeepFormatStyle() {
+        final FormatTemplate template = FormatTemplate.compile("&7[%channel%] &e%name%&8: ");
+        final Component rendered = template.render(Map.of("channel", "global"), Map.of("name", "William"));
+        Assertions.assertEquals("[global] William: ", plain(rendered));
+        Assertions.assertEquals(NamedTextColor.YELLOW, colorOf(rendered, "William"));
+    }
+
+    // Concatenate the text content of a component tree
+    @NotNull
+    private static String plain(@NotNull Component component) {
+        final StringBuilder builder = new StringBuilder();
+        if (component instanceof TextComponent text) {
+            builder.append(text.content());
+        }
+        component.children().forEach(child -> builder.append(plain(child)));
+        return builder.toString();
+    }
+
+    // Find the effective color of the first text component containing the given text
+    @Nullable
+    private static TextColor colorOf(@NotNull Component component, @NotNull String content) {
+        return colorOf(component, content, null);
+    }
+
+    @Nullable
+    private static TextColor colorOf(@NotNull Component component, @NotNull String content,
+                                     @Nullable TextColor inherited) {
+        final TextColor color = component.color() != null ? component.color() : inherited;
+        if (component instanceof TextComponent text && text.content().contains(content)) {
+            return color;
+        }
+        for (Component child : component.children()) {
+            final TextColor found = colorOf(child, content, color);
+            if (found != null) {
+                return found;
+            }
+        }
+        return null;
+    }
+
+    // Concatenate the hover text of a component tree
+    @NotNull
+    private static String hoverOf(@NotNull Component component) {
+        final StringBuilder builder = new StringBuilder();
+        final HoverEvent<?> hover = component.hoverEvent();
+        if (hover != null && hover.value() instanceof Component text) {
+            builder.append(plain(text));
+        }
+        component.children().forEach(child -> builder.append(hoverOf(child)));
+        return builder.toString();
+    }
+
+    // Find the first click event value in a component tree
+    @Nullable
+    private static String clickOf(@NotNull Component component) {
+        final ClickEvent click = component.clickEvent();
+        if (click != null) {
+            return click.value();
+        }
+        for (Component child : component.children()) {
+            final String value = clickOf(child);
+            if (value != null) {
+                return value;
+            }
+        }
+        return null;
+    }
+
+}
@@ -0,0 +1,169 @@
+/*
+ * This file is part of HuskChat, licensed under the Apache License 2.0.
+ *
+ *  Copyright (c) William278 <will27528@gmail.com>
+ *  Copyright (c) contributors
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package net.william278.huskchat.config;
+
+import net.kyori.adventure.text.Component;
+import net.kyori.adventure.text.TextComponent;
+import net.kyori.adventure.text.event.HoverEvent;
+import net.kyori.adventure.text.format.NamedTextColor;
+import net.kyori.adventure.text.format.TextColor;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class LocaleTemplateTests {
+
+    @Test
+    public void testStaticLocaleReturnsSameInstance() {
+        final LocaleTemplate template = LocaleTemplate.compile("[Error:](#ff3300) [You are not in a channel.](#ff7e5e)");
+        final Component formatted = template.format("ignored");
+        Assertions.assertSame(formatted, template.format("also ignored"));
+        Assertions.assertEquals("Error: You are not in a channel.", plain(formatted));
+    }
+
+    @Test
+    public void testSlotsAreFilled() {
+        final LocaleTemplate template = LocaleTemplate.compile(
+                "[HuskChat](#ff7e5e bold) [| A new version is available: v%1% (running: v%2%).](#ff7e5e)"
+        );
+        Assertions.assertEquals("HuskChat | A new version is available: v3.1 (running: v3.0).",
+                plain(template.format("3.1", "3.0")));
+    }
+
+    @Test
+    public void testRepeatedAndAdjacentSlots() {
+        final LocaleTemplate template = LocaleTemplate.compile("%1%%2% and %1%");
+        Assertions.assertEquals("ab and a", plain(template.format("a", "b")));
+    }
+
+    @Test
+    public void testMissingArgumentsAreLeftAsWritten() {
+        final LocaleTemplate template = LocaleTemplate.compile("[Usage: %1% %2%](#ff7e5e)");
+        Assertions.assertEquals("Usage: /msg %2%", plain(template.format("/msg")));
+    }
+
+    @Test
+    public void testArgumentsAreNotParsed() {
+        final LocaleTemplate template = LocaleTemplate.compile("[You are now talking in](#00fb9a) [%1%](#00fb9a bold)");
+        Assertions.assertEquals("You are now talking in **local** &c", plain(template.format("**local** &c")));
+    }
+
+    @Test
+    public void testArgumentsInheritSurroundingStyle() {
+        final LocaleTemplate template = LocaleTemplate.compile("[Talking in %1%](#00fb9a)");
+        final Component formatted = template.format("global");
+        Assertions.assertEquals("Talking in global", plain(formatted));
+        Assertions.assertEquals(TextColor.fromHexString("#00fb9a"), colorOf(formatted, "global"));
+    }
+
+    @Test
+    public void testComponentArgumentsKeepTheirStyle() {
+        final LocaleTemplate template = LocaleTemplate.compile("[Spying in](#00fb9a) %1%%2%");
+        final Component formatted = template.format(Component.empty(), Component.text("red", NamedTextColor.RED));
+        Assertions.assertEquals("Spying in red", plain(formatted));
+        Assertions.assertEquals(NamedTextColor.RED, colorOf(formatted, "red"));
+    }
+
+    @Test
+    public void testSlotsInHoverTextAreFilled() {
+        final LocaleTemplate template = LocaleTemplate.compile("[Hover me](show_text=Hello %1%)");
+        final Component formatted = template.format("William");
+        Assertions.assertEquals("Hover me", plain(formatted));
+        Assertions.assertTrue(hoverOf(formatted).contains("Hello William"));
+    }
+
+    @Test
+    public void testSlotsInClickValuesAreFilled() {
+        final LocaleTemplate template = LocaleTemplate.compile(
+                "[%1% sent you a message](#00fb9a suggest_command=/msg %1% show_text=Reply to %1%)"
+        );
+        final Component formatted = template.format("William");
+        Assertions.assertEquals("William sent you a message", plain(formatted));
+        Assertions.assertTrue(hoverOf(formatted).contains("Reply to William"));
+        Assertions.assertTrue(clicksOf(formatted).contains("/msg William"));
+    }
+
+    @Test
+    public void testParsedArgumentsCarryFormatting() {
+        final LocaleTemplate template = LocaleTemplate.compile("[Spying in](#00fb9a) %1%%2%");
+        final Component formatted = template.formatParsed("&c", "red");
+        Assertions.assertEquals("Spying in red", plain(formatted));
+        Assertions.assertEquals(NamedTextColor.RED, colorOf(formatted, "red"));
+    }
+
+    // Concatenate the text content of a component tree
+    @NotNull
+    private static String plain(@NotNull Component component) {
+        final StringBuilder builder = new StringBuilder();
+        if (component instanceof TextComponent text) {
+            builder.append(text.content());
+        }
+        component.children().forEach(child -> builder.append(plain(child)));
+        return builder.toString();
+    }
+
+    // Find the effective color of the first text component with the given content
+    @Nullable
+    private static TextColor colorOf(@NotNull Component component, @NotNull String content) {
+        return colorOf(component, content, null);
+    }
+
+    @Nullable
+    private static TextColor colorOf(@NotNull Component component, @NotNull String content,
+                                     @Nullable TextColor inherited) {
+        final TextColor color = component.color() != null ? component.color() : inherited;
+        if (component instanceof TextComponent text && text.content().equals(content)) {
+            return color;
+        }
+        for (Component child : component.children()) {
+            final TextColor found = colorOf(child, content, color);
+            if (found != null) {
+                return found;
+            }
+        }
+        return null;
+    }
+
+    // Concatenate the hover text of a component tree
+    @NotNull
+    private static String hoverOf(@NotNull Component component) {
+        final StringBuilder builder = new StringBuilder();
+        final HoverEvent<?> hover = component.hoverEvent();
+        if (hover != null && hover.value() instanceof Component text) {
+            builder.append(plain(text));
+        }
+        component.children().forEach(child -> builder.append(hoverOf(child)));
+        return builder.toString();
+    }
+
+    // Concatenate the click event values of a component tree
+    @NotNull
+    private static String clicksOf(@NotNull Component component) {
+        final StringBuilder builder = new StringBuilder();
+        if (component.clickEvent() != null) {
+            builder.append(component.clickEvent().value());
+        }
+        component.children().forEach(child -> builder.append(clicksOf(child)));
+        return builder.toString();
+    }
+
+}
@@ -0,0 +1,45 @@
+/*
+ * This file is part of HuskChat, licensed under the Apache License 2.0.
+ *
+ *  Copyright (c) William278 <will27528@gmail.com>
+ *  Copyright (c) contributors
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.william278.huskchat.discord;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.UUID;
+
+public class ChatLineTests {
+
+    @Test
+    public void testLine_RoundTrips() throws IOException {
+        final ChatLine line = new ChatLine(UUID.randomUUID(), "William278", "lobby", "global",
+                "2024-01-01T12:30:00.123", "Hello — everyone ✨");
+        Assertions.assertEquals(line, ChatLine.fromBytes(line.toBytes()));
+    }
+
+    @Test
+    public void testLine_RejectsTruncatedData() throws IOException {
+        final byte[] data = new ChatLine(UUID.randomUUID(), "William278", "lobby", "global",
+                "2024-01-01T12:30:00", "Hello").toBytes();
+        Assertions.assertThrows(IOException.class, () -> ChatLine.fromBytes(Arrays.copyOf(data, 20)));
+    }
+
+}
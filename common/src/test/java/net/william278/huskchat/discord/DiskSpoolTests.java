@@ -0,0 +1,177 @@
+/*
+ * This file is part of HuskChat, licensed under the Apache License 2.0.
+ *
+ *  Copyright (c) William278 <will27528@gmail.com>
+ *  Copyright (c) contributors
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.william278.huskchat.discord;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+public class DiskSpoolTests {
+
+    private final AtomicLong clock = new AtomicLong(1_000_000);
+
+    @TempDir
+    private Path directory;
+
+    private DiskSpool open(long maxBytes, long maxAgeMillis) throws IOException {
+        return DiskSpool.open(directory, maxBytes, maxAgeMillis, clock::get);
+    }
+
+    @Test
+    public void testSpool_PeeksInOrderUntilCommitted() throws IOException {
+        final DiskSpool spool = open(1 << 20, 60_000);
+        for (int i = 0; i < 5; i++) {
+            spool.append(bytes("Message " + i));
+        }
+        final List<DiskSpool.Entry> first = spool.peek(2);
+        Assertions.assertEquals(List.of("Message 0", "Message 1"), text(first));
+        Assertions.assertEquals(text(first), text(spool.peek(2)));
+
+        spool.commit(first.get(1).sequence());
+        Assertions.assertEquals(List.of("Message 2", "Message 3", "Message 4"), text(spool.peek(10)));
+        Assertions.assertEquals(3, spool.size());
+        spool.close();
+    }
+
+    @Test
+    public void testSpool_SurvivesRestart() throws IOException {
+        final DiskSpool spool = open(1 << 20, 60_000);
+        spool.append(bytes("Delivered"));
+        final long last = spool.append(bytes("Waiting"));
+        spool.commit(last - 1);
+        spool.close();
+
+        final DiskSpool reopened = open(1 << 20, 60_000);
+        Assertions.assertEquals(List.of("Waiting"), text(reopened.peek(10)));
+        Assertions.assertTrue(reopened.append(bytes("Next")) > last);
+        Assertions.assertEquals(List.of("Waiting", "Next"), text(reopened.peek(10)));
+        reopened.close();
+    }
+
+    @Test
+    public void testSpool_DeletesDeliveredSegments() throws IOException {
+        final DiskSpool spool = open(16 << 20, 60_000);
+        final byte[] large = new byte[600_000];
+        long last = 0;
+        for (int i = 0; i < 4; i++) {
+            last = spool.append(large);
+        }
+        Assertions.assertEquals(4, countSegments());
+
+        spool.commit(last);
+        Assertions.assertTrue(spool.isEmpty());
+        Assertions.assertEquals(1, countSegments());
+        spool.close();
+    }
+
+    @Test
+    public void testSpool_DeletesLeftoverSegmentsOnOpen() throws IOException {
+        final DiskSpool spool = open(16 << 20, 60_000);
+        final byte[] large = new byte[600_000];
+        final long first = spool.append(large);
+        final long second = spool.append(large);
+        spool.append(large);
+        final Path firstSegment;
+        try (Stream<Path> files = Files.list(directory)) {
+            firstSegment = files.filter(path -> path.toString().endsWith(".seg")).sorted().findFirst().orElseThrow();
+        }
+        final byte[] leftover = Files.readAllBytes(firstSegment);
+
+        // Restore a delivered segment, as if it couldn't be deleted while mapped
+        spool.commit(second);
+        spool.close();
+        Files.write(firstSegment, leftover);
+
+        final DiskSpool reopened = open(16 << 20, 60_000);
+        Assertions.assertFalse(Files.exists(firstSegment));
+        Assertions.assertEquals(1, reopened.size());
+        Assertions.assertTrue(reopened.peek(1).get(0).sequence() > first);
+        reopened.close();
+    }
+
+    @Test
+    public void testSpool_DropsOldestOverLimits() throws IOException {
+        final DiskSpool spool = open(5 * (24 + "Message 0".length()), 60_000);
+        for (int i = 0; i < 10; i++) {
+            spool.append(bytes("Message " + i));
+        }
+        Assertions.assertEquals(List.of("Message 5", "Message 6", "Message 7", "Message 8", "Message 9"),
+                text(spool.peek(10)));
+        Assertions.assertEquals(5, spool.getDropped());
+
+        clock.addAndGet(60_001);
+        Assertions.assertTrue(spool.peek(10).isEmpty());
+        Assertions.assertEquals(10, spool.getDropped());
+        spool.close();
+    }
+
+    @Test
+    public void testSpool_DiscardsTornRecord() throws IOException {
+        final DiskSpool spool = open(1 << 20, 60_000);
+        spool.append(bytes("Complete"));
+        spool.append(bytes("Torn"));
+        spool.close();
+
+        // Corrupt the last byte of the second record, as if the plugin stopped while writing it
+        final Path segment;
+        try (Stream<Path> files = Files.list(directory)) {
+            segment = files.filter(path -> path.toString().endsWith(".seg")).findFirst().orElseThrow();
+        }
+        final int offset = 24 + "Complete".length() + 24 + "Torn".length() - 1;
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[]{0}), offset);
+        }
+
+        final DiskSpool reopened = open(1 << 20, 60_000);
+        Assertions.assertEquals(List.of("Complete"), text(reopened.peek(10)));
+        reopened.append(bytes("Rewritten"));
+        reopened.close();
+
+        final DiskSpool rewritten = open(1 << 20, 60_000);
+        Assertions.assertEquals(List.of("Complete", "Rewritten"), text(rewritten.peek(10)));
+        rewritten.close();
+    }
+
+    private long countSegments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(path -> path.toString().endsWith(".seg")).count();
+        }
+    }
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static List<String> text(List<DiskSpool.Entry> entries) {
+        return entries.stream().map(entry -> new String(entry.data(), StandardCharsets.UTF_8)).toList();
+    }
+
+}
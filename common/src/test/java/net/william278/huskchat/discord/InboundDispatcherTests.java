@@ -0,0 +1,99 @@
+/*
+ * This file is part of HuskChat, licensed under the Apache License 2.0.
+ *
+ *  Copyright (c) William278 <will27528@gmail.com>
+ *  Copyright (c) contributors
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.william278.huskchat.discord;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+public class InboundDispatcherTests {
+
+    private final List<String> delivered = new CopyOnWriteArrayList<>();
+    private final List<Long> deliveredAt = new CopyOnWriteArrayList<>();
+
+    private Runnable deliver(String message) {
+        return () -> {
+            delivered.add(message);
+            deliveredAt.add(System.nanoTime());
+        };
+    }
+
+    @Test
+    public void testInbound_DropsOverChannelLimit() throws InterruptedException {
+        final InboundDispatcher dispatcher = new InboundDispatcher(3, 0, 10, 0,
+                InboundDispatcher.LimitAction.DROP, 100, 10_000, System::nanoTime);
+        for (int i = 0; i < 5; i++) {
+            dispatcher.submit("general", "author" + i, deliver("message " + i));
+        }
+        awaitDelivered(3);
+        Assertions.assertEquals(List.of("message 0", "message 1", "message 2"), delivered);
+        Assertions.assertEquals(2, dispatcher.getQueueStatus().failed());
+        dispatcher.close();
+    }
+
+    @Test
+    public void testInbound_LimitsEachAuthor() throws InterruptedException {
+        final InboundDispatcher dispatcher = new InboundDispatcher(10, 0, 1, 0,
+                InboundDispatcher.LimitAction.DROP, 100, 10_000, System::nanoTime);
+        Assertions.assertTrue(dispatcher.submit("general", "raider", deliver("one")));
+        Assertions.assertFalse(dispatcher.submit("general", "raider", deliver("two")));
+        Assertions.assertTrue(dispatcher.submit("general", "regular", deliver("three")));
+        awaitDelivered(2);
+        Assertions.assertEquals(List.of("one", "three"), delivered);
+        dispatcher.close();
+    }
+
+    @Test
+    public void testInbound_QueuesUntilWithinLimits() throws InterruptedException {
+        final InboundDispatcher dispatcher = new InboundDispatcher(10, 0, 1, 20,
+                InboundDispatcher.LimitAction.QUEUE, 100, 10_000, System::nanoTime);
+        for (int i = 0; i < 3; i++) {
+            Assertions.assertTrue(dispatcher.submit("general", "author", deliver("message " + i)));
+        }
+        awaitDelivered(3);
+        Assertions.assertEquals(List.of("message 0", "message 1", "message 2"), delivered);
+        Assertions.assertTrue(deliveredAt.get(2) - deliveredAt.get(0) >= TimeUnit.MILLISECONDS.toNanos(90));
+        dispatcher.close();
+    }
+
+    @Test
+    public void testInbound_DropsMessagesThatWouldWaitTooLong() throws InterruptedException {
+        final InboundDispatcher dispatcher = new InboundDispatcher(10, 0, 1, 1,
+                InboundDispatcher.LimitAction.QUEUE, 100, 500, System::nanoTime);
+        Assertions.assertTrue(dispatcher.submit("general", "author", deliver("one")));
+        Assertions.assertFalse(dispatcher.submit("general", "author", deliver("two")));
+        awaitDelivered(1);
+        dispatcher.close();
+    }
+
+    // Wait for a number of messages to be delivered, failing after five seconds
+    private void awaitDelivered(int expected) throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (delivered.size() < expected && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        Thread.sleep(50);
+        Assertions.assertEquals(expected, delivered.size());
+    }
+
+}
@@ -0,0 +1,79 @@
+/*
+ * This file is part of HuskChat, licensed under the Apache License 2.0.
+ *
+ *  Copyright (c) William278 <will27528@gmail.com>
+ *  Copyright (c) contributors
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.william278.huskchat.discord;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.UUID;
+
+public class JsonWriterTests {
+
+    private static String write(String text) {
+        return new String(new JsonWriter(16).string(text).toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testJsonWriter_EscapesQuotesAndBackslashes() {
+        Assertions.assertEquals("say \\\"hi\\\" C:\\\\path", write("say \"hi\" C:\\path"));
+    }
+
+    @Test
+    public void testJsonWriter_EscapesControlCharacters() {
+        Assertions.assertEquals("a\\nb\\tc\\rd\\be\\ff\\u0000g\\u001fh", write("a\nb\tc\rd\be\ff\u0000g\u001fh"));
+    }
+
+    @Test
+    public void testJsonWriter_EncodesUnicodeAsUtf8() {
+        final String text = "héllo wörld ✓ 😀 日本語";
+        Assertions.assertEquals(text, write(text));
+        Assertions.assertArrayEquals(text.getBytes(StandardCharsets.UTF_8),
+                new JsonWriter(1).string(text).toByteArray());
+    }
+
+    @Test
+    public void testJsonWriter_ReplacesUnpairedSurrogates() {
+        Assertions.assertEquals("a\uFFFDb\uFFFD", write("a\uD83Db\uDE00"));
+    }
+
+    @Test
+    public void testJsonWriter_ResetReusesBuffer() {
+        final JsonWriter writer = new JsonWriter(16);
+        writer.string("first message");
+        writer.reset().raw(JsonWriter.encode("{\"a\":\"")).string("b").raw(JsonWriter.encode("\"}"));
+        Assertions.assertEquals("{\"a\":\"b\"}", new String(writer.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testPayloads_EscapesEveryPlaceholder() {
+        final WebhookPayloads payloads = WebhookPayloads.compile(
+                "{\"username\": \"{SENDER_USERNAME}\", \"content\": \"{CHAT_MESSAGE}\", \"embeds\": []}"
+        );
+        final ChatLine line = new ChatLine(UUID.randomUUID(), "Will\"278", "lobby",
+                "global", "2024-01-01T00:00:00", "line one\nline two\u0007");
+        final String body = new String(payloads.build(List.of(line)).get(0).body(), StandardCharsets.UTF_8);
+        Assertions.assertEquals(
+                "{\"username\": \"Will\\\"278\", \"content\": \"line one\\nline two\\u0007\", \"embeds\": []}", body
+        );
+    }
+
+}
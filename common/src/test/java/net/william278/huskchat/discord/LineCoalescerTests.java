@@ -0,0 +1,98 @@
+/*
+ * This file is part of HuskChat, licensed under the Apache License 2.0.
+ *
+ *  Copyright (c) William278 <will27528@gmail.com>
+ *  Copyright (c) contributors
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.william278.huskchat.discord;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+public class LineCoalescerTests {
+
+    private final Map<String, List<List<String>>> flushed = new ConcurrentHashMap<>();
+
+    private LineCoalescer<String, String> createCoalescer(long windowMillis, int maxQueued) {
+        return new LineCoalescer<>("HuskChat-Test", windowMillis, maxQueued, (destination, batch) ->
+                flushed.computeIfAbsent(destination, key -> new CopyOnWriteArrayList<>()).add(batch));
+    }
+
+    @Test
+    public void testCoalescer_BatchesLinesInWindow() throws InterruptedException {
+        final LineCoalescer<String, String> coalescer = createCoalescer(100, 100);
+        coalescer.add("general", "one");
+        coalescer.add("general", "two");
+        coalescer.add("general", "three");
+        Assertions.assertEquals(3, coalescer.getQueueDepth());
+        awaitFlushes("general", 1);
+        Assertions.assertEquals(List.of(List.of("one", "two", "three")), flushed.get("general"));
+        Assertions.assertEquals(0, coalescer.getQueueDepth());
+
+        coalescer.add("general", "four");
+        awaitFlushes("general", 2);
+        Assertions.assertEquals(List.of("four"), flushed.get("general").get(1));
+        coalescer.close();
+    }
+
+    @Test
+    public void testCoalescer_KeyedByDestination() throws InterruptedException {
+        final LineCoalescer<String, String> coalescer = createCoalescer(50, 100);
+        coalescer.add("general", "one");
+        coalescer.add("staff", "two");
+        awaitFlushes("general", 1);
+        awaitFlushes("staff", 1);
+        Assertions.assertEquals(List.of(List.of("one")), flushed.get("general"));
+        Assertions.assertEquals(List.of(List.of("two")), flushed.get("staff"));
+        coalescer.close();
+    }
+
+    @Test
+    public void testCoalescer_DropsOldestWhenFull() throws InterruptedException {
+        final LineCoalescer<String, String> coalescer = createCoalescer(100, 2);
+        coalescer.add("general", "one");
+        coalescer.add("general", "two");
+        coalescer.add("general", "three");
+        awaitFlushes("general", 1);
+        Assertions.assertEquals(List.of(List.of("two", "three")), flushed.get("general"));
+        Assertions.assertEquals(1, coalescer.getDropped());
+        coalescer.close();
+    }
+
+    @Test
+    public void testCoalescer_FlushesOnClose() {
+        final LineCoalescer<String, String> coalescer = createCoalescer(60_000, 100);
+        coalescer.add("general", "one");
+        coalescer.close();
+        Assertions.assertEquals(List.of(List.of("one")), flushed.get("general"));
+    }
+
+    // Wait for a destination to have been flushed a number of times, failing after five seconds
+    private void awaitFlushes(String destination, int expected) throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (flushed.getOrDefault(destination, List.of()).size() < expected && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        Assertions.assertEquals(expected, flushed.getOrDefault(destination, List.of()).size());
+    }
+
+}
@@ -0,0 +1,249 @@
+/*
+ * This file is part of HuskChat, licensed under the Apache License 2.0.
+ *
+ *  Copyright (c) William278 <will27528@gmail.com>
+ *  Copyright (c) contributors
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.william278.huskchat.discord;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+
+public class WebhookDispatcherTests {
+
+    private static final UUID SENDER = UUID.nameUUIDFromBytes("William278".getBytes(StandardCharsets.UTF_8));
+
+    private final List<String> received = new CopyOnWriteArrayList<>();
+    private final List<Long> receivedAt = new CopyOnWriteArrayList<>();
+    private final ConcurrentLinkedQueue<Integer> responses = new ConcurrentLinkedQueue<>();
+    private volatile boolean unavailable;
+    private volatile CountDownLatch hold;
+    private HttpServer server;
+    private URI webhook;
+
+    @TempDir
+    private Path spoolDirectory;
+
+    @BeforeEach
+    public void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/webhook", exchange -> {
+            received.add(new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8));
+            receivedAt.add(System.nanoTime());
+            final CountDownLatch hold = this.hold;
+            if (hold != null) {
+                try {
+                    hold.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            final int status = unavailable ? 503 : Objects.requireNonNullElse(responses.poll(), 204);
+            if (status == 429) {
+                exchange.getResponseHeaders().add("Retry-After", "0.3");
+            }
+            exchange.sendResponseHeaders(status, -1);
+            exchange.close();
+        });
+        server.start();
+        webhook = URI.create("http://127.0.0.1:" + server.getAddress().getPort() + "/webhook");
+    }
+
+    @AfterEach
+    public void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    public void testDispatcher_CoalescesLinesInWindow() throws Exception {
+        final WebhookDispatcher dispatcher = createDispatcher("inline", 200);
+        dispatcher.enqueue(webhook, line(SENDER, "Hello"));
+        dispatcher.enqueue(webhook, line(SENDER, "How are you?"));
+        dispatcher.enqueue(webhook, line(SENDER, "Said \"hi\""));
+        awaitUntil(() -> (int) dispatcher.getSent(), 3);
+
+        Assertions.assertEquals(1, received.size());
+        Assertions.assertTrue(received.get(0).contains("\"content\": \"Hello\\nHow are you?\\nSaid \\\"hi\\\"\""));
+        Assertions.assertEquals(0, dispatcher.getQueueDepth());
+        dispatcher.close();
+    }
+
+    @Test
+    public void testDispatcher_HonoursRetryAfter() throws Exception {
+        responses.add(429);
+        final WebhookDispatcher dispatcher = createDispatcher("inline", 0);
+        dispatcher.enqueue(webhook, line(SENDER, "Hello"));
+        awaitUntil(() -> (int) dispatcher.getSent(), 1);
+
+        Assertions.assertEquals(2, received.size());
+        Assertions.assertEquals(received.get(0), received.get(1));
+        Assertions.assertTrue(receivedAt.get(1) - receivedAt.get(0) >= TimeUnit.MILLISECONDS.toNanos(300));
+        Assertions.assertEquals(0, dispatcher.getFailed());
+        dispatcher.close();
+    }
+
+    @Test
+    public void testDispatcher_RetriesServerErrors() throws Exception {
+        responses.add(500);
+        responses.add(502);
+        final WebhookDispatcher dispatcher = createDispatcher("inline", 0);
+        dispatcher.enqueue(webhook, line(SENDER, "Hello"));
+        awaitUntil(() -> (int) dispatcher.getSent(), 1);
+        Assertions.assertEquals(3, received.size());
+        dispatcher.close();
+    }
+
+    @Test
+    public void testDispatcher_DropsRejectedRequests() throws Exception {
+        responses.add(400);
+        final WebhookDispatcher dispatcher = createDispatcher("inline", 0);
+        dispatcher.enqueue(webhook, line(SENDER, "Hello"));
+        awaitUntil(() -> (int) dispatcher.getFailed(), 1);
+        Assertions.assertEquals(1, received.size());
+        Assertions.assertEquals(0, dispatcher.getSent());
+        dispatcher.close();
+    }
+
+    @Test
+    public void testDispatcher_SpoolsWhileUnavailable() throws Exception {
+        unavailable = true;
+        final WebhookDispatcher dispatcher = createSpooledDispatcher(0);
+        dispatcher.enqueue(webhook, line(SENDER, "First"));
+        awaitUntil(received::size, 1);
+        dispatcher.enqueue(webhook, line(SENDER, "Second"));
+        dispatcher.enqueue(webhook, line(SENDER, "Third"));
+        Assertions.assertEquals(3, dispatcher.getQueueDepth());
+
+        unavailable = false;
+        awaitUntil(() -> (int) dispatcher.getSent(), 3);
+        Assertions.assertTrue(received.get(received.size() - 1).contains("\"content\": \"First\\nSecond\\nThird\""));
+        Assertions.assertEquals(0, dispatcher.getFailed());
+        Assertions.assertEquals(0, dispatcher.getQueueDepth());
+        dispatcher.close();
+    }
+
+    @Test
+    public void testDispatcher_ReplaysSpoolAfterRestart() throws Exception {
+        final WebhookDispatcher dispatcher = createSpooledDispatcher(60_000);
+        dispatcher.enqueue(webhook, line(SENDER, "Hello"));
+        dispatcher.close();
+        Assertions.assertTrue(received.isEmpty());
+
+        final WebhookDispatcher restarted = createSpooledDispatcher(0);
+        awaitUntil(() -> (int) restarted.getSent(), 1);
+        Assertions.assertTrue(received.get(0).contains("\"content\": \"Hello\""));
+        Assertions.assertEquals(0, restarted.getQueueDepth());
+        restarted.close();
+    }
+
+    @Test
+    public void testDispatcher_DoesNotSpoolRequestInFlight() throws Exception {
+        hold = new CountDownLatch(1);
+        final WebhookDispatcher dispatcher = createSpooledDispatcher(0);
+        dispatcher.enqueue(webhook, line(SENDER, "Hello"));
+        awaitUntil(received::size, 1);
+        dispatcher.close();
+        hold.countDown();
+
+        final WebhookDispatcher restarted = createSpooledDispatcher(0);
+        Thread.sleep(500);
+        Assertions.assertEquals(1, received.size(), "A request in flight on shutdown should not be sent again");
+        Assertions.assertEquals(0, restarted.getQueueDepth());
+        restarted.close();
+    }
+
+    @Test
+    public void testPayloads_InlineSplitsBySenderAndLength() throws IOException {
+        final WebhookPayloads payloads = WebhookPayloads.compile(readTemplate("inline"));
+        Assertions.assertFalse(payloads.isEmbedded());
+        final UUID other = UUID.randomUUID();
+        final List<WebhookPayloads.Payload> built = payloads.build(List.of(
+                line(SENDER, "a"), line(SENDER, "b"), line(other, "c"),
+                line(SENDER, "x".repeat(1500)), line(SENDER, "y".repeat(1500))
+        ));
+        Assertions.assertEquals(List.of(2, 1, 1, 1), built.stream().map(WebhookPayloads.Payload::lines).toList());
+    }
+
+    @Test
+    public void testPayloads_EmbeddedBatchesUpToTenEmbeds() throws IOException {
+        final WebhookPayloads payloads = WebhookPayloads.compile(readTemplate("embedded"));
+        Assertions.assertTrue(payloads.isEmbedded());
+        final List<ChatLine> lines = new ArrayList<>();
+        for (int i = 0; i < 12; i++) {
+            lines.add(line(UUID.randomUUID(), "Message " + i));
+        }
+        final List<WebhookPayloads.Payload> built = payloads.build(lines);
+        Assertions.assertEquals(List.of(10, 2), built.stream().map(WebhookPayloads.Payload::lines).toList());
+
+        final String first = new String(built.get(0).body(), StandardCharsets.UTF_8);
+        Assertions.assertEquals(10, first.split("\"description\"", -1).length - 1);
+        Assertions.assertEquals(1, first.split("\"avatar_url\"", -1).length - 1);
+        Assertions.assertTrue(first.contains("Message 9") && !first.contains("Message 10"));
+    }
+
+    private WebhookDispatcher createDispatcher(String format, long batchWindowMillis) throws IOException {
+        return new WebhookDispatcher(WebhookPayloads.compile(readTemplate(format)), batchWindowMillis,
+                100, 3, (level, message, exceptions) -> {
+        });
+    }
+
+    private WebhookDispatcher createSpooledDispatcher(long batchWindowMillis) throws IOException {
+        return new WebhookDispatcher(WebhookPayloads.compile(readTemplate("inline")), batchWindowMillis,
+                100, 0, spoolDirectory, 1 << 20, TimeUnit.HOURS.toMillis(1), (level, message, exceptions) -> {
+        });
+    }
+
+    private static ChatLine line(UUID sender, String message) {
+        return new ChatLine(sender, "William278", "lobby", "global", "2024-01-01T00:00:00", message);
+    }
+
+    private static String readTemplate(String format) throws IOException {
+        try (InputStream stream = WebhookDispatcherTests.class.getClassLoader()
+                .getResourceAsStream("discord/" + format + "_message.json")) {
+            return new String(Objects.requireNonNull(stream).readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    // Wait for a counter to reach a value, failing after five seconds
+    private static void awaitUntil(IntSupplier counter, int expected) throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (counter.getAsInt() < expected && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        Assertions.assertEquals(expected, counter.getAsInt());
+    }
+
+}
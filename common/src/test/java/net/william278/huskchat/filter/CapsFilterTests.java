@@ -74,4 +74,10 @@ public class CapsFilterTests {
         Assertions.assertTrue(capsFilter100Percent.isAllowed(new TestOnlineUser(), "this is a TEST MESSAGE"));
     }
 
+    @Test
+    public void testCapsFilter_50PercentCaps_StylisedCaps() {
+        Assertions.assertFalse(capsFilter50Percent.isAllowed(new TestOnlineUser(), "ⓉⒽⒾⓈ ⒾⓈ Ⓐ ⓉⒺⓈⓉ"));
+        Assertions.assertFalse(capsFilter50Percent.isAllowed(new TestOnlineUser(), "ＴＨＩＳ ＩＳ Ａ ＴＥＳＴ"));
+    }
+
 }
@@ -0,0 +1,84 @@
+/*
+ * This file is part of HuskChat, licensed under the Apache License 2.0.
+ *
+ *  Copyright (c) William278 <will27528@gmail.com>
+ *  Copyright (c) contributors
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.william278.huskchat.filter;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+public class EmojiTrieTests {
+
+    private final EmojiTrie emoji = EmojiTrie.compile(Map.of(
+            ":)", "☺",
+            ":-)", "☺",
+            ":-", "—",
+            ":heart:", "❤",
+            "<3", "❤",
+            ":fire:", "🔥"
+    ), false);
+
+    @Test
+    public void testNoShortcodesReturnsSameInstance() {
+        final String message = "This is an example sentence!";
+        Assertions.assertSame(message, emoji.replace(message));
+    }
+
+    @Test
+    public void testSpaceSeparatedShortcodes() {
+        Assertions.assertEquals("I ❤ this 🔥", emoji.replace("I <3 this :fire:"));
+    }
+
+    @Test
+    public void testAdjacentShortcodes() {
+        Assertions.assertEquals("hi❤", emoji.replace("hi:heart:"));
+        Assertions.assertEquals("❤🔥☺", emoji.replace(":heart::fire::)"));
+    }
+
+    @Test
+    public void testLongestMatchWins() {
+        Assertions.assertEquals("☺ —", emoji.replace(":-) :-"));
+    }
+
+    @Test
+    public void testPartialShortcodeIsKept() {
+        Assertions.assertEquals(":hear ❤", emoji.replace(":hear <3"));
+    }
+
+    @Test
+    public void testCaseSensitivity() {
+        Assertions.assertEquals(":HEART:", emoji.replace(":HEART:"));
+        final EmojiTrie insensitive = EmojiTrie.compile(Map.of(":heart:", "❤"), true);
+        Assertions.assertEquals("❤ ❤", insensitive.replace(":HEART: :Heart:"));
+    }
+
+    @Test
+    public void testLargeEmojiMap() {
+        final Map<String, String> large = new HashMap<>();
+        for (int i = 0; i < 400; i++) {
+            large.put(":emoji_" + i + ":", Character.toString(0xE000 + i));
+        }
+        final EmojiTrie trie = EmojiTrie.compile(large, false);
+        Assertions.assertEquals("a" + Character.toString(0xE000) + "b" + Character.toString(0xE000 + 399)
+                + "c:emoji_400:", trie.replace("a:emoji_0:b:emoji_399:c:emoji_400:"));
+    }
+
+}
@@ -0,0 +1,118 @@
+/*
+ * This file is part of HuskChat, licensed under the Apache License 2.0.
+ *
+ *  Copyright (c) William278 <will27528@gmail.com>
+ *  Copyright (c) contributors
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.william278.huskchat.filter;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class FilterOrderingTests {
+
+    private static void record(ChatFilter filter, int evaluations, long nanos, double rejectionRate) {
+        for (int i = 0; i < evaluations; i++) {
+            filter.getStatistics().record(nanos, i >= evaluations * rejectionRate);
+        }
+    }
+
+    @Test
+    public void testFilterOrdering_CheapRejectingFilterFirst_NeverRejectingLast() {
+        final ChatFilter advertising = new AdvertisingFilterer(AdvertisingFilterer.getDefaultSettings());
+        final ChatFilter caps = new CapsFilter(CapsFilter.getDefaultSettings());
+        final ChatFilter ascii = new AsciiFilter(AsciiFilter.getDefaultSettings());
+        record(advertising, 100, 5_000, 0.01);
+        record(caps, 100, 100, 0.2);
+        record(ascii, 100, 50, 0.0);
+
+        Assertions.assertEquals(List.of(caps, advertising, ascii),
+                FilterOrdering.order(List.of(advertising, caps, ascii)));
+    }
+
+    @Test
+    public void testFilterOrdering_StatefulFiltersAndReplacersKeepPosition() {
+        final ChatFilter repeat = new RepeatFilter(RepeatFilter.getDefaultSettings());
+        final ChatFilter advertising = new AdvertisingFilterer(AdvertisingFilterer.getDefaultSettings());
+        final ChatFilter emoji = new EmojiReplacer(EmojiReplacer.getDefaultSettings());
+        final ChatFilter caps = new CapsFilter(CapsFilter.getDefaultSettings());
+        record(repeat, 100, 10, 0.9);
+        record(emoji, 100, 1, 0.0);
+        record(advertising, 100, 5_000, 0.01);
+        record(caps, 100, 100, 0.2);
+
+        Assertions.assertEquals(List.of(repeat, caps, advertising, emoji),
+                FilterOrdering.order(List.of(repeat, advertising, caps, emoji)));
+    }
+
+    @Test
+    public void testFilterOrdering_FiltersDoNotMovePastStatefulFilters() {
+        final ChatFilter advertising = new AdvertisingFilterer(AdvertisingFilterer.getDefaultSettings());
+        final ChatFilter spam = new SpamFilter(SpamFilter.getDefaultSettings());
+        final ChatFilter caps = new CapsFilter(CapsFilter.getDefaultSettings());
+        final ChatFilter ascii = new AsciiFilter(AsciiFilter.getDefaultSettings());
+        record(advertising, 100, 5_000, 0.01);
+        record(spam, 100, 10, 0.9);
+        record(caps, 100, 100, 0.2);
+        record(ascii, 100, 50, 0.0);
+
+        Assertions.assertEquals(List.of(advertising, spam, caps, ascii),
+                FilterOrdering.order(List.of(advertising, spam, ascii, caps)));
+    }
+
+    @Test
+    public void testFilterOrdering_FiltersDoNotMovePastReplacers() {
+        final ChatFilter advertising = new AdvertisingFilterer(AdvertisingFilterer.getDefaultSettings());
+        final ChatFilter emoji = new EmojiReplacer(EmojiReplacer.getDefaultSettings());
+        final ChatFilter caps = new CapsFilter(CapsFilter.getDefaultSettings());
+        record(advertising, 100, 5_000, 0.01);
+        record(emoji, 100, 1, 0.0);
+        record(caps, 100, 100, 0.2);
+
+        Assertions.assertEquals(List.of(advertising, emoji, caps),
+                FilterOrdering.order(List.of(advertising, emoji, caps)));
+    }
+
+    @Test
+    public void testFilterOrdering_UnsampledFiltersKeepRelativeOrder() {
+        final ChatFilter advertising = new AdvertisingFilterer(AdvertisingFilterer.getDefaultSettings());
+        final ChatFilter ascii = new AsciiFilter(AsciiFilter.getDefaultSettings());
+        final ChatFilter caps = new CapsFilter(CapsFilter.getDefaultSettings());
+        record(caps, 100, 100, 0.2);
+
+        Assertions.assertEquals(List.of(caps, advertising, ascii),
+                FilterOrdering.order(List.of(advertising, ascii, caps)));
+    }
+
+    @Test
+    public void testFilterOrdering_ReorderInPlace() {
+        final ChatFilter advertising = new AdvertisingFilterer(AdvertisingFilterer.getDefaultSettings());
+        final ChatFilter caps = new CapsFilter(CapsFilter.getDefaultSettings());
+        record(advertising, 100, 5_000, 0.01);
+        record(caps, 100, 100, 0.2);
+
+        final List<ChatFilter> filters = new ArrayList<>(List.of(advertising, caps));
+        final FilterOrdering ordering = new FilterOrdering(true, 2);
+        ordering.onMessageFiltered(filters);
+        Assertions.assertEquals(List.of(advertising, caps), filters);
+        ordering.onMessageFiltered(filters);
+        Assertions.assertEquals(List.of(caps, advertising), filters);
+    }
+
+}
@@ -0,0 +1,228 @@
+/*
+ * This file is part of HuskChat, licensed under the Apache License 2.0.
+ *
+ *  Copyright (c) William278 <will27528@gmail.com>
+ *  Copyright (c) contributors
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.william278.huskchat.filter;
+
+import net.william278.huskchat.user.OnlineUser;
+import net.william278.huskchat.user.TestOnlineUser;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class FilterPipelineTests {
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final FilterPipeline pipeline = new FilterPipeline(new FilterVerdictCache(0), executor);
+    private final OnlineUser sender = new TestOnlineUser() {
+        @Override
+        public boolean hasPermission(@Nullable String permission, boolean allowByDefault) {
+            return false;
+        }
+    };
+
+    @AfterEach
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testPipeline_SyncFiltersCompleteImmediately() {
+        final var result = pipeline.filter(sender, "hello", List.of(new SlowFilter(false, 0, true)));
+        Assertions.assertTrue(result.isDone());
+        Assertions.assertTrue(result.join().isAllowed());
+    }
+
+    @Test
+    public void testPipeline_SyncRejection() {
+        final ChatFilter rejecting = new SlowFilter(false, 0, false);
+        final FilterPipeline.Result result = pipeline.filter(sender, "hello", List.of(rejecting)).join();
+        Assertions.assertEquals(FilterPipeline.Outcome.REJECTED, result.getOutcome());
+        Assertions.assertSame(rejecting, result.getRejectedBy());
+    }
+
+    @Test
+    public void testPipeline_AsyncFiltersRunInParallel() {
+        pipeline.configure(2000, FilterPipeline.TimeoutPolicy.BLOCK);
+        final long start = System.currentTimeMillis();
+        final FilterPipeline.Result result = pipeline.filter(sender, "hello", List.of(
+                new SlowFilter(true, 300, true),
+                new SlowFilter(true, 300, true),
+                new SlowFilter(true, 300, true)
+        )).join();
+        Assertions.assertTrue(result.isAllowed());
+        Assertions.assertTrue(System.currentTimeMillis() - start < 800);
+    }
+
+    @Test
+    public void testPipeline_AsyncRejectionCompletesEarly() {
+        pipeline.configure(5000, FilterPipeline.TimeoutPolicy.ALLOW);
+        final ChatFilter rejecting = new SlowFilter(true, 50, false);
+        final long start = System.currentTimeMillis();
+        final FilterPipeline.Result result = pipeline.filter(sender, "hello", List.of(
+                new SlowFilter(true, 3000, true), rejecting
+        )).join();
+        Assertions.assertEquals(FilterPipeline.Outcome.REJECTED, result.getOutcome());
+        Assertions.assertSame(rejecting, result.getRejectedBy());
+        Assertions.assertTrue(System.currentTimeMillis() - start < 2000);
+    }
+
+    @Test
+    public void testPipeline_TimeoutAllow() {
+        pipeline.configure(100, FilterPipeline.TimeoutPolicy.ALLOW);
+        final FilterPipeline.Result result = pipeline.filter(sender, "hello",
+                List.of(new SlowFilter(true, 3000, false))).join();
+        Assertions.assertTrue(result.isAllowed());
+        Assertions.assertEquals("hello", result.getMessage());
+        Assertions.assertEquals(1, pipeline.getTimeouts());
+    }
+
+    @Test
+    public void testPipeline_TimeoutBlock() {
+        pipeline.configure(100, FilterPipeline.TimeoutPolicy.BLOCK);
+        final FilterPipeline.Result result = pipeline.filter(sender, "hello",
+                List.of(new SlowFilter(true, 3000, true))).join();
+        Assertions.assertEquals(FilterPipeline.Outcome.TIMED_OUT, result.getOutcome());
+        Assertions.assertFalse(result.isAllowed());
+    }
+
+    @Test
+    public void testPipeline_TimeoutCancelsQueuedChecks() throws InterruptedException {
+        final ExecutorService single = Executors.newSingleThreadExecutor();
+        try {
+            final FilterPipeline singlePipeline = new FilterPipeline(new FilterVerdictCache(0), single);
+            singlePipeline.configure(100, FilterPipeline.TimeoutPolicy.BLOCK);
+            final SlowFilter queued = new SlowFilter(true, 0, true);
+            final FilterPipeline.Result result = singlePipeline.filter(sender, "hello",
+                    List.of(new SlowFilter(true, 300, true), queued)).join();
+            Assertions.assertEquals(FilterPipeline.Outcome.TIMED_OUT, result.getOutcome());
+
+            Thread.sleep(500);
+            Assertions.assertEquals(0, queued.getChecks(), "A check queued past the deadline should not run");
+        } finally {
+            single.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testPipeline_FullExecutorTimesOut() {
+        final FilterPipeline fullPipeline = new FilterPipeline(new FilterVerdictCache(0), runnable -> {
+            throw new RejectedExecutionException("Queue full");
+        });
+        fullPipeline.configure(5000, FilterPipeline.TimeoutPolicy.BLOCK);
+        final FilterPipeline.Result result = fullPipeline.filter(sender, "hello",
+                List.of(new SlowFilter(true, 0, true))).join();
+        Assertions.assertEquals(FilterPipeline.Outcome.TIMED_OUT, result.getOutcome());
+        Assertions.assertEquals(1, fullPipeline.getTimeouts());
+    }
+
+    @Test
+    public void testPipeline_AsyncFailureRejects() {
+        pipeline.configure(5000, FilterPipeline.TimeoutPolicy.ALLOW);
+        final ChatFilter failing = new SlowFilter(true, 0, true) {
+            @Override
+            public boolean isAllowed(@NotNull OnlineUser sender, @NotNull String message) {
+                throw new IllegalStateException("Checker unavailable");
+            }
+        };
+        final FilterPipeline.Result result = pipeline.filter(sender, "hello",
+                List.of(new SlowFilter(true, 50, true), failing)).join();
+        Assertions.assertEquals(FilterPipeline.Outcome.REJECTED, result.getOutcome());
+        Assertions.assertSame(failing, result.getRejectedBy());
+    }
+
+    @Test
+    public void testPipeline_CacheHitsAreNotTimed() {
+        final FilterPipeline cachingPipeline = new FilterPipeline(new FilterVerdictCache(16), executor);
+        final ChatFilter cacheable = new SlowFilter(false, 0, true) {
+            @Override
+            public boolean isCacheable() {
+                return true;
+            }
+        };
+        for (int i = 0; i < 3; i++) {
+            Assertions.assertTrue(cachingPipeline.filter(sender, "hello", List.of(cacheable)).join().isAllowed());
+        }
+        Assertions.assertEquals(1, cacheable.getStatistics().getEvaluations());
+    }
+
+    @Test
+    public void testPipeline_BypassSkipsFilters() {
+        final FilterPipeline.Result result = pipeline.filter(new TestOnlineUser(), "hello",
+                List.of(new SlowFilter(true, 3000, false))).join();
+        Assertions.assertTrue(result.isAllowed());
+    }
+
+    // A fake filter that takes a fixed time to return a fixed verdict
+    private static class SlowFilter extends ChatFilter {
+
+        private final boolean async;
+        private final long delayMillis;
+        private final boolean verdict;
+        private final AtomicInteger checks = new AtomicInteger();
+
+        private SlowFilter(boolean async, long delayMillis, boolean verdict) {
+            super(new FilterSettings());
+            this.async = async;
+            this.delayMillis = delayMillis;
+            this.verdict = verdict;
+        }
+
+        @Override
+        public boolean isAllowed(@NotNull OnlineUser sender, @NotNull String message) {
+            checks.incrementAndGet();
+            try {
+                Thread.sleep(delayMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return verdict;
+        }
+
+        @Override
+        public boolean isAsync() {
+            return async;
+        }
+
+        private int getChecks() {
+            return checks.get();
+        }
+
+        @Override
+        @NotNull
+        public String getDisallowedLocale() {
+            return "error_chat_filter_regex";
+        }
+
+        @Override
+        @NotNull
+        public String getIgnorePermission() {
+            return "huskchat.ignore_filters.slow";
+        }
+
+    }
+
+}
@@ -0,0 +1,87 @@
+/*
+ * This file is part of HuskChat, licensed under the Apache License 2.0.
+ *
+ *  Copyright (c) William278 <will27528@gmail.com>
+ *  Copyright (c) contributors
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.william278.huskchat.filter;
+
+import net.william278.huskchat.user.TestOnlineUser;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class FilterVerdictCacheTests {
+
+    private final CapsFilter capsFilter = new CapsFilter(new CapsFilter.CapsFilterSettings(0.5));
+
+    @Test
+    public void testVerdictCache_IdenticalMessagesEvaluatedOnce() {
+        final FilterVerdictCache cache = new FilterVerdictCache(64);
+        final AtomicInteger evaluations = new AtomicInteger();
+        for (int i = 0; i < 10; i++) {
+            final MessageAnalysis analysis = MessageAnalysis.of("THIS IS A TEST MESSAGE");
+            Assertions.assertFalse(cache.isAllowed(capsFilter, analysis, () -> {
+                evaluations.incrementAndGet();
+                return capsFilter.isAllowed(new TestOnlineUser(), analysis);
+            }));
+        }
+        Assertions.assertEquals(1, evaluations.get());
+        Assertions.assertEquals(9, cache.getHits());
+        Assertions.assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void testVerdictCache_KeyedByFilter() {
+        final FilterVerdictCache cache = new FilterVerdictCache(64);
+        final CapsFilter lenientFilter = new CapsFilter(new CapsFilter.CapsFilterSettings(1.0));
+        final MessageAnalysis analysis = MessageAnalysis.of("THIS IS A TEST MESSAGE");
+        Assertions.assertFalse(cache.isAllowed(capsFilter, analysis, () -> false));
+        Assertions.assertTrue(cache.isAllowed(lenientFilter, analysis, () -> true));
+        Assertions.assertEquals(2, cache.getMisses());
+    }
+
+    @Test
+    public void testVerdictCache_Invalidate() {
+        final FilterVerdictCache cache = new FilterVerdictCache(64);
+        final MessageAnalysis analysis = MessageAnalysis.of("hello");
+        cache.isAllowed(capsFilter, analysis, () -> true);
+        Assertions.assertEquals(1, cache.getSize());
+        cache.invalidateAll();
+        Assertions.assertEquals(0, cache.getSize());
+        Assertions.assertFalse(cache.isAllowed(capsFilter, analysis, () -> false));
+    }
+
+    @Test
+    public void testVerdictCache_Bounded() {
+        final FilterVerdictCache cache = new FilterVerdictCache(64);
+        for (int i = 0; i < 1000; i++) {
+            cache.isAllowed(capsFilter, MessageAnalysis.of("message " + i), () -> true);
+        }
+        Assertions.assertTrue(cache.getSize() <= 64);
+    }
+
+    @Test
+    public void testVerdictCache_Disabled() {
+        final FilterVerdictCache cache = new FilterVerdictCache(0);
+        final MessageAnalysis analysis = MessageAnalysis.of("hello");
+        cache.isAllowed(capsFilter, analysis, () -> true);
+        Assertions.assertEquals(0, cache.getSize());
+        Assertions.assertFalse(cache.isAllowed(capsFilter, analysis, () -> false));
+    }
+
+}
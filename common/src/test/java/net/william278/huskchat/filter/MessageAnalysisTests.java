@@ -0,0 +1,103 @@
+/*
+ * This file is part of HuskChat, licensed under the Apache License 2.0.
+ *
+ *  Copyright (c) William278 <will27528@gmail.com>
+ *  Copyright (c) contributors
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.william278.huskchat.filter;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class MessageAnalysisTests {
+
+    @Test
+    public void testMessageAnalysis_CountsCategories() {
+        final MessageAnalysis analysis = MessageAnalysis.of("Hello World 42.");
+        Assertions.assertEquals(15, analysis.getLength());
+        Assertions.assertEquals(10, analysis.getLetters());
+        Assertions.assertEquals(2, analysis.getUppercase());
+        Assertions.assertEquals(8, analysis.getLowercase());
+        Assertions.assertEquals(2, analysis.getDigits());
+        Assertions.assertEquals(2, analysis.getWhitespace());
+        Assertions.assertEquals(1, analysis.getPeriods());
+        Assertions.assertTrue(analysis.isAsciiWhitespace());
+        Assertions.assertFalse(analysis.containsNonAscii());
+    }
+
+    @Test
+    public void testMessageAnalysis_UppercaseRatio() {
+        Assertions.assertEquals(0.5d, MessageAnalysis.of("ABcd").getUppercaseRatio());
+        Assertions.assertEquals(0d, MessageAnalysis.of("").getUppercaseRatio());
+    }
+
+    @Test
+    public void testMessageAnalysis_UppercaseRatioMatchesCharacterCount() {
+        for (String message : new String[]{"ⒶⒷⒸ abc", "ＡＢＣ abc", "\uD835\uDC00\uD835\uDC01 ab", "ǅungla Ⅻ"}) {
+            int uppercase = 0;
+            for (char character : message.toCharArray()) {
+                if (Character.isUpperCase(character)) {
+                    uppercase++;
+                }
+            }
+            Assertions.assertEquals((double) uppercase / message.length(),
+                    MessageAnalysis.of(message).getUppercaseRatio(), message);
+        }
+    }
+
+    @Test
+    public void testMessageAnalysis_NonAscii() {
+        final MessageAnalysis analysis = MessageAnalysis.of("café 😀");
+        Assertions.assertTrue(analysis.containsNonAscii());
+        Assertions.assertEquals(2, analysis.getNonAscii());
+        Assertions.assertEquals(6, analysis.getCodePoints());
+    }
+
+    @Test
+    public void testMessageAnalysis_FoldedForm() {
+        final String lower = "already lower case";
+        Assertions.assertSame(lower, MessageAnalysis.of(lower).getFolded());
+        Assertions.assertEquals("mixed case", MessageAnalysis.of("MiXeD CaSe").getFolded());
+    }
+
+    @Test
+    public void testMessageAnalysis_TokenBoundaries() {
+        final MessageAnalysis analysis = MessageAnalysis.of("  one two\tthree ");
+        Assertions.assertEquals(3, analysis.getTokenCount());
+        Assertions.assertEquals("one", analysis.getToken(0));
+        Assertions.assertEquals("two", analysis.getToken(1));
+        Assertions.assertEquals("three", analysis.getToken(2));
+        Assertions.assertEquals(2, analysis.getTokenStart(0));
+        Assertions.assertEquals(5, analysis.getTokenEnd(0));
+        Assertions.assertThrows(IndexOutOfBoundsException.class, () -> analysis.getToken(3));
+    }
+
+    @Test
+    public void testMessageAnalysis_ManyTokens() {
+        final MessageAnalysis analysis = MessageAnalysis.of("a b c d e f g h i j k l");
+        Assertions.assertEquals(12, analysis.getTokenCount());
+        Assertions.assertEquals("l", analysis.getToken(11));
+    }
+
+    @Test
+    public void testMessageAnalysis_ContentHash() {
+        Assertions.assertEquals(MessageAnalysis.of("same message").getContentHash(),
+                MessageAnalysis.of("same message").getContentHash());
+        Assertions.assertNotEquals(MessageAnalysis.of("one message").getContentHash(),
+                MessageAnalysis.of("another message").getContentHash());
+    }
+
+}
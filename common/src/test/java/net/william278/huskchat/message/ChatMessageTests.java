@@ -0,0 +1,85 @@
+/*
+ * This file is part of HuskChat, licensed under the Apache License 2.0.
+ *
+ *  Copyright (c) William278 <will27528@gmail.com>
+ *  Copyright (c) contributors
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package net.william278.huskchat.message;
+
+import net.kyori.adventure.audience.Audience;
+import net.kyori.adventure.text.Component;
+import net.william278.huskchat.TestHuskChat;
+import net.william278.huskchat.channel.Channel;
+import net.william278.huskchat.user.OnlineUser;
+import net.william278.huskchat.user.TestOnlineUser;
+import net.william278.huskchat.util.SerializedComponentCache;
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ChatMessageTests {
+
+    private static final int RECIPIENTS = 5;
+
+    private final SerializedComponentCache cache = new SerializedComponentCache();
+    private final AtomicInteger serializations = new AtomicInteger();
+    private final List<Component> received = new ArrayList<>();
+
+    @Test
+    public void testChatMessage_RenderedAndSerializedOnce() {
+        final List<OnlineUser> players = new ArrayList<>();
+        for (int i = 0; i < RECIPIENTS; i++) {
+            players.add(createPlayer());
+        }
+        final Channel channel = Channel.builder()
+                .id("global")
+                .format("&7[Global] %name%&f: ")
+                .broadcastScope(Channel.BroadcastScope.GLOBAL)
+                .build();
+        new ChatMessage(channel, players.get(0), "Hello, world!", TestHuskChat.create(players)).deliver();
+
+        Assertions.assertEquals(RECIPIENTS, received.size());
+        received.forEach(message -> Assertions.assertSame(received.get(0), message));
+        Assertions.assertEquals(1, serializations.get());
+    }
+
+    // Create a player that serializes what it receives through the shared cache, as the Bukkit and Bungee users do
+    @NotNull
+    private OnlineUser createPlayer() {
+        return new TestOnlineUser() {
+            @NotNull
+            @Override
+            public Audience getAudience() {
+                return new Audience() {
+                    @Override
+                    public void sendMessage(@NotNull Component message) {
+                        received.add(message);
+                        cache.get(message, SerializedComponentCache.Format.MODERN, component -> {
+                            serializations.incrementAndGet();
+                            return component.toString();
+                        });
+                    }
+                };
+            }
+        };
+    }
+
+}
@@ -0,0 +1,135 @@
+/*
+ * This file is part of HuskChat, licensed under the Apache License 2.0.
+ *
+ *  Copyright (c) William278 <will27528@gmail.com>
+ *  Copyright (c) contributors
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package net.william278.huskchat.message;
+
+import net.kyori.adventure.audience.Audience;
+import net.kyori.adventure.text.Component;
+import net.william278.huskchat.HuskChat;
+import net.william278.huskchat.TestHuskChat;
+import net.william278.huskchat.channel.Channel;
+import net.william278.huskchat.config.Settings;
+import net.william278.huskchat.user.OnlineUser;
+import net.william278.huskchat.user.TestOnlineUser;
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class JoinQuitAnnouncerTests {
+
+    private static final long WINDOW_MILLIS = 3000;
+    private static final int THRESHOLD = 5;
+
+    private final AtomicLong time = new AtomicLong();
+    private final JoinQuitAnnouncer.Window<String> window = new JoinQuitAnnouncer.Window<>(time::get);
+
+    @Test
+    public void testWindow_SendsIndividuallyAtNormalRates() {
+        for (int i = 0; i < 100; i++) {
+            time.addAndGet(WINDOW_MILLIS / THRESHOLD);
+            Assertions.assertEquals(JoinQuitAnnouncer.Window.Offer.SEND, offer("player" + i));
+        }
+        Assertions.assertTrue(window.drain().isEmpty());
+    }
+
+    @Test
+    public void testWindow_BatchesAboveThreshold() {
+        for (int i = 0; i < THRESHOLD; i++) {
+            Assertions.assertEquals(JoinQuitAnnouncer.Window.Offer.SEND, offer("player" + i));
+        }
+        Assertions.assertEquals(JoinQuitAnnouncer.Window.Offer.BATCH_STARTED, offer("first"));
+        final List<String> expected = new ArrayList<>(List.of("first"));
+        for (int i = 0; i < 1500; i++) {
+            Assertions.assertEquals(JoinQuitAnnouncer.Window.Offer.BATCHED, offer("batched" + i));
+            expected.add("batched" + i);
+        }
+        Assertions.assertEquals(expected, window.drain());
+        Assertions.assertTrue(window.drain().isEmpty());
+    }
+
+    @Test
+    public void testWindow_KeepsBatchingWhileStormContinues() {
+        for (int i = 0; i <= THRESHOLD; i++) {
+            offer("player" + i);
+        }
+        window.drain();
+
+        // Still above the threshold within the same window, so a new batch starts straight away
+        Assertions.assertEquals(JoinQuitAnnouncer.Window.Offer.BATCH_STARTED, offer("next"));
+        window.drain();
+
+        // Once the storm has passed, announcements are sent individually again
+        time.addAndGet(WINDOW_MILLIS);
+        Assertions.assertEquals(JoinQuitAnnouncer.Window.Offer.SEND, offer("late"));
+    }
+
+    @Test
+    public void testSummary_SentToServerPlayersQuitFrom() throws ReflectiveOperationException {
+        final List<Component> lobby = new ArrayList<>();
+        final List<Component> survival = new ArrayList<>();
+        final HuskChat plugin = TestHuskChat.create(List.of(player("lobby", lobby), player("survival", survival)));
+        final Field scope = Settings.JoinQuitSettings.class.getDeclaredField("broadcastScope");
+        scope.setAccessible(true);
+        scope.set(plugin.getSettings().getJoinAndQuitMessages(), Channel.BroadcastScope.LOCAL);
+
+        // By the time the summary is sent, the players who quit are no longer on any server
+        final List<JoinQuitAnnouncer.Announcement> quits = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            quits.add(new JoinQuitAnnouncer.Announcement(player("", new ArrayList<>()), "lobby"));
+        }
+        plugin.getLocales().sendJoinQuitSummary(quits, false, plugin);
+
+        Assertions.assertEquals(1, lobby.size());
+        Assertions.assertTrue(survival.isEmpty());
+    }
+
+    // Create a player on a server, recording the messages they receive
+    @NotNull
+    private static OnlineUser player(@NotNull String server, @NotNull List<Component> received) {
+        return new TestOnlineUser() {
+            @Override
+            @NotNull
+            public String getServerName() {
+                return server;
+            }
+
+            @NotNull
+            @Override
+            public Audience getAudience() {
+                return new Audience() {
+                    @Override
+                    public void sendMessage(@NotNull Component message) {
+                        received.add(message);
+                    }
+                };
+            }
+        };
+    }
+
+    private JoinQuitAnnouncer.Window.Offer offer(String announcement) {
+        return window.offer(announcement, WINDOW_MILLIS, THRESHOLD);
+    }
+
+}
@@ -0,0 +1,76 @@
+/*
+ * This file is part of HuskChat, licensed under the Apache License 2.0.
+ *
+ *  Copyright (c) William278 <will27528@gmail.com>
+ *  Copyright (c) contributors
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.william278.huskchat.network;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+public class EnvelopeTests {
+
+    @Test
+    public void testEnvelope_RoundTripsChat() throws IOException {
+        final Envelope envelope = new Envelope(Envelope.Type.CHAT, "proxy-1",
+                new Envelope.Player(UUID.randomUUID(), "William278", "lobby"), "global", List.of(),
+                "Hello — everyone ✨", false);
+        Assertions.assertEquals(envelope, Envelope.fromBytes(envelope.toBytes()));
+    }
+
+    @Test
+    public void testEnvelope_RoundTripsPrivateMessage() throws IOException {
+        final List<Envelope.Player> receivers = List.of(
+                new Envelope.Player(UUID.randomUUID(), "Alice", "survival"),
+                new Envelope.Player(UUID.randomUUID(), "Bob", "creative"));
+        final Envelope envelope = new Envelope(Envelope.Type.PRIVATE_MESSAGE, "proxy-2",
+                new Envelope.Player(UUID.randomUUID(), "Carol", "lobby"), "", receivers, "Psst", true);
+        final Envelope read = Envelope.fromBytes(envelope.toBytes());
+        Assertions.assertEquals(receivers, read.players());
+        Assertions.assertTrue(read.bypassSpy());
+    }
+
+    @Test
+    public void testEnvelope_RoundTripsPlaceholders() throws IOException {
+        final Map<String, String> placeholders = new LinkedHashMap<>();
+        placeholders.put("%prefix%", "&c[Admin] ");
+        placeholders.put("%fullname%", "&c[Admin] William278");
+        final Envelope envelope = new Envelope(Envelope.Type.CHAT, "proxy-1",
+                new Envelope.Player(UUID.randomUUID(), "William278", "lobby"), "global", List.of(),
+                "Hello", false, placeholders);
+        Assertions.assertEquals(placeholders, Envelope.fromBytes(envelope.toBytes()).placeholders());
+    }
+
+    @Test
+    public void testEnvelope_RoundTripsWithoutSender() throws IOException {
+        final Envelope envelope = new Envelope(Envelope.Type.BROADCAST, "proxy-1", null, "", List.of(),
+                "Restarting soon", false);
+        Assertions.assertNull(Envelope.fromBytes(envelope.toBytes()).sender());
+    }
+
+    @Test
+    public void testEnvelope_RejectsUnknownType() {
+        Assertions.assertThrows(IOException.class, () -> Envelope.fromBytes(new byte[]{(byte) 0x7F}));
+    }
+
+}
@@ -0,0 +1,186 @@
+/*
+ * This file is part of HuskChat, licensed under the Apache License 2.0.
+ *
+ *  Copyright (c) William278 <will27528@gmail.com>
+ *  Copyright (c) contributors
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.william278.huskchat.network;
+
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+public class MessageBrokerTests {
+
+    private static final MessageBroker.Log LOG = (level, message, exceptions) -> {
+    };
+
+    private static Envelope chat(String origin, String message) {
+        return new Envelope(Envelope.Type.CHAT, origin, null, "global", List.of(), message, false);
+    }
+
+    @Test
+    public void testLoopback_DeliversInOrderToOtherBrokers() throws IOException, InterruptedException {
+        final LoopbackBroker.Hub hub = new LoopbackBroker.Hub();
+        final LoopbackBroker first = new LoopbackBroker("proxy-1", hub, LOG);
+        final LoopbackBroker second = new LoopbackBroker("proxy-2", hub, LOG);
+        final RecordingReceiver firstReceiver = new RecordingReceiver();
+        final RecordingReceiver secondReceiver = new RecordingReceiver();
+        first.connect(firstReceiver);
+        second.connect(secondReceiver);
+        Assertions.assertEquals("connected proxy-2", firstReceiver.next());
+        Assertions.assertEquals("connected proxy-1", secondReceiver.next());
+        Assertions.assertEquals(1, first.getConnectedPeers());
+
+        for (int i = 0; i < 100; i++) {
+            first.publish(chat("proxy-1", "Message " + i));
+        }
+        for (int i = 0; i < 100; i++) {
+            Assertions.assertEquals("receive Message " + i, secondReceiver.next());
+        }
+        Assertions.assertNull(firstReceiver.poll(), "A broker should not receive its own envelopes");
+
+        second.close();
+        Assertions.assertEquals("disconnected proxy-2", firstReceiver.next());
+        Assertions.assertEquals(0, first.getConnectedPeers());
+        first.close();
+    }
+
+    @Test
+    public void testTcp_DeliversBetweenPeers() throws IOException, InterruptedException {
+        final TcpPeerBroker first = new TcpPeerBroker("proxy-1", new InetSocketAddress("127.0.0.1", 0),
+                List.of(), "secret", LOG);
+        final RecordingReceiver firstReceiver = new RecordingReceiver();
+        first.connect(firstReceiver);
+
+        final TcpPeerBroker second = new TcpPeerBroker("proxy-2", new InetSocketAddress("127.0.0.1", 0),
+                List.of(InetSocketAddress.createUnresolved("127.0.0.1", first.getLocalPort())), "secret", LOG);
+        second.connect(new RecordingReceiver());
+        for (int i = 0; i < 100; i++) {
+            second.publish(chat("proxy-2", "Message " + i));
+        }
+
+        Assertions.assertEquals("connected proxy-2", firstReceiver.next());
+        for (int i = 0; i < 100; i++) {
+            Assertions.assertEquals("receive Message " + i, firstReceiver.next());
+        }
+        Assertions.assertEquals(1, first.getConnectedPeers());
+
+        second.close();
+        Assertions.assertEquals("disconnected proxy-2", firstReceiver.next());
+        first.close();
+    }
+
+    @Test
+    public void testTcp_RejectsWrongSecret() throws IOException, InterruptedException {
+        final TcpPeerBroker first = new TcpPeerBroker("proxy-1", new InetSocketAddress("127.0.0.1", 0),
+                List.of(), "secret", LOG);
+        final RecordingReceiver firstReceiver = new RecordingReceiver();
+        first.connect(firstReceiver);
+
+        final TcpPeerBroker second = new TcpPeerBroker("proxy-2", new InetSocketAddress("127.0.0.1", 0),
+                List.of(InetSocketAddress.createUnresolved("127.0.0.1", first.getLocalPort())), "wrong", LOG);
+        second.connect(new RecordingReceiver());
+        second.publish(chat("proxy-2", "Let me in"));
+
+        Assertions.assertNull(firstReceiver.poll());
+        Assertions.assertEquals(0, first.getConnectedPeers());
+        second.close();
+        first.close();
+    }
+
+    @Test
+    public void testTcp_KeepsConnectionWhenReceiverFails() throws IOException, InterruptedException {
+        final TcpPeerBroker first = new TcpPeerBroker("proxy-1", new InetSocketAddress("127.0.0.1", 0),
+                List.of(), "secret", LOG);
+        final RecordingReceiver firstReceiver = new RecordingReceiver();
+        first.connect(new MessageBroker.Receiver() {
+            @Override
+            public void connected(@NotNull String proxy) {
+                firstReceiver.connected(proxy);
+            }
+
+            @Override
+            public void receive(@NotNull Envelope envelope) {
+                if (envelope.message().equals("Fail")) {
+                    throw new IllegalStateException("Receiver failed");
+                }
+                firstReceiver.receive(envelope);
+            }
+
+            @Override
+            public void disconnected(@NotNull String proxy) {
+                firstReceiver.disconnected(proxy);
+            }
+        });
+
+        final TcpPeerBroker second = new TcpPeerBroker("proxy-2", new InetSocketAddress("127.0.0.1", 0),
+                List.of(InetSocketAddress.createUnresolved("127.0.0.1", first.getLocalPort())), "secret", LOG);
+        second.connect(new RecordingReceiver());
+        second.publish(chat("proxy-2", "Fail"));
+        second.publish(chat("proxy-2", "After"));
+
+        Assertions.assertEquals("connected proxy-2", firstReceiver.next());
+        Assertions.assertEquals("receive After", firstReceiver.next());
+        Assertions.assertEquals(1, first.getConnectedPeers());
+        second.close();
+        first.close();
+    }
+
+    @Test
+    public void testTcp_RequiresSecret() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new TcpPeerBroker("proxy-1",
+                new InetSocketAddress("127.0.0.1", 0), List.of(), " ", LOG));
+    }
+
+    // Records what a broker delivers, in order
+    private static final class RecordingReceiver implements MessageBroker.Receiver {
+        private final BlockingQueue<String> events = new LinkedBlockingQueue<>();
+
+        @Override
+        public void connected(@NotNull String proxy) {
+            events.add("connected " + proxy);
+        }
+
+        @Override
+        public void receive(@NotNull Envelope envelope) {
+            events.add("receive " + envelope.message());
+        }
+
+        @Override
+        public void disconnected(@NotNull String proxy) {
+            events.add("disconnected " + proxy);
+        }
+
+        private String next() throws InterruptedException {
+            final String event = events.poll(5, TimeUnit.SECONDS);
+            Assertions.assertNotNull(event, "Timed out waiting for the broker");
+            return event;
+        }
+
+        private String poll() throws InterruptedException {
+            return events.poll(500, TimeUnit.MILLISECONDS);
+        }
+    }
+
+}
@@ -0,0 +1,78 @@
+/*
+ * This file is part of HuskChat, licensed under the Apache License 2.0.
+ *
+ *  Copyright (c) William278 <will27528@gmail.com>
+ *  Copyright (c) contributors
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.william278.huskchat.network;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.UUID;
+
+public class RemotePlayerDirectoryTests {
+
+    private final RemotePlayerDirectory directory = new RemotePlayerDirectory();
+
+    private static Envelope.Player player(String name, String server) {
+        return new Envelope.Player(UUID.nameUUIDFromBytes(name.getBytes()), name, server);
+    }
+
+    @Test
+    public void testFind_PrefersExactNameThenShortestPrefix() {
+        directory.update("proxy-1", player("Will", "lobby"));
+        directory.update("proxy-1", player("William", "lobby"));
+        directory.update("proxy-2", player("Willow", "survival"));
+
+        Assertions.assertEquals("William", directory.find("william").orElseThrow().player().name());
+        Assertions.assertEquals("Will", directory.find("wil").orElseThrow().player().name());
+        Assertions.assertEquals("Willow", directory.find("WILLO").orElseThrow().player().name());
+        Assertions.assertTrue(directory.find("Bob").isEmpty());
+    }
+
+    @Test
+    public void testUpdate_MovesPlayerBetweenServersAndProxies() {
+        directory.update("proxy-1", player("Alice", "lobby"));
+        directory.update("proxy-2", player("Alice", "survival"));
+
+        final RemotePlayerDirectory.Entry entry = directory.find("Alice").orElseThrow();
+        Assertions.assertEquals("proxy-2", entry.proxy());
+        Assertions.assertEquals(0, directory.getPlayersOnServer("lobby"));
+        Assertions.assertEquals(1, directory.getPlayersOnServer("survival"));
+
+        // A late quit from the old proxy must not remove the player from the new one
+        directory.remove("proxy-1", entry.player().uuid());
+        Assertions.assertTrue(directory.get(entry.player().uuid()).isPresent());
+    }
+
+    @Test
+    public void testReplaceAndRemoveProxy_OnlyAffectThatProxy() {
+        directory.update("proxy-1", player("Alice", "lobby"));
+        directory.update("proxy-2", player("Bob", "lobby"));
+
+        directory.replace("proxy-1", List.of(player("Carol", "lobby")));
+        Assertions.assertTrue(directory.find("Alice").isEmpty());
+        Assertions.assertTrue(directory.find("Carol").isPresent());
+        Assertions.assertEquals(2, directory.getPlayersOnServer("lobby"));
+
+        directory.removeProxy("proxy-1");
+        Assertions.assertEquals(List.of("Bob"), directory.getPlayers().stream()
+                .map(entry -> entry.player().name()).toList());
+    }
+
+}
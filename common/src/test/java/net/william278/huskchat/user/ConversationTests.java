@@ -0,0 +1,118 @@
+/*
+ * This file is part of HuskChat, licensed under the Apache License 2.0.
+ *
+ *  Copyright (c) William278 <will27528@gmail.com>
+ *  Copyright (c) contributors
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package net.william278.huskchat.user;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class ConversationTests {
+
+    // A /msg group of staff, as large as group messages are expected to get
+    private static final int MAX_GROUP_SIZE = 50;
+
+    private final AtomicLong time = new AtomicLong();
+    private final ReplyTargetStore store = new ReplyTargetStore(time::get);
+
+    @Test
+    public void testConversation_StableIdRegardlessOfOrder() {
+        final List<UUID> members = createMembers(MAX_GROUP_SIZE);
+        final List<UUID> shuffled = new ArrayList<>(members);
+        Collections.shuffle(shuffled, new Random(278));
+
+        final Conversation conversation = Conversation.of(members);
+        Assertions.assertEquals(conversation.getId(), Conversation.of(shuffled).getId());
+        Assertions.assertEquals(conversation, Conversation.of(shuffled));
+        Assertions.assertNotEquals(conversation.getId(), Conversation.of(members.subList(1, members.size())).getId());
+        Assertions.assertEquals(members, new ArrayList<>(conversation.getMembers()));
+    }
+
+    @Test
+    public void testConversation_MembersAreImmutable() {
+        final List<UUID> members = new ArrayList<>(createMembers(3));
+        final Conversation conversation = Conversation.of(members);
+        members.add(UUID.randomUUID());
+        Assertions.assertEquals(3, conversation.getMembers().size());
+        Assertions.assertThrows(UnsupportedOperationException.class,
+                () -> conversation.getMembers().add(UUID.randomUUID()));
+        Assertions.assertThrows(UnsupportedOperationException.class,
+                () -> conversation.getOthers(members.get(0)).add(UUID.randomUUID()));
+    }
+
+    @Test
+    public void testConversation_MaxSizeGroupSharesOneConversation() {
+        final List<UUID> members = createMembers(MAX_GROUP_SIZE);
+        final Conversation conversation = store.setConversation(members);
+        Assertions.assertTrue(conversation.isGroup());
+
+        for (UUID member : members) {
+            Assertions.assertSame(conversation, store.getConversation(member).orElseThrow());
+            final Set<UUID> targets = store.getTargets(member).orElseThrow();
+            Assertions.assertEquals(MAX_GROUP_SIZE - 1, targets.size());
+            Assertions.assertFalse(targets.contains(member));
+        }
+    }
+
+    @Test
+    public void testConversation_ReusedWhileMembersKeepTalking() {
+        final List<UUID> members = createMembers(MAX_GROUP_SIZE);
+        final Conversation conversation = store.setConversation(members);
+
+        // Every member replying to the whole group keeps the same conversation
+        for (int i = 0; i < MAX_GROUP_SIZE; i++) {
+            time.incrementAndGet();
+            final List<UUID> reply = new ArrayList<>(members);
+            Collections.rotate(reply, -i);
+            Assertions.assertSame(conversation, store.setConversation(reply));
+        }
+        Assertions.assertEquals(MAX_GROUP_SIZE, store.getSize());
+    }
+
+    @Test
+    public void testConversation_LeavingMaxSizeGroup() {
+        final List<UUID> members = createMembers(MAX_GROUP_SIZE);
+        final Conversation conversation = store.setConversation(members);
+        final UUID leaving = members.get(MAX_GROUP_SIZE / 2);
+        store.leave(leaving);
+
+        Assertions.assertTrue(store.getConversation(leaving).isEmpty());
+        Assertions.assertEquals(Optional.of(Set.of()), store.getTargets(leaving));
+        final Conversation remaining = store.getConversation(members.get(0)).orElseThrow();
+        Assertions.assertEquals(conversation.without(leaving).getId(), remaining.getId());
+        for (UUID member : members) {
+            if (!member.equals(leaving)) {
+                Assertions.assertSame(remaining, store.getConversation(member).orElseThrow());
+                Assertions.assertEquals(MAX_GROUP_SIZE - 2, store.getTargets(member).orElseThrow().size());
+            }
+        }
+    }
+
+    private static List<UUID> createMembers(int count) {
+        final List<UUID> members = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            members.add(UUID.randomUUID());
+        }
+        return members;
+    }
+
+}
@@ -0,0 +1,141 @@
+/*
+ * This file is part of HuskChat, licensed under the Apache License 2.0.
+ *
+ *  Copyright (c) William278 <will27528@gmail.com>
+ *  Copyright (c) contributors
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.william278.huskchat.user;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.UUID;
+
+public class H2UserCacheStorageTests {
+
+    @TempDir
+    private Path directory;
+
+    // Open the database in the directory, as the plugin does on load
+    private UserCache.Editor open(H2UserCacheStorage storage) throws IOException {
+        final UserCache.Editor cache = storage.load();
+        cache.setStorage(storage);
+        return cache;
+    }
+
+    @Test
+    public void testH2_LoadsOnlyJoinedPlayers() throws IOException {
+        final UUID online = UUID.randomUUID();
+        final UUID offline = UUID.randomUUID();
+        final H2UserCacheStorage storage = new H2UserCacheStorage(directory);
+        final UserCache.Editor cache = open(storage);
+        cache.setPlayerChannel(online, "staff");
+        cache.setPlayerChannel(offline, "local");
+        cache.setSocialSpy(User.of(online, "online"), UserCache.SpyColor.GOLD);
+        storage.save(cache);
+        storage.close();
+
+        final H2UserCacheStorage reopened = new H2UserCacheStorage(directory);
+        final UserCache.Editor loaded = open(reopened);
+        Assertions.assertTrue(loaded.getPlayerChannel(online).isEmpty());
+
+        reopened.loadUser(online, loaded).join();
+        Assertions.assertEquals(Optional.of("staff"), loaded.getPlayerChannel(online));
+        Assertions.assertEquals(UserCache.SpyColor.GOLD, loaded.socialSpies.get(online));
+        Assertions.assertTrue(loaded.getPlayerChannel(offline).isEmpty());
+        Assertions.assertEquals(1, reopened.getLoadedUsers());
+        reopened.close();
+    }
+
+    @Test
+    public void testH2_EvictsOnQuit() throws IOException {
+        final UUID uuid = UUID.randomUUID();
+        final H2UserCacheStorage storage = new H2UserCacheStorage(directory);
+        final UserCache.Editor cache = open(storage);
+        storage.loadUser(uuid, cache).join();
+        cache.setPlayerChannel(uuid, "staff");
+        cache.setLocalSpy(User.of(uuid, "spy"));
+
+        storage.unloadUser(uuid, cache);
+        Assertions.assertTrue(cache.getPlayerChannel(uuid).isEmpty());
+        Assertions.assertTrue(cache.localSpies.isEmpty());
+        Assertions.assertEquals(0, storage.getLoadedUsers());
+
+        // Changes made while online are written through, and loaded again on rejoin
+        storage.loadUser(uuid, cache).join();
+        Assertions.assertEquals(Optional.of("staff"), cache.getPlayerChannel(uuid));
+        Assertions.assertEquals(UserCache.SpyColor.DEFAULT_SPY_COLOR, cache.localSpies.get(uuid));
+        storage.close();
+    }
+
+    @Test
+    public void testH2_KeepsChangesMadeWhileLoading() throws IOException {
+        final UUID uuid = UUID.randomUUID();
+        final H2UserCacheStorage storage = new H2UserCacheStorage(directory);
+        final UserCache.Editor cache = open(storage);
+        cache.setPlayerChannel(uuid, "local");
+        storage.save(cache);
+        storage.unloadUser(uuid, cache);
+
+        cache.setPlayerChannel(uuid, "staff");
+        storage.loadUser(uuid, cache).join();
+        Assertions.assertEquals(Optional.of("staff"), cache.getPlayerChannel(uuid));
+        storage.close();
+    }
+
+    @Test
+    public void testH2_RemovesSpies() throws IOException {
+        final User user = User.of(UUID.randomUUID(), "spy");
+        final H2UserCacheStorage storage = new H2UserCacheStorage(directory);
+        final UserCache.Editor cache = open(storage);
+        cache.setSocialSpy(user);
+        storage.save(cache);
+        cache.removeSocialSpy(user);
+        storage.save(cache);
+        storage.close();
+
+        final H2UserCacheStorage reopened = new H2UserCacheStorage(directory);
+        final UserCache.Editor loaded = open(reopened);
+        reopened.loadUser(user.getUuid(), loaded).join();
+        Assertions.assertTrue(loaded.socialSpies.isEmpty());
+        reopened.close();
+    }
+
+    @Test
+    public void testH2_MigratesYamlCache() throws IOException {
+        final UUID uuid = UUID.randomUUID();
+        final YamlUserCacheStorage yaml = new YamlUserCacheStorage(directory);
+        final UserCache.Editor cache = yaml.load();
+        cache.setPlayerChannel(uuid, "staff");
+        yaml.save(cache);
+
+        final H2UserCacheStorage storage = new H2UserCacheStorage(directory);
+        Assertions.assertTrue(storage.migrate());
+        Assertions.assertFalse(Files.exists(directory.resolve(YamlUserCacheStorage.FILE_NAME)));
+        Assertions.assertFalse(storage.migrate());
+
+        final UserCache.Editor loaded = open(storage);
+        storage.loadUser(uuid, loaded).join();
+        Assertions.assertEquals(Optional.of("staff"), loaded.getPlayerChannel(uuid));
+        storage.close();
+    }
+
+}
@@ -0,0 +1,312 @@
+/*
+ * This file is part of HuskChat, licensed under the Apache License 2.0.
+ *
+ *  Copyright (c) William278 <will27528@gmail.com>
+ *  Copyright (c) contributors
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.william278.huskchat.user;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Optional;
+import java.util.UUID;
+
+public class JournalUserCacheStorageTests {
+
+    @TempDir
+    private Path directory;
+
+    // Open the journal in the directory, as the plugin does on load
+    private UserCache.Editor open(JournalUserCacheStorage storage) throws IOException {
+        final UserCache.Editor cache = storage.load();
+        cache.setStorage(storage);
+        return cache;
+    }
+
+    @Test
+    public void testJournal_ReplaysChanges() throws IOException {
+        final UUID first = UUID.randomUUID();
+        final UUID second = UUID.randomUUID();
+        final JournalUserCacheStorage storage = new JournalUserCacheStorage(directory);
+        final UserCache.Editor cache = open(storage);
+        cache.setPlayerChannel(first, "global");
+        cache.setPlayerChannel(second, "local");
+        cache.setPlayerChannel(first, "staff");
+        cache.setLocalSpy(User.of(first, "first"), UserCache.SpyColor.RED);
+        cache.setSocialSpy(User.of(second, "second"));
+        storage.save(cache);
+        storage.close();
+
+        final JournalUserCacheStorage reopened = new JournalUserCacheStorage(directory);
+        final UserCache.Editor loaded = open(reopened);
+        Assertions.assertEquals(Optional.of("staff"), loaded.getPlayerChannel(first));
+        Assertions.assertEquals(Optional.of("local"), loaded.getPlayerChannel(second));
+        Assertions.assertEquals(UserCache.SpyColor.RED, loaded.localSpies.get(first));
+        Assertions.assertEquals(UserCache.SpyColor.DEFAULT_SPY_COLOR, loaded.socialSpies.get(second));
+        Assertions.assertEquals(5, reopened.getRecords());
+        Assertions.assertEquals(0, reopened.getTruncatedBytes());
+        reopened.close();
+    }
+
+    @Test
+    public void testJournal_ReplaysRemovals() throws IOException {
+        final User user = User.of(UUID.randomUUID(), "spy");
+        final JournalUserCacheStorage storage = new JournalUserCacheStorage(directory);
+        final UserCache.Editor cache = open(storage);
+        cache.setLocalSpy(user);
+        cache.setSocialSpy(user, UserCache.SpyColor.AQUA);
+        storage.save(cache);
+        cache.removeLocalSpy(user);
+        cache.removeSocialSpy(user);
+        storage.save(cache);
+        storage.close();
+
+        final JournalUserCacheStorage reopened = new JournalUserCacheStorage(directory);
+        final UserCache.Editor loaded = open(reopened);
+        Assertions.assertTrue(loaded.localSpies.isEmpty());
+        Assertions.assertTrue(loaded.socialSpies.isEmpty());
+        reopened.close();
+    }
+
+    @Test
+    public void testJournal_DiscardsTornRecord() throws IOException {
+        final UUID uuid = UUID.randomUUID();
+        final JournalUserCacheStorage storage = new JournalUserCacheStorage(directory);
+        final UserCache.Editor cache = open(storage);
+        cache.setPlayerChannel(uuid, "global");
+        storage.save(cache);
+        cache.setPlayerChannel(uuid, "staff");
+        storage.save(cache);
+        storage.close();
+
+        // Cut the last record short, as a crash mid-write would
+        final Path file = directory.resolve(JournalUserCacheStorage.FILE_NAME);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 3);
+        }
+        final long tornSize = Files.size(file);
+
+        final JournalUserCacheStorage reopened = new JournalUserCacheStorage(directory);
+        final UserCache.Editor loaded = open(reopened);
+        Assertions.assertEquals(Optional.of("global"), loaded.getPlayerChannel(uuid));
+        Assertions.assertTrue(reopened.getTruncatedBytes() > 0);
+        Assertions.assertEquals(tornSize - reopened.getTruncatedBytes(), Files.size(file));
+
+        // New changes are appended after the last complete record
+        loaded.setPlayerChannel(uuid, "local");
+        reopened.save(loaded);
+        reopened.close();
+        final JournalUserCacheStorage recovered = new JournalUserCacheStorage(directory);
+        Assertions.assertEquals(Optional.of("local"), open(recovered).getPlayerChannel(uuid));
+        Assertions.assertEquals(0, recovered.getTruncatedBytes());
+        recovered.close();
+    }
+
+    @Test
+    public void testJournal_KeepsRecordsPendingWhenSaveFails() throws IOException {
+        final UUID first = UUID.randomUUID();
+        final UUID second = UUID.randomUUID();
+        final FailingChannel[] channel = new FailingChannel[1];
+        final JournalUserCacheStorage storage = new JournalUserCacheStorage(directory,
+                opened -> channel[0] = new FailingChannel(opened));
+        final UserCache.Editor cache = open(storage);
+        cache.setPlayerChannel(first, "global");
+        storage.save(cache);
+        final long savedSize = Files.size(directory.resolve(JournalUserCacheStorage.FILE_NAME));
+
+        // The write fails part of the way through a record
+        cache.setPlayerChannel(first, "staff");
+        channel[0].failWrites = true;
+        Assertions.assertThrows(IOException.class, () -> storage.save(cache));
+        Assertions.assertEquals(savedSize, Files.size(directory.resolve(JournalUserCacheStorage.FILE_NAME)));
+
+        // The failed records are written by the next save, along with those made since
+        channel[0].failWrites = false;
+        cache.setPlayerChannel(second, "local");
+        storage.save(cache);
+        storage.close();
+
+        final JournalUserCacheStorage reopened = new JournalUserCacheStorage(directory);
+        final UserCache.Editor loaded = open(reopened);
+        Assertions.assertEquals(Optional.of("staff"), loaded.getPlayerChannel(first));
+        Assertions.assertEquals(Optional.of("local"), loaded.getPlayerChannel(second));
+        Assertions.assertEquals(3, reopened.getRecords());
+        Assertions.assertEquals(0, reopened.getTruncatedBytes());
+        reopened.close();
+    }
+
+    @Test
+    public void testJournal_CompactsToSnapshot() throws IOException {
+        final UUID uuid = UUID.randomUUID();
+        final JournalUserCacheStorage storage = new JournalUserCacheStorage(directory);
+        final UserCache.Editor cache = open(storage);
+        for (int i = 0; i < 100; i++) {
+            cache.setPlayerChannel(uuid, "channel" + i);
+        }
+        storage.save(cache);
+        Assertions.assertEquals(100, storage.getRecords());
+        final long size = Files.size(directory.resolve(JournalUserCacheStorage.FILE_NAME));
+
+        storage.compact(cache);
+        Assertions.assertEquals(1, storage.getRecords());
+        Assertions.assertTrue(Files.size(directory.resolve(JournalUserCacheStorage.FILE_NAME)) < size);
+
+        // The compacted journal is still appended to
+        cache.setPlayerChannel(uuid, "final");
+        storage.save(cache);
+        storage.close();
+        final JournalUserCacheStorage reopened = new JournalUserCacheStorage(directory);
+        Assertions.assertEquals(Optional.of("final"), open(reopened).getPlayerChannel(uuid));
+        Assertions.assertEquals(2, reopened.getRecords());
+        reopened.close();
+    }
+
+    @Test
+    public void testJournal_MigratesYamlCache() throws IOException {
+        final UUID uuid = UUID.randomUUID();
+        final YamlUserCacheStorage yaml = new YamlUserCacheStorage(directory);
+        final UserCache.Editor cache = yaml.load();
+        cache.setPlayerChannel(uuid, "staff");
+        cache.setSocialSpy(User.of(uuid, "spy"), UserCache.SpyColor.GOLD);
+        yaml.save(cache);
+
+        final JournalUserCacheStorage storage = new JournalUserCacheStorage(directory);
+        Assertions.assertTrue(storage.migrate(directory));
+        Assertions.assertFalse(Files.exists(directory.resolve(YamlUserCacheStorage.FILE_NAME)));
+        Assertions.assertFalse(storage.migrate(directory));
+
+        final UserCache.Editor loaded = open(storage);
+        Assertions.assertEquals(Optional.of("staff"), loaded.getPlayerChannel(uuid));
+        Assertions.assertEquals(UserCache.SpyColor.GOLD, loaded.socialSpies.get(uuid));
+        storage.close();
+    }
+
+    // A file channel that writes part of a buffer and then fails, as a full disk would
+    private static final class FailingChannel extends FileChannel {
+        private final FileChannel delegate;
+        private volatile boolean failWrites;
+
+        private FailingChannel(FileChannel delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public int write(ByteBuffer source) throws IOException {
+            if (!failWrites) {
+                return delegate.write(source);
+            }
+            final ByteBuffer part = source.duplicate();
+            part.limit(part.position() + Math.max(1, part.remaining() / 2));
+            delegate.write(part);
+            throw new IOException("No space left on device");
+        }
+
+        @Override
+        public int read(ByteBuffer destination) throws IOException {
+            return delegate.read(destination);
+        }
+
+        @Override
+        public long read(ByteBuffer[] destinations, int offset, int length) throws IOException {
+            return delegate.read(destinations, offset, length);
+        }
+
+        @Override
+        public long write(ByteBuffer[] sources, int offset, int length) throws IOException {
+            return delegate.write(sources, offset, length);
+        }
+
+        @Override
+        public long position() throws IOException {
+            return delegate.position();
+        }
+
+        @Override
+        public FileChannel position(long position) throws IOException {
+            delegate.position(position);
+            return this;
+        }
+
+        @Override
+        public long size() throws IOException {
+            return delegate.size();
+        }
+
+        @Override
+        public FileChannel truncate(long size) throws IOException {
+            delegate.truncate(size);
+            return this;
+        }
+
+        @Override
+        public void force(boolean metaData) throws IOException {
+            delegate.force(metaData);
+        }
+
+        @Override
+        public long transferTo(long position, long count, WritableByteChannel target) throws IOException {
+            return delegate.transferTo(position, count, target);
+        }
+
+        @Override
+        public long transferFrom(ReadableByteChannel source, long position, long count) throws IOException {
+            return delegate.transferFrom(source, position, count);
+        }
+
+        @Override
+        public int read(ByteBuffer destination, long position) throws IOException {
+            return delegate.read(destination, position);
+        }
+
+        @Override
+        public int write(ByteBuffer source, long position) throws IOException {
+            return delegate.write(source, position);
+        }
+
+        @Override
+        public MappedByteBuffer map(MapMode mode, long position, long size) throws IOException {
+            return delegate.map(mode, position, size);
+        }
+
+        @Override
+        public FileLock lock(long position, long size, boolean shared) throws IOException {
+            return delegate.lock(position, size, shared);
+        }
+
+        @Override
+        public FileLock tryLock(long position, long size, boolean shared) throws IOException {
+            return delegate.tryLock(position, size, shared);
+        }
+
+        @Override
+        protected void implCloseChannel() throws IOException {
+            delegate.close();
+        }
+    }
+
+}
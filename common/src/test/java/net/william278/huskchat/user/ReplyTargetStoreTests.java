@@ -0,0 +1,161 @@
+/*
+ * This file is part of HuskChat, licensed under the Apache License 2.0.
+ *
+ *  Copyright (c) William278 <will27528@gmail.com>
+ *  Copyright (c) contributors
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.william278.huskchat.user;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class ReplyTargetStoreTests {
+
+    private final AtomicLong time = new AtomicLong();
+    private final ReplyTargetStore store = new ReplyTargetStore(time::get);
+
+    private final UUID sender = UUID.randomUUID();
+    private final UUID first = UUID.randomUUID();
+    private final UUID second = UUID.randomUUID();
+
+    @Test
+    public void testReplyTargets_ExcludeSelf() {
+        store.setConversation(List.of(sender, first, second));
+        Assertions.assertEquals(Optional.of(Set.of(first, second)), store.getTargets(sender));
+        Assertions.assertEquals(Optional.of(Set.of(sender, second)), store.getTargets(first));
+        Assertions.assertEquals(List.of(sender, second), new ArrayList<>(store.getTargets(first).orElseThrow()));
+        Assertions.assertTrue(store.getTargets(UUID.randomUUID()).isEmpty());
+    }
+
+    @Test
+    public void testReplyTargets_ExpireAfterAccess() {
+        store.configure(1000, 100, 1000);
+        store.setConversation(List.of(sender, first));
+        time.set(900);
+        Assertions.assertTrue(store.getTargets(sender).isPresent());
+        time.set(1800);
+        Assertions.assertTrue(store.getTargets(sender).isPresent());
+        Assertions.assertTrue(store.getTargets(first).isEmpty());
+    }
+
+    @Test
+    public void testReplyTargets_BoundedLeastRecentlyUsed() {
+        store.configure(60_000, 3, 60_000);
+        store.setConversation(List.of(sender, first));
+        time.set(1);
+        store.getTargets(sender);
+        store.setConversation(List.of(second, UUID.randomUUID()));
+        Assertions.assertEquals(3, store.getSize());
+        Assertions.assertTrue(store.getTargets(first).isEmpty());
+        Assertions.assertTrue(store.getTargets(sender).isPresent());
+    }
+
+    @Test
+    public void testReplyTargets_EvictedAfterQuitGrace() {
+        store.configure(60_000, 100, 1000);
+        store.setConversation(List.of(sender, first, second));
+        store.onQuit(sender);
+        store.onQuit(first);
+        time.set(500);
+        store.onJoin(first);
+        time.set(1000);
+        Assertions.assertTrue(store.getTargets(sender).isEmpty());
+        Assertions.assertTrue(store.getTargets(first).isPresent());
+    }
+
+    @Test
+    public void testReplyTargets_Leave() {
+        store.setConversation(List.of(sender, first, second));
+        store.leave(first);
+        Assertions.assertEquals(Optional.of(Set.of()), store.getTargets(first));
+        Assertions.assertEquals(Optional.of(Set.of(second)), store.getTargets(sender));
+        Assertions.assertEquals(Optional.of(Set.of(sender)), store.getTargets(second));
+    }
+
+    @Test
+    public void testReplyTargets_ConcurrentLeavesNotLost() throws Exception {
+        final List<UUID> members = new ArrayList<>();
+        members.add(sender);
+        for (int i = 0; i < 400; i++) {
+            members.add(UUID.randomUUID());
+        }
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            for (int round = 0; round < 20; round++) {
+                store.setConversation(members);
+                final CountDownLatch start = new CountDownLatch(1);
+                final List<Future<?>> futures = new ArrayList<>();
+                for (int thread = 0; thread < 8; thread++) {
+                    final int offset = thread;
+                    futures.add(executor.submit(() -> {
+                        start.await();
+                        for (int i = 1 + offset; i < members.size(); i += 8) {
+                            store.leave(members.get(i));
+                        }
+                        return null;
+                    }));
+                }
+                start.countDown();
+                for (Future<?> future : futures) {
+                    future.get(30, TimeUnit.SECONDS);
+                }
+                Assertions.assertEquals(Optional.of(Set.of()), store.getTargets(sender));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testReplyTargets_ReadableWhileReplaced() throws Exception {
+        final List<UUID> members = List.of(sender, first, second);
+        final AtomicBoolean writing = new AtomicBoolean(true);
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final List<Future<?>> futures = new ArrayList<>();
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < 20_000; i++) {
+                    store.setConversation(members);
+                    store.leave(members.get(i % members.size()));
+                }
+                writing.set(false);
+            }));
+            for (int thread = 0; thread < 3; thread++) {
+                futures.add(executor.submit(() -> {
+                    while (writing.get()) {
+                        store.getTargets(sender).ifPresent(targets -> {
+                            for (UUID target : targets) {
+                                Assertions.assertNotEquals(sender, target);
+                            }
+                            Assertions.assertThrows(UnsupportedOperationException.class, () -> targets.add(sender));
+                        });
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+}
@@ -0,0 +1,117 @@
+/*
+ * This file is part of HuskChat, licensed under the Apache License 2.0.
+ *
+ *  Copyright (c) William278 <will27528@gmail.com>
+ *  Copyright (c) contributors
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.william278.huskchat.user;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+public class SpyIndexTests {
+
+    private final SpyIndex index = new SpyIndex();
+    private final UserCache.Editor cache = new UserCache.Editor();
+
+    public SpyIndexTests() {
+        cache.setSpyIndex(index);
+    }
+
+    private List<UUID> getLocalSpies(String server) {
+        final List<UUID> spies = new ArrayList<>();
+        index.forEachLocalSpy(server, spy -> spies.add(spy.user().getUuid()));
+        return spies;
+    }
+
+    @Test
+    public void testSpyIndex_LocalSpiesSkipOwnServer() {
+        final OnlineUser first = new TestOnlineUser();
+        final OnlineUser second = new TestOnlineUser();
+        index.track(first, "lobby", cache);
+        index.track(second, "survival", cache);
+        cache.setLocalSpy(first);
+        cache.setLocalSpy(second, UserCache.SpyColor.RED);
+
+        Assertions.assertEquals(List.of(second.getUuid()), getLocalSpies("lobby"));
+        Assertions.assertEquals(List.of(first.getUuid()), getLocalSpies("survival"));
+        Assertions.assertEquals(2, getLocalSpies("creative").size());
+    }
+
+    @Test
+    public void testSpyIndex_FollowsServerSwitches() {
+        final OnlineUser spy = new TestOnlineUser();
+        cache.setLocalSpy(spy);
+        index.track(spy, "lobby", cache);
+        Assertions.assertTrue(getLocalSpies("lobby").isEmpty());
+
+        index.track(spy, "survival", cache);
+        Assertions.assertEquals(List.of(spy.getUuid()), getLocalSpies("lobby"));
+        Assertions.assertTrue(getLocalSpies("survival").isEmpty());
+    }
+
+    @Test
+    public void testSpyIndex_OnlyOnlineSpies() {
+        final OnlineUser online = new TestOnlineUser();
+        final OnlineUser offline = new TestOnlineUser();
+        cache.setSocialSpy(offline);
+        cache.setLocalSpy(offline);
+        index.track(online, "lobby", cache);
+        cache.setSocialSpy(online, UserCache.SpyColor.GOLD);
+
+        Assertions.assertEquals(1, index.getSocialSpies().size());
+        final SpyIndex.Spy spy = index.getSocialSpies().iterator().next();
+        Assertions.assertEquals(online, spy.user());
+        Assertions.assertEquals(UserCache.SpyColor.GOLD, spy.color());
+        Assertions.assertTrue(getLocalSpies("survival").isEmpty());
+
+        index.remove(online.getUuid());
+        Assertions.assertTrue(index.getSocialSpies().isEmpty());
+    }
+
+    @Test
+    public void testSpyIndex_FollowsToggles() {
+        final OnlineUser spy = new TestOnlineUser();
+        index.track(spy, "lobby", cache);
+        cache.setSocialSpy(spy);
+        cache.setLocalSpy(spy);
+        Assertions.assertEquals(1, index.getSocialSpies().size());
+        Assertions.assertEquals(1, getLocalSpies("survival").size());
+
+        cache.removeSocialSpy(spy);
+        cache.removeLocalSpy(spy);
+        Assertions.assertTrue(index.getSocialSpies().isEmpty());
+        Assertions.assertTrue(getLocalSpies("survival").isEmpty());
+    }
+
+    @Test
+    public void testSpyIndex_Reindex() {
+        final OnlineUser spy = new TestOnlineUser();
+        index.track(spy, "lobby", cache);
+        cache.setSocialSpy(spy);
+
+        final UserCache.Editor reloaded = new UserCache.Editor();
+        reloaded.setLocalSpy(spy);
+        index.reindex(reloaded);
+        Assertions.assertTrue(index.getSocialSpies().isEmpty());
+        Assertions.assertEquals(List.of(spy.getUuid()), getLocalSpies("survival"));
+    }
+
+}
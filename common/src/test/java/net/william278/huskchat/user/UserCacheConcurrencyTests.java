@@ -0,0 +1,106 @@
+/*
+ * This file is part of HuskChat, licensed under the Apache License 2.0.
+ *
+ *  Copyright (c) William278 <will27528@gmail.com>
+ *  Copyright (c) contributors
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.william278.huskchat.user;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+public class UserCacheConcurrencyTests {
+
+    private static final int THREADS = 8;
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+
+    @AfterEach
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    // Run a task on every thread at once, rethrowing the first failure
+    private void runConcurrently(int tasks, IntTask task) throws Exception {
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < tasks; i++) {
+            final int index = i;
+            futures.add(executor.submit(() -> {
+                start.await();
+                task.run(index);
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(30, TimeUnit.SECONDS);
+        }
+    }
+
+    @Test
+    public void testChannelsAndSpies_ConcurrentEditsNotLost() throws Exception {
+        final UserCache.Editor cache = new UserCache.Editor();
+        final int perThread = 2_000;
+        final List<List<User>> users = new ArrayList<>();
+        for (int thread = 0; thread < THREADS; thread++) {
+            final List<User> threadUsers = new ArrayList<>();
+            for (int i = 0; i < perThread; i++) {
+                threadUsers.add(User.of(UUID.randomUUID(), "user" + i));
+            }
+            users.add(threadUsers);
+        }
+
+        runConcurrently(THREADS, thread -> {
+            final List<User> threadUsers = users.get(thread);
+            for (int i = 0; i < threadUsers.size(); i++) {
+                final User user = threadUsers.get(i);
+                cache.setPlayerChannel(user.getUuid(), "local");
+                cache.setPlayerChannel(user.getUuid(), "channel" + thread);
+                cache.setSocialSpy(user);
+                cache.setLocalSpy(user, UserCache.SpyColor.RED);
+                cache.removeLocalSpy(user);
+
+                // Iterate while other threads edit
+                if (i % 50 != 0) {
+                    continue;
+                }
+                for (Map.Entry<UUID, UserCache.SpyColor> entry : cache.socialSpies.entrySet()) {
+                    Assertions.assertNotNull(entry.getValue());
+                }
+            }
+        });
+
+        Assertions.assertEquals(THREADS * perThread, cache.playerChannels.size());
+        Assertions.assertEquals(THREADS * perThread, cache.socialSpies.size());
+        Assertions.assertTrue(cache.localSpies.isEmpty());
+        for (int thread = 0; thread < THREADS; thread++) {
+            for (User user : users.get(thread)) {
+                Assertions.assertEquals(Optional.of("channel" + thread), cache.getPlayerChannel(user.getUuid()));
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface IntTask {
+        void run(int index) throws Exception;
+    }
+
+}
@@ -0,0 +1,65 @@
+/*
+ * This file is part of HuskChat, licensed under the Apache License 2.0.
+ *
+ *  Copyright (c) William278 <will27528@gmail.com>
+ *  Copyright (c) contributors
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.william278.huskchat.user;
+
+import net.william278.huskchat.TestHuskChat;
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class UserCacheWriterTests {
+
+    @Test
+    public void testWriter_RetriesFailedSave() throws InterruptedException {
+        final AtomicInteger attempts = new AtomicInteger();
+        final CountDownLatch saved = new CountDownLatch(1);
+        final UserCacheWriter writer = new UserCacheWriter(TestHuskChat.create(List.of()));
+        writer.open(new UserCacheStorage() {
+            @Override
+            @NotNull
+            public UserCache.Editor load() {
+                return new UserCache.Editor();
+            }
+
+            @Override
+            public void save(@NotNull UserCache cache) throws IOException {
+                if (attempts.incrementAndGet() == 1) {
+                    throw new IOException("Disk full");
+                }
+                saved.countDown();
+            }
+        });
+
+        writer.markDirty();
+        writer.flush();
+        Assertions.assertEquals(1, attempts.get());
+        Assertions.assertTrue(saved.await(10, TimeUnit.SECONDS), "A failed save should be retried");
+        Assertions.assertEquals(2, attempts.get());
+        writer.close();
+        Assertions.assertEquals(2, attempts.get(), "Nothing should be left to save once the retry succeeded");
+    }
+
+}
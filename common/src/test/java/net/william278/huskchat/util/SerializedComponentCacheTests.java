@@ -0,0 +1,97 @@
+/*
+ * This file is part of HuskChat, licensed under the Apache License 2.0.
+ *
+ *  Copyright (c) William278 <will27528@gmail.com>
+ *  Copyright (c) contributors
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.william278.huskchat.util;
+
+import net.kyori.adventure.text.Component;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class SerializedComponentCacheTests {
+
+    private final AtomicLong clock = new AtomicLong();
+    private final AtomicInteger serializations = new AtomicInteger();
+
+    private String serialize(Component component) {
+        serializations.incrementAndGet();
+        return component.toString();
+    }
+
+    @Test
+    public void testSerializedCache_SameInstanceSerializedOnce() {
+        final SerializedComponentCache cache = new SerializedComponentCache(8, 1000, clock::get);
+        final Component message = Component.text("Hello, world!");
+        for (int i = 0; i < 2000; i++) {
+            Assertions.assertEquals(message.toString(),
+                    cache.get(message, SerializedComponentCache.Format.MODERN, this::serialize));
+        }
+        Assertions.assertEquals(1, serializations.get());
+    }
+
+    @Test
+    public void testSerializedCache_KeyedByIdentity() {
+        final SerializedComponentCache cache = new SerializedComponentCache(8, 1000, clock::get);
+        cache.get(Component.text("Hello"), SerializedComponentCache.Format.MODERN, this::serialize);
+        cache.get(Component.text("Hello"), SerializedComponentCache.Format.MODERN, this::serialize);
+        Assertions.assertEquals(2, serializations.get());
+    }
+
+    @Test
+    public void testSerializedCache_KeyedByFormat() {
+        final SerializedComponentCache cache = new SerializedComponentCache(8, 1000, clock::get);
+        final Component message = Component.text("Hello");
+        Assertions.assertEquals("modern", cache.get(message, SerializedComponentCache.Format.MODERN, c -> "modern"));
+        Assertions.assertEquals("legacy", cache.get(message, SerializedComponentCache.Format.LEGACY, c -> "legacy"));
+        Assertions.assertEquals("modern", cache.get(message, SerializedComponentCache.Format.MODERN, c -> "other"));
+    }
+
+    @Test
+    public void testSerializedCache_EntriesExpire() {
+        final SerializedComponentCache cache = new SerializedComponentCache(8, 1000, clock::get);
+        final Component message = Component.text("Hello");
+        cache.get(message, SerializedComponentCache.Format.MODERN, this::serialize);
+        clock.addAndGet(999_000_000L);
+        cache.get(message, SerializedComponentCache.Format.MODERN, this::serialize);
+        Assertions.assertEquals(1, serializations.get());
+        clock.addAndGet(1_000_000L);
+        cache.get(message, SerializedComponentCache.Format.MODERN, this::serialize);
+        Assertions.assertEquals(2, serializations.get());
+    }
+
+    @Test
+    public void testSerializedCache_ReplacesOldestWhenFull() {
+        final SerializedComponentCache cache = new SerializedComponentCache(2, 1000, clock::get);
+        final Component first = Component.text("First");
+        final Component second = Component.text("Second");
+        cache.get(first, SerializedComponentCache.Format.MODERN, this::serialize);
+        clock.incrementAndGet();
+        cache.get(second, SerializedComponentCache.Format.MODERN, this::serialize);
+        clock.incrementAndGet();
+        cache.get(Component.text("Third"), SerializedComponentCache.Format.MODERN, this::serialize);
+
+        cache.get(second, SerializedComponentCache.Format.MODERN, this::serialize);
+        Assertions.assertEquals(3, serializations.get());
+        cache.get(first, SerializedComponentCache.Format.MODERN, this::serialize);
+        Assertions.assertEquals(4, serializations.get());
+    }
+
+}
@@ -0,0 +1,73 @@
+/*
+ * This file is part of HuskChat, licensed under the Apache License 2.0.
+ *
+ *  Copyright (c) William278 <will27528@gmail.com>
+ *  Copyright (c) contributors
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.william278.huskchat.util;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class TokenBucketTests {
+
+    private final AtomicLong clock = new AtomicLong();
+
+    @Test
+    public void testTokenBucket_AllowsBurstThenRefills() {
+        final TokenBucket bucket = new TokenBucket(3, 1, clock::get);
+        for (int i = 0; i < 3; i++) {
+            Assertions.assertTrue(bucket.tryAcquire());
+        }
+        Assertions.assertFalse(bucket.tryAcquire());
+
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(999));
+        Assertions.assertFalse(bucket.tryAcquire());
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(1));
+        Assertions.assertTrue(bucket.tryAcquire());
+    }
+
+    @Test
+    public void testTokenBucket_CapsAtBurst() {
+        final TokenBucket bucket = new TokenBucket(2, 10, clock::get);
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(60));
+        Assertions.assertTrue(bucket.tryAcquire());
+        Assertions.assertTrue(bucket.tryAcquire());
+        Assertions.assertFalse(bucket.tryAcquire());
+    }
+
+    @Test
+    public void testTokenBucket_ReservesIntoDebt() {
+        final TokenBucket bucket = new TokenBucket(1, 2, clock::get);
+        Assertions.assertEquals(0, bucket.reserve());
+        Assertions.assertEquals(TimeUnit.MILLISECONDS.toNanos(500), bucket.reserve());
+        Assertions.assertEquals(TimeUnit.MILLISECONDS.toNanos(1000), bucket.reserve());
+        Assertions.assertEquals(TimeUnit.MILLISECONDS.toNanos(1500), bucket.getWaitNanos());
+        Assertions.assertFalse(bucket.tryAcquire());
+    }
+
+    @Test
+    public void testTokenBucket_NeverRefillsWithZeroRate() {
+        final TokenBucket bucket = new TokenBucket(1, 0, clock::get);
+        Assertions.assertTrue(bucket.tryAcquire());
+        clock.addAndGet(TimeUnit.DAYS.toNanos(1));
+        Assertions.assertEquals(Long.MAX_VALUE, bucket.getWaitNanos());
+    }
+
+}
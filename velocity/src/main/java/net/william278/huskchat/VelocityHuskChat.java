@@ -22,6 +22,7 @@ package net.william278.huskchat;
 import com.google.inject.Inject;
 import com.velocitypowered.api.event.Subscribe;
 import com.velocitypowered.api.event.proxy.ProxyInitializeEvent;
+import com.velocitypowered.api.event.proxy.ProxyShutdownEvent;
 import com.velocitypowered.api.plugin.Plugin;
 import com.velocitypowered.api.plugin.PluginContainer;
 import com.velocitypowered.api.plugin.annotation.DataDirectory;
@@ -41,17 +42,26 @@ import net.william278.huskchat.config.Settings;
 import net.william278.huskchat.discord.DiscordHook;
 import net.william278.huskchat.event.VelocityEventProvider;
 import net.william278.huskchat.filter.ChatFilter;
+import net.william278.huskchat.filter.FilterOrdering;
+import net.william278.huskchat.filter.FilterPipeline;
+import net.william278.huskchat.filter.FilterVerdictCache;
 import net.william278.huskchat.getter.DataGetter;
 import net.william278.huskchat.getter.DefaultDataGetter;
 import net.william278.huskchat.getter.LuckPermsDataGetter;
 import net.william278.huskchat.listener.VelocityEventChatListener;
 import net.william278.huskchat.listener.VelocityPacketChatListener;
 import net.william278.huskchat.listener.VelocityPlayerListener;
+import net.william278.huskchat.message.JoinQuitAnnouncer;
+import net.william278.huskchat.network.ChatNetwork;
 import net.william278.huskchat.placeholders.DefaultReplacer;
 import net.william278.huskchat.placeholders.PAPIProxyBridgeReplacer;
 import net.william278.huskchat.placeholders.PlaceholderReplacer;
 import net.william278.huskchat.user.OnlineUser;
+import net.william278.huskchat.user.ReplyTargetStore;
+import net.william278.huskchat.user.SpyIndex;
 import net.william278.huskchat.user.UserCache;
+import net.william278.huskchat.user.UserCacheWriter;
+import net.william278.huskchat.user.VelocityPacketFanout;
 import net.william278.huskchat.user.VelocityUser;
 import org.bstats.velocity.Metrics;
 import org.jetbrains.annotations.NotNull;
@@ -61,6 +71,7 @@ import org.slf4j.Logger;
 import java.io.InputStream;
 import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.logging.Level;
 
 @Plugin(id = "huskchat")
@@ -76,7 +87,15 @@ public class VelocityHuskChat implements HuskChat, VelocityEventProvider {
     private final Metrics.Factory metrics;
     private final Path configDirectory;
     private final ProxyServer server;
-    private final List<ChatFilter> filtersAndReplacers = new ArrayList<>();
+    private final List<ChatFilter> filtersAndReplacers = new CopyOnWriteArrayList<>();
+    private final FilterVerdictCache filterVerdictCache = new FilterVerdictCache(0);
+    private final FilterOrdering filterOrdering = new FilterOrdering(false, 1);
+    private final FilterPipeline filterPipeline = new FilterPipeline(filterVerdictCache);
+    private final UserCacheWriter userCacheWriter = new UserCacheWriter(this);
+    private final ReplyTargetStore replyTargets = new ReplyTargetStore();
+    private final JoinQuitAnnouncer joinQuitAnnouncer = new JoinQuitAnnouncer(this);
+    private final SpyIndex spyIndex = new SpyIndex();
+    private final VelocityPacketFanout packetFanout = new VelocityPacketFanout(this);
     private final List<PlaceholderReplacer> placeholderReplacers = new ArrayList<>();
 
     @Setter
@@ -92,6 +111,9 @@ public class VelocityHuskChat implements HuskChat, VelocityEventProvider {
     @Setter
     @Getter(AccessLevel.NONE)
     private DiscordHook discordHook;
+    @Setter
+    @Getter(AccessLevel.NONE)
+    private ChatNetwork chatNetwork;
     private DataGetter dataGetter;
 
     @Inject
@@ -109,10 +131,14 @@ public class VelocityHuskChat implements HuskChat, VelocityEventProvider {
     public void onProxyInitialization(@NotNull ProxyInitializeEvent event) {
         // Load config and locale files
         this.loadConfig();
+        this.loadFilters();
 
         // Load discord hook
         this.loadDiscordHook();
 
+        // Connect to the other proxies on the network
+        this.loadChatNetwork();
+
         // Setup player data getter
         if (isPluginPresent("luckperms")) {
             this.dataGetter = new LuckPermsDataGetter();
@@ -152,11 +178,25 @@ public class VelocityHuskChat implements HuskChat, VelocityEventProvider {
         log(Level.INFO, "Enabled HuskChat version " + getVersion());
     }
 
+    @Subscribe
+    public void onProxyShutdown(@NotNull ProxyShutdownEvent event) {
+        // Disconnect from the network, stop sending queued messages and save any pending user cache changes
+        this.getDiscordHook().ifPresent(DiscordHook::close);
+        this.getChatNetwork().ifPresent(ChatNetwork::close);
+        this.getJoinQuitAnnouncer().close();
+        this.getUserCacheWriter().close();
+    }
+
     @Override
     public Optional<DiscordHook> getDiscordHook() {
         return Optional.ofNullable(discordHook);
     }
 
+    @Override
+    public Optional<ChatNetwork> getChatNetwork() {
+        return Optional.ofNullable(chatNetwork);
+    }
+
     @NotNull
     @Override
     public Version getVersion() {
@@ -263,6 +303,15 @@ public class VelocityHuskChat implements HuskChat, VelocityEventProvider {
         return getProxyServer().getPlayer(user).map(player -> (Audience) player).orElse(Audience.empty());
     }
 
+    @NotNull
+    @Override
+    public Audience getAudience(@NotNull Collection<? extends OnlineUser> users) {
+        if (getSettings().getDelivery().isEncodeOnce()) {
+            return getPacketFanout().getAudience(users);
+        }
+        return HuskChat.super.getAudience(users);
+    }
+
     @NotNull
     @Override
     public Audience getConsole() {
@@ -0,0 +1,172 @@
+/*
+ * This file is part of HuskChat, licensed under the Apache License 2.0.
+ *
+ *  Copyright (c) William278 <will27528@gmail.com>
+ *  Copyright (c) contributors
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.william278.huskchat.user;
+
+import com.velocitypowered.api.network.ProtocolVersion;
+import com.velocitypowered.proxy.connection.MinecraftConnection;
+import com.velocitypowered.proxy.connection.client.ConnectedPlayer;
+import com.velocitypowered.proxy.protocol.ProtocolUtils;
+import com.velocitypowered.proxy.protocol.StateRegistry;
+import com.velocitypowered.proxy.protocol.packet.chat.ChatType;
+import com.velocitypowered.proxy.protocol.packet.chat.ComponentHolder;
+import com.velocitypowered.proxy.protocol.packet.chat.SystemChatPacket;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.channel.Channel;
+import net.kyori.adventure.audience.Audience;
+import net.kyori.adventure.audience.ForwardingAudience;
+import net.kyori.adventure.text.Component;
+import net.william278.huskchat.HuskChat;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+
+/**
+ * Delivers a chat message to many players by encoding its system chat packet once per protocol version, then
+ * writing a retained duplicate of the same pooled buffer to each player's channel.
+ * <p>
+ * The encoded buffer holds the packet ID and body only, so it is written ahead of Velocity's packet encoder and still
+ * passes through each connection's own compression, framing and encryption handlers. Players on versions before 1.19,
+ * players not in the play state and any other audience are sent the message through the normal API instead.
+ */
+public class VelocityPacketFanout {
+
+    private static final ProtocolVersion MINIMUM_VERSION = ProtocolVersion.MINECRAFT_1_19;
+
+    private final HuskChat plugin;
+    private volatile boolean warned;
+
+    public VelocityPacketFanout(@NotNull HuskChat plugin) {
+        this.plugin = plugin;
+    }
+
+    /**
+     * Get an audience of users that sends chat messages through the fan-out
+     *
+     * @param users the users to include
+     * @return the audience
+     */
+    @NotNull
+    public Audience getAudience(@NotNull Collection<? extends OnlineUser> users) {
+        final List<Audience> audiences = new ArrayList<>(users.size());
+        users.forEach(user -> audiences.add(user.getAudience()));
+        return new FanoutAudience(this, audiences);
+    }
+
+    /**
+     * Send a message to audiences, encoding it once per protocol version for those that are connected players
+     *
+     * @param audiences the audiences to send the message to
+     * @param message   the message to send
+     */
+    public void send(@NotNull Collection<? extends Audience> audiences, @NotNull Component message) {
+        final Map<ProtocolVersion, List<ConnectedPlayer>> groups = new EnumMap<>(ProtocolVersion.class);
+        for (Audience audience : audiences) {
+            if (!(audience instanceof ConnectedPlayer player) || !isSupported(player.getConnection())) {
+                audience.sendMessage(message);
+                continue;
+            }
+            groups.computeIfAbsent(player.getConnection().getProtocolVersion(), version -> new ArrayList<>())
+                    .add(player);
+        }
+
+        groups.forEach((version, players) -> {
+            final ByteBuf encoded;
+            try {
+                encoded = encode(message, version, players.get(0).getConnection().getChannel().alloc());
+            } catch (Throwable e) {
+                if (!warned) {
+                    warned = true;
+                    plugin.log(Level.WARNING, "Failed to encode a chat packet for " + version
+                                              + ", sending messages normally instead", e);
+                }
+                players.forEach(player -> player.sendMessage(message));
+                return;
+            }
+            writeAll(encoded, players.stream().map(player -> player.getConnection().getChannel()).toList());
+        });
+    }
+
+    // Returns whether a connection can be written an encoded system chat packet
+    private static boolean isSupported(@NotNull MinecraftConnection connection) {
+        return connection.getState() == StateRegistry.PLAY
+               && connection.getProtocolVersion().compareTo(MINIMUM_VERSION) >= 0
+               && connection.getChannel().isActive();
+    }
+
+    /**
+     * Encode a message into the ID and body of a system chat packet for a protocol version
+     *
+     * @param message   the message to encode
+     * @param version   the protocol version to encode the packet for
+     * @param allocator the allocator to take the buffer from
+     * @return the encoded packet, which the caller must release
+     */
+    @NotNull
+    public static ByteBuf encode(@NotNull Component message, @NotNull ProtocolVersion version,
+                                 @NotNull ByteBufAllocator allocator) {
+        final SystemChatPacket packet = new SystemChatPacket(new ComponentHolder(version, message), ChatType.SYSTEM);
+        final int id = StateRegistry.PLAY.getProtocolRegistry(ProtocolUtils.Direction.CLIENTBOUND, version)
+                .getPacketId(packet);
+        final ByteBuf buffer = allocator.ioBuffer();
+        try {
+            ProtocolUtils.writeVarInt(buffer, id);
+            packet.encode(buffer, ProtocolUtils.Direction.CLIENTBOUND, version);
+            return buffer;
+        } catch (Throwable e) {
+            buffer.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Write an encoded packet to channels, each receiving a retained duplicate that shares its content.
+     * The encoded buffer is released once it has been written to every channel
+     *
+     * @param encoded  the encoded packet
+     * @param channels the channels to write to
+     */
+    public static void writeAll(@NotNull ByteBuf encoded, @NotNull Collection<? extends Channel> channels) {
+        try {
+            for (Channel channel : channels) {
+                channel.writeAndFlush(encoded.retainedDuplicate(), channel.voidPromise());
+            }
+        } finally {
+            encoded.release();
+        }
+    }
+
+    // An audience that sends chat messages through the fan-out, and everything else to each audience
+    private record FanoutAudience(@NotNull VelocityPacketFanout fanout,
+                                  @NotNull List<Audience> audiences) implements ForwardingAudience {
+
+        @Override
+        public void sendMessage(@NotNull Component message) {
+            fanout.send(audiences, message);
+        }
+
+    }
+
+}